@@ -2,23 +2,51 @@
 
 # SETTINGS FILE LOCATION TAKEN FROM ARGUMENTS
 # FIRST ARG SHOULD BE THE ANALYSIS BEING RUN (-rle) AND THE SECOND THE PATH TO THE SETTINGS XML FILE
-SETTINGS=$2
+# FURTHER SETTINGS FILES MAY FOLLOW - EACH ANALYSIS IS THEN RUN AT THE SAME TIME
+# --resume BEFORE THE SETTINGS FILES RESUMES AN ANALYSIS INTERRUPTED WHILE GENERATING ITS MODELS
 
-# Potential flags r for robustness, l for latin-hypercube, e for efast, s for SBML Intervention
+# --resume IS TAKEN OUT BEFORE THE FLAGS ARE READ, SO IS NEVER READ AS A CLUSTER OF FLAGS OR A SETTINGS FILE
+RESUME=()
+ARGS=()
+for arg in "$@"; do
+  if [ "$arg" == "--resume" ]; then
+    RESUME=("--resume")
+  else
+    ARGS+=("$arg")
+  fi
+done
+set -- "${ARGS[@]}"
+SETTINGS=("${@:2}")
+
+if [ $# -lt 2 ] || [ "${1:0:1}" != "-" ]; then
+  echo "Usage: ./ASPASIA.bash -[rleomsx] [--resume] [full path to settings file] ..." >&2
+  exit 1
+fi
+
+# Potential flags r for robustness, l for latin-hypercube, e for efast, o for sobol, m for morris, s for SBML Intervention, x to materialise models from a change set
 
-while getopts ":rles" opt; do
+while getopts ":rleomsx" opt; do
   case $opt in
     r)
-	java -jar ASPASIA.jar "r" $SETTINGS
+	java -jar ASPASIA.jar "r" "${RESUME[@]}" "${SETTINGS[@]}"
       ;;
     l)
-	java -jar ASPASIA.jar "l" $SETTINGS
+	java -jar ASPASIA.jar "l" "${RESUME[@]}" "${SETTINGS[@]}"
       ;;
     e)
-	java -jar ASPASIA.jar "e" $SETTINGS
+	java -jar ASPASIA.jar "e" "${RESUME[@]}" "${SETTINGS[@]}"
+      ;;
+    o)
+	java -jar ASPASIA.jar "o" "${RESUME[@]}" "${SETTINGS[@]}"
+      ;;
+    m)
+	java -jar ASPASIA.jar "m" "${RESUME[@]}" "${SETTINGS[@]}"
       ;;
     s)
-	java -jar ASPASIA.jar "s" $SETTINGS
+	java -jar ASPASIA.jar "s" "${RESUME[@]}" "${SETTINGS[@]}"
+      ;;
+    x)
+	java -jar ASPASIA.jar "x" "${RESUME[@]}" "${SETTINGS[@]}"
       ;;
     \?)
       echo "Invalid option: -$OPTARG" >&2
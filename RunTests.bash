@@ -0,0 +1,27 @@
+#!/bin/bash
+
+# COMPILES ASPASIA AND ITS TESTS, THEN RUNS EVERY TEST CLASS (test/[package]/[Name]Test.java)
+# RUN FROM ANY FOLDER: ./RunTests.bash
+# EACH TEST STOPS AT ITS FIRST FAILED CHECK. THE SCRIPT EXITS WITH THE NUMBER OF TESTS THAT FAILED
+
+cd "$(dirname "$0")"
+BUILD=$(mktemp -d)
+CLASSES="$BUILD:jdom.jar:commons-io-2.4.jar"
+
+if ! javac -nowarn -encoding UTF-8 -cp "$CLASSES" -d "$BUILD" $(find src test -name "*.java"); then
+  rm -rf "$BUILD"
+  echo "ASPASIA or its tests could not be compiled" >&2
+  exit 1
+fi
+
+FAILED=0
+for TEST in $(cd test && find . -name "*Test.java" | sort); do
+  CLASS=$(echo "${TEST#./}" | sed 's#\.java$##; s#/#.#g')
+  if ! java -cp "$CLASSES" "$CLASS"; then
+    echo "FAILED: $CLASS" >&2
+    FAILED=$((FAILED + 1))
+  fi
+done
+
+rm -rf "$BUILD"
+exit $FAILED
@@ -0,0 +1,334 @@
+/**
+ * \package analysis
+ * 
+ * \brief Package containing the calculation of sensitivity indices from the results of simulating the models ASPASIA generated
+ */
+package analysis;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import sampling.ParameterSpace;
+import sampling.SamplingUtilities;
+import xmlFileUtilities.AnalysisSettings;
+import xmlFileUtilities.XMLFileUtilities;
+
+/**
+ * \brief Calculates the elementary effects of each parameter from the results
+ * of simulating the models of a Morris analysis
+ * 
+ * The results file holds a row for each model, in the order listed in
+ * Morris_Parameters_for_Runs.csv, with a column for each output measure. A
+ * column headed Model is ignored. The parameter moved at each step of each
+ * trajectory, and how far, is read from Morris_Parameters_for_Runs.csv. Each
+ * step gives an elementary effect: the change in the measure divided by the
+ * change in the parameter, as a fraction of its range. For each measure and
+ * parameter, the mean of the absolute effects (mu*), the mean (mu) and the
+ * standard deviation (sigma) are calculated, on the number of threads set by
+ * the samplingThreads tag of the settings file, and written to
+ * Morris_Elementary_Effects.csv. Parameters with a small mu* have little
+ * influence, and a large sigma indicates a non-linear effect or interactions
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class Analyse_Morris_Results
+{
+    /**
+     * Full path to the file of simulation results
+     */
+    String morrisResultsFile;
+
+    /**
+     * Folder holding the list of runs, where the effects are written
+     */
+    String outputFolder;
+
+    /**
+     * The settings of the analysis
+     */
+    final AnalysisSettings settings;
+
+    /**
+     * Reads the results of the Morris analysis described in the settings file,
+     * and writes the elementary effect statistics of each parameter for each
+     * output measure
+     * 
+     * @param settings The settings of the analysis, read from the sensitivity
+     *            analysis XML settings file
+     */
+    public Analyse_Morris_Results(AnalysisSettings settings)
+    {
+	this.settings = settings;
+	this.morrisResultsFile = settings.getParam("morrisResultsFile");
+	String paramFileOutputFolderReadIn = settings.getParam("parameterFileOutputFolder");
+
+	if (this.morrisResultsFile == null || paramFileOutputFolderReadIn == null
+		|| !XMLFileUtilities.checkParameterInfo(settings, "Morris"))
+	{
+	    System.out.println("Error in Settings File. Address these and run ASPASIA again");
+	}
+	else
+	{
+	    this.outputFolder = paramFileOutputFolderReadIn + "/Morris/";
+
+	    try
+	    {
+		double[][] runs = readRuns(this.outputFolder + "/Morris_Parameters_for_Runs.csv",
+			this.settings.getParametersAnalysed().size());
+		List<String> measures = new ArrayList<String>();
+		double[][] results = Analyse_Sobol_Results.readResults(this.morrisResultsFile,
+			measures);
+		double[][][] effects = this.calculateEffects(runs, results);
+		this.writeEffects(measures, effects);
+
+		System.out.println("Morris Elementary Effects Calculated");
+		System.out.println("Check " + this.outputFolder
+			+ " for the file Morris_Elementary_Effects.csv");
+	    }
+	    catch (Exception e)
+	    {
+		e.printStackTrace();
+		System.out.println("There was a problem calculating elementary effects. Check the "
+			+ "results file holds a row for each model listed in "
+			+ "Morris_Parameters_for_Runs.csv");
+	    }
+	}
+    }
+
+    /**
+     * Reads the value sets of each run from the list written when the models
+     * were generated
+     * 
+     * @param runListPath Full path to Morris_Parameters_for_Runs.csv
+     * @param numParams Number of parameters analysed
+     * @return Value of each parameter, one row per run
+     * @throws IOException if the file cannot be read
+     */
+    static double[][] readRuns(String runListPath, int numParams) throws IOException
+    {
+	List<double[]> runs = new ArrayList<double[]>();
+	BufferedReader br = new BufferedReader(new FileReader(runListPath));
+	try
+	{
+	    // Skip over the first line - the headings
+	    String strLine = br.readLine();
+	    strLine = br.readLine();
+	    while (strLine != null)
+	    {
+		StringTokenizer st = new StringTokenizer(strLine, ",");
+		// The first column names the model
+		st.nextToken();
+		double[] valueSet = new double[numParams];
+		for (int p = 0; p < numParams; p++)
+		{
+		    valueSet[p] = Double.parseDouble(st.nextToken());
+		}
+		runs.add(valueSet);
+		strLine = br.readLine();
+	    }
+	}
+	finally
+	{
+	    br.close();
+	}
+	return runs.toArray(new double[runs.size()][]);
+    }
+
+    /**
+     * Calculates mu*, mu and sigma of the elementary effects of every parameter
+     * for every measure, sharing the work between threads
+     * 
+     * @param runs Value of each parameter, one row per run
+     * @param results Values of each measure, one row per measure and one
+     *            column per run
+     * @return Statistics, by measure, then parameter, then mu* (0), mu (1) and
+     *         sigma (2)
+     * @throws Exception if the runs and results do not match the analysis, or
+     *             the calculation is interrupted
+     */
+    double[][][] calculateEffects(double[][] runs, final double[][] results) throws Exception
+    {
+	final int numParams = this.settings.getParametersAnalysed().size();
+	int numRuns = results.length == 0 ? 0 : results[0].length;
+	if (numRuns == 0 || numRuns != runs.length || numRuns % (numParams + 1) != 0)
+	{
+	    throw new IOException(numRuns + " results do not match the " + runs.length
+		    + " runs of a Morris analysis of " + numParams + " parameters");
+	}
+	final int numTrajectories = numRuns / (numParams + 1);
+
+	// Find the parameter moved at each step, and how far as a fraction of
+	// its range
+	ParameterSpace space = new ParameterSpace(this.settings);
+	final int[][] stepParam = new int[numTrajectories][numParams];
+	final double[][] stepDelta = new double[numTrajectories][numParams];
+	for (int t = 0; t < numTrajectories; t++)
+	{
+	    for (int k = 0; k < numParams; k++)
+	    {
+		double[] before = runs[t * (numParams + 1) + k];
+		double[] after = runs[t * (numParams + 1) + k + 1];
+		stepParam[t][k] = -1;
+		for (int p = 0; p < numParams; p++)
+		{
+		    if (before[p] != after[p])
+		    {
+			if (stepParam[t][k] >= 0)
+			{
+			    throw new IOException("Step " + (k + 1) + " of trajectory " + (t + 1)
+				    + " moves more than one parameter");
+			}
+			stepParam[t][k] = p;
+			stepDelta[t][k] = (after[p] - before[p])
+				/ (space.getMax(p) - space.getMin(p));
+		    }
+		}
+		if (stepParam[t][k] < 0)
+		{
+		    throw new IOException("Step " + (k + 1) + " of trajectory " + (t + 1)
+			    + " does not move a parameter");
+		}
+	    }
+	}
+
+	final double[][][] effects = new double[results.length][numParams][];
+	List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+	for (int m = 0; m < results.length; m++)
+	{
+	    for (int p = 0; p < numParams; p++)
+	    {
+		final int measure = m;
+		final int param = p;
+		tasks.add(new Callable<Void>()
+		{
+		    public Void call()
+		    {
+			effects[measure][param] = effectStatistics(results[measure], stepParam,
+				stepDelta, param);
+			return null;
+		    }
+		});
+	    }
+	}
+
+	ExecutorService executor = Executors.newFixedThreadPool(SamplingUtilities
+		.getThreadCount(this.settings));
+	try
+	{
+	    for (Future<Void> task : executor.invokeAll(tasks))
+	    {
+		task.get();
+	    }
+	}
+	finally
+	{
+	    executor.shutdown();
+	}
+	return effects;
+    }
+
+    /**
+     * Calculates the statistics of the elementary effects of one parameter on
+     * one measure
+     * 
+     * @param values Value of the measure for every run
+     * @param stepParam Parameter moved at each step of each trajectory
+     * @param stepDelta Change in that parameter, as a fraction of its range
+     * @param param The parameter
+     * @return mu*, mu and sigma of the effects. Sigma is 0 where there is only
+     *         one trajectory
+     */
+    static double[] effectStatistics(double[] values, int[][] stepParam, double[][] stepDelta,
+	    int param)
+    {
+	int numTrajectories = stepParam.length;
+	int numParams = stepParam[0].length;
+	double[] effects = new double[numTrajectories];
+	for (int t = 0; t < numTrajectories; t++)
+	{
+	    for (int k = 0; k < numParams; k++)
+	    {
+		if (stepParam[t][k] == param)
+		{
+		    int run = t * (numParams + 1) + k;
+		    effects[t] = (values[run + 1] - values[run]) / stepDelta[t][k];
+		}
+	    }
+	}
+
+	double muStar = 0;
+	double mu = 0;
+	for (double effect : effects)
+	{
+	    muStar += Math.abs(effect);
+	    mu += effect;
+	}
+	muStar /= numTrajectories;
+	mu /= numTrajectories;
+
+	double sigma = 0;
+	if (numTrajectories > 1)
+	{
+	    for (double effect : effects)
+	    {
+		sigma += (effect - mu) * (effect - mu);
+	    }
+	    sigma = Math.sqrt(sigma / (numTrajectories - 1));
+	}
+	return new double[] { muStar, mu, sigma };
+    }
+
+    /**
+     * Writes the statistics to Morris_Elementary_Effects.csv, with a row for
+     * each parameter and a mu*, mu and sigma column for each measure
+     * 
+     * @param measures Names of the output measures
+     * @param effects Statistics, by measure, then parameter
+     * @throws IOException if the file cannot be written
+     */
+    void writeEffects(List<String> measures, double[][][] effects) throws IOException
+    {
+	BufferedWriter writer = new BufferedWriter(new FileWriter(this.outputFolder
+		+ "/Morris_Elementary_Effects.csv"));
+	try
+	{
+	    writer.write("\"Parameter\"");
+	    for (String measure : measures)
+	    {
+		writer.write(",\"" + measure + "_MuStar\",\"" + measure + "_Mu\",\"" + measure
+			+ "_Sigma\"");
+	    }
+	    writer.newLine();
+
+	    List<String> parameters = this.settings.getParametersAnalysed();
+	    for (int p = 0; p < parameters.size(); p++)
+	    {
+		writer.write("\"" + parameters.get(p) + "\"");
+		for (int m = 0; m < measures.size(); m++)
+		{
+		    writer.write("," + effects[m][p][0] + "," + effects[m][p][1] + ","
+			    + effects[m][p][2]);
+		}
+		writer.newLine();
+	    }
+	}
+	finally
+	{
+	    writer.close();
+	}
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * \package analysis
+ * 
+ * \brief Package containing the calculation of sensitivity indices from the results of simulating the models ASPASIA generated
+ */
+package analysis;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import sampling.SamplingUtilities;
+import xmlFileUtilities.AnalysisSettings;
+
+/**
+ * \brief Calculates first and total-order Sobol indices from the results of
+ * simulating the models of a Sobol analysis
+ * 
+ * The results file holds a row for each model, in the order listed in
+ * Sobol_Parameters_for_Runs.csv, with a column for each output measure. A
+ * column headed Model, such as that copied from the list of runs, is ignored.
+ * For each measure and parameter, the first-order index is estimated as
+ * Saltelli (2010) does, and the total-order index as Jansen (1999) does, both
+ * normalised by the variance of the measure over the A and B matrices. Indices
+ * of each measure and parameter are calculated independently, on the number of
+ * threads set by the samplingThreads tag of the settings file, and written to
+ * Sobol_Indices.csv
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class Analyse_Sobol_Results
+{
+    /**
+     * Full path to the file of simulation results
+     */
+    String sobolResultsFile;
+
+    /**
+     * Folder the indices are written to
+     */
+    String outputFolder;
+
+    /**
+     * The settings of the analysis
+     */
+    final AnalysisSettings settings;
+
+    /**
+     * Reads the results of the Sobol analysis described in the settings file,
+     * and writes the Sobol indices of each parameter for each output measure
+     * 
+     * @param settings The settings of the analysis, read from the sensitivity
+     *            analysis XML settings file
+     */
+    public Analyse_Sobol_Results(AnalysisSettings settings)
+    {
+	this.settings = settings;
+	this.sobolResultsFile = settings.getParam("sobolResultsFile");
+	String paramFileOutputFolderReadIn = settings.getParam("parameterFileOutputFolder");
+
+	if (this.sobolResultsFile == null || paramFileOutputFolderReadIn == null)
+	{
+	    System.out.println("Error in Settings File. Address these and run ASPASIA again");
+	}
+	else
+	{
+	    this.outputFolder = paramFileOutputFolderReadIn + "/Sobol/";
+	    new File(this.outputFolder).mkdirs();
+
+	    try
+	    {
+		List<String> measures = new ArrayList<String>();
+		double[][] results = readResults(this.sobolResultsFile, measures);
+		double[][][] indices = this.calculateIndices(results);
+		this.writeIndices(measures, indices);
+
+		System.out.println("Sobol Indices Calculated");
+		System.out.println("Check " + this.outputFolder
+			+ " for the file Sobol_Indices.csv");
+	    }
+	    catch (Exception e)
+	    {
+		e.printStackTrace();
+		System.out.println("There was a problem calculating Sobol indices. Check the "
+			+ "results file holds a row for each model listed in "
+			+ "Sobol_Parameters_for_Runs.csv");
+	    }
+	}
+    }
+
+    /**
+     * Reads the results file, returning the values of each output measure
+     * 
+     * @param resultsFilePath Full path to the results file
+     * @param measures List to add the name of each output measure to
+     * @return Values of each measure, one row per measure and one column per
+     *         model run
+     * @throws IOException if the file cannot be read, or holds a value that is
+     *             not a number
+     */
+    static double[][] readResults(String resultsFilePath, List<String> measures)
+	    throws IOException
+    {
+	BufferedReader br = new BufferedReader(new FileReader(resultsFilePath));
+	List<double[]> rows = new ArrayList<double[]>();
+	try
+	{
+	    // The headings name the measures, other than any Model column
+	    List<Boolean> isMeasure = new ArrayList<Boolean>();
+	    StringTokenizer st = new StringTokenizer(br.readLine(), ",");
+	    while (st.hasMoreTokens())
+	    {
+		String heading = st.nextToken().replace("\"", "").trim();
+		isMeasure.add(!heading.equals("Model"));
+		if (!heading.equals("Model"))
+		{
+		    measures.add(heading);
+		}
+	    }
+
+	    String strLine = br.readLine();
+	    while (strLine != null)
+	    {
+		if (strLine.trim().length() > 0)
+		{
+		    st = new StringTokenizer(strLine, ",");
+		    double[] row = new double[measures.size()];
+		    int m = 0;
+		    for (int column = 0; column < isMeasure.size(); column++)
+		    {
+			if (!st.hasMoreTokens())
+			{
+			    throw new IOException("Line " + (rows.size() + 2) + " of "
+				    + resultsFilePath + " does not hold a value for every measure");
+			}
+			String value = st.nextToken();
+			if (isMeasure.get(column))
+			{
+			    row[m++] = Double.parseDouble(value);
+			}
+		    }
+		    rows.add(row);
+		}
+		strLine = br.readLine();
+	    }
+	}
+	finally
+	{
+	    br.close();
+	}
+
+	double[][] results = new double[measures.size()][rows.size()];
+	for (int run = 0; run < rows.size(); run++)
+	{
+	    for (int m = 0; m < measures.size(); m++)
+	    {
+		results[m][run] = rows.get(run)[m];
+	    }
+	}
+	return results;
+    }
+
+    /**
+     * Calculates the first and total-order index of every parameter for every
+     * measure, sharing the work between threads
+     * 
+     * @param results Values of each measure, one row per measure and one
+     *            column per model run, in the order the models were listed
+     * @return Indices, by measure, then parameter, then first (0) or total
+     *         (1) order
+     * @throws Exception if the number of results does not match the analysis,
+     *             or the calculation is interrupted
+     */
+    double[][][] calculateIndices(final double[][] results) throws Exception
+    {
+	final int numParams = this.settings.getParametersAnalysed().size();
+	int numRuns = results.length == 0 ? 0 : results[0].length;
+	if (numRuns == 0 || numRuns % (numParams + 2) != 0)
+	{
+	    throw new IOException(numRuns + " results do not match a Sobol analysis of "
+		    + numParams + " parameters, which has (parameters + 2) * sobolSamples runs");
+	}
+	final int numSamples = numRuns / (numParams + 2);
+
+	final double[][][] indices = new double[results.length][numParams][2];
+	List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+	for (int m = 0; m < results.length; m++)
+	{
+	    for (int p = 0; p < numParams; p++)
+	    {
+		final int measure = m;
+		final int param = p;
+		tasks.add(new Callable<Void>()
+		{
+		    public Void call()
+		    {
+			indices[measure][param] = sobolIndices(results[measure], numSamples, param);
+			return null;
+		    }
+		});
+	    }
+	}
+
+	ExecutorService executor = Executors.newFixedThreadPool(SamplingUtilities
+		.getThreadCount(this.settings));
+	try
+	{
+	    for (Future<Void> task : executor.invokeAll(tasks))
+	    {
+		task.get();
+	    }
+	}
+	finally
+	{
+	    executor.shutdown();
+	}
+	return indices;
+    }
+
+    /**
+     * Estimates the first and total-order index of one parameter for one
+     * measure
+     * 
+     * @param values Value of the measure for every model run, A then B then
+     *            the AB matrix of each parameter in turn
+     * @param numSamples Number of value sets in each matrix
+     * @param param Position of the parameter in those analysed
+     * @return The first-order and total-order index. Not a number where the
+     *         measure does not vary
+     */
+    static double[] sobolIndices(double[] values, int numSamples, int param)
+    {
+	int a = 0;
+	int b = numSamples;
+	int ab = (param + 2) * numSamples;
+
+	// Variance of the measure over A and B
+	double mean = 0;
+	for (int i = 0; i < 2 * numSamples; i++)
+	{
+	    mean += values[i];
+	}
+	mean /= 2 * numSamples;
+	double variance = 0;
+	for (int i = 0; i < 2 * numSamples; i++)
+	{
+	    variance += (values[i] - mean) * (values[i] - mean);
+	}
+	variance /= 2 * numSamples;
+
+	double firstOrder = 0;
+	double totalOrder = 0;
+	for (int i = 0; i < numSamples; i++)
+	{
+	    double fA = values[a + i];
+	    double fB = values[b + i];
+	    double fAB = values[ab + i];
+	    firstOrder += fB * (fAB - fA);
+	    totalOrder += (fA - fAB) * (fA - fAB);
+	}
+	return new double[] { firstOrder / numSamples / variance,
+		totalOrder / (2.0 * numSamples) / variance };
+    }
+
+    /**
+     * Writes the indices to Sobol_Indices.csv, with a row for each parameter
+     * and a first and total-order column for each measure
+     * 
+     * @param measures Names of the output measures
+     * @param indices Indices, by measure, then parameter, then order
+     * @throws IOException if the file cannot be written
+     */
+    void writeIndices(List<String> measures, double[][][] indices) throws IOException
+    {
+	BufferedWriter writer = new BufferedWriter(new FileWriter(this.outputFolder
+		+ "/Sobol_Indices.csv"));
+	try
+	{
+	    writer.write("\"Parameter\"");
+	    for (String measure : measures)
+	    {
+		writer.write(",\"" + measure + "_FirstOrder\",\"" + measure + "_TotalOrder\"");
+	    }
+	    writer.newLine();
+
+	    List<String> parameters = this.settings.getParametersAnalysed();
+	    for (int p = 0; p < parameters.size(); p++)
+	    {
+		writer.write("\"" + parameters.get(p) + "\"");
+		for (int m = 0; m < measures.size(); m++)
+		{
+		    writer.write("," + indices[m][p][0] + "," + indices[m][p][1]);
+		}
+		writer.newLine();
+	    }
+	}
+	finally
+	{
+	    writer.close();
+	}
+    }
+}
@@ -6,10 +6,20 @@
 
 package launch;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import analysis.Analyse_Morris_Results;
+import analysis.Analyse_Sobol_Results;
+import modelCreation.ChangeSetMaterialiser;
 import modelCreation.Create_LHC_Models;
+import modelCreation.Create_Morris_Models;
 import modelCreation.Create_Robustness_Models;
+import modelCreation.Create_Sobol_Models;
 import modelCreation.Create_eFAST_Models;
 import modelCreation.SBMLFileFromSolverOutput;
+import xmlFileUtilities.AnalysisSettings;
+import xmlFileUtilities.XMLFileUtilities;
 
 /**
  * \brief Launch class of the runnable jar file
@@ -26,17 +36,33 @@ public class LaunchASPASIA
 
     /**
      * Called by the BASH script to run the sensitivity analysis protocol. The
-     * argument specifies that method to run: r, l, or e
+     * argument specifies that method to run: r, m, l, e, o, s or x. More than one settings
+     * file may be given, in which case each analysis is run at the same time,
+     * within this one process. --resume before the settings files resumes
+     * analyses interrupted while generating their models
      * 
      * @param args Input arguments from script. First will be the method
-     *            (r,l,e,s) second will be the location of the settings file
+     *            (r,m,l,e,o,s,x), followed by the location of one or more settings
+     *            files, optionally preceded by --resume
      */
-    @SuppressWarnings("unused")
     public static void main(String[] args)
     {
-	// Read in the method and settings file location
-	String method = args[0];
-	String settingsFileLocation = args[1];
+	// Read in the method and settings file locations
+	final String method = args[0];
+	final List<String> settingsFiles = new ArrayList<String>();
+	boolean resumeReadIn = false;
+	for (int a = 1; a < args.length; a++)
+	{
+	    if (args[a].equals("--resume"))
+	    {
+		resumeReadIn = true;
+	    }
+	    else
+	    {
+		settingsFiles.add(args[a]);
+	    }
+	}
+	final boolean resume = resumeReadIn;
 	System.out
 	        .println("**************************************************************************");
 	System.out.println("ASPASIA Version 1");
@@ -45,32 +71,139 @@ public class LaunchASPASIA
 	System.out
 	        .println("**************************************************************************");
 	System.out.println();
+
+	if (settingsFiles.size() == 1)
+	{
+	    runAnalysis(method, settingsFiles.get(0), resume);
+	    return;
+	}
+
+	// Each settings file describes a separate analysis, so these are run
+	// concurrently, each on its own thread
+	List<Thread> analyses = new ArrayList<Thread>();
+	for (final String settingsFileLocation : settingsFiles)
+	{
+	    Thread analysis = new Thread(new Runnable()
+	    {
+		public void run()
+		{
+		    runAnalysis(method, settingsFileLocation, resume);
+		}
+	    }, "ASPASIA " + settingsFileLocation);
+	    analysis.start();
+	    analyses.add(analysis);
+	}
+
+	for (Thread analysis : analyses)
+	{
+	    try
+	    {
+		analysis.join();
+	    }
+	    catch (InterruptedException e)
+	    {
+		e.printStackTrace();
+		Thread.currentThread().interrupt();
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Reads in one settings file and runs the analysis it describes
+     * 
+     * @param method The method to run (r,m,l,e,o,s,x)
+     * @param settingsFileLocation Full path to the settings file
+     */
+    public static void runAnalysis(String method, String settingsFileLocation)
+    {
+	runAnalysis(method, settingsFileLocation, false);
+    }
+
+    /**
+     * Reads in one settings file and runs the analysis it describes, resuming
+     * its model generation if it was interrupted
+     * 
+     * @param method The method to run (r,m,l,e,o,s,x)
+     * @param settingsFileLocation Full path to the settings file
+     * @param resume Whether to keep the models an interrupted run completed
+     */
+    @SuppressWarnings("unused")
+    public static void runAnalysis(String method, String settingsFileLocation, boolean resume)
+    {
 	System.out.println("Reading Settings File: " + settingsFileLocation);
 	System.out.println();
 
+	AnalysisSettings settings = XMLFileUtilities.readSettingsFile(settingsFileLocation);
+	if (settings == null)
+	{
+	    System.out.println("Could not read the settings file " + settingsFileLocation);
+	    return;
+	}
+	if (resume)
+	{
+	    settings = settings.withParam("resumeGeneration", "true");
+	}
+
 	if (method.equals("r"))
 	{
 	    // Robustness Analysis
 	    System.out.println("ASPASIA Method: Robustness Analysis");
-	    Create_Robustness_Models oat = new Create_Robustness_Models(settingsFileLocation);
+	    Create_Robustness_Models oat = new Create_Robustness_Models(settings);
+	}
+	else if (method.equals("m"))
+	{
+	    // Morris Elementary Effects Screening - generating the models, or
+	    // calculating effects once their results are available
+	    if (settings.getOptionalParam("morrisResultsFile", null) == null)
+	    {
+		System.out.println("ASPASIA Method: Morris Screening");
+		Create_Morris_Models morris = new Create_Morris_Models(settings);
+	    }
+	    else
+	    {
+		System.out.println("ASPASIA Method: Morris Elementary Effects");
+		Analyse_Morris_Results morrisEffects = new Analyse_Morris_Results(settings);
+	    }
 	}
 	else if (method.equals("l"))
 	{
 	    // Latin-Hypercube Sensitivity Analysis
 	    System.out.println("ASPASIA Method: Latin-Hypercube Analysis");
-	    Create_LHC_Models lhc = new Create_LHC_Models(settingsFileLocation);
+	    Create_LHC_Models lhc = new Create_LHC_Models(settings);
 	}
 	else if (method.equals("e"))
 	{
 	    // eFAST Global Sensitivity Analysis
 	    System.out.println("ASPASIA Method: eFAST Analysis");
-	    Create_eFAST_Models efast = new Create_eFAST_Models(settingsFileLocation);
+	    Create_eFAST_Models efast = new Create_eFAST_Models(settings);
+	}
+	else if (method.equals("o"))
+	{
+	    // Sobol Global Sensitivity Analysis - generating the models, or
+	    // calculating indices once their results are available
+	    if (settings.getOptionalParam("sobolResultsFile", null) == null)
+	    {
+		System.out.println("ASPASIA Method: Sobol Analysis");
+		Create_Sobol_Models sobol = new Create_Sobol_Models(settings);
+	    }
+	    else
+	    {
+		System.out.println("ASPASIA Method: Sobol Indices from Simulation Results");
+		Analyse_Sobol_Results sobolIndices = new Analyse_Sobol_Results(settings);
+	    }
 	}
 	else if (method.equals("s"))
 	{
 	    // SBML Intervention from Steady State
 	    System.out.println("ASPASIA Method: Intervention from Steady State");
-	    SBMLFileFromSolverOutput newSBML = new SBMLFileFromSolverOutput(settingsFileLocation);
+	    SBMLFileFromSolverOutput newSBML = new SBMLFileFromSolverOutput(settings);
+	}
+	else if (method.equals("x"))
+	{
+	    // Full models from the change set of an earlier analysis
+	    System.out.println("ASPASIA Method: Materialise Models from Change Set");
+	    ChangeSetMaterialiser.materialiseModels(settings);
 	}
 
     }
@@ -82,9 +215,11 @@ public class LaunchASPASIA
      * simulations. Functionality is provided to achieve the following:
      * <ul>
      * <li>Creating parameter value sets and SBML Models to perform Robustness
-     * Analysis
+     * Analysis, and Morris screening, calculating elementary effects from
+     * simulation results
      * <li>Creating parameter value sets and SBML Models to perform Global
-     * Sensitivity Analysis (Latin-Hypercube and eFAST)
+     * Sensitivity Analysis (Latin-Hypercube, eFAST and Sobol), and calculating
+     * Sobol indices from simulation results
      * <li>Creating parameter value sets and SBML Models where an intervention
      * is introduced after steady state
      * </ul>
@@ -0,0 +1,33 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.IOException;
+
+/**
+ * \brief A stream returned by a model sink that can be discarded, rather than
+ * closed, when its model could not be written
+ * 
+ * Closing the stream of a model completes it: the model is added to the
+ * output and recorded in the manifest and journal. Where the writer fails
+ * part way through, the stream is aborted instead, so the partial model is
+ * never taken to be complete
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public interface AbortableModelStream
+{
+    /**
+     * Discards the model written so far, releasing the stream without adding
+     * the model to the output or recording it
+     * 
+     * @throws IOException if the partial model cannot be removed
+     */
+    public void abort() throws IOException;
+}
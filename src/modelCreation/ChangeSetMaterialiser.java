@@ -0,0 +1,292 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import xmlFileUtilities.AnalysisSettings;
+
+/**
+ * \brief Expands sampled models again from the change set written by
+ * ChangeSetModelSink
+ * 
+ * The change set is read once, keeping the values each model changes. Any
+ * model can then be written in full, with the sbmlWriter the analysis was run
+ * with, giving the same bytes the analysis would have written had each model
+ * been kept, and so the size and checksum listed in the manifest of the run.
+ * The materialiser is closed once done with, closing the writer
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class ChangeSetMaterialiser implements Closeable
+{
+    /**
+     * Finds the id of the parameter or species a changeAttribute target
+     * selects, quoted by either quote character
+     */
+    private static final Pattern TARGET_ID = Pattern
+	    .compile("\\[@id=(?:'([^']*)'|\"([^\"]*)\")\\]/@[^/]+$");
+
+    /**
+     * Value of each parameter or species each model changes, by model path, in
+     * the order listed
+     */
+    private final Map<String, Map<String, Double>> modelChanges =
+	    new LinkedHashMap<String, Map<String, Double>>();
+
+    /**
+     * Writer producing each model from the calibrated model
+     */
+    private final SBMLModelWriter modelWriter;
+
+    /**
+     * Reads the change set of an analysis, and sets up the writer for the
+     * calibrated model it lists
+     * 
+     * @param analysisFolder The analysis output folder holding the change set
+     * @throws Exception if the change set cannot be read, or the calibrated
+     *             model cannot be compiled
+     */
+    public ChangeSetMaterialiser(String analysisFolder) throws Exception
+    {
+	String calibratedFile = null;
+	String writerType = "template";
+
+	InputStream in = new BufferedInputStream(new FileInputStream(analysisFolder + "/"
+		+ ChangeSetModelSink.CHANGE_SET_FILE), 1 << 16);
+	try
+	{
+	    XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+	    Map<String, Double> changes = null;
+	    while (reader.hasNext())
+	    {
+		if (reader.next() != XMLStreamConstants.START_ELEMENT)
+		{
+		    continue;
+		}
+
+		String element = reader.getLocalName();
+		if (element.equals("aspasia")
+			&& ChangeSetModelSink.ASPASIA_NAMESPACE.equals(reader.getNamespaceURI()))
+		{
+		    writerType = reader.getAttributeValue(null, "sbmlWriter");
+		}
+		else if (element.equals("model"))
+		{
+		    String source = reader.getAttributeValue(null, "source");
+		    if (source.startsWith("#"))
+		    {
+			changes = new HashMap<String, Double>();
+			this.modelChanges.put(reader.getAttributeValue(null, "name"), changes);
+		    }
+		    else
+		    {
+			calibratedFile = source;
+		    }
+		}
+		else if (element.equals("changeAttribute") && changes != null)
+		{
+		    changes.put(targetId(reader.getAttributeValue(null, "target")),
+			    Double.parseDouble(reader.getAttributeValue(null, "newValue")));
+		}
+	    }
+	    reader.close();
+	}
+	finally
+	{
+	    in.close();
+	}
+
+	if (calibratedFile == null)
+	{
+	    throw new IOException("No calibrated model is listed in the change set in "
+		    + analysisFolder);
+	}
+	this.modelWriter = WriteParameterFile_SBML.createModelWriter(analysisFolder + "/"
+		+ calibratedFile, writerType);
+    }
+
+    /**
+     * @param target XPath of the value a changeAttribute sets
+     * @return The id of the parameter or species holding the value
+     * @throws XMLStreamException if the target does not select a value by id
+     */
+    private static String targetId(String target) throws XMLStreamException
+    {
+	Matcher id = TARGET_ID.matcher(target);
+	if (!id.find())
+	{
+	    throw new XMLStreamException("Change target not written by ASPASIA: " + target);
+	}
+	return (id.group(1) != null) ? id.group(1) : id.group(2);
+    }
+
+    /**
+     * @return Path of every model in the change set, in the order listed
+     */
+    public List<String> getModelPaths()
+    {
+	return Collections.unmodifiableList(new ArrayList<String>(this.modelChanges.keySet()));
+    }
+
+    /**
+     * Writes one model in full
+     * 
+     * @param modelPath Path of the model within the analysis output folder
+     * @param out Stream the model is written to. This is not closed
+     * @throws IOException if the model cannot be written
+     * @throws IllegalArgumentException if the change set has no such model
+     */
+    public void materialise(String modelPath, OutputStream out) throws IOException
+    {
+	Map<String, Double> changes = this.modelChanges.get(modelPath);
+	if (changes == null)
+	{
+	    throw new IllegalArgumentException("No model " + modelPath + " in the change set");
+	}
+	this.modelWriter.writeModel(changes, out);
+    }
+
+    /**
+     * Writes one model in full to a file, creating its folder if needed
+     * 
+     * @param modelPath Path of the model within the analysis output folder
+     * @param modelFilePath Full path to the file to write
+     * @throws IOException if the model cannot be written
+     * @throws IllegalArgumentException if the change set has no such model
+     */
+    public void materialise(String modelPath, String modelFilePath) throws IOException
+    {
+	File modelFile = new File(modelFilePath);
+	if (modelFile.getParentFile() != null)
+	{
+	    modelFile.getParentFile().mkdirs();
+	}
+	OutputStream out = new FileOutputStream(modelFile);
+	if (!this.modelWriter.buffersOutput())
+	{
+	    out = new BufferedOutputStream(out);
+	}
+	try
+	{
+	    this.materialise(modelPath, out);
+	}
+	finally
+	{
+	    out.close();
+	}
+    }
+
+    /**
+     * Closes the writer producing each model
+     * 
+     * @throws IOException if the writer cannot be closed
+     */
+    public void close() throws IOException
+    {
+	this.modelWriter.close();
+    }
+
+    /**
+     * Expands the models named in the settings file from the change set in
+     * changeSetFolder, writing each to the place it would have been written
+     * within that folder. materialiseModels lists the model paths, separated
+     * by commas, or is "all". A path that is absolute, or steps out of a
+     * folder with "..", is not written, as it could lead outside the folder
+     * 
+     * @param settings The settings read from the settings file
+     */
+    public static void materialiseModels(AnalysisSettings settings)
+    {
+	String analysisFolder = settings.getParam("changeSetFolder");
+	String modelsReadIn = settings.getParam("materialiseModels");
+	if (analysisFolder == null || modelsReadIn == null)
+	{
+	    System.out.println("Error in Settings File. Address these and run ASPASIA again");
+	    return;
+	}
+
+	try
+	{
+	    ChangeSetMaterialiser materialiser = new ChangeSetMaterialiser(analysisFolder);
+	    int materialised = 0;
+	    try
+	    {
+		List<String> modelPaths = modelsReadIn.trim().equals("all") ? materialiser
+			.getModelPaths() : settings.getParamStringList("materialiseModels");
+		for (String modelPath : modelPaths)
+		{
+		    if (!isRelativeWithin(modelPath.trim()))
+		    {
+			System.out.println("Model path " + modelPath.trim() + " is not within"
+				+ " the analysis output folder, so has not been materialised");
+			continue;
+		    }
+		    materialiser.materialise(modelPath.trim(), analysisFolder + "/"
+			    + modelPath.trim());
+		    materialised++;
+		}
+	    }
+	    finally
+	    {
+		materialiser.close();
+	    }
+	    System.out.println("Materialised " + materialised + " models in " + analysisFolder);
+	}
+	catch (Exception e)
+	{
+	    e.printStackTrace();
+	}
+    }
+
+    /**
+     * @param modelPath Path of a model, as listed in the change set or settings
+     *            file
+     * @return True if the path is relative, names no drive, and never steps out
+     *         of a folder, so stays within the folder it is resolved against
+     */
+    static boolean isRelativeWithin(String modelPath)
+    {
+	if (modelPath.isEmpty() || new File(modelPath).isAbsolute()
+		|| modelPath.startsWith("/") || modelPath.startsWith("\\")
+		|| modelPath.indexOf(':') >= 0)
+	{
+	    return false;
+	}
+	for (String part : modelPath.split("[/\\\\]"))
+	{
+	    if (part.equals(".."))
+	    {
+		return false;
+	    }
+	}
+	return true;
+    }
+}
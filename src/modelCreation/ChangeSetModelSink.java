@@ -0,0 +1,404 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * \brief Writes the calibrated SBML model once, with the changes that make
+ * each sampled model from it, rather than every model in full
+ * 
+ * The calibrated model is copied to the analysis output folder, and
+ * Models_Changes.sedml lists every sampled model as a SED-ML model derived
+ * from it. Each holds a changeAttribute for every value of the calibrated
+ * model its sample sets: the value of a parameter in a listOfParameters, or
+ * the initialConcentration of a species in a listOfSpecies, exactly those the
+ * model writers change. Each model is named by its path within the analysis
+ * output folder. A sampled parameter with no such value in the calibrated
+ * model is left out, as the model writers leave it out, with a warning.
+ * 
+ * Each sampled model is still produced by the model writer, but is discarded
+ * once the manifest of the run has taken its size and checksum, which are
+ * those of the model ChangeSetMaterialiser expands from the change set
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class ChangeSetModelSink implements ModelSink
+{
+    /**
+     * Name of the change set document, in the analysis output folder
+     */
+    static final String CHANGE_SET_FILE = "Models_Changes.sedml";
+
+    /**
+     * Namespace of the annotation recording how the models are written
+     */
+    static final String ASPASIA_NAMESPACE = "http://www.york.ac.uk/ycil/aspasia";
+
+    /**
+     * XPath of each value that can be changed, by the id of its parameter or
+     * species. An id may be used in more than one listOfParameters
+     */
+    private final Map<String, List<String>> targets = new HashMap<String, List<String>>();
+
+    /**
+     * Sampled parameters already warned of having no value in the calibrated
+     * model
+     */
+    private final Set<String> untargeted = new HashSet<String>();
+
+    /**
+     * SED-ML language of the calibrated model, with its SBML level and version
+     */
+    private final String language;
+
+    /**
+     * The change set document being written
+     */
+    private final Writer changeSet;
+
+    /**
+     * Copies the calibrated model to the output folder, finds every value in
+     * it that can be changed, and starts the change set document
+     * 
+     * @param outputFolder The analysis output folder
+     * @param calibratedParamFilePath Full path to the simulation parameter file
+     *            at calibrated values
+     * @param writerType The sbmlWriter the models are expanded with
+     * @throws IOException if the calibrated model cannot be read, or the
+     *             change set cannot be created
+     */
+    public ChangeSetModelSink(String outputFolder, String calibratedParamFilePath,
+	    String writerType) throws IOException
+    {
+	File calibratedFile = new File(calibratedParamFilePath);
+	Document calibrated;
+	try
+	{
+	    calibrated = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+		    .parse(calibratedFile);
+	}
+	catch (Exception e)
+	{
+	    throw new IOException("Could not read the calibrated model "
+		    + calibratedParamFilePath, e);
+	}
+	Element sbml = calibrated.getDocumentElement();
+	findTargets(sbml, "");
+	this.language = "urn:sedml:language:sbml.level-" + escape(sbml.getAttribute("level"))
+		+ ".version-" + escape(sbml.getAttribute("version"));
+
+	File calibratedCopy = new File(outputFolder, calibratedFile.getName());
+	if (!calibratedCopy.getCanonicalFile().equals(calibratedFile.getCanonicalFile()))
+	{
+	    Files.copy(calibratedFile.toPath(), calibratedCopy.toPath(),
+		    StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	this.changeSet = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+		outputFolder + "/" + CHANGE_SET_FILE), "UTF-8"), 1 << 16);
+	this.changeSet.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+	this.changeSet.write("<sedML xmlns=\"http://sed-ml.org/sed-ml/level1/version3\""
+		+ " xmlns:sbml=\"" + escape(sbml.getAttribute("xmlns"))
+		+ "\" level=\"1\" version=\"3\">\n");
+	this.changeSet.write("  <annotation>\n    <aspasia xmlns=\"" + ASPASIA_NAMESPACE
+		+ "\" sbmlWriter=\"" + escape(writerType) + "\"/>\n  </annotation>\n");
+	this.changeSet.write("  <listOfModels>\n");
+	this.changeSet.write("    <model id=\"calibrated\" language=\"" + this.language
+		+ "\" source=\"" + escape(calibratedFile.getName()) + "\"/>\n");
+    }
+
+    /**
+     * Walks the calibrated model, recording the XPath of every value the model
+     * writers change. Elements with an id are selected by it, and others by
+     * their position among elements of the same name. An id holding both
+     * quote characters cannot be written as an XPath string, so its element is
+     * selected by position, and its value is not recorded
+     * 
+     * @param element The element being examined
+     * @param parentPath XPath of the parent of the element
+     */
+    private void findTargets(Element element, String parentPath)
+    {
+	String path = parentPath + "/sbml:" + localName(element.getNodeName());
+	String idLiteral = element.hasAttribute("id") ? xpathLiteral(element.getAttribute("id"))
+		: null;
+	if (idLiteral != null)
+	{
+	    path += "[@id=" + idLiteral + "]";
+	}
+	else if (element.getParentNode() instanceof Element)
+	{
+	    int position = 1;
+	    int sameName = 0;
+	    NodeList siblings = element.getParentNode().getChildNodes();
+	    for (int s = 0; s < siblings.getLength(); s++)
+	    {
+		if (siblings.item(s).getNodeName().equals(element.getNodeName()))
+		{
+		    sameName++;
+		    if (siblings.item(s) == element)
+		    {
+			position = sameName;
+		    }
+		}
+	    }
+	    if (sameName > 1)
+	    {
+		path += "[" + position + "]";
+	    }
+	}
+
+	String parentName = localName(element.getParentNode().getNodeName());
+	String attribute = null;
+	if (parentName.equals("listOfParameters"))
+	{
+	    attribute = "value";
+	}
+	else if (parentName.equals("listOfSpecies"))
+	{
+	    attribute = "initialConcentration";
+	}
+	if (attribute != null && idLiteral != null && element.hasAttribute(attribute))
+	{
+	    List<String> idTargets = this.targets.get(element.getAttribute("id"));
+	    if (idTargets == null)
+	    {
+		idTargets = new ArrayList<String>();
+		this.targets.put(element.getAttribute("id"), idTargets);
+	    }
+	    idTargets.add(path + "/@" + attribute);
+	}
+
+	NodeList children = element.getChildNodes();
+	for (int c = 0; c < children.getLength(); c++)
+	{
+	    if (children.item(c).getNodeType() == Node.ELEMENT_NODE)
+	    {
+		findTargets((Element) children.item(c), path);
+	    }
+	}
+    }
+
+    /**
+     * Opens the stream one model is written to. The model itself is not kept:
+     * its changes are added to the change set once the stream is closed, and
+     * nothing is added if the stream is aborted
+     * 
+     * @param modelPath Path of the model within the analysis output folder
+     * @param sampleNum Number of the sample the model is generated from, from
+     *            1
+     * @param parameterValMap Map of parameter name to sampled value
+     * @return Stream discarding the model
+     */
+    public OutputStream openModel(final String modelPath, int sampleNum,
+	    final Map<String, Double> parameterValMap)
+    {
+	return new DiscardStream()
+	{
+	    private boolean closed = false;
+
+	    @Override
+	    public void write(int b)
+	    {
+	    }
+
+	    @Override
+	    public void write(byte[] b, int off, int len)
+	    {
+	    }
+
+	    @Override
+	    public void close() throws IOException
+	    {
+		if (!this.closed)
+		{
+		    this.closed = true;
+		    addModel(modelPath, parameterValMap);
+		}
+	    }
+
+	    public void abort()
+	    {
+		this.closed = true;
+	    }
+	};
+    }
+
+    /**
+     * Adds a model repeating one already written. Its changes are listed
+     * again under its own path, as the change set holds no model in full
+     * 
+     * @param modelPath Path of the model within the analysis output folder
+     * @param sampleNum Number of the sample the model is generated from, from
+     *            1
+     * @param parameterValMap Map of parameter name to sampled value
+     * @param existingPath Path of the identical model already written
+     * @throws IOException if the change set cannot be written
+     */
+    public void linkModel(String modelPath, int sampleNum,
+	    Map<String, Double> parameterValMap, String existingPath) throws IOException
+    {
+	this.addModel(modelPath, parameterValMap);
+    }
+
+    /**
+     * Adds one model to the change set, with a changeAttribute for each value
+     * its sample sets
+     * 
+     * @param modelPath Path of the model within the analysis output folder
+     * @param parameterValMap Map of parameter name to sampled value
+     * @throws IOException if the change set cannot be written
+     */
+    private void addModel(String modelPath, Map<String, Double> parameterValMap)
+	    throws IOException
+    {
+	StringBuilder model = new StringBuilder(256);
+	model.append("    <model id=\"").append(modelId(modelPath)).append("\" name=\"")
+		.append(escape(modelPath)).append("\" language=\"")
+		.append(this.language).append("\" source=\"#calibrated\">\n")
+		.append("      <listOfChanges>\n");
+	for (Map.Entry<String, Double> parameter : parameterValMap.entrySet())
+	{
+	    List<String> idTargets = this.targets.get(parameter.getKey());
+	    if (idTargets == null)
+	    {
+		warnUntargeted(parameter.getKey());
+	    }
+	    else
+	    {
+		for (String target : idTargets)
+		{
+		    model.append("        <changeAttribute target=\"").append(escape(target))
+			    .append("\" newValue=\"")
+			    .append(Double.toString(parameter.getValue())).append("\"/>\n");
+		}
+	    }
+	}
+	model.append("      </listOfChanges>\n    </model>\n");
+
+	synchronized (this.changeSet)
+	{
+	    this.changeSet.write(model.toString());
+	}
+    }
+
+    /**
+     * Warns, once per parameter, that a sampled parameter has no value in the
+     * calibrated model to change
+     * 
+     * @param parameter Name of the sampled parameter
+     */
+    private void warnUntargeted(String parameter)
+    {
+	synchronized (this.untargeted)
+	{
+	    if (this.untargeted.add(parameter))
+	    {
+		System.out.println("Warning: Parameter " + parameter + " has no value in the"
+			+ " calibrated model to change, so is left out of the change set");
+	    }
+	}
+    }
+
+    /**
+     * Completes the change set document
+     * 
+     * @throws IOException if the change set cannot be completed
+     */
+    public void close() throws IOException
+    {
+	synchronized (this.changeSet)
+	{
+	    this.changeSet.write("  </listOfModels>\n</sedML>\n");
+	    this.changeSet.close();
+	}
+    }
+
+    /**
+     * @param modelPath Path of a model within the analysis output folder
+     * @return SED-ML id of the model, made from its path
+     */
+    static String modelId(String modelPath)
+    {
+	return "model_" + modelPath.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    /**
+     * Quotes an id as an XPath string, as ChangeSetMaterialiser reads it back
+     * 
+     * @param id The id of an element
+     * @return The id within single quotes, or within double quotes where it
+     *         holds a single quote, or null where it holds both
+     */
+    static String xpathLiteral(String id)
+    {
+	if (id.indexOf('\'') < 0)
+	{
+	    return "'" + id + "'";
+	}
+	else if (id.indexOf('"') < 0)
+	{
+	    return "\"" + id + "\"";
+	}
+	return null;
+    }
+
+    /**
+     * @param name Name of an element, which may have a prefix
+     * @return The name without its prefix
+     */
+    private static String localName(String name)
+    {
+	return name.substring(name.indexOf(':') + 1);
+    }
+
+    /**
+     * Replaces the characters that cannot appear in an attribute value with
+     * their predefined XML entities
+     * 
+     * @param value Value of the attribute
+     * @return The value as written in the file
+     */
+    private static String escape(String value)
+    {
+	return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+		.replace("\"", "&quot;");
+    }
+
+    /**
+     * \brief Stream discarding one model, whose changes are added to the
+     * change set when closed and not when aborted
+     */
+    private abstract static class DiscardStream extends OutputStream implements
+	    AbortableModelStream
+    {
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * \brief A stream returned by a model sink that ends in a file, giving writers
+ * that buffer their own output the channel of the file
+ * 
+ * A writer may write all or part of a model straight to the channel, such as
+ * by FileChannel.transferTo, rather than through the stream. Each range
+ * written that way is passed to written, so that streams measuring the model
+ * on its way to the file, as ManifestModelSink does, still see every byte
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public interface ChannelModelStream
+{
+    /**
+     * Flushes anything written through the stream, so that data written to
+     * the channel follows it
+     * 
+     * @return Channel of the file the model is written to, or null if the
+     *         model does not reach a file
+     * @throws IOException if the stream cannot be flushed
+     */
+    public FileChannel getChannel() throws IOException;
+
+    /**
+     * Records a range of the model that has been written straight to the
+     * channel
+     * 
+     * @param data The bytes written, from its position to its limit. The
+     *            position of the buffer is not moved
+     */
+    public void written(ByteBuffer data);
+}
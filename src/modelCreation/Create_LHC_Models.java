@@ -8,12 +8,20 @@ package modelCreation;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
-
-import spartanLink.GenerateSpartanLHCFile;
-import spartanLink.SpartanUtilities;
+import java.util.concurrent.Callable;
+
+import sampling.LHCSampler;
+import sampling.ParameterSpace;
+import sampling.SamplingUtilities;
+import sampling.StreamingLHCSampler;
+import spartanLink.SampleRowListener;
+import xmlFileUtilities.AnalysisSettings;
 import xmlFileUtilities.FileCreationUtilities;
 import xmlFileUtilities.XMLFileUtilities;
 
@@ -72,28 +80,42 @@ public class Create_LHC_Models
      */
     int numReplicates;
 
+    /**
+     * The settings of the analysis
+     */
+    AnalysisSettings settings;
+
+    /**
+     * Sink the parameter files are written to
+     */
+    ModelSink modelSink;
+
+    /**
+     * Writer of the models generated straight from the sample, closed with
+     * the sink once they have all been generated
+     */
+    SBMLModelWriter sampleModelWriter;
+
     /**
      * Program to create parameter files for latin-hypercube experiments. Takes
      * the spreadsheet generated in spartan and replaces the values of
      * parameters of interest in a calibration parameter file with the perturbed
      * values. Does this for all sample sets generated.
      * 
-     * @param settingsFile Full path to the sensitivity analysis XML settings
-     *            file
+     * @param settings The settings of the analysis, read from the sensitivity
+     *            analysis XML settings file
      */
-    public Create_LHC_Models(String settingsFile)
+    public Create_LHC_Models(AnalysisSettings settings)
     {
-
-	// Read settings file
-	XMLFileUtilities.readSettingsFile(settingsFile);
+	this.settings = settings;
 
 	// Determine repast and SBML compatibility: To come in Version 2
 	// this.repastCompatible =
-	// XMLFileUtilities.getParamBoolean("repastCompatible");
-	this.sbmlCompatible = XMLFileUtilities.getParamBoolean("sbmlFormat");
+	// settings.getParamBoolean("repastCompatible");
+	this.sbmlCompatible = settings.getParamBoolean("sbmlFormat");
 
 	// The original, calibrated parameter file
-	this.paramsMetaDataFilePath = XMLFileUtilities.getParam("pathToSimulationParameterFile");
+	this.paramsMetaDataFilePath = settings.getParam("pathToSimulationParameterFile");
 	// System.out.println(this.paramsMetaDataFilePath);
 
 	if (this.paramsMetaDataFilePath == null)
@@ -103,15 +125,14 @@ public class Create_LHC_Models
 	else
 	{
 	    // Folder where you want adapted parameter files to be stored
-	    String paramFileOutputFolderReadIn = XMLFileUtilities
-		    .getParam("parameterFileOutputFolder");
+	    String paramFileOutputFolderReadIn = settings.getParam("parameterFileOutputFolder");
 
 	    // Now determine if the user wants to generate samples, they may
 	    // not,
 	    // and provide a sample file already
 	    // This can be determined by seeing what is in the
 	    // lhcPreGeneratedSampleFile tag
-	    String preGeneratedParamValues = XMLFileUtilities.getParam("lhcPreGeneratedSampleFile");
+	    String preGeneratedParamValues = settings.getParam("lhcPreGeneratedSampleFile");
 
 	    if (preGeneratedParamValues == null)
 	    {
@@ -131,44 +152,37 @@ public class Create_LHC_Models
 		    this.paramFileOutputFolder = paramFileOutputFolderReadIn + "/LHC/";
 		    new File(this.paramFileOutputFolder).mkdirs();
 
-		    // Now to; read in the information about parameters being
+		    // Now to; check the information about parameters being
 		    // analysed
-		    XMLFileUtilities.readParameterInfo("LHC");
+		    XMLFileUtilities.checkParameterInfo(settings, "LHC");
 
 		    // Number of parameter sets generated
-		    this.numSamples = Integer.parseInt(XMLFileUtilities
-			    .getParam("numberparameterSamples"));
+		    this.numSamples = Integer.parseInt(settings.getParam("numberparameterSamples"));
 
 		    // algorithm to use
-		    this.lhcAlgorithm = XMLFileUtilities.getParam("algorithm");
+		    this.lhcAlgorithm = settings.getParam("algorithm");
 
-		    // Generate the spartan R script
-		    GenerateSpartanLHCFile.CreateSpartanLHCScript(this.paramFileOutputFolder,
-			    XMLFileUtilities.parametersAnalysed, this.numSamples,
-			    XMLFileUtilities.minVals, XMLFileUtilities.maxVals, this.lhcAlgorithm);
+		    // Generate the sample, within ASPASIA or by running spartan,
+		    // with models generated straight from the sample
+		    ModelGenerationRunner runner = new ModelGenerationRunner(this.settings);
+		    double[][] sample = this.generateSample(runner);
 
-		    // set the path to the generated spartan file specifying the
-		    // parameter sampling
-		    // SpartanUtilities.spartanScript =
-		    // XMLFileUtilities.getParam("lhc_spartan_script");
-		    SpartanUtilities.spartanScript = this.paramFileOutputFolder + "/LHC_Sampling.R";
-
-		    // Generate the sample in R
-		    int runResult = SpartanUtilities.generateParameterSamples();
-
-		    if (runResult == 0)
+		    if (sample != null)
 		    {
-			// Send null as we will use the parameter samples
-			// generated by R
-			this.writeLHCParameterFiles(null);
-			System.out.println("LHC SBML Model Files Generated");
+			if (runner.finish() & this.closeModelSink())
+			{
+			    System.out.println("LHC SBML Model Files Generated");
+			}
 			System.out.println("Check the directory " + this.paramFileOutputFolder
 			        + " for the Generated Model Files");
 		    }
 		    else
 		    {
+			// Wait for any models submitted before sampling failed
+			runner.finish();
+			this.closeModelSink();
 			System.out
-			        .println("There was a problem creating parameter samples with Spartan. Check your settings file for errors declaring the parameter information");
+				.println("There was a problem creating parameter samples. Check your settings file for errors declaring the parameter information");
 		    }
 		}
 	    }
@@ -186,14 +200,15 @@ public class Create_LHC_Models
 		    this.paramFileOutputFolder = paramFileOutputFolderReadIn + "/LHC/";
 		    new File(this.paramFileOutputFolder).mkdirs();
 
-		    XMLFileUtilities.parametersAnalysed = new ArrayList<String>();
+		    List<String> parametersInFile = new ArrayList<String>();
 		    BufferedReader br = new BufferedReader(new FileReader(preGeneratedParamValues));
 		    String parameterNames = br.readLine();
 		    StringTokenizer st = new StringTokenizer(parameterNames, ",");
 		    while (st.hasMoreTokens())
 		    {
-			XMLFileUtilities.parametersAnalysed.add(st.nextToken());
+			parametersInFile.add(st.nextToken());
 		    }
+		    this.settings = settings.withParameters(parametersInFile);
 
 		    // Now count the remaining number of lines
 		    int sampleCount = 0;
@@ -208,8 +223,10 @@ public class Create_LHC_Models
 		    // Send the address of the file to use in the sampling and
 		    // write
 		    // the files
-		    this.writeLHCParameterFiles(preGeneratedParamValues);
-		    System.out.println("LHC Parameter Files Generated");
+		    if (this.writeLHCParameterFiles(preGeneratedParamValues))
+		    {
+			System.out.println("LHC Parameter Files Generated");
+		    }
 		}
 		catch (Exception e)
 		{
@@ -233,14 +250,90 @@ public class Create_LHC_Models
     }
 
     /**
-     * Write the parameter files for each value set created by Spartan
+     * Generates the latin-hypercube sample with the sampler chosen in the
+     * settings file, submitting the generation of the parameter file for each
+     * value set. Where spartan streams the sample, each file is submitted as
+     * soon as R produces its value set, so models are generated while R is
+     * still sampling, whether or not a sample cache is used. The sample is
+     * written to LHC_Parameters_for_Runs.csv, as spartan would, so simulation
+     * results can later be paired with their parameter values
+     * 
+     * @param runner Runner the parameter files are generated on, on the
+     *            number of threads set by the modelGenerationThreads tag of
+     *            the settings file. The caller waits for it to finish
+     * @return Sampled values, one row per value set, or null if the sample
+     *         could not be generated
+     */
+    public double[][] generateSample(final ModelGenerationRunner runner)
+    {
+	try
+	{
+	    // Set up the model writer once, rather than for every sample
+	    SBMLModelWriter writer = null;
+	    if (this.sbmlCompatible)
+	    {
+		writer = WriteParameterFile_SBML.createModelWriter(this.paramsMetaDataFilePath,
+			this.settings.getOptionalParam("sbmlWriter", "template"));
+	    }
+	    final SBMLModelWriter modelWriter = writer;
+	    this.sampleModelWriter = writer;
+	    this.modelSink = WriteParameterFile_SBML.createModelSink(this.settings,
+		    this.paramFileOutputFolder);
+
+	    ParameterSpace space = new ParameterSpace(this.settings);
+	    LHCSampler sampler = SamplingUtilities.createLHCSampler(this.settings,
+		    this.paramFileOutputFolder, this.lhcAlgorithm);
+
+	    double[][] sample;
+	    if (sampler instanceof StreamingLHCSampler)
+	    {
+		sample = ((StreamingLHCSampler) sampler).generateSample(space, this.numSamples,
+			new SampleRowListener()
+			{
+			    public void sampleRow(String fileName, int rowNum, double[] valueSet)
+			    {
+				runner.submit("paramFile" + (rowNum + 1) + ".xml",
+					createModelTask(modelWriter, valueSet, rowNum));
+			    }
+			});
+	    }
+	    else
+	    {
+		sample = sampler.generateSample(space, this.numSamples);
+		for (int i = 0; i < sample.length; i++)
+		{
+		    runner.submit("paramFile" + (i + 1) + ".xml",
+			    this.createModelTask(modelWriter, sample[i], i));
+		}
+	    }
+
+	    // Kept as the list of runs, including where the sample was taken
+	    // from the sample cache rather than written by spartan
+	    SamplingUtilities.writeSampleFile(this.paramFileOutputFolder
+		    + "/LHC_Parameters_for_Runs.csv", space.getParameters(), sample);
+	    return sample;
+	}
+	catch (Exception e)
+	{
+	    e.printStackTrace();
+	    return null;
+	}
+    }
+
+    /**
+     * Write the parameter files for each value set created by Spartan. Files
+     * are generated on the number of threads set by the modelGenerationThreads
+     * tag of the settings file, and any that fail are reported once all have
+     * been attempted
      * 
      * @param preGeneratedValues If not using spartan to generate the values,
      *            this contains the full address of a file containing the values
      *            to put in the parameter files
+     * @return True if every parameter file was generated
      */
-    public void writeLHCParameterFiles(String preGeneratedValues)
+    public boolean writeLHCParameterFiles(String preGeneratedValues)
     {
+	SBMLModelWriter modelWriter = null;
 	try
 	{
 	    String lhcDesignFile;
@@ -257,58 +350,185 @@ public class Create_LHC_Models
 
 	    // Now read in either of these files
 	    BufferedReader br = new BufferedReader(new FileReader(lhcDesignFile));
-
-	    // Firstly, skip over the first line - the parameter headings
-	    String strLine = br.readLine();
-
-	    // Now generate the parameter files for all perturbations generated
-	    // in the hypercube
-	    for (int i = 0; i < this.numSamples; i++)
+	    boolean generated;
+	    try
 	    {
-		// Read in the line of parameters
-		strLine = br.readLine();
+		// Firstly, skip over the first line - the parameter headings
+		String strLine = br.readLine();
 
-		// Make the parameter name-value map so this is ready for
-		// processing in parameter
-		// files
-		Map<String, Double> parameterValMap = FileCreationUtilities
-		        .makeParameterValMap(strLine);
-
-		// STUB FOR VERSION 2
-		// Create the parameter file
-		// Now call the right script dependent on Repast and SBML
-		// Compatibility
-		/*
-	         * if (this.repastCompatible) { // In repast these go in their
-	         * own folders, so make a // folder: new
-	         * File(this.paramFileOutputFolder + "/" + (i + 1)).mkdirs();
-	         * WriteParameterFile_Repast
-	         * .writeSimParameterFiles(this.paramsMetaDataFilePath,
-	         * parameterValMap, XMLFileUtilities.parametersAnalysed,
-	         * XMLFileUtilities.parameterType, this.paramFileOutputFolder +
-	         * "/" + (i + 1), i, ""); }
-	         */
+		// Set up the model writer once, rather than for every sample
 		if (this.sbmlCompatible)
 		{
-		    WriteParameterFile_SBML.writeSimParameterFiles(this.paramsMetaDataFilePath,
-			    parameterValMap, XMLFileUtilities.parametersAnalysed,
-			    XMLFileUtilities.parameterType, this.paramFileOutputFolder, i, "",
-			    "paramFile" + (i + 1) + ".xml");
+		    modelWriter = WriteParameterFile_SBML.createModelWriter(
+			    this.paramsMetaDataFilePath,
+			    this.settings.getOptionalParam("sbmlWriter", "template"));
 		}
-		else
+		this.modelSink = WriteParameterFile_SBML.createModelSink(this.settings,
+			this.paramFileOutputFolder);
+
+		ModelGenerationRunner runner = new ModelGenerationRunner(this.settings);
+		try
 		{
-		    WriteParameterFile.writeSimParameterFiles(this.paramsMetaDataFilePath,
-			    parameterValMap, XMLFileUtilities.parametersAnalysed,
-			    XMLFileUtilities.parameterType, this.paramFileOutputFolder, i, "");
+		    // Now generate the parameter files for all perturbations generated
+		    // in the hypercube
+		    for (int i = 0; i < this.numSamples; i++)
+		    {
+			// Read in the line of parameters
+			strLine = br.readLine();
+
+			// STUB FOR VERSION 2
+			// Create the parameter file
+			// Now call the right script dependent on Repast and SBML
+			// Compatibility
+			/*
+			 * if (this.repastCompatible) { // In repast these go in their
+			 * own folders, so make a // folder: new
+			 * File(this.paramFileOutputFolder + "/" + (i + 1)).mkdirs();
+			 * WriteParameterFile_Repast
+			 * .writeSimParameterFiles(this.paramsMetaDataFilePath,
+			 * parameterValMap, XMLFileUtilities.parametersAnalysed,
+			 * XMLFileUtilities.parameterType, this.paramFileOutputFolder +
+			 * "/" + (i + 1), i, ""); }
+			 */
+			runner.submit("paramFile" + (i + 1) + ".xml",
+				this.createModelTask(modelWriter, strLine, i));
+		    }
+		}
+		finally
+		{
+		    // The pool is shut down and the sink completed even if the
+		    // file cannot be read, so no worker thread is left running
+		    generated = runner.finish() & this.closeModelSink();
 		}
 	    }
+	    finally
+	    {
+		br.close();
+	    }
 
-	    br.close();
-
+	    return generated;
 	}
 	catch (Exception e)
 	{
 	    e.printStackTrace();
+	    return false;
+	}
+	finally
+	{
+	    WriteParameterFile_SBML.closeModelWriter(modelWriter);
+	}
+    }
+
+    /**
+     * Completes the sink the parameter files were written to, once all have
+     * been generated, and closes the writer of models generated straight from
+     * the sample
+     * 
+     * @return True if the sink was completed, false if there is none or it
+     *         could not be
+     */
+    private boolean closeModelSink()
+    {
+	WriteParameterFile_SBML.closeModelWriter(this.sampleModelWriter);
+	this.sampleModelWriter = null;
+
+	if (this.modelSink == null)
+	{
+	    return false;
+	}
+	try
+	{
+	    this.modelSink.close();
+	    return true;
+	}
+	catch (IOException e)
+	{
+	    e.printStackTrace();
+	    return false;
+	}
+    }
+
+    /**
+     * Creates the task that writes the parameter file for one sample of the
+     * hypercube
+     * 
+     * @param modelWriter Writer producing SBML models, or null if not
+     *            creating SBML files
+     * @param sampleLine The line of the hypercube file holding the sample
+     * @param sampleNum The number of the sample, from 0
+     * @return Task writing the parameter file
+     */
+    private Callable<Void> createModelTask(final SBMLModelWriter modelWriter,
+	    final String sampleLine, final int sampleNum)
+    {
+	return new Callable<Void>()
+	{
+	    public Void call() throws Exception
+	    {
+		if (sampleLine == null)
+		{
+		    throw new IOException("Sample is missing from the hypercube file");
+		}
+
+		// Make the parameter name-value map so this is ready for
+		// processing in parameter files
+		writeModel(modelWriter, FileCreationUtilities.makeParameterValMap(sampleLine,
+			settings.getParametersAnalysed()), sampleNum);
+		return null;
+	    }
+	};
+    }
+
+    /**
+     * Creates the task that writes the parameter file for one value set of a
+     * sample held in memory
+     * 
+     * @param modelWriter Writer producing SBML models, or null if not
+     *            creating SBML files
+     * @param valueSet The sampled value of each parameter being analysed
+     * @param sampleNum The number of the sample, from 0
+     * @return Task writing the parameter file
+     */
+    private Callable<Void> createModelTask(final SBMLModelWriter modelWriter,
+	    final double[] valueSet, final int sampleNum)
+    {
+	return new Callable<Void>()
+	{
+	    public Void call() throws Exception
+	    {
+		Map<String, Double> parameterValMap = new HashMap<String, Double>();
+		for (int p = 0; p < settings.getParametersAnalysed().size(); p++)
+		{
+		    parameterValMap.put(settings.getParametersAnalysed().get(p), valueSet[p]);
+		}
+		writeModel(modelWriter, parameterValMap, sampleNum);
+		return null;
+	    }
+	};
+    }
+
+    /**
+     * Writes the parameter file for one sample of the hypercube
+     * 
+     * @param modelWriter Writer producing SBML models, or null if not
+     *            creating SBML files
+     * @param parameterValMap Map of parameter name to sampled value
+     * @param sampleNum The number of the sample, from 0
+     * @throws Exception if the file cannot be written
+     */
+    private void writeModel(SBMLModelWriter modelWriter, Map<String, Double> parameterValMap,
+	    int sampleNum) throws Exception
+    {
+	if (this.sbmlCompatible)
+	{
+	    WriteParameterFile_SBML.writeSimParameterFiles(modelWriter, parameterValMap,
+		    this.modelSink, "paramFile" + (sampleNum + 1) + ".xml", sampleNum + 1);
+	}
+	else
+	{
+	    WriteParameterFile.createSimParameterFile(this.paramsMetaDataFilePath,
+		    parameterValMap, this.settings.getParametersAnalysed(),
+		    this.settings.getParameterType(), this.modelSink, "", sampleNum);
 	}
     }
 }
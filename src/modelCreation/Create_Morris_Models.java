@@ -0,0 +1,262 @@
+/**
+ * \package modelCreation
+ * 
+ * Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import sampling.ParameterSpace;
+import sampling.SamplingUtilities;
+import xmlFileUtilities.AnalysisSettings;
+import xmlFileUtilities.XMLFileUtilities;
+
+/**
+ * \brief Create simulation parameter files for Morris elementary effects
+ * screening.
+ * 
+ * Generates Morris trajectories for a subset of simulation parameters, within
+ * ASPASIA. A parameter file is created for each value set of each trajectory,
+ * in a folder numbered for the trajectory, with parameters of interest at
+ * their sampled values and those not of interest set from their calibrated
+ * value. The model file of each value set, and its values, are listed in order
+ * in Morris_Parameters_for_Runs.csv. Simulation results in this order can then
+ * be used to calculate the elementary effects of each parameter, with
+ * Analyse_Morris_Results
+ * 
+ * The analysis needs trajectories * (parameters + 1) models, so can screen out
+ * parameters with no influence before a more costly robustness or eFAST
+ * analysis
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class Create_Morris_Models
+{
+    /**
+     * Whether we are creating SBML files
+     */
+    public boolean sbmlCompatible;
+
+    /**
+     * The original, calibrated parameter file
+     */
+    public String paramsMetaDataFilePath;
+
+    /**
+     * Folder where you want adapted parameter files to be stored
+     */
+    String paramFileOutputFolder;
+
+    /**
+     * Number of trajectories in the analysis
+     */
+    int numTrajectories;
+
+    /**
+     * The settings of the analysis
+     */
+    final AnalysisSettings settings;
+
+    /**
+     * Program to create parameter files for Morris experiments. Generates the
+     * trajectories and replaces the values of parameters of interest in a
+     * calibration parameter file with the sampled values, for every value set
+     * of every trajectory
+     * 
+     * @param settings The settings of the analysis, read from the sensitivity
+     *            analysis XML settings file
+     */
+    public Create_Morris_Models(AnalysisSettings settings)
+    {
+	this.settings = settings;
+	this.sbmlCompatible = settings.getParamBoolean("sbmlFormat");
+
+	// The original, calibrated parameter file
+	this.paramsMetaDataFilePath = settings.getParam("pathToSimulationParameterFile");
+
+	// Folder where you want adapted parameter files to be stored
+	String paramFileOutputFolderReadIn = settings.getParam("parameterFileOutputFolder");
+
+	// Number of trajectories
+	String morrisTrajectoriesReadIn = settings.getParam("morrisTrajectories");
+
+	if (this.paramsMetaDataFilePath == null || paramFileOutputFolderReadIn == null
+		|| morrisTrajectoriesReadIn == null
+		|| !XMLFileUtilities.checkParameterInfo(settings, "Morris"))
+	{
+	    System.out.println("Error in Settings File. Address these and run ASPASIA again");
+	}
+	else
+	{
+	    this.paramFileOutputFolder = paramFileOutputFolderReadIn + "/Morris/";
+	    new File(this.paramFileOutputFolder).mkdirs();
+
+	    this.numTrajectories = Integer.parseInt(morrisTrajectoriesReadIn);
+
+	    double[][][] trajectories = null;
+	    try
+	    {
+		trajectories = SamplingUtilities.createMorrisSampler(settings)
+			.generateTrajectories(new ParameterSpace(settings), this.numTrajectories);
+	    }
+	    catch (Exception e)
+	    {
+		e.printStackTrace();
+	    }
+
+	    if (trajectories != null)
+	    {
+		if (this.writeMorrisParameterFiles(trajectories))
+		{
+		    System.out.println("Morris SBML Model Files Generated");
+		}
+		System.out.println("Check the directory " + this.paramFileOutputFolder
+			+ " for the Generated Model Files");
+	    }
+	    else
+	    {
+		System.out
+			.println("There was a problem creating parameter samples. Check your settings file for errors declaring the parameter information");
+	    }
+	}
+    }
+
+    /**
+     * Write the parameter file for each value set of each trajectory, and list
+     * them in Morris_Parameters_for_Runs.csv. Files are generated on the
+     * number of threads set by the modelGenerationThreads tag of the settings
+     * file, and any that fail are reported once all have been attempted
+     * 
+     * @param trajectories Sampled values, by trajectory, then value set, then
+     *            parameter
+     * @return True if every parameter file was generated
+     */
+    public boolean writeMorrisParameterFiles(double[][][] trajectories)
+    {
+	SBMLModelWriter modelWriter = null;
+	try
+	{
+	    // Set up the model writer once, rather than for every sample
+	    if (this.sbmlCompatible)
+	    {
+		modelWriter = WriteParameterFile_SBML.createModelWriter(this.paramsMetaDataFilePath,
+			this.settings.getOptionalParam("sbmlWriter", "template"));
+	    }
+	    ModelSink modelSink = WriteParameterFile_SBML.createModelSink(this.settings,
+		    this.paramFileOutputFolder);
+
+	    ModelGenerationRunner runner = new ModelGenerationRunner(this.settings);
+	    boolean generated;
+	    try
+	    {
+		BufferedWriter runList = new BufferedWriter(new FileWriter(
+			this.paramFileOutputFolder + "/Morris_Parameters_for_Runs.csv"));
+		try
+		{
+		    runList.write("\"Model\"");
+		    for (String parameter : this.settings.getParametersAnalysed())
+		    {
+			runList.write(",\"" + parameter + "\"");
+		    }
+		    runList.newLine();
+
+		    for (int t = 0; t < trajectories.length; t++)
+		    {
+			String trajectoryFolder = Integer.toString(t + 1);
+
+			for (int k = 0; k < trajectories[t].length; k++)
+			{
+			    String modelName = WriteParameterFile.getParamFilePath(
+				    trajectoryFolder, k, this.sbmlCompatible);
+
+			    runList.write(modelName);
+			    for (double value : trajectories[t][k])
+			    {
+				runList.write("," + Double.toString(value));
+			    }
+			    runList.newLine();
+
+			    runner.submit(modelName, this.createModelTask(modelWriter, modelSink,
+				    trajectories[t][k], trajectoryFolder, k));
+			}
+		    }
+		}
+		finally
+		{
+		    runList.close();
+		}
+	    }
+	    finally
+	    {
+		// The pool is shut down and the sink completed even if the
+		// run list cannot be written, so no worker thread is left
+		// running
+		generated = runner.finish();
+		modelSink.close();
+	    }
+	    return generated;
+	}
+	catch (Exception e)
+	{
+	    e.printStackTrace();
+	    return false;
+	}
+	finally
+	{
+	    WriteParameterFile_SBML.closeModelWriter(modelWriter);
+	}
+    }
+
+    /**
+     * Creates the task that writes the parameter file for one value set of a
+     * trajectory
+     * 
+     * @param modelWriter Writer producing SBML models, or null if not
+     *            creating SBML files
+     * @param modelSink Sink the parameter file is written to
+     * @param valueSet The sampled value of each parameter being analysed
+     * @param trajectoryFolder Folder of the trajectory within the Morris
+     *            folder
+     * @param sampleNum The number of the value set, from 0
+     * @return Task writing the parameter file
+     */
+    private Callable<Void> createModelTask(final SBMLModelWriter modelWriter,
+	    final ModelSink modelSink, final double[] valueSet, final String trajectoryFolder,
+	    final int sampleNum)
+    {
+	return new Callable<Void>()
+	{
+	    public Void call() throws Exception
+	    {
+		Map<String, Double> parameterValMap = new HashMap<String, Double>();
+		for (int p = 0; p < settings.getParametersAnalysed().size(); p++)
+		{
+		    parameterValMap.put(settings.getParametersAnalysed().get(p), valueSet[p]);
+		}
+
+		if (sbmlCompatible)
+		{
+		    WriteParameterFile_SBML.writeSimParameterFiles(modelWriter, parameterValMap,
+			    modelSink, WriteParameterFile.getParamFilePath(trajectoryFolder,
+				    sampleNum, true), sampleNum + 1);
+		}
+		else
+		{
+		    WriteParameterFile.createSimParameterFile(paramsMetaDataFilePath,
+			    parameterValMap, settings.getParametersAnalysed(),
+			    settings.getParameterType(), modelSink, trajectoryFolder, sampleNum);
+		}
+		return null;
+	    }
+	};
+    }
+}
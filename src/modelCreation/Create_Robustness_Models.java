@@ -5,22 +5,33 @@
  */
 package modelCreation;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.util.Iterator;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
-
-import spartanLink.GenerateSpartanOATFile;
-import spartanLink.SpartanUtilities;
-import xmlFileUtilities.FileCreationUtilities;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sampling.OATSample;
+import sampling.SamplingUtilities;
+import xmlFileUtilities.AnalysisSettings;
 import xmlFileUtilities.XMLFileUtilities;
 
 /**
  * \brief Create simulation parameter files for parameter robustness analysis.
  * 
  * Steps in this process: 1. Generate robustness analysis samples for a subset
- * of simulation parameters using spartan (creates a file for each parameter) 2.
+ * of simulation parameters, within ASPASIA or using spartan (which creates a
+ * file for each parameter) 2.
  * Set the location of the folder containing these CSV files, the names of the
  * parameters of interest, a location of a parameter file at which parameters
  * are at calibrated values, and a location for the output files, in the main
@@ -56,6 +67,11 @@ public class Create_Robustness_Models
      */
     public String paramFileOutputFolder;
 
+    /**
+     * The settings of the analysis
+     */
+    final AnalysisSettings settings;
+
     /**
      * Count of number of parameter files generated per parameter. Used for
      * repast model building - PLANNED INTRODUCTION IN VERSION 2
@@ -69,24 +85,23 @@ public class Create_Robustness_Models
      * parameters of interest in a calibration parameter file with the perturbed
      * values. Does this for all sample sets generated, for all parameters
      * 
-     * @param settingsFile Full path to the sensitivity analysis XML settings
-     *            file
+     * @param settings The settings of the analysis, read from the sensitivity
+     *            analysis XML settings file
      */
-    public Create_Robustness_Models(String settingsFile)
+    public Create_Robustness_Models(AnalysisSettings settings)
     {
-	// Read settings file
-	XMLFileUtilities.readSettingsFile(settingsFile);
+	this.settings = settings;
 
 	// Determine repast and SBML compatibility
 	// this.repastCompatible =
-	// XMLFileUtilities.getParamBoolean("repastCompatible");
-	this.sbmlCompatible = XMLFileUtilities.getParamBoolean("sbmlFormat");
+	// settings.getParamBoolean("repastCompatible");
+	this.sbmlCompatible = settings.getParamBoolean("sbmlFormat");
 
 	// The original, calibrated parameter file
-	this.paramsMetaDataFilePath = XMLFileUtilities.getParam("pathToSimulationParameterFile");
+	this.paramsMetaDataFilePath = settings.getParam("pathToSimulationParameterFile");
 
 	// Folder where you want adapted parameter files to be stored
-	String paramFileOutputFolderReadIn = XMLFileUtilities.getParam("parameterFileOutputFolder");
+	String paramFileOutputFolderReadIn = settings.getParam("parameterFileOutputFolder");
 
 	if (this.paramsMetaDataFilePath == null || paramFileOutputFolderReadIn == null)
 	{
@@ -99,28 +114,27 @@ public class Create_Robustness_Models
 	    // Make that folder
 	    new File(this.paramFileOutputFolder).mkdirs();
 
-	    // Now to read in the information about parameters being analysed
-	    boolean paramCheckedOk = XMLFileUtilities.readParameterInfo("OAT");
+	    // Now to check the information about parameters being analysed
+	    boolean paramCheckedOk = XMLFileUtilities.checkParameterInfo(settings, "OAT");
 
 	    if (paramCheckedOk)
 	    {
-		// Generate the Spartan File
-		GenerateSpartanOATFile.CreateSpartanLHCScript(this.paramFileOutputFolder,
-		        XMLFileUtilities.parametersAnalysed, XMLFileUtilities.minVals,
-		        XMLFileUtilities.maxVals, XMLFileUtilities.baselineVals,
-		        XMLFileUtilities.incVals);
-
-		// set the path to the generated spartan file specifying the
-		// parameter sampling
-		SpartanUtilities.spartanScript = this.paramFileOutputFolder + "OAT_Sampling.R";
-
-		// Generate the sample in R
-		int runResult = SpartanUtilities.generateParameterSamples();
+		// Generate the sweeps, within ASPASIA or in spartan
+		OATSample sample = null;
+		try
+		{
+		    sample = SamplingUtilities.createOATSampler(settings,
+			    this.paramFileOutputFolder).generateSample(settings);
+		}
+		catch (Exception e)
+		{
+		    e.printStackTrace();
+		}
 
-		if (runResult == 0)
+		if (sample != null)
 		{
 		    // Create the simulation parameter files
-		    this.writeOATParameterFiles();
+		    boolean generated = this.writeOATParameterFiles(sample);
 
 		    // STUB FOR VERSION 2: REPAST COMPATIBLE ASPASIA
 		    // Now if Repast, we're going to copy the model files and
@@ -134,14 +148,17 @@ public class Create_Robustness_Models
 	             * this.parameterFilesCount); }
 	             */
 
-		    System.out.println("Robustness Analysis SBML Model Files Generated");
-		    System.out.println("Check the directory " + this.paramFileOutputFolder
-			    + " for the SBML Output Files");
+		    if (generated)
+		    {
+			System.out.println("Robustness Analysis SBML Model Files Generated");
+			System.out.println("Check the directory " + this.paramFileOutputFolder
+				+ " for the SBML Output Files");
+		    }
 		}
 		else
 		{
 		    System.out
-			    .println("There was a problem creating parameter samples with Spartan. Check your settings file for errors declaring the parameter information");
+			    .println("There was a problem creating parameter samples. Check your settings file for errors declaring the parameter information");
 		}
 	    }
 	    else
@@ -153,108 +170,366 @@ public class Create_Robustness_Models
     }
 
     /**
-     * Write the parameter files for each value set created by Spartan
+     * Write the parameter files for each value set of the sample. The sweep of
+     * each parameter is independent of all others, so sweeps are generated
+     * concurrently, on the number of threads set by the modelGenerationThreads
+     * tag of the settings file. A sweep that fails does not stop the others,
+     * and its progress is reported once it completes.
+     * 
+     * A value set repeated across the sweeps, such as the baseline every
+     * sweep passes through, is only generated once. Once all sweeps are
+     * complete, each repeat is linked to the first model with its values, and
+     * Robustness_Repeated_Models.csv lists the model each repeats, so each
+     * distinct model need only be simulated once
+     * 
+     * @param sample The sweeps of the parameters being analysed
+     * @return True if every parameter file was generated
      */
-    public void writeOATParameterFiles()
+    public boolean writeOATParameterFiles(OATSample sample)
     {
+	SBMLModelWriter modelWriter = null;
 	try
 	{
-	    Iterator<String> params = XMLFileUtilities.parametersAnalysed.iterator();
-
-	    // Now create files for each parameter - reading in the spartan
-	    // generated file
-	    while (params.hasNext())
+	    // Set up the model writer once, rather than for every sample
+	    if (this.sbmlCompatible)
 	    {
-		// Store the param name - useful for naming output file later
-		String parameterName = params.next();
+		modelWriter = WriteParameterFile_SBML.createModelWriter(this.paramsMetaDataFilePath,
+			this.settings.getOptionalParam("sbmlWriter", "template"));
+	    }
+	    ModelSink modelSink = WriteParameterFile_SBML.createModelSink(this.settings,
+		    this.paramFileOutputFolder);
+
+	    // Each sweep generates its own models in turn, so the runner is
+	    // only used to collect failures
+	    ModelGenerationRunner runner = new ModelGenerationRunner(1);
 
-		// Create the name of the spartan parameter file
-		String oatParamsForRunsFilePath = this.paramFileOutputFolder + "/" + parameterName
-		        + "_OAT_Values.csv";
+	    boolean generated;
+	    try
+	    {
+		// Every sweep is retrieved before any model is generated, so value
+		// sets repeated across sweeps are known in advance
+		int numParams = this.settings.getParametersAnalysed().size();
+		double[][][] sweeps = new double[numParams][][];
+		for (int p = 0; p < numParams; p++)
+		{
+		    try
+		    {
+			sweeps[p] = sample.getSweep(p);
+		    }
+		    catch (Exception e)
+		    {
+			runner.recordFailure(((long) p << 32) + 0xFFFFFFFFL, "The sweep of "
+				+ this.settings.getParametersAnalysed().get(p)
+				+ " could not be generated: " + e);
+			sweeps[p] = new double[0][];
+		    }
+		}
+		String[][] repeatedModels = this.findRepeatedModels(sweeps);
+		Set<String> generatedModels = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
-		// Create a folder for the XML parameter files
-		new File(this.paramFileOutputFolder + "/" + parameterName).mkdirs();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+			Math.min(ModelGenerationRunner.getThreadCount(this.settings), numParams)));
+		AtomicInteger sweepsComplete = new AtomicInteger();
 
 		try
 		{
-		    // Read in the spartan generated file, named above
-		    String oatDesignFile = oatParamsForRunsFilePath;
-		    BufferedReader br = new BufferedReader(new FileReader(oatDesignFile));
-
-		    // Firstly, skip over the first line - the parameter
-		    // headings
-		    String strLine = br.readLine();
+		    // Now create files for each parameter
+		    for (int p = 0; p < numParams; p++)
+		    {
+			executor.execute(this.createSweepTask(modelWriter, modelSink, runner,
+				sweeps[p], repeatedModels[p], generatedModels, p, sweepsComplete));
+		    }
+		}
+		finally
+		{
+		    executor.shutdown();
+		}
+		try
+		{
+		    while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+		    {
+			// Keep waiting - large analyses can take some time
+		    }
+		}
+		catch (InterruptedException e)
+		{
+		    executor.shutdownNow();
+		    Thread.currentThread().interrupt();
+		    runner.recordFailure(Long.MAX_VALUE, "Model generation was interrupted");
+		}
 
-		    // Counter for number of simulation files made per
-		    // parameter. Appended to file name
-		    int i = 0;
+		this.linkRepeatedModels(modelSink, runner, sweeps, repeatedModels, generatedModels);
+	    }
+	    finally
+	    {
+		// The runner is finished and the sink completed even if the
+		// repeated models cannot be listed
+		generated = runner.finish();
+		modelSink.close();
+	    }
+	    return generated;
+	}
+	catch (Exception e)
+	{
+	    e.printStackTrace();
+	    return false;
+	}
+	finally
+	{
+	    WriteParameterFile_SBML.closeModelWriter(modelWriter);
+	}
+    }
 
-		    // Get first line of the simulation parameters generated in
-		    // spartan
-		    strLine = br.readLine();
+    /**
+     * Finds the value sets repeated across the sweeps, writing each repeated
+     * model and the first model with its values to
+     * Robustness_Repeated_Models.csv. Values are written to the models as
+     * text, so value sets with the same text give identical models
+     * 
+     * @param sweeps Value sets of each sweep
+     * @return For each sweep, the path of the model each value set repeats, or
+     *         null where it is the first with its values
+     * @throws IOException if the list of repeated models cannot be written
+     */
+    private String[][] findRepeatedModels(double[][][] sweeps) throws IOException
+    {
+	Map<String, String> firstModels = new HashMap<String, String>();
+	String[][] repeatedModels = new String[sweeps.length][];
 
-		    // Loop through all parameter sets
-		    while (strLine != null)
+	BufferedWriter repeatsFile = new BufferedWriter(new FileWriter(this.paramFileOutputFolder
+		+ "/Robustness_Repeated_Models.csv"));
+	try
+	{
+	    repeatsFile.write("\"Model\",\"Repeats\"");
+	    repeatsFile.newLine();
+	    for (int p = 0; p < sweeps.length; p++)
+	    {
+		repeatedModels[p] = new String[sweeps[p].length];
+		for (int i = 0; i < sweeps[p].length; i++)
+		{
+		    String modelPath = this.getModelPath(this.settings.getParametersAnalysed()
+			    .get(p), i);
+		    String values = Arrays.toString(sweeps[p][i]);
+		    String firstModel = firstModels.get(values);
+		    if (firstModel == null)
 		    {
-			// Make the parameter name-value map so this is ready
-			// for processing in parameter
-			// files
-			Map<String, Double> parameterValMap = FileCreationUtilities
-			        .makeParameterValMap(strLine);
-
-			// STUB FOR REPAST INTRODUCTION IN VERSION 2
-			// Create the parameter file
-			// Now call the right script dependent on Repast
-			// Compatibility
-			/*
-		         * if (this.repastCompatible) { // In repast these go in
-		         * their own folders, so make // a folder: new
-		         * File(this.paramFileOutputFolder + "/" + parameterName
-		         * + "/" + (i + 1)).mkdirs(); WriteParameterFile_Repast
-		         * .writeSimParameterFiles(this.paramsMetaDataFilePath,
-		         * parameterValMap, XMLFileUtilities.parametersAnalysed,
-		         * XMLFileUtilities.parameterType,
-		         * this.paramFileOutputFolder + "/" + parameterName +
-		         * "/" + (i + 1), i, parameterName); }
-		         */
-			if (this.sbmlCompatible)
-			{
-			    WriteParameterFile_SBML.writeSimParameterFiles(
-				    this.paramsMetaDataFilePath, parameterValMap,
-				    XMLFileUtilities.parametersAnalysed,
-				    XMLFileUtilities.parameterType, this.paramFileOutputFolder
-				            + "/" + parameterName, i, "", null);
-			}
-			else
-			{
-			    WriteParameterFile.writeSimParameterFiles(this.paramsMetaDataFilePath,
-				    parameterValMap, XMLFileUtilities.parametersAnalysed,
-				    XMLFileUtilities.parameterType, this.paramFileOutputFolder
-				            + "/" + parameterName, i, parameterName);
-			}
-
-			i++;
-
-			// Make the map of the next line of the spartan file
-			strLine = br.readLine();
+			firstModels.put(values, modelPath);
 		    }
+		    else
+		    {
+			repeatedModels[p][i] = firstModel;
+			repeatsFile.write(modelPath + "," + firstModel);
+			repeatsFile.newLine();
+		    }
+		}
+	    }
+	}
+	finally
+	{
+	    repeatsFile.close();
+	}
+	return repeatedModels;
+    }
 
-		    // Put the count into the map - used for Repast Methods
-		    // this.parameterFilesCount.put(parameterName, i);
-
-		    br.close();
-
+    /**
+     * Adds each repeated model to the sink as a link to the first model with
+     * its values, once all sweeps are complete. A repeat of a model that could
+     * not be generated is reported as failing too
+     * 
+     * @param modelSink Sink the parameter files are written to
+     * @param runner Runner recording any model that cannot be linked
+     * @param sweeps Value sets of each sweep
+     * @param repeatedModels For each sweep, the path of the model each value
+     *            set repeats, or null where it is the first with its values
+     * @param generatedModels Path of every model generated
+     */
+    private void linkRepeatedModels(final ModelSink modelSink, ModelGenerationRunner runner,
+	    double[][][] sweeps, String[][] repeatedModels, Set<String> generatedModels)
+    {
+	for (int p = 0; p < sweeps.length; p++)
+	{
+	    for (int i = 0; i < sweeps[p].length; i++)
+	    {
+		final String firstModel = repeatedModels[p][i];
+		if (firstModel == null)
+		{
+		    continue;
 		}
-		catch (Exception e)
+
+		final String modelPath = this.getModelPath(this.settings.getParametersAnalysed()
+			.get(p), i);
+		final Map<String, Double> parameterValMap = this.makeParameterValMap(sweeps[p][i]);
+		final int sampleNum = i + 1;
+		long order = ((long) p << 32) + i;
+		if (!generatedModels.contains(firstModel))
 		{
-		    e.printStackTrace();
+		    runner.recordFailure(order, modelPath + ": repeats " + firstModel
+			    + ", which could not be generated");
+		    continue;
 		}
+		runner.run(order, modelPath, new Callable<Void>()
+		{
+		    public Void call() throws Exception
+		    {
+			modelSink.linkModel(modelPath, sampleNum, parameterValMap, firstModel);
+			return null;
+		    }
+		});
 	    }
 	}
-	catch (Exception e)
+    }
+
+    /**
+     * @param parameterName The parameter being perturbed, which names the
+     *            folder of its files
+     * @param sampleNum The number of the sample, from 0
+     * @return Path of the parameter file within the robustness folder
+     */
+    private String getModelPath(String parameterName, int sampleNum)
+    {
+	if (this.sbmlCompatible)
 	{
-	    e.printStackTrace();
+	    return parameterName + "/paramFile" + (sampleNum + 1) + ".xml";
+	}
+	return parameterName + "/paramFile_" + (sampleNum + 1) + ".xml";
+    }
+
+    /**
+     * @param valueSet The value of each parameter being analysed
+     * @return Map of parameter name to value
+     */
+    private Map<String, Double> makeParameterValMap(double[] valueSet)
+    {
+	Map<String, Double> parameterValMap = new HashMap<String, Double>();
+	for (int p = 0; p < this.settings.getParametersAnalysed().size(); p++)
+	{
+	    parameterValMap.put(this.settings.getParametersAnalysed().get(p), valueSet[p]);
 	}
+	return parameterValMap;
+    }
+
+    /**
+     * Creates the task that writes the parameter files for the sweep of one
+     * parameter, reporting progress when the sweep is complete. Value sets
+     * repeating a model of an earlier sweep are left to be linked to it
+     * 
+     * @param modelWriter Writer producing SBML models, or null if not
+     *            creating SBML files
+     * @param modelSink Sink the parameter files are written to
+     * @param runner Runner recording any model that cannot be generated
+     * @param sweep Value sets of the sweep
+     * @param repeatedModels The path of the model each value set repeats, or
+     *            null where it is the first with its values
+     * @param generatedModels Path of every model generated, to which those of
+     *            the sweep are added
+     * @param paramNum Position of the parameter in the settings file
+     * @param sweepsComplete Count of sweeps completed by all tasks
+     * @return Task writing the sweep
+     */
+    private Runnable createSweepTask(final SBMLModelWriter modelWriter,
+	    final ModelSink modelSink, final ModelGenerationRunner runner,
+	    final double[][] sweep, final String[] repeatedModels,
+	    final Set<String> generatedModels, final int paramNum,
+	    final AtomicInteger sweepsComplete)
+    {
+	return new Runnable()
+	{
+	    public void run()
+	    {
+		// Store the param name - useful for naming output file later
+		String parameterName = settings.getParametersAnalysed().get(paramNum);
+
+		// Failures are listed by parameter, then by sample
+		long sweepOrder = (long) paramNum << 32;
+
+		// Counters for number of simulation files attempted and made
+		// for this parameter
+		int i = 0;
+		int generated = 0;
+		int repeats = 0;
+
+		// Loop through all parameter sets of the sweep
+		for (double[] valueSet : sweep)
+		{
+		    if (repeatedModels[i] != null)
+		    {
+			repeats++;
+		    }
+		    else if (runner.run(sweepOrder + i, getModelPath(parameterName, i),
+			    createModelTask(modelWriter, modelSink, valueSet, i, parameterName)))
+		    {
+			generatedModels.add(getModelPath(parameterName, i));
+			generated++;
+		    }
+		    i++;
+		}
+
+		// Put the count into the map - used for Repast Methods
+		// this.parameterFilesCount.put(parameterName, i);
+
+		String repeated = (repeats > 0) ? ", " + repeats + " repeating another" : "";
+		System.out.println("Robustness: " + parameterName + " - " + generated + " of " + i
+			+ " model files generated" + repeated + " ("
+			+ sweepsComplete.incrementAndGet() + " of "
+			+ settings.getParametersAnalysed().size() + " parameters complete)");
+	    }
+	};
+    }
+
+    /**
+     * Creates the task that writes the parameter file for one sample of a
+     * parameter sweep
+     * 
+     * @param modelWriter Writer producing SBML models, or null if not
+     *            creating SBML files
+     * @param modelSink Sink the parameter file is written to
+     * @param valueSet The value of each parameter being analysed
+     * @param sampleNum The number of the sample, from 0
+     * @param parameterName The parameter being perturbed, which names the
+     *            folder of its files
+     * @return Task writing the parameter file
+     */
+    private Callable<Void> createModelTask(final SBMLModelWriter modelWriter,
+	    final ModelSink modelSink, final double[] valueSet, final int sampleNum,
+	    final String parameterName)
+    {
+	return new Callable<Void>()
+	{
+	    public Void call() throws Exception
+	    {
+		// Make the parameter name-value map so this is ready for
+		// processing in parameter files
+		Map<String, Double> parameterValMap = makeParameterValMap(valueSet);
+
+		// STUB FOR REPAST INTRODUCTION IN VERSION 2
+		// Create the parameter file
+		// Now call the right script dependent on Repast
+		// Compatibility
+		/*
+		 * if (this.repastCompatible) { // In repast these go in their own
+		 * folders, so make // a folder: new File(this.paramFileOutputFolder
+		 * + "/" + parameterName + "/" + (i + 1)).mkdirs();
+		 * WriteParameterFile_Repast
+		 * .writeSimParameterFiles(this.paramsMetaDataFilePath,
+		 * parameterValMap, XMLFileUtilities.parametersAnalysed,
+		 * XMLFileUtilities.parameterType, this.paramFileOutputFolder + "/"
+		 * + parameterName + "/" + (i + 1), i, parameterName); }
+		 */
+		if (sbmlCompatible)
+		{
+		    WriteParameterFile_SBML.writeSimParameterFiles(modelWriter, parameterValMap,
+			    modelSink, getModelPath(parameterName, sampleNum), sampleNum + 1);
+		}
+		else
+		{
+		    WriteParameterFile.createSimParameterFile(paramsMetaDataFilePath,
+			    parameterValMap, settings.getParametersAnalysed(),
+			    settings.getParameterType(), modelSink, parameterName, sampleNum);
+		}
+		return null;
+	    }
+	};
     }
 
 }
@@ -0,0 +1,246 @@
+/**
+ * \package modelCreation
+ * 
+ * Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import sampling.ParameterSpace;
+import sampling.SaltelliSample;
+import xmlFileUtilities.AnalysisSettings;
+import xmlFileUtilities.XMLFileUtilities;
+
+/**
+ * \brief Create simulation parameter files for Sobol analysis.
+ * 
+ * Generates a Saltelli sample for a subset of simulation parameters from a
+ * Sobol sequence, within ASPASIA. A parameter file is created for each value
+ * set of the A and B matrices, and of the AB matrix of each parameter, in a
+ * folder named after the matrix, with parameters of interest at their sampled
+ * values and those not of interest set from their calibrated value. The model
+ * file of each value set, and its values, are listed in order in
+ * Sobol_Parameters_for_Runs.csv. Simulation results in this order can then be
+ * used to calculate first and total-order Sobol indices, with
+ * Analyse_Sobol_Results
+ * 
+ * Where eFAST needs curves * parameters * samples models, Sobol needs
+ * (parameters + 2) * samples, and the low discrepancy of the Sobol sequence
+ * gives indices that converge with fewer samples
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class Create_Sobol_Models
+{
+    /**
+     * Whether we are creating SBML files
+     */
+    public boolean sbmlCompatible;
+
+    /**
+     * The original, calibrated parameter file
+     */
+    public String paramsMetaDataFilePath;
+
+    /**
+     * Folder where you want adapted parameter files to be stored
+     */
+    String paramFileOutputFolder;
+
+    /**
+     * Number of value sets in each matrix of the sample
+     */
+    int numSamples;
+
+    /**
+     * The settings of the analysis
+     */
+    final AnalysisSettings settings;
+
+    /**
+     * Program to create parameter files for Sobol experiments. Generates the
+     * sample and replaces the values of parameters of interest in a
+     * calibration parameter file with the sampled values, for every value set
+     * of every matrix
+     * 
+     * @param settings The settings of the analysis, read from the sensitivity
+     *            analysis XML settings file
+     */
+    public Create_Sobol_Models(AnalysisSettings settings)
+    {
+	this.settings = settings;
+	this.sbmlCompatible = settings.getParamBoolean("sbmlFormat");
+
+	// The original, calibrated parameter file
+	this.paramsMetaDataFilePath = settings.getParam("pathToSimulationParameterFile");
+
+	// Folder where you want adapted parameter files to be stored
+	String paramFileOutputFolderReadIn = settings.getParam("parameterFileOutputFolder");
+
+	// Number of value sets in each matrix
+	String sobolSamplesReadIn = settings.getParam("sobolSamples");
+
+	if (this.paramsMetaDataFilePath == null || paramFileOutputFolderReadIn == null
+		|| sobolSamplesReadIn == null
+		|| !XMLFileUtilities.checkParameterInfo(settings, "Sobol"))
+	{
+	    System.out.println("Error in Settings File. Address these and run ASPASIA again");
+	}
+	else
+	{
+	    this.paramFileOutputFolder = paramFileOutputFolderReadIn + "/Sobol/";
+	    new File(this.paramFileOutputFolder).mkdirs();
+
+	    this.numSamples = Integer.parseInt(sobolSamplesReadIn);
+
+	    SaltelliSample sample = new SaltelliSample(new ParameterSpace(settings),
+		    this.numSamples);
+
+	    if (this.writeSobolParameterFiles(sample))
+	    {
+		System.out.println("Sobol SBML Model Files Generated");
+	    }
+	    System.out.println("Check the directory " + this.paramFileOutputFolder
+		    + " for the Generated Model Files");
+	}
+    }
+
+    /**
+     * Write the parameter file for each value set of each matrix, and list
+     * them in Sobol_Parameters_for_Runs.csv. Files are generated on the number
+     * of threads set by the modelGenerationThreads tag of the settings file,
+     * and any that fail are reported once all have been attempted
+     * 
+     * @param sample The sample to generate models from
+     * @return True if every parameter file was generated
+     */
+    public boolean writeSobolParameterFiles(SaltelliSample sample)
+    {
+	SBMLModelWriter modelWriter = null;
+	try
+	{
+	    // Set up the model writer once, rather than for every sample
+	    if (this.sbmlCompatible)
+	    {
+		modelWriter = WriteParameterFile_SBML.createModelWriter(this.paramsMetaDataFilePath,
+			this.settings.getOptionalParam("sbmlWriter", "template"));
+	    }
+	    ModelSink modelSink = WriteParameterFile_SBML.createModelSink(this.settings,
+		    this.paramFileOutputFolder);
+
+	    List<String> parameters = this.settings.getParametersAnalysed();
+	    ModelGenerationRunner runner = new ModelGenerationRunner(this.settings);
+	    boolean generated;
+	    try
+	    {
+		BufferedWriter runList = new BufferedWriter(new FileWriter(
+			this.paramFileOutputFolder + "/Sobol_Parameters_for_Runs.csv"));
+		try
+		{
+		    runList.write("\"Model\"");
+		    for (String parameter : parameters)
+		    {
+			runList.write(",\"" + parameter + "\"");
+		    }
+		    runList.newLine();
+
+		    for (int matrix = 0; matrix < sample.getNumMatrices(); matrix++)
+		    {
+			String matrixFolder = sample.getMatrixName(matrix);
+
+			for (int i = 0; i < sample.getNumSamples(); i++)
+			{
+			    String modelName = WriteParameterFile.getParamFilePath(matrixFolder,
+				    i, this.sbmlCompatible);
+			    double[] valueSet = sample.getValueSet(matrix, i);
+
+			    runList.write(modelName);
+			    for (double value : valueSet)
+			    {
+				runList.write("," + Double.toString(value));
+			    }
+			    runList.newLine();
+
+			    runner.submit(modelName, this.createModelTask(modelWriter, modelSink,
+				    valueSet, matrixFolder, i));
+			}
+		    }
+		}
+		finally
+		{
+		    runList.close();
+		}
+	    }
+	    finally
+	    {
+		// The pool is shut down and the sink completed even if the run
+		// list cannot be written, so no worker thread is left running
+		generated = runner.finish();
+		modelSink.close();
+	    }
+	    return generated;
+	}
+	catch (Exception e)
+	{
+	    e.printStackTrace();
+	    return false;
+	}
+	finally
+	{
+	    WriteParameterFile_SBML.closeModelWriter(modelWriter);
+	}
+    }
+
+    /**
+     * Creates the task that writes the parameter file for one value set of a
+     * matrix
+     * 
+     * @param modelWriter Writer producing SBML models, or null if not
+     *            creating SBML files
+     * @param modelSink Sink the parameter file is written to
+     * @param valueSet The sampled value of each parameter being analysed
+     * @param matrixFolder Folder of the matrix within the Sobol folder
+     * @param sampleNum The number of the value set, from 0
+     * @return Task writing the parameter file
+     */
+    private Callable<Void> createModelTask(final SBMLModelWriter modelWriter,
+	    final ModelSink modelSink, final double[] valueSet, final String matrixFolder,
+	    final int sampleNum)
+    {
+	return new Callable<Void>()
+	{
+	    public Void call() throws Exception
+	    {
+		Map<String, Double> parameterValMap = new HashMap<String, Double>();
+		for (int p = 0; p < settings.getParametersAnalysed().size(); p++)
+		{
+		    parameterValMap.put(settings.getParametersAnalysed().get(p), valueSet[p]);
+		}
+
+		if (sbmlCompatible)
+		{
+		    WriteParameterFile_SBML.writeSimParameterFiles(modelWriter, parameterValMap,
+			    modelSink, WriteParameterFile.getParamFilePath(matrixFolder,
+				    sampleNum, true), sampleNum + 1);
+		}
+		else
+		{
+		    WriteParameterFile.createSimParameterFile(paramsMetaDataFilePath,
+			    parameterValMap, settings.getParametersAnalysed(),
+			    settings.getParameterType(), modelSink, matrixFolder, sampleNum);
+		}
+		return null;
+	    }
+	};
+    }
+}
@@ -5,22 +5,30 @@
  */
 package modelCreation;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-
-import spartanLink.GenerateSpartanEFASTFile;
-import spartanLink.SpartanUtilities;
-import xmlFileUtilities.FileCreationUtilities;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import sampling.EFASTSample;
+import sampling.EFASTSampler;
+import sampling.ParameterSpace;
+import sampling.ResumableEFASTSampler;
+import sampling.SamplingUtilities;
+import xmlFileUtilities.AnalysisSettings;
 import xmlFileUtilities.XMLFileUtilities;
 
 /**
  * \brief Create simulation parameter files for efast analysis.
  * 
  * Steps in this process: 1. Generate efast samples for a subset of simulation
- * parameters using spartan (creates a file for each parameter) 2. Set the
+ * parameters, within ASPASIA or using spartan (which creates a file for each
+ * parameter) 2. Set the
  * location of the folder containing these CSV files, the names of the
  * parameters of interest, a location of a parameter file at which parameters
  * are at calibrated values, the number of resample curves, and a location for
@@ -67,14 +75,19 @@ public class Create_eFAST_Models
     public int efastCurveSamples;
 
     /**
-     * Counter of samples produced by Spartan. Used in parameter file creation
+     * Number of times to run each simulation
      */
-    public int numEFastSamples;
+    int numReplicates;
 
     /**
-     * Number of times to run each simulation
+     * Writer producing each SBML model, set up once and used for every sample
      */
-    int numReplicates;
+    SBMLModelWriter sbmlModelWriter;
+
+    /**
+     * The settings of the analysis, including the dummy parameter
+     */
+    AnalysisSettings settings;
 
     /**
      * Program to create parameter files for efast experiments. Takes the
@@ -82,28 +95,25 @@ public class Create_eFAST_Models
      * interest in a calibration parameter file with the perturbed values. Does
      * this for all sample sets generated, for all parameters
      * 
-     * @param settingsFile Full path to the sensitivity analysis XML settings
-     *            file
+     * @param settings The settings of the analysis, read from the sensitivity
+     *            analysis XML settings file
      */
-    public Create_eFAST_Models(String settingsFile)
+    public Create_eFAST_Models(AnalysisSettings settings)
     {
-	// Read settings file
-	XMLFileUtilities.readSettingsFile(settingsFile);
-
 	// Determine repast and SBML compatibility - Repast to come in Version 2
 	// this.repastCompatible =
-	// XMLFileUtilities.getParamBoolean("repastCompatible");
-	this.sbmlCompatible = XMLFileUtilities.getParamBoolean("sbmlFormat");
+	// settings.getParamBoolean("repastCompatible");
+	this.sbmlCompatible = settings.getParamBoolean("sbmlFormat");
 
 	// The original, calibrated parameter file
-	this.paramsMetaDataFilePath = XMLFileUtilities.getParam("pathToSimulationParameterFile");
+	this.paramsMetaDataFilePath = settings.getParam("pathToSimulationParameterFile");
 
 	// Folder where you want adapted parameter files to be stored
-	String paramFileOutputFolderReadIn = XMLFileUtilities.getParam("parameterFileOutputFolder");
+	String paramFileOutputFolderReadIn = settings.getParam("parameterFileOutputFolder");
 
 	// Number of curves in the analysis
-	String efastCurveReadIn = XMLFileUtilities.getParam("efastCurves");
-	String efastCurveSamplesReadIn = XMLFileUtilities.getParam("efastCurveSamples");
+	String efastCurveReadIn = settings.getParam("efastCurves");
+	String efastCurveSamplesReadIn = settings.getParam("efastCurveSamples");
 
 	if (this.paramsMetaDataFilePath == null || paramFileOutputFolderReadIn == null
 	        || efastCurveReadIn == null || efastCurveSamplesReadIn == null)
@@ -121,66 +131,70 @@ public class Create_eFAST_Models
 	    // Make output folder
 	    new File(this.paramFileOutputFolder).mkdirs();
 
-	    // Now to read in the information about parameters being analysed
-	    XMLFileUtilities.readParameterInfo("eFAST");
+	    // Now to check the information about parameters being analysed
+	    XMLFileUtilities.checkParameterInfo(settings, "eFAST");
 
 	    // Add the dummy, as this is needed in eFAST
-	    XMLFileUtilities.parametersAnalysed.add("dummy");
-	    XMLFileUtilities.parameterType.add("double");
-	    XMLFileUtilities.minVals.add("1");
-	    XMLFileUtilities.maxVals.add("10");
-
-	    // Generate the Spartan EFAST Sampling File
-	    GenerateSpartanEFASTFile.CreateSpartanLHCScript(this.paramFileOutputFolder,
-		    XMLFileUtilities.parametersAnalysed, this.efastCurves, this.efastCurveSamples,
-		    XMLFileUtilities.minVals, XMLFileUtilities.maxVals);
-
-	    // set the path to the generated spartan file specifying the
-	    // parameter
-	    // sampling
-	    // SpartanUtilities.spartanScript =
-	    // XMLFileUtilities.getParam("efast_spartan_script");
-	    SpartanUtilities.spartanScript = this.paramFileOutputFolder + "/EFAST_Sampling.R";
-
-	    // Generate the sample in R
-	    int runResult = SpartanUtilities.generateParameterSamples();
+	    this.settings = settings.withDummy();
+
+	    // Generate the sample, within ASPASIA or in spartan. Native value
+	    // sets are calculated as each curve and parameter is generated. The
+	    // sample is kept in Run_Sample, so an interrupted run can be resumed
+	    // without sampling again
+	    EFASTSample sample = null;
+	    try
+	    {
+		List<String> sampleInputs = Arrays.asList("eFAST",
+			"backend=" + this.settings.getOptionalParam("samplingBackend", "java"),
+			"seed=" + SamplingUtilities.getSeed(this.settings));
+		EFASTSampler sampler = new ResumableEFASTSampler(
+			SamplingUtilities.createEFASTSampler(this.settings,
+				this.paramFileOutputFolder), this.paramFileOutputFolder
+				+ "/Run_Sample", sampleInputs,
+			ModelGenerationRunner.isResuming(this.settings));
+		sample = sampler.generateSample(new ParameterSpace(this.settings),
+			this.efastCurves, this.efastCurveSamples);
+	    }
+	    catch (Exception e)
+	    {
+		e.printStackTrace();
+	    }
 
 	    // If sample went well, create the parameter files and cluster
 	    // scripts
-	    if (runResult == 0)
+	    if (sample != null)
 	    {
-
-		for (int c = 1; c <= this.efastCurves; c++)
+		// Set up the model writer once, rather than for every sample
+		boolean generated = false;
+		try
 		{
-		    // Make a directory to store the parameter files for this
-		    // curve
-		    new File(this.paramFileOutputFolder + "/" + c).mkdirs();
-
-		    // Now create files for each parameter - reading in the
-		    // spartan
-		    // generated efast file
-		    Iterator<String> params = XMLFileUtilities.parametersAnalysed.iterator();
-
-		    while (params.hasNext())
+		    if (this.sbmlCompatible)
 		    {
-			// Store the param name - useful for naming output file
-			// later
-			String parameterName = params.next();
-			// Create the name of the spartan parameter file
-			String efastParamsForRunsFile = this.paramFileOutputFolder + "/Curve" + c
-			        + "_" + parameterName + ".csv";
-
-			// Make a directory for these parameter files
-			String outputDir = this.paramFileOutputFolder + "/" + c + "/"
-			        + parameterName;
-			new File(outputDir).mkdirs();
-
-			// Now make the parameter files for this parameter, for
-			// this
-			// curve
-			this.writeEFASTParameterFiles(efastParamsForRunsFile, outputDir);
-
+			this.sbmlModelWriter = WriteParameterFile_SBML.createModelWriter(
+				this.paramsMetaDataFilePath,
+				this.settings.getOptionalParam("sbmlWriter", "template"));
 		    }
+		    ModelSink modelSink = WriteParameterFile_SBML.createModelSink(this.settings,
+			    this.paramFileOutputFolder);
+
+		    // Generate the models for every curve, parameter and sample
+		    // as a tree of fork/join tasks, spreading the work over the
+		    // available threads
+		    ModelGenerationRunner runner = new ModelGenerationRunner(1);
+		    ForkJoinPool pool = new ForkJoinPool(
+			    ModelGenerationRunner.getThreadCount(this.settings));
+		    pool.invoke(new EFASTGenerationTask(runner, sample, modelSink));
+		    pool.shutdown();
+		    generated = runner.finish();
+		    modelSink.close();
+		}
+		catch (Exception e)
+		{
+		    e.printStackTrace();
+		}
+		finally
+		{
+		    WriteParameterFile_SBML.closeModelWriter(this.sbmlModelWriter);
 		}
 
 		// STUB FOR VERSION 2
@@ -196,53 +210,320 @@ public class Create_eFAST_Models
 	         * "eFAST", null); }
 	         */
 
-		System.out.println("eFAST SBML Model Files Generated");
-		System.out.println("Check the Directory " + this.paramFileOutputFolder
-		        + " for the Files");
+		if (generated)
+		{
+		    System.out.println("eFAST SBML Model Files Generated");
+		    System.out.println("Check the Directory " + this.paramFileOutputFolder
+			    + " for the Files");
+		}
 	    }
 	    else
 	    {
 		System.out
-		        .println("There was a problem creating parameter samples with Spartan. Check your settings file for errors declaring the parameter information");
+			.println("There was a problem creating parameter samples. Check your settings file for errors declaring the parameter information");
 	    }
 	}
     }
 
     /**
-     * Write the parameter files for each value set created by Spartan
+     * \brief Root of the fork/join task tree generating the eFAST models
      * 
-     * @param efastParamsForRunsFile The full path to the parameter values file
-     *            created by spartan
-     * @param paramFileOutputDirectory The full path to where the generated
-     *            parameter files should be stored
+     * Forks a task for each curve, which in turn forks a task for each
+     * parameter, which splits that parameter's samples between tasks
      */
-    public void writeEFASTParameterFiles(String efastParamsForRunsFile,
-	    String paramFileOutputDirectory)
+    private class EFASTGenerationTask extends RecursiveAction
     {
-	try
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Runner recording any failures
+	 */
+	private final ModelGenerationRunner runner;
+
+	/**
+	 * The sample the models are generated from
+	 */
+	private final EFASTSample sample;
+
+	/**
+	 * Sink the models are written to
+	 */
+	private final ModelSink modelSink;
+
+	/**
+	 * @param runner Runner recording any failures
+	 * @param sample The sample the models are generated from
+	 * @param modelSink Sink the models are written to
+	 */
+	EFASTGenerationTask(ModelGenerationRunner runner, EFASTSample sample,
+		ModelSink modelSink)
 	{
-	    // Read in the spartan generated file, named above
-	    String efastDesignFile = efastParamsForRunsFile;
-	    BufferedReader br = new BufferedReader(new FileReader(efastDesignFile));
+	    this.runner = runner;
+	    this.sample = sample;
+	    this.modelSink = modelSink;
+	}
 
-	    // Firstly, skip over the first line - the parameter headings
-	    String strLine = br.readLine();
+	@Override
+	protected void compute()
+	{
+	    List<CurveTask> curveTasks = new ArrayList<CurveTask>();
+	    for (int c = 1; c <= efastCurves; c++)
+	    {
+		curveTasks.add(new CurveTask(this.runner, this.sample, this.modelSink, c));
+	    }
+	    invokeAll(curveTasks);
+	}
+    }
 
-	    // Counter for number of simulation files made per parameter.
-	    // Appended to file name
-	    int i = 0;
+    /**
+     * \brief Generates the models of one eFAST curve
+     */
+    private class CurveTask extends RecursiveAction
+    {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Runner recording any failures
+	 */
+	private final ModelGenerationRunner runner;
+
+	/**
+	 * The sample the models are generated from
+	 */
+	private final EFASTSample sample;
+
+	/**
+	 * Sink the models are written to
+	 */
+	private final ModelSink modelSink;
+
+	/**
+	 * The curve being generated, from 1
+	 */
+	private final int curve;
+
+	/**
+	 * @param runner Runner recording any failures
+	 * @param sample The sample the models are generated from
+	 * @param modelSink Sink the models are written to
+	 * @param curve The curve being generated, from 1
+	 */
+	CurveTask(ModelGenerationRunner runner, EFASTSample sample, ModelSink modelSink,
+		int curve)
+	{
+	    this.runner = runner;
+	    this.sample = sample;
+	    this.modelSink = modelSink;
+	    this.curve = curve;
+	}
 
-	    // Get first line of the simulation parameters generated in spartan
-	    strLine = br.readLine();
+	@Override
+	protected void compute()
+	{
+	    // Now create files for each parameter, in a folder for each curve
+	    // and parameter
+	    List<ParameterTask> parameterTasks = new ArrayList<ParameterTask>();
+	    for (int p = 0; p < settings.getParametersAnalysed().size(); p++)
+	    {
+		// Store the param name - useful for naming output file later
+		String parameterName = settings.getParametersAnalysed().get(p);
+
+		// Failures are listed by curve, then parameter, then sample
+		long order = ((long) (this.curve - 1) * settings.getParametersAnalysed().size()
+			+ p) << 32;
+		String modelFolder = this.curve + "/" + parameterName;
+		parameterTasks.add(new ParameterTask(this.runner, this.sample, this.curve, p,
+			this.modelSink, modelFolder, modelFolder, order));
+	    }
+	    invokeAll(parameterTasks);
+	}
+    }
 
-	    // Loop through all parameter sets
-	    while (strLine != null)
+    /**
+     * \brief Generates the models of one parameter of one curve
+     */
+    private class ParameterTask extends RecursiveAction
+    {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Runner recording any failures
+	 */
+	private final ModelGenerationRunner runner;
+
+	/**
+	 * The sample the models are generated from
+	 */
+	private final EFASTSample sample;
+
+	/**
+	 * The curve being generated, from 1
+	 */
+	private final int curve;
+
+	/**
+	 * Position of the parameter of interest in the parameters analysed
+	 */
+	private final int param;
+
+	/**
+	 * Sink the models are written to
+	 */
+	private final ModelSink modelSink;
+
+	/**
+	 * Folder of the models within the eFAST folder, or an empty string for
+	 * the folder itself
+	 */
+	private final String modelFolder;
+
+	/**
+	 * Location of the files within the eFAST folder, used in reporting
+	 */
+	private final String description;
+
+	/**
+	 * Position of this parameter's first sample in the analysis
+	 */
+	private final long order;
+
+	/**
+	 * @param runner Runner recording any failures
+	 * @param sample The sample the models are generated from
+	 * @param curve The curve being generated, from 1
+	 * @param param Position of the parameter of interest in the parameters
+	 *            analysed
+	 * @param modelSink Sink the models are written to
+	 * @param modelFolder Folder of the models within the eFAST folder, or an
+	 *            empty string for the folder itself
+	 * @param description Location of the files, used in reporting
+	 * @param order Position of this parameter's first sample in the
+	 *            analysis
+	 */
+	ParameterTask(ModelGenerationRunner runner, EFASTSample sample, int curve, int param,
+		ModelSink modelSink, String modelFolder, String description, long order)
+	{
+	    this.runner = runner;
+	    this.sample = sample;
+	    this.curve = curve;
+	    this.param = param;
+	    this.modelSink = modelSink;
+	    this.modelFolder = modelFolder;
+	    this.description = description;
+	    this.order = order;
+	}
+
+	@Override
+	protected void compute()
+	{
+	    double[][] valueSets;
+	    try
+	    {
+		valueSets = this.sample.getCurveSample(this.curve, this.param);
+	    }
+	    catch (Exception e)
+	    {
+		this.runner.recordFailure(this.order, this.description + ": " + e);
+		return;
+	    }
+
+	    new SampleRangeTask(this, valueSets, 0, valueSets.length).invoke();
+	}
+    }
+
+    /**
+     * \brief Generates the models for a range of samples of one parameter,
+     * splitting the range in two until it is small enough to write directly
+     */
+    private class SampleRangeTask extends RecursiveAction
+    {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Ranges of at most this many samples are written without splitting
+	 */
+	private static final int SAMPLES_PER_TASK = 4;
+
+	/**
+	 * The parameter the samples belong to
+	 */
+	private final ParameterTask parameter;
+
+	/**
+	 * Value sets of the parameter, one per sample
+	 */
+	private final double[][] valueSets;
+
+	/**
+	 * First sample in the range
+	 */
+	private final int start;
+
+	/**
+	 * End of the range, exclusive
+	 */
+	private final int end;
+
+	/**
+	 * @param parameter The parameter the samples belong to
+	 * @param valueSets Value sets of the parameter, one per sample
+	 * @param start First sample in the range
+	 * @param end End of the range, exclusive
+	 */
+	SampleRangeTask(ParameterTask parameter, double[][] valueSets, int start, int end)
+	{
+	    this.parameter = parameter;
+	    this.valueSets = valueSets;
+	    this.start = start;
+	    this.end = end;
+	}
+
+	@Override
+	protected void compute()
+	{
+	    if (this.end - this.start > SAMPLES_PER_TASK)
+	    {
+		int middle = (this.start + this.end) >>> 1;
+		invokeAll(new SampleRangeTask(this.parameter, this.valueSets, this.start, middle),
+			new SampleRangeTask(this.parameter, this.valueSets, middle, this.end));
+		return;
+	    }
+
+	    for (int i = this.start; i < this.end; i++)
+	    {
+		this.parameter.runner.run(this.parameter.order + i, this.parameter.description
+			+ "/paramFile" + (i + 1) + ".xml",
+			createModelTask(this.valueSets[i], this.parameter.modelSink,
+				this.parameter.modelFolder, i));
+	    }
+	}
+    }
+
+    /**
+     * Creates the task that writes the parameter file for one sample of a
+     * curve
+     * 
+     * @param valueSet The sampled value of each parameter being analysed
+     * @param modelSink Sink the parameter file is written to
+     * @param modelFolder Folder of the parameter file within the eFAST
+     *            folder, or an empty string for the folder itself
+     * @param sampleNum The number of the sample, from 0
+     * @return Task writing the parameter file
+     */
+    private Callable<Void> createModelTask(final double[] valueSet,
+	    final ModelSink modelSink, final String modelFolder, final int sampleNum)
+    {
+	return new Callable<Void>()
+	{
+	    public Void call() throws Exception
 	    {
 		// Make the parameter name-value map so this is ready for
-		// processing in parameter
-		// files
-		Map<String, Double> parameterValMap = FileCreationUtilities
-		        .makeParameterValMap(strLine);
+		// processing in parameter files
+		Map<String, Double> parameterValMap = new HashMap<String, Double>();
+		for (int p = 0; p < settings.getParametersAnalysed().size(); p++)
+		{
+		    parameterValMap.put(settings.getParametersAnalysed().get(p), valueSet[p]);
+		}
 
 		// Now call the right script dependent on Repast Compatibility
 		// Repast stub for Version 2
@@ -257,34 +538,24 @@ public class Create_eFAST_Models
 	         * XMLFileUtilities.parameterType, paramFileOutputDirectory +
 	         * "/" + (i + 1), i, ""); }
 	         */
-		if (this.sbmlCompatible)
+		if (sbmlCompatible)
 		{
-		    WriteParameterFile_SBML.writeSimParameterFiles(this.paramsMetaDataFilePath,
-			    parameterValMap, XMLFileUtilities.parametersAnalysed,
-			    XMLFileUtilities.parameterType, paramFileOutputDirectory, i, "", null);
+		    String modelPath = "paramFile" + (sampleNum + 1) + ".xml";
+		    if (modelFolder.length() > 0)
+		    {
+			modelPath = modelFolder + "/" + modelPath;
+		    }
+		    WriteParameterFile_SBML.writeSimParameterFiles(sbmlModelWriter,
+			    parameterValMap, modelSink, modelPath, sampleNum + 1);
 		}
 		else
 		{
-		    WriteParameterFile.writeSimParameterFiles(this.paramsMetaDataFilePath,
-			    parameterValMap, XMLFileUtilities.parametersAnalysed,
-			    XMLFileUtilities.parameterType, paramFileOutputDirectory, i, "");
+		    WriteParameterFile.createSimParameterFile(paramsMetaDataFilePath,
+			    parameterValMap, settings.getParametersAnalysed(),
+			    settings.getParameterType(), modelSink, modelFolder, sampleNum);
 		}
-
-		i++;
-
-		// Read next line of spartan file
-		strLine = br.readLine();
-
+		return null;
 	    }
-
-	    br.close();
-
-	    this.numEFastSamples = i + 1;
-
-	}
-	catch (Exception e)
-	{
-	    e.printStackTrace();
-	}
+	};
     }
 }
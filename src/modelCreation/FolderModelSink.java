@@ -0,0 +1,181 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * \brief Writes each generated model to its own file, as ASPASIA always has
+ * 
+ * Models are written beneath the analysis output folder, in the folders named
+ * by their path, which are created as they are first needed
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class FolderModelSink implements ModelSink
+{
+    /**
+     * Folder the models are written beneath
+     */
+    private final String outputFolder;
+
+    /**
+     * Folders already created, so each is only made once
+     */
+    private final Set<String> foldersMade = Collections
+	    .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Creates a sink writing models beneath a folder
+     * 
+     * @param outputFolder Folder the models are written beneath
+     */
+    public FolderModelSink(String outputFolder)
+    {
+	this.outputFolder = outputFolder;
+    }
+
+    /**
+     * Opens the file one model is written to, creating its folder if needed.
+     * The file stream itself is returned, so writers can transfer to it
+     * directly. Aborting the stream deletes the partial file
+     * 
+     * @param modelPath Path of the model within the output folder
+     * @param sampleNum Number of the sample the model is generated from, from
+     *            1
+     * @param parameterValMap Map of parameter name to sampled value
+     * @return Stream writing the model file
+     * @throws IOException if the file cannot be created
+     */
+    public OutputStream openModel(String modelPath, int sampleNum,
+	    Map<String, Double> parameterValMap) throws IOException
+    {
+	return new ModelFileStream(this.createModelFile(modelPath));
+    }
+
+    /**
+     * Adds a model repeating one already written as a hard link to its file,
+     * so the model is held on disk once. Where the file system does not
+     * support hard links, the file is copied
+     * 
+     * @param modelPath Path of the model within the output folder
+     * @param sampleNum Number of the sample the model is generated from, from
+     *            1
+     * @param parameterValMap Map of parameter name to sampled value
+     * @param existingPath Path of the identical model already written
+     * @throws IOException if the model cannot be linked or copied
+     */
+    public void linkModel(String modelPath, int sampleNum,
+	    Map<String, Double> parameterValMap, String existingPath) throws IOException
+    {
+	Path link = this.createModelFile(modelPath).toPath();
+	Path existing = new File(this.outputFolder + "/" + existingPath).toPath();
+	// A file left by an earlier analysis would stop the link being made
+	Files.deleteIfExists(link);
+
+	boolean linked;
+	try
+	{
+	    Files.createLink(link, existing);
+	    linked = true;
+	}
+	catch (IOException e)
+	{
+	    linked = false;
+	}
+	catch (UnsupportedOperationException e)
+	{
+	    linked = false;
+	}
+	if (!linked)
+	{
+	    Files.copy(existing, link, StandardCopyOption.REPLACE_EXISTING);
+	}
+    }
+
+    /**
+     * Creates the folder of a model if needed
+     * 
+     * @param modelPath Path of the model within the output folder
+     * @return The file the model is written to
+     */
+    private File createModelFile(String modelPath)
+    {
+	File modelFile = new File(this.outputFolder + "/" + modelPath);
+	String folder = modelFile.getParent();
+	if (folder != null && this.foldersMade.add(folder))
+	{
+	    new File(folder).mkdirs();
+	}
+	return modelFile;
+    }
+
+    /**
+     * Nothing remains to be written once every model file is closed
+     */
+    public void close()
+    {
+    }
+
+    /**
+     * \brief Stream writing one model file, which is deleted if the model is
+     * aborted. Its channel is given to writers that buffer their own output
+     */
+    private static class ModelFileStream extends FileOutputStream implements
+	    AbortableModelStream, ChannelModelStream
+    {
+	/**
+	 * The file being written
+	 */
+	private final File modelFile;
+
+	/**
+	 * Creates the file one model is written to
+	 * 
+	 * @param modelFile The file
+	 * @throws IOException if the file cannot be created
+	 */
+	ModelFileStream(File modelFile) throws IOException
+	{
+	    super(modelFile);
+	    this.modelFile = modelFile;
+	}
+
+	/**
+	 * Closes the file and deletes it, so no partial model is left behind
+	 * 
+	 * @throws IOException if the file cannot be deleted
+	 */
+	public void abort() throws IOException
+	{
+	    this.close();
+	    Files.deleteIfExists(this.modelFile.toPath());
+	}
+
+	/**
+	 * Nothing is measured as the file is written
+	 * 
+	 * @param data The bytes written straight to the channel
+	 */
+	public void written(ByteBuffer data)
+	{
+	}
+    }
+}
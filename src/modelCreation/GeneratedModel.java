@@ -0,0 +1,119 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.util.Map;
+
+/**
+ * \brief One model provided by a ModelProvider: the sample it was generated
+ * from, and the SBML model itself
+ * 
+ * The sample number, group and path are those the analysis would give the
+ * model when writing it to the analysis output folder, so models provided in
+ * memory can be matched to those written to disk
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public final class GeneratedModel
+{
+    /**
+     * Position of the model among all those of the analysis, from 0
+     */
+    private final int index;
+
+    /**
+     * Number of the sample the model is generated from, from 1
+     */
+    private final int sampleNum;
+
+    /**
+     * Path of the model within the analysis output folder
+     */
+    private final String modelPath;
+
+    /**
+     * Map of parameter name to sampled value
+     */
+    private final Map<String, Double> parameterValMap;
+
+    /**
+     * The SBML model
+     */
+    private final byte[] model;
+
+    /**
+     * @param index Position of the model among all those of the analysis,
+     *            from 0
+     * @param sampleNum Number of the sample the model is generated from, from
+     *            1
+     * @param modelPath Path of the model within the analysis output folder
+     * @param parameterValMap Map of parameter name to sampled value, which is
+     *            not copied
+     * @param model The SBML model, which is not copied
+     */
+    GeneratedModel(int index, int sampleNum, String modelPath,
+	    Map<String, Double> parameterValMap, byte[] model)
+    {
+	this.index = index;
+	this.sampleNum = sampleNum;
+	this.modelPath = modelPath;
+	this.parameterValMap = parameterValMap;
+	this.model = model;
+    }
+
+    /**
+     * @return Position of the model among all those of the analysis, from 0
+     */
+    public int getIndex()
+    {
+	return this.index;
+    }
+
+    /**
+     * @return Number of the sample the model is generated from, from 1
+     */
+    public int getSampleNum()
+    {
+	return this.sampleNum;
+    }
+
+    /**
+     * @return Path of the model within the analysis output folder
+     */
+    public String getModelPath()
+    {
+	return this.modelPath;
+    }
+
+    /**
+     * @return The curve and parameter or the sweep the model belongs to, or an
+     *         empty string if the analysis has no groups
+     */
+    public String getGroup()
+    {
+	return ManifestModelSink.getGroup(this.modelPath);
+    }
+
+    /**
+     * @return Map of parameter name to sampled value, which cannot be changed
+     */
+    public Map<String, Double> getParameterValues()
+    {
+	return this.parameterValMap;
+    }
+
+    /**
+     * @return The SBML model. The array is not copied, and should not be
+     *         changed
+     */
+    public byte[] getModel()
+    {
+	return this.model;
+    }
+}
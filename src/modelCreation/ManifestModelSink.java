@@ -0,0 +1,499 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * \brief Records every model written to another sink in the manifest of the
+ * run
+ * 
+ * As each model is written, its size and CRC-32 checksum are taken from the
+ * bytes passing through, so nothing is read back afterwards. Once all models
+ * are written, the manifest lists for each the sample number, analysis,
+ * group (the curve and parameter, sweep, matrix or trajectory the model
+ * belongs to, from the folder of its path), the value of every parameter
+ * analysed, and the path, size and checksum of the model. Models are listed
+ * by group, then sample number.
+ * 
+ * The manifest is written to Models_Manifest.bin, read whole by RunManifest,
+ * and exported to Models_Manifest.csv. Where the models are written as
+ * separate files, each is also added to the journal of the run as it is
+ * completed, so an interrupted run can be resumed. Models the journal shows
+ * to be complete are then recorded as they are, and not written again
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class ManifestModelSink implements ModelSink
+{
+    /**
+     * Marks the start of the binary manifest
+     */
+    static final long MANIFEST_MAGIC = 0x415350414D414E31L;
+
+    /**
+     * \brief What the manifest records of one model
+     */
+    static class Record
+    {
+	/**
+	 * Number of the sample the model is generated from, from 1
+	 */
+	int sampleNum;
+
+	/**
+	 * Path of the model within the analysis output folder
+	 */
+	String modelPath;
+
+	/**
+	 * Value of each parameter analysed, in the order of the manifest
+	 */
+	double[] values;
+
+	/**
+	 * Size of the model, in bytes
+	 */
+	long size;
+
+	/**
+	 * CRC-32 of the model
+	 */
+	long checksum;
+    }
+
+    /**
+     * The sink the models are written to
+     */
+    private final ModelSink modelSink;
+
+    /**
+     * Folder the manifest is written to
+     */
+    private final String outputFolder;
+
+    /**
+     * Name of the analysis
+     */
+    private final String analysis;
+
+    /**
+     * Parameters analysed, in the order their values are listed
+     */
+    private final List<String> parameters;
+
+    /**
+     * Record of each model written so far, by path
+     */
+    private final Map<String, Record> records = new HashMap<String, Record>();
+
+    /**
+     * Journal each model is added to as it is completed, or null if the run
+     * cannot be resumed
+     */
+    private final ModelJournal journal;
+
+    /**
+     * Number of models kept from an interrupted run
+     */
+    private final AtomicInteger modelsKept = new AtomicInteger();
+
+    /**
+     * Creates a sink recording the models written to another
+     * 
+     * @param modelSink The sink the models are written to
+     * @param outputFolder Folder the manifest is written to
+     * @param analysis Name of the analysis
+     * @param parameters Parameters analysed, in the order their values are
+     *            listed
+     */
+    public ManifestModelSink(ModelSink modelSink, String outputFolder, String analysis,
+	    List<String> parameters)
+    {
+	this(modelSink, outputFolder, analysis, parameters, null);
+    }
+
+    /**
+     * Creates a sink recording the models written to another, and adding each
+     * to the journal of the run
+     * 
+     * @param modelSink The sink the models are written to
+     * @param outputFolder Folder the manifest is written to
+     * @param analysis Name of the analysis
+     * @param parameters Parameters analysed, in the order their values are
+     *            listed
+     * @param journal Journal of the run, or null if the run cannot be resumed
+     */
+    public ManifestModelSink(ModelSink modelSink, String outputFolder, String analysis,
+	    List<String> parameters, ModelJournal journal)
+    {
+	this.modelSink = modelSink;
+	this.outputFolder = outputFolder;
+	this.analysis = analysis;
+	this.parameters = new ArrayList<String>(parameters);
+	this.journal = journal;
+    }
+
+    /**
+     * Opens the stream one model is written to, measuring the model as it
+     * passes through. The model is recorded once the stream is closed
+     * 
+     * @param modelPath Path of the model within the analysis output folder
+     * @param sampleNum Number of the sample the model is generated from, from
+     *            1
+     * @param parameterValMap Map of parameter name to sampled value
+     * @return Stream the model is written to, or null if the model is kept
+     *         from an interrupted run
+     * @throws IOException if the model cannot be created
+     */
+    public OutputStream openModel(String modelPath, int sampleNum,
+	    Map<String, Double> parameterValMap) throws IOException
+    {
+	final Record record = this.createRecord(modelPath, sampleNum, parameterValMap);
+	if (this.keepModel(record))
+	{
+	    return null;
+	}
+
+	final OutputStream modelOut = this.modelSink.openModel(modelPath, sampleNum,
+		parameterValMap);
+	OutputStream out = modelOut;
+	// Files are buffered here for writers that write through the stream.
+	// Writers that buffer their own output take the channel of the file
+	// instead, and pass each range written to it back to be measured
+	if (out instanceof FileOutputStream)
+	{
+	    out = new BufferedOutputStream(out);
+	}
+
+	final CRC32 crc = new CRC32();
+	return new ModelRecordStream(out)
+	{
+	    private boolean closed = false;
+
+	    @Override
+	    public void write(int b) throws IOException
+	    {
+		this.out.write(b);
+		crc.update(b);
+		record.size++;
+	    }
+
+	    @Override
+	    public void write(byte[] b, int off, int len) throws IOException
+	    {
+		this.out.write(b, off, len);
+		crc.update(b, off, len);
+		record.size += len;
+	    }
+
+	    public FileChannel getChannel() throws IOException
+	    {
+		if (!(modelOut instanceof ChannelModelStream))
+		{
+		    return null;
+		}
+		this.out.flush();
+		return ((ChannelModelStream) modelOut).getChannel();
+	    }
+
+	    public void written(ByteBuffer data)
+	    {
+		crc.update(data.duplicate());
+		record.size += data.remaining();
+		((ChannelModelStream) modelOut).written(data);
+	    }
+
+	    @Override
+	    public void close() throws IOException
+	    {
+		if (this.closed)
+		{
+		    return;
+		}
+		this.closed = true;
+		this.out.close();
+		record.checksum = crc.getValue();
+		addRecord(record);
+	    }
+
+	    public void abort() throws IOException
+	    {
+		if (this.closed)
+		{
+		    return;
+		}
+		this.closed = true;
+		// Nothing is recorded, and the buffer is not flushed to the sink
+		WriteParameterFile_SBML.abortModel(modelOut);
+	    }
+	};
+    }
+
+    /**
+     * Adds a model repeating one already written to the sink the models are
+     * written to, recording it with the size and checksum of that model
+     * 
+     * @param modelPath Path of the model within the analysis output folder
+     * @param sampleNum Number of the sample the model is generated from, from
+     *            1
+     * @param parameterValMap Map of parameter name to sampled value
+     * @param existingPath Path of the identical model already written
+     * @throws IOException if the model cannot be added
+     */
+    public void linkModel(String modelPath, int sampleNum,
+	    Map<String, Double> parameterValMap, String existingPath) throws IOException
+    {
+	Record record = this.createRecord(modelPath, sampleNum, parameterValMap);
+	if (this.keepModel(record))
+	{
+	    return;
+	}
+
+	Record existing;
+	synchronized (this.records)
+	{
+	    existing = this.records.get(existingPath);
+	}
+	if (existing == null)
+	{
+	    throw new IOException(existingPath + " has not been written");
+	}
+
+	this.modelSink.linkModel(modelPath, sampleNum, parameterValMap, existingPath);
+	record.size = existing.size;
+	record.checksum = existing.checksum;
+	this.addRecord(record);
+    }
+
+    /**
+     * Keeps a model completed by an interrupted run, if the journal shows its
+     * file to be whole, recording it as journalled
+     * 
+     * @param record Record of the model to be written
+     * @return True if the model is kept, and need not be written
+     */
+    private boolean keepModel(Record record)
+    {
+	Record journalled = (this.journal == null) ? null : this.journal.findComplete(record);
+	if (journalled == null)
+	{
+	    return false;
+	}
+	synchronized (this.records)
+	{
+	    this.records.put(journalled.modelPath, journalled);
+	}
+	this.modelsKept.incrementAndGet();
+	return true;
+    }
+
+    /**
+     * Records a completed model, adding it to the journal of the run
+     * 
+     * @param record Record of the model, with its size and checksum
+     * @throws IOException if the journal cannot be written
+     */
+    private void addRecord(Record record) throws IOException
+    {
+	synchronized (this.records)
+	{
+	    this.records.put(record.modelPath, record);
+	}
+	if (this.journal != null)
+	{
+	    this.journal.append(record);
+	}
+    }
+
+    /**
+     * Starts the record of one model, with the value of each parameter
+     * analysed
+     * 
+     * @param modelPath Path of the model within the analysis output folder
+     * @param sampleNum Number of the sample the model is generated from
+     * @param parameterValMap Map of parameter name to sampled value
+     * @return The record, without the size and checksum of the model
+     */
+    private Record createRecord(String modelPath, int sampleNum,
+	    Map<String, Double> parameterValMap)
+    {
+	Record record = new Record();
+	record.modelPath = modelPath;
+	record.sampleNum = sampleNum;
+	record.values = new double[this.parameters.size()];
+	for (int p = 0; p < record.values.length; p++)
+	{
+	    Double value = parameterValMap.get(this.parameters.get(p));
+	    record.values[p] = (value == null) ? Double.NaN : value;
+	}
+	return record;
+    }
+
+    /**
+     * Completes the sink the models were written to, then writes the
+     * manifest
+     * 
+     * @throws IOException if the sink or manifest cannot be completed
+     */
+    public void close() throws IOException
+    {
+	this.modelSink.close();
+	if (this.journal != null)
+	{
+	    this.journal.close();
+	}
+	if (this.modelsKept.get() > 0)
+	{
+	    System.out.println(this.analysis + ": " + this.modelsKept.get()
+		    + " models completed by the interrupted run were kept");
+	}
+
+	List<Record> listed;
+	synchronized (this.records)
+	{
+	    listed = new ArrayList<Record>(this.records.values());
+	}
+	Collections.sort(listed, new Comparator<Record>()
+	{
+	    public int compare(Record a, Record b)
+	    {
+		int byGroup = getGroup(a.modelPath).compareTo(getGroup(b.modelPath));
+		return (byGroup != 0) ? byGroup : Integer.compare(a.sampleNum, b.sampleNum);
+	    }
+	});
+
+	this.writeBinary(listed);
+	this.writeCSV(listed);
+    }
+
+    /**
+     * Writes the manifest in the binary form RunManifest reads
+     * 
+     * @param listed Record of each model, in manifest order
+     * @throws IOException if the manifest cannot be written
+     */
+    private void writeBinary(List<Record> listed) throws IOException
+    {
+	DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+		new FileOutputStream(this.outputFolder + "/Models_Manifest.bin"), 1 << 16));
+	try
+	{
+	    out.writeLong(MANIFEST_MAGIC);
+	    out.writeInt(1);
+	    out.writeUTF(this.analysis);
+	    out.writeInt(this.parameters.size());
+	    for (String parameter : this.parameters)
+	    {
+		out.writeUTF(parameter);
+	    }
+	    out.writeInt(listed.size());
+	    for (Record record : listed)
+	    {
+		out.writeInt(record.sampleNum);
+		out.writeUTF(record.modelPath);
+		for (double value : record.values)
+		{
+		    out.writeDouble(value);
+		}
+		out.writeLong(record.size);
+		out.writeInt((int) record.checksum);
+	    }
+	}
+	finally
+	{
+	    out.close();
+	}
+    }
+
+    /**
+     * Exports the manifest as a CSV file, with a column for each parameter
+     * 
+     * @param listed Record of each model, in manifest order
+     * @throws IOException if the file cannot be written
+     */
+    private void writeCSV(List<Record> listed) throws IOException
+    {
+	BufferedWriter csv = new BufferedWriter(new FileWriter(this.outputFolder
+		+ "/Models_Manifest.csv"));
+	try
+	{
+	    csv.write("\"Sample\",\"Analysis\",\"Group\"");
+	    for (String parameter : this.parameters)
+	    {
+		csv.write(",\"" + parameter + "\"");
+	    }
+	    csv.write(",\"Path\",\"Size\",\"CRC32\"");
+	    csv.newLine();
+
+	    for (Record record : listed)
+	    {
+		csv.write(record.sampleNum + "," + this.analysis + ","
+			+ getGroup(record.modelPath));
+		for (double value : record.values)
+		{
+		    csv.write("," + Double.toString(value));
+		}
+		csv.write("," + record.modelPath + "," + record.size + ","
+			+ String.format("%08x", record.checksum));
+		csv.newLine();
+	    }
+	}
+	finally
+	{
+	    csv.close();
+	}
+    }
+
+    /**
+     * @param modelPath Path of a model within the analysis output folder
+     * @return The folder of the model within the analysis output folder,
+     *         which names its group, or an empty string if it has none
+     */
+    static String getGroup(String modelPath)
+    {
+	int folderEnd = modelPath.lastIndexOf('/');
+	return (folderEnd < 0) ? "" : modelPath.substring(0, folderEnd);
+    }
+
+    /**
+     * \brief Stream measuring one model as it passes to the sink, which is
+     * recorded when closed and discarded when aborted. Where the sink writes a
+     * file, its channel is given to writers that buffer their own output, and
+     * the ranges they write to it are measured as they are passed back
+     */
+    private abstract static class ModelRecordStream extends FilterOutputStream implements
+	    AbortableModelStream, ChannelModelStream
+    {
+	/**
+	 * @param out Stream the model is passed to
+	 */
+	ModelRecordStream(OutputStream out)
+	{
+	    super(out);
+	}
+    }
+}
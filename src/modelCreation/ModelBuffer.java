@@ -0,0 +1,71 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * \brief Holds one model in memory until it is written in full
+ * 
+ * Used by sinks that add each model to a shared output, such as an archive
+ * or segment, which cannot take back a partial model once it is added. The
+ * model is added when the buffer is closed. A buffer aborted because its
+ * writer failed is dropped, and nothing is added
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+abstract class ModelBuffer extends ByteArrayOutputStream implements AbortableModelStream
+{
+    /**
+     * Whether the buffer has been closed or aborted
+     */
+    private boolean closed = false;
+
+    /**
+     * Creates an empty buffer
+     */
+    ModelBuffer()
+    {
+	super(8192);
+    }
+
+    /**
+     * Adds the model to the output of the sink
+     * 
+     * @param data Buffer holding the model
+     * @param length Length of the model in the buffer
+     * @throws IOException if the model cannot be added
+     */
+    protected abstract void complete(byte[] data, int length) throws IOException;
+
+    /**
+     * Adds the model to the output, once
+     * 
+     * @throws IOException if the model cannot be added
+     */
+    @Override
+    public void close() throws IOException
+    {
+	if (!this.closed)
+	{
+	    this.closed = true;
+	    this.complete(this.buf, this.count);
+	}
+    }
+
+    /**
+     * Drops the model without adding it to the output
+     */
+    public void abort()
+    {
+	this.closed = true;
+	this.reset();
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import xmlFileUtilities.AnalysisSettings;
+
+/**
+ * \brief Runs the generation of model files, on one or more threads
+ * 
+ * Each model is generated by a separate task. The number of threads is set by
+ * the modelGenerationThreads tag of the settings file, and by default is one
+ * per available processor. With one thread, tasks run in order as they are
+ * submitted, as ASPASIA has always done. With more, tasks are shared between a
+ * pool of worker threads. Each model is named and filled from
+ * its own sample alone, so the files produced are the same whichever is used.
+ * 
+ * Tasks may also be run directly, with run, by callers that schedule work
+ * themselves, such as the fork/join generation of eFAST models. A task that
+ * fails does not stop the others. Failures are collected and reported together
+ * once all models have been generated
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class ModelGenerationRunner
+{
+    /**
+     * Pool of worker threads. Null where models are generated on the calling
+     * thread
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Error message of each failed task, keyed by the position of the task in
+     * the analysis so the report lists failures in sample order
+     */
+    private final Map<Long, String> failures = new TreeMap<Long, String>();
+
+    /**
+     * Number of tasks submitted
+     */
+    private long submitted = 0;
+
+    /**
+     * Number of tasks run, by any thread
+     */
+    private final AtomicInteger attempted = new AtomicInteger();
+
+    /**
+     * Creates a runner generating models on the given number of threads
+     * 
+     * @param numThreads Number of worker threads. One or fewer runs each task
+     *            on the calling thread
+     */
+    public ModelGenerationRunner(int numThreads)
+    {
+	if (numThreads > 1)
+	{
+	    this.executor = Executors.newFixedThreadPool(numThreads);
+	}
+	else
+	{
+	    this.executor = null;
+	}
+    }
+
+    /**
+     * Creates a runner using the number of threads specified in the settings
+     * file
+     * 
+     * @param settings The settings of the analysis
+     */
+    public ModelGenerationRunner(AnalysisSettings settings)
+    {
+	this(getThreadCount(settings));
+    }
+
+    /**
+     * Reads the number of threads to generate models on from the optional
+     * modelGenerationThreads tag of the settings file. 0, the default, uses one
+     * thread per available processor
+     * 
+     * @param settings The settings of the analysis
+     * @return Number of model generation threads
+     */
+    public static int getThreadCount(AnalysisSettings settings)
+    {
+	int numThreads = Integer.parseInt(settings.getOptionalParam("modelGenerationThreads",
+		"0"));
+	if (numThreads <= 0)
+	{
+	    numThreads = Runtime.getRuntime().availableProcessors();
+	}
+	return numThreads;
+    }
+
+    /**
+     * Determines whether an interrupted analysis is being resumed, from the
+     * optional resumeGeneration tag of the settings file, which --resume on
+     * the command line sets. Models the journal of the interrupted run shows
+     * to be complete are then kept rather than generated again
+     * 
+     * @param settings The settings of the analysis
+     * @return True if the analysis is being resumed
+     */
+    public static boolean isResuming(AnalysisSettings settings)
+    {
+	return Boolean.parseBoolean(settings.getOptionalParam("resumeGeneration", "false"));
+    }
+
+    /**
+     * Submits the generation of one model
+     * 
+     * @param modelName Name of the model, used to report a failure
+     * @param task Task writing the model
+     */
+    public void submit(final String modelName, final Callable<Void> task)
+    {
+	final long taskNumber = this.submitted++;
+
+	if (this.executor == null)
+	{
+	    run(taskNumber, modelName, task);
+	}
+	else
+	{
+	    this.executor.execute(new Runnable()
+	    {
+		public void run()
+		{
+		    ModelGenerationRunner.this.run(taskNumber, modelName, task);
+		}
+	    });
+	}
+    }
+
+    /**
+     * Runs one task on the calling thread, recording its failure if it does
+     * not complete. Safe to call from any number of threads at once
+     * 
+     * @param order Position of the task in the analysis, used to list
+     *            failures in order
+     * @param modelName Name of the model, used to report a failure
+     * @param task Task writing the model
+     * @return True if the model was generated, false if it failed
+     */
+    public boolean run(long order, String modelName, Callable<Void> task)
+    {
+	this.attempted.incrementAndGet();
+	try
+	{
+	    task.call();
+	    return true;
+	}
+	catch (Exception e)
+	{
+	    this.recordFailure(order, modelName + ": " + e);
+	    return false;
+	}
+    }
+
+    /**
+     * Records a failure that prevented one or more models being attempted,
+     * such as a sample file that could not be read
+     * 
+     * @param order Position of the failed work in the analysis
+     * @param description What could not be generated, and why
+     */
+    public void recordFailure(long order, String description)
+    {
+	synchronized (this.failures)
+	{
+	    this.failures.put(order, description);
+	}
+    }
+
+    /**
+     * Waits for all submitted models to be generated, then reports any that
+     * failed
+     * 
+     * @return True if every model was generated, false if any failed
+     */
+    public boolean finish()
+    {
+	if (this.executor != null)
+	{
+	    this.executor.shutdown();
+	    try
+	    {
+		while (!this.executor.awaitTermination(1, TimeUnit.MINUTES))
+		{
+		    // Keep waiting - large analyses can take some time
+		}
+	    }
+	    catch (InterruptedException e)
+	    {
+		this.executor.shutdownNow();
+		Thread.currentThread().interrupt();
+		this.recordFailure(Long.MAX_VALUE, "Model generation was interrupted");
+	    }
+	}
+
+	synchronized (this.failures)
+	{
+	    if (this.failures.isEmpty())
+	    {
+		return true;
+	    }
+
+	    System.out.println(this.failures.size() + " failures generating " + this.attempted.get()
+		    + " model files:");
+	    for (String failure : this.failures.values())
+	    {
+		System.out.println("  " + failure);
+	    }
+	    return false;
+	}
+    }
+}
@@ -0,0 +1,329 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * \brief Append-only journal of the models completed in an analysis, so an
+ * interrupted run can be resumed
+ * 
+ * Each model is added to Models_Journal.csv once its file is closed, with its
+ * sample number, path, size, CRC-32 checksum and parameter values, as one
+ * line ending in a checksum of the line itself. A run stopped at any point
+ * leaves a journal of whole lines, apart perhaps from a last line cut short,
+ * which its checksum shows to be incomplete.
+ * 
+ * When a run is resumed, the journal is read again and further models are
+ * appended to it. A model is kept only if the journal lists it with the same
+ * sample number and values, and its file still has the size and checksum
+ * journalled, so a file that is missing, or was cut short when the run
+ * stopped, is generated again
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class ModelJournal
+{
+    /**
+     * Name of the journal, in the analysis output folder
+     */
+    static final String JOURNAL_FILE = "Models_Journal.csv";
+
+    /**
+     * Folder the models are written beneath
+     */
+    private final String outputFolder;
+
+    /**
+     * Number of parameter values in each line
+     */
+    private final int numParams;
+
+    /**
+     * Each model journalled by the run being resumed, by path. Empty for a
+     * new run
+     */
+    private final Map<String, ManifestModelSink.Record> journalled =
+	    new HashMap<String, ManifestModelSink.Record>();
+
+    /**
+     * The journal being appended to
+     */
+    private final OutputStream journal;
+
+    /**
+     * Opens the journal of an analysis. A new run starts an empty journal.
+     * A run being resumed reads the journal left by the interrupted run, if
+     * it lists the same parameters, and appends to it
+     * 
+     * @param outputFolder Folder the models and journal are written to
+     * @param analysis Name of the analysis
+     * @param parameters Parameters analysed, in the order their values are
+     *            listed
+     * @param resume Whether an interrupted run is being resumed
+     * @throws IOException if the journal cannot be read or created
+     */
+    public ModelJournal(String outputFolder, String analysis, List<String> parameters,
+	    boolean resume) throws IOException
+    {
+	this.outputFolder = outputFolder;
+	this.numParams = parameters.size();
+
+	StringBuilder header = new StringBuilder("\"Sample\",\"Path\",\"Size\",\"CRC32\"");
+	for (String parameter : parameters)
+	{
+	    header.append(",\"").append(parameter).append("\"");
+	}
+	header.append(",\"Line CRC32\"");
+
+	File journalFile = new File(outputFolder, JOURNAL_FILE);
+	boolean append = resume && this.read(journalFile, header.toString());
+	if (resume && !append)
+	{
+	    System.out.println("No journal of an earlier " + analysis + " run in " + outputFolder
+		    + ", so every model will be generated");
+	}
+
+	this.journal = new FileOutputStream(journalFile, append);
+	if (!append)
+	{
+	    this.write(header.toString());
+	}
+	else if (endsMidLine(journalFile))
+	{
+	    // Appended lines must not join one cut short
+	    this.journal.write('\n');
+	}
+    }
+
+    /**
+     * Reads the journal of the run being resumed, keeping the last whole line
+     * for each model
+     * 
+     * @param journalFile The journal
+     * @param header The first line the journal must have
+     * @return True if the journal exists, and lists the same parameters
+     * @throws IOException if the journal cannot be read
+     */
+    private boolean read(File journalFile, String header) throws IOException
+    {
+	if (!journalFile.exists())
+	{
+	    return false;
+	}
+
+	BufferedReader br = new BufferedReader(new FileReader(journalFile), 1 << 16);
+	try
+	{
+	    if (!header.equals(br.readLine()))
+	    {
+		return false;
+	    }
+	    String line;
+	    while ((line = br.readLine()) != null)
+	    {
+		ManifestModelSink.Record record = this.parse(line);
+		if (record != null)
+		{
+		    this.journalled.put(record.modelPath, record);
+		}
+	    }
+	    return true;
+	}
+	finally
+	{
+	    br.close();
+	}
+    }
+
+    /**
+     * @param line One line of the journal
+     * @return The model the line records, or null if the line is incomplete
+     */
+    private ManifestModelSink.Record parse(String line)
+    {
+	int checksumStart = line.lastIndexOf(',');
+	String[] fields = line.split(",");
+	if (checksumStart < 0 || fields.length != this.numParams + 5
+		|| !fields[fields.length - 1].equals(checksum(line.substring(0, checksumStart))))
+	{
+	    return null;
+	}
+
+	try
+	{
+	    ManifestModelSink.Record record = new ManifestModelSink.Record();
+	    record.sampleNum = Integer.parseInt(fields[0]);
+	    record.modelPath = fields[1];
+	    record.size = Long.parseLong(fields[2]);
+	    record.checksum = Long.parseLong(fields[3], 16);
+	    record.values = new double[this.numParams];
+	    for (int p = 0; p < this.numParams; p++)
+	    {
+		record.values[p] = Double.parseDouble(fields[p + 4]);
+	    }
+	    return record;
+	}
+	catch (NumberFormatException e)
+	{
+	    return null;
+	}
+    }
+
+    /**
+     * @param journalFile The journal
+     * @return True if the last line of the journal was cut short
+     * @throws IOException if the journal cannot be read
+     */
+    private static boolean endsMidLine(File journalFile) throws IOException
+    {
+	RandomAccessFile file = new RandomAccessFile(journalFile, "r");
+	try
+	{
+	    if (file.length() == 0)
+	    {
+		return false;
+	    }
+	    file.seek(file.length() - 1);
+	    return file.read() != '\n';
+	}
+	finally
+	{
+	    file.close();
+	}
+    }
+
+    /**
+     * Finds a model the run being resumed completed, checking its file is
+     * still whole
+     * 
+     * @param record The model to be generated, without its size and checksum
+     * @return The journalled record of the model, or null if it must be
+     *         generated
+     */
+    ManifestModelSink.Record findComplete(ManifestModelSink.Record record)
+    {
+	ManifestModelSink.Record journalledRecord = this.journalled.get(record.modelPath);
+	if (journalledRecord == null || journalledRecord.sampleNum != record.sampleNum
+		|| !Arrays.equals(journalledRecord.values, record.values))
+	{
+	    return null;
+	}
+
+	File modelFile = new File(this.outputFolder + "/" + record.modelPath);
+	if (modelFile.length() != journalledRecord.size)
+	{
+	    return null;
+	}
+	try
+	{
+	    CRC32 crc = new CRC32();
+	    InputStream in = new FileInputStream(modelFile);
+	    try
+	    {
+		byte[] buffer = new byte[1 << 16];
+		int read;
+		while ((read = in.read(buffer)) > 0)
+		{
+		    crc.update(buffer, 0, read);
+		}
+	    }
+	    finally
+	    {
+		in.close();
+	    }
+	    return (crc.getValue() == journalledRecord.checksum) ? journalledRecord : null;
+	}
+	catch (IOException e)
+	{
+	    return null;
+	}
+    }
+
+    /**
+     * Appends a completed model to the journal. The line is written at once,
+     * so it is whole once the call returns, unless the machine itself stops
+     * 
+     * @param record The model, with its size and checksum
+     * @throws IOException if the journal cannot be written
+     */
+    void append(ManifestModelSink.Record record) throws IOException
+    {
+	StringBuilder line = new StringBuilder(128);
+	line.append(record.sampleNum).append(',').append(record.modelPath).append(',')
+		.append(record.size).append(',').append(String.format("%08x", record.checksum));
+	for (double value : record.values)
+	{
+	    line.append(',').append(Double.toString(value));
+	}
+	String lineChecksum = checksum(line.toString());
+	this.write(line.append(',').append(lineChecksum).toString());
+    }
+
+    /**
+     * Writes one line to the journal, in a single write
+     * 
+     * @param line The line, without its line ending
+     * @throws IOException if the journal cannot be written
+     */
+    private void write(String line) throws IOException
+    {
+	byte[] bytes = (line + "\n").getBytes("UTF-8");
+	synchronized (this.journal)
+	{
+	    this.journal.write(bytes);
+	}
+    }
+
+    /**
+     * @param text The text of a line, before its checksum
+     * @return The CRC-32 of the text, as written in the journal
+     */
+    private static String checksum(String text)
+    {
+	CRC32 crc = new CRC32();
+	try
+	{
+	    crc.update(text.getBytes("UTF-8"));
+	}
+	catch (IOException e)
+	{
+	    // UTF-8 is available on every platform
+	    throw new IllegalStateException(e);
+	}
+	return String.format("%08x", crc.getValue());
+    }
+
+    /**
+     * Closes the journal. It is kept once the run is complete, so resuming it
+     * again only rebuilds the manifest
+     * 
+     * @throws IOException if the journal cannot be closed
+     */
+    public void close() throws IOException
+    {
+	synchronized (this.journal)
+	{
+	    this.journal.close();
+	}
+    }
+}
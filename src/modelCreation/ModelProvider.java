@@ -0,0 +1,409 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import sampling.EFASTSample;
+import sampling.OATSample;
+import sampling.ParameterSpace;
+import sampling.SamplingUtilities;
+import xmlFileUtilities.AnalysisSettings;
+import xmlFileUtilities.XMLFileUtilities;
+
+/**
+ * \brief Provides the models of an analysis in memory, for use by other Java
+ * tools, rather than writing them to the analysis output folder
+ * 
+ * The sample is generated when the provider is created, but no model is
+ * produced until it is asked for, either by its position with get, or as the
+ * stream of models is consumed. The stream can be split between threads, so
+ * models may be produced in parallel, and as only the models a consumer pulls
+ * are produced, a slow consumer holds back production rather than models
+ * building up in memory.
+ * 
+ * Models are listed in the order the analysis writes them: by curve, then
+ * parameter, then sample for eFAST, by parameter then sample for robustness
+ * analysis, and by sample for latin-hypercube analysis. Each is described by
+ * the path it would have been written to. Where the sample is generated within
+ * ASPASIA, no model or sample file is written to disk; samples from spartan
+ * are still passed through the files its scripts write. Where the
+ * sampleCacheFolder tag is set, a seeded sample is taken from the cache, or
+ * added to it, as it is when writing the models, so the provider gives the
+ * models of the same sample as an analysis writing them.
+ * 
+ * The provider is closed once done with, closing the writer producing each
+ * model
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class ModelProvider implements Closeable
+{
+    /**
+     * Writer producing each model
+     */
+    private final SBMLModelWriter modelWriter;
+
+    /**
+     * Parameters analysed, in the order of each value set
+     */
+    private final List<String> parameters;
+
+    /**
+     * Folder of the models of each group within the analysis output folder,
+     * or an empty string for the folder itself
+     */
+    private final String[] groupFolders;
+
+    /**
+     * Value sets of each group, one row per model
+     */
+    private final double[][][] groupValueSets;
+
+    /**
+     * Position of the first model of each group, followed by the number of
+     * models
+     */
+    private final int[] groupStarts;
+
+    /**
+     * Creates a provider of the models of groups of value sets
+     * 
+     * @param modelWriter Writer producing each model
+     * @param parameters Parameters analysed, in the order of each value set
+     * @param groupFolders Folder of the models of each group within the
+     *            analysis output folder, or an empty string for the folder
+     *            itself
+     * @param groupValueSets Value sets of each group, one row per model
+     */
+    ModelProvider(SBMLModelWriter modelWriter, List<String> parameters,
+	    List<String> groupFolders, List<double[][]> groupValueSets)
+    {
+	this.modelWriter = modelWriter;
+	this.parameters = Collections.unmodifiableList(new ArrayList<String>(parameters));
+	this.groupFolders = groupFolders.toArray(new String[groupFolders.size()]);
+	this.groupValueSets = groupValueSets.toArray(new double[groupValueSets.size()][][]);
+	this.groupStarts = new int[this.groupValueSets.length + 1];
+	for (int g = 0; g < this.groupValueSets.length; g++)
+	{
+	    this.groupStarts[g + 1] = this.groupStarts[g] + this.groupValueSets[g].length;
+	}
+    }
+
+    /**
+     * Creates the writer set by the sbmlWriter tag of the settings file
+     * 
+     * @param settings The settings of the analysis
+     * @return The writer producing each model
+     * @throws Exception if the settings are not for SBML models, or the
+     *             calibrated model cannot be compiled
+     */
+    private static SBMLModelWriter createModelWriter(AnalysisSettings settings)
+	    throws Exception
+    {
+	String calibratedParamFilePath = settings.getParam("pathToSimulationParameterFile");
+	if (!settings.getParamBoolean("sbmlFormat") || calibratedParamFilePath == null)
+	{
+	    throw new IllegalArgumentException(
+		    "Models can only be provided in memory from a calibrated SBML model");
+	}
+	return WriteParameterFile_SBML.createModelWriter(calibratedParamFilePath,
+		settings.getOptionalParam("sbmlWriter", "template"));
+    }
+
+    /**
+     * Returns the folder spartan's scripts and sample files are written to,
+     * creating it only where spartan is used
+     * 
+     * @param settings The settings of the analysis
+     * @param analysis Name of the analysis, which names its output folder
+     * @return The folder for spartan's files
+     */
+    private static String getSpartanFolder(AnalysisSettings settings, String analysis)
+    {
+	String spartanFolder = settings.getParam("parameterFileOutputFolder") + "/" + analysis
+		+ "/";
+	if (SamplingUtilities.useSpartan(settings))
+	{
+	    new File(spartanFolder).mkdirs();
+	}
+	return spartanFolder;
+    }
+
+    /**
+     * Creates the provider of the models of a latin-hypercube analysis,
+     * generating its sample with the algorithm and sampler set in the settings
+     * file
+     * 
+     * @param settings The settings of the analysis
+     * @return The provider of the models
+     * @throws Exception if the settings are incomplete, or the sample cannot
+     *             be generated
+     */
+    public static ModelProvider forLHC(AnalysisSettings settings) throws Exception
+    {
+	if (!XMLFileUtilities.checkParameterInfo(settings, "LHC"))
+	{
+	    throw new IllegalArgumentException(
+		    "The parameter information in the settings file is incomplete");
+	}
+	double[][] sample = SamplingUtilities.createLHCSampler(settings,
+		getSpartanFolder(settings, "LHC"), settings.getParam("algorithm")).generateSample(
+		new ParameterSpace(settings), Integer.parseInt(settings.getParam(
+			"numberparameterSamples")));
+	return new ModelProvider(createModelWriter(settings), settings.getParametersAnalysed(),
+		Collections.singletonList(""), Collections.singletonList(sample));
+    }
+
+    /**
+     * Creates the provider of the models of an eFAST analysis, generating its
+     * sample with the sampler set in the settings file. The dummy parameter
+     * eFAST needs is added, as it is when writing the models
+     * 
+     * @param settings The settings of the analysis
+     * @return The provider of the models
+     * @throws Exception if the settings are incomplete, or the sample cannot
+     *             be generated
+     */
+    public static ModelProvider forEFAST(AnalysisSettings settings) throws Exception
+    {
+	if (!XMLFileUtilities.checkParameterInfo(settings, "eFAST"))
+	{
+	    throw new IllegalArgumentException(
+		    "The parameter information in the settings file is incomplete");
+	}
+	AnalysisSettings efastSettings = settings.withDummy();
+	int curves = Integer.parseInt(settings.getParam("efastCurves"));
+	EFASTSample sample = SamplingUtilities.createEFASTSampler(efastSettings,
+		getSpartanFolder(settings, "eFAST")).generateSample(
+		new ParameterSpace(efastSettings), curves,
+		Integer.parseInt(settings.getParam("efastCurveSamples")));
+
+	List<String> groupFolders = new ArrayList<String>();
+	List<double[][]> groupValueSets = new ArrayList<double[][]>();
+	List<String> parameters = efastSettings.getParametersAnalysed();
+	for (int c = 1; c <= curves; c++)
+	{
+	    for (int p = 0; p < parameters.size(); p++)
+	    {
+		groupFolders.add(c + "/" + parameters.get(p));
+		groupValueSets.add(sample.getCurveSample(c, p));
+	    }
+	}
+	return new ModelProvider(createModelWriter(settings), parameters, groupFolders,
+		groupValueSets);
+    }
+
+    /**
+     * Creates the provider of the models of a robustness analysis, sweeping
+     * each parameter with the sampler set in the settings file
+     * 
+     * @param settings The settings of the analysis
+     * @return The provider of the models
+     * @throws Exception if the settings are incomplete, or the sweeps cannot
+     *             be generated
+     */
+    public static ModelProvider forRobustness(AnalysisSettings settings) throws Exception
+    {
+	if (!XMLFileUtilities.checkParameterInfo(settings, "OAT"))
+	{
+	    throw new IllegalArgumentException(
+		    "The parameter information in the settings file is incomplete");
+	}
+	OATSample sample = SamplingUtilities.createOATSampler(settings,
+		getSpartanFolder(settings, "Robustness"))
+		.generateSample(settings);
+
+	List<String> groupFolders = new ArrayList<String>();
+	List<double[][]> groupValueSets = new ArrayList<double[][]>();
+	List<String> parameters = settings.getParametersAnalysed();
+	for (int p = 0; p < parameters.size(); p++)
+	{
+	    groupFolders.add(parameters.get(p));
+	    groupValueSets.add(sample.getSweep(p));
+	}
+	return new ModelProvider(createModelWriter(settings), parameters, groupFolders,
+		groupValueSets);
+    }
+
+    /**
+     * @return Number of models in the analysis
+     */
+    public int size()
+    {
+	return this.groupStarts[this.groupValueSets.length];
+    }
+
+    /**
+     * @return Parameters analysed, in the order of each value set
+     */
+    public List<String> getParameters()
+    {
+	return this.parameters;
+    }
+
+    /**
+     * Produces one model
+     * 
+     * @param index Position of the model among all those of the analysis, from
+     *            0
+     * @return The model, with the sample it is generated from
+     * @throws IOException if the model cannot be produced
+     * @throws IndexOutOfBoundsException if there is no such model
+     */
+    public GeneratedModel get(int index) throws IOException
+    {
+	if (index < 0 || index >= this.size())
+	{
+	    throw new IndexOutOfBoundsException("Model " + index + " of " + this.size());
+	}
+
+	// The group holding the model is the last to start at or before it
+	int group = Arrays.binarySearch(this.groupStarts, index);
+	if (group < 0)
+	{
+	    group = -group - 2;
+	}
+	while (this.groupStarts[group + 1] == index)
+	{
+	    // Skip any empty groups starting at the same position
+	    group++;
+	}
+	int sample = index - this.groupStarts[group];
+
+	double[] valueSet = this.groupValueSets[group][sample];
+	Map<String, Double> parameterValMap = new HashMap<String, Double>();
+	for (int p = 0; p < this.parameters.size(); p++)
+	{
+	    parameterValMap.put(this.parameters.get(p), valueSet[p]);
+	}
+
+	String modelPath = "paramFile" + (sample + 1) + ".xml";
+	if (this.groupFolders[group].length() > 0)
+	{
+	    modelPath = this.groupFolders[group] + "/" + modelPath;
+	}
+
+	ByteArrayOutputStream model = new ByteArrayOutputStream(8192);
+	this.modelWriter.writeModel(parameterValMap, model);
+	return new GeneratedModel(index, sample + 1, modelPath,
+		Collections.unmodifiableMap(parameterValMap), model.toByteArray());
+    }
+
+    /**
+     * @return Stream of every model in the analysis, each produced as it is
+     *         consumed. Call parallel on the stream to produce models on
+     *         several threads. A model that cannot be produced ends the stream
+     *         with an UncheckedIOException
+     */
+    public Stream<GeneratedModel> stream()
+    {
+	return StreamSupport.stream(this.spliterator(), false);
+    }
+
+    /**
+     * @return Spliterator over every model in the analysis, producing each as
+     *         it is advanced to
+     */
+    public Spliterator<GeneratedModel> spliterator()
+    {
+	return new ModelSpliterator(0, this.size());
+    }
+
+    /**
+     * Closes the writer producing each model. No model can be produced once
+     * the provider is closed
+     * 
+     * @throws IOException if the writer cannot be closed
+     */
+    public void close() throws IOException
+    {
+	this.modelWriter.close();
+    }
+
+    /**
+     * \brief Produces the models in a range of positions, splitting the range
+     * in two for each thread taking part
+     */
+    private class ModelSpliterator implements Spliterator<GeneratedModel>
+    {
+	/**
+	 * Position of the next model to produce
+	 */
+	private int next;
+
+	/**
+	 * End of the range, exclusive
+	 */
+	private final int end;
+
+	/**
+	 * @param start First model in the range
+	 * @param end End of the range, exclusive
+	 */
+	ModelSpliterator(int start, int end)
+	{
+	    this.next = start;
+	    this.end = end;
+	}
+
+	public boolean tryAdvance(Consumer<? super GeneratedModel> action)
+	{
+	    if (this.next >= this.end)
+	    {
+		return false;
+	    }
+	    try
+	    {
+		action.accept(get(this.next++));
+	    }
+	    catch (IOException e)
+	    {
+		throw new UncheckedIOException(e);
+	    }
+	    return true;
+	}
+
+	public Spliterator<GeneratedModel> trySplit()
+	{
+	    int middle = (this.next + this.end) >>> 1;
+	    if (middle <= this.next)
+	    {
+		return null;
+	    }
+	    ModelSpliterator firstHalf = new ModelSpliterator(this.next, middle);
+	    this.next = middle;
+	    return firstHalf;
+	}
+
+	public long estimateSize()
+	{
+	    return this.end - this.next;
+	}
+
+	public int characteristics()
+	{
+	    return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+    }
+}
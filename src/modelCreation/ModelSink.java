@@ -0,0 +1,66 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * \brief Destination of the model files generated in an analysis
+ * 
+ * Models are named by their path within the analysis output folder, such as
+ * 1/k1/paramFile3.xml, whether they are written as separate files, as
+ * entries of one archive, or appended to a segment store. The sink to use is
+ * set by the modelOutput tag of the settings file, and is created by
+ * WriteParameterFile_SBML.createModelSink. Models may be written from several
+ * threads at once. A model repeating another already written is added with
+ * linkModel, which each sink holds as cheaply as its output allows
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public interface ModelSink
+{
+    /**
+     * Opens the stream one model is written to. The model is complete once
+     * the stream is closed
+     * 
+     * @param modelPath Path of the model within the analysis output folder
+     * @param sampleNum Number of the sample the model is generated from, from
+     *            1
+     * @param parameterValMap Map of parameter name to sampled value
+     * @return Stream the model is written to, or null if the model need not be
+     *         written, as it was completed by an interrupted run being resumed
+     * @throws IOException if the model cannot be created
+     */
+    public OutputStream openModel(String modelPath, int sampleNum,
+	    Map<String, Double> parameterValMap) throws IOException;
+
+    /**
+     * Adds a model identical to one already written under another path,
+     * without writing it again, where the output allows. Called only once the
+     * model it repeats is complete
+     * 
+     * @param modelPath Path of the model within the analysis output folder
+     * @param sampleNum Number of the sample the model is generated from, from
+     *            1
+     * @param parameterValMap Map of parameter name to sampled value
+     * @param existingPath Path of the identical model already written
+     * @throws IOException if the model cannot be added
+     */
+    public void linkModel(String modelPath, int sampleNum,
+	    Map<String, Double> parameterValMap, String existingPath) throws IOException;
+
+    /**
+     * Completes the output, once every model has been written
+     * 
+     * @throws IOException if the output cannot be completed
+     */
+    public void close() throws IOException;
+}
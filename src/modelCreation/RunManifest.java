@@ -0,0 +1,190 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * \brief The manifest of a run, listing every model generated with its
+ * sample values and location
+ * 
+ * Loaded from the Models_Manifest.bin written by ManifestModelSink, which is
+ * read whole in one read and then decoded in memory. Models are numbered from
+ * 0 in the order the manifest lists them: by group, then sample number
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class RunManifest
+{
+    /**
+     * Name of the analysis
+     */
+    private final String analysis;
+
+    /**
+     * Parameters analysed, in the order their values are listed
+     */
+    private final List<String> parameters;
+
+    /**
+     * Number of the sample each model is generated from, from 1
+     */
+    private final int[] sampleNums;
+
+    /**
+     * Path of each model within the analysis output folder
+     */
+    private final String[] modelPaths;
+
+    /**
+     * Value of each parameter analysed, for each model
+     */
+    private final double[][] values;
+
+    /**
+     * Size of each model, in bytes
+     */
+    private final long[] sizes;
+
+    /**
+     * CRC-32 of each model
+     */
+    private final long[] checksums;
+
+    /**
+     * Loads the manifest of a run
+     * 
+     * @param manifestPath Full path to Models_Manifest.bin
+     * @throws IOException if the file cannot be read, or is not a manifest
+     */
+    public RunManifest(String manifestPath) throws IOException
+    {
+	DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+		Files.readAllBytes(Paths.get(manifestPath))));
+
+	if (in.readLong() != ManifestModelSink.MANIFEST_MAGIC || in.readInt() != 1)
+	{
+	    throw new IOException(manifestPath + " is not an ASPASIA run manifest");
+	}
+	this.analysis = in.readUTF();
+
+	List<String> parametersRead = new ArrayList<String>();
+	int numParams = in.readInt();
+	for (int p = 0; p < numParams; p++)
+	{
+	    parametersRead.add(in.readUTF());
+	}
+	this.parameters = Collections.unmodifiableList(parametersRead);
+
+	int numModels = in.readInt();
+	this.sampleNums = new int[numModels];
+	this.modelPaths = new String[numModels];
+	this.values = new double[numModels][numParams];
+	this.sizes = new long[numModels];
+	this.checksums = new long[numModels];
+	for (int m = 0; m < numModels; m++)
+	{
+	    this.sampleNums[m] = in.readInt();
+	    this.modelPaths[m] = in.readUTF();
+	    for (int p = 0; p < numParams; p++)
+	    {
+		this.values[m][p] = in.readDouble();
+	    }
+	    this.sizes[m] = in.readLong();
+	    this.checksums[m] = in.readInt() & 0xFFFFFFFFL;
+	}
+    }
+
+    /**
+     * @return Name of the analysis
+     */
+    public String getAnalysis()
+    {
+	return this.analysis;
+    }
+
+    /**
+     * @return Parameters analysed, in the order their values are listed
+     */
+    public List<String> getParameters()
+    {
+	return this.parameters;
+    }
+
+    /**
+     * @return Number of models in the manifest
+     */
+    public int size()
+    {
+	return this.modelPaths.length;
+    }
+
+    /**
+     * @param model Number of the model in the manifest, from 0
+     * @return Number of the sample the model is generated from, from 1
+     */
+    public int getSampleNum(int model)
+    {
+	return this.sampleNums[model];
+    }
+
+    /**
+     * @param model Number of the model in the manifest, from 0
+     * @return The curve and parameter, sweep, matrix or trajectory the model
+     *         belongs to, or an empty string if the analysis has no groups
+     */
+    public String getGroup(int model)
+    {
+	return ManifestModelSink.getGroup(this.modelPaths[model]);
+    }
+
+    /**
+     * @param model Number of the model in the manifest, from 0
+     * @return Path of the model within the analysis output folder
+     */
+    public String getModelPath(int model)
+    {
+	return this.modelPaths[model];
+    }
+
+    /**
+     * @param model Number of the model in the manifest, from 0
+     * @return Value of each parameter analysed, in the order of getParameters.
+     *         The array is shared, and should not be changed
+     */
+    public double[] getValues(int model)
+    {
+	return this.values[model];
+    }
+
+    /**
+     * @param model Number of the model in the manifest, from 0
+     * @return Size of the model, in bytes
+     */
+    public long getSize(int model)
+    {
+	return this.sizes[model];
+    }
+
+    /**
+     * @param model Number of the model in the manifest, from 0
+     * @return CRC-32 of the model
+     */
+    public long getChecksum(int model)
+    {
+	return this.checksums[model];
+    }
+}
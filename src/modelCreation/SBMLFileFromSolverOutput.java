@@ -12,6 +12,7 @@ import java.util.Map;
 
 import org.apache.commons.io.input.ReversedLinesFileReader;
 
+import xmlFileUtilities.AnalysisSettings;
 import xmlFileUtilities.FileCreationUtilities;
 import xmlFileUtilities.XMLFileUtilities;
 
@@ -54,31 +55,40 @@ public class SBMLFileFromSolverOutput
      */
     public Map<String, Double> parameterValMap;
 
+    /**
+     * The settings of the intervention
+     */
+    final AnalysisSettings settings;
+
     /**
      * Constructor - reads in the values from the settings file then creates the
      * new SBML model from Solver output, including the intervention
      * 
-     * @param settingsFile Full path to the location of the XML settings file
+     * @param settings The settings of the intervention, read from the XML
+     *            settings file
      */
-    public SBMLFileFromSolverOutput(String settingsFile)
+    public SBMLFileFromSolverOutput(AnalysisSettings settings)
     {
-	// Read settings file
-	XMLFileUtilities.readSettingsFile(settingsFile);
+	this.settings = settings;
 
 	// Get the path to the parameter files
-	this.sbmlRunResultsFile = XMLFileUtilities.getParam("sbmlRunResultsFile");
+	this.sbmlRunResultsFile = settings.getParam("sbmlRunResultsFile");
 
 	// Folder where you want adapted parameter files to be stored
-	this.paramFileOutputFolder = XMLFileUtilities.getParam("parameterFileOutputFolder");
+	this.paramFileOutputFolder = settings.getParam("parameterFileOutputFolder");
 
 	// Get the file name for the new parameter file
-	this.newParamFileName = XMLFileUtilities.getParam("newParamFileName");
+	this.newParamFileName = settings.getParam("newParamFileName");
 
 	// The original, calibrated parameter file
-	this.paramsMetaDataFilePath = XMLFileUtilities.getParam("pathToSimulationParameterFile");
+	this.paramsMetaDataFilePath = settings.getParam("pathToSimulationParameterFile");
 
+	// Some of the species and parameter values will come from the the
+	// results file, whereas others will be in the settings file. Each of
+	// these must have a value to set
 	if (this.sbmlRunResultsFile == null || this.paramFileOutputFolder == null
-	        || this.newParamFileName == null || this.paramsMetaDataFilePath == null)
+		|| this.newParamFileName == null || this.paramsMetaDataFilePath == null
+		|| !XMLFileUtilities.checkParameterInfo(settings, "SBMLMod"))
 	{
 	    System.out.println("Error in Settings File. Address these and run ASPASIA again");
 	}
@@ -88,13 +98,6 @@ public class SBMLFileFromSolverOutput
 	    // Make output folder
 	    new File(this.paramFileOutputFolder).mkdirs();
 
-	    // Some of the species and parameter values will come from the the
-	    // results file, whereas others
-	    // will be in the settings file. Thus we need to read in the
-	    // parameter
-	    // info from the file
-	    XMLFileUtilities.readParameterInfo("SBMLMod");
-
 	    this.newModelFromSteadyState();
 
 	    System.out.println("New SBML Model File Created");
@@ -133,23 +136,23 @@ public class SBMLFileFromSolverOutput
 
 	    // Now we need to change some of the values in the map, to those in
 	    // the settings file
-	    for (int param = 0; param < XMLFileUtilities.parametersAnalysed.size(); param++)
+	    for (int param = 0; param < this.settings.getParametersAnalysed().size(); param++)
 	    {
-		String paramToChange = XMLFileUtilities.parametersAnalysed.get(param);
+		String paramToChange = this.settings.getParametersAnalysed().get(param);
 		if (this.parameterValMap.containsKey(paramToChange))
 		{
 		    // Change the value
 		    this.parameterValMap.remove(paramToChange);
 		    this.parameterValMap.put(paramToChange,
-			    XMLFileUtilities.sbmlSetValues.get(param));
+			    this.settings.getSbmlSetValues().get(param));
 		}
 	    }
 
 	    // Now create the SBML file
 	    // Note the 0 on param file number - won't be read so not a worry
 	    WriteParameterFile_SBML.writeSimParameterFiles(this.paramsMetaDataFilePath,
-		    parameterValMap, XMLFileUtilities.parametersAnalysed,
-		    XMLFileUtilities.parameterType, this.paramFileOutputFolder, 0, "SBMLMod",
+		    parameterValMap, this.settings.getParametersAnalysed(),
+		    this.settings.getParameterType(), this.paramFileOutputFolder, 0, "SBMLMod",
 		    this.newParamFileName);
 
 	}
@@ -0,0 +1,344 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * \brief Compiled, immutable copy of a calibrated SBML model
+ * 
+ * The calibrated model is parsed and rebuilt once, exactly as
+ * WriteParameterFile_SBML does for each sample, and serialised. The position of
+ * every listOfParameters value and listOfSpecies initialConcentration attribute
+ * in that output is recorded, so each sample only has to write the unchanged
+ * fragments of the model with its own values in those slots. The bytes written
+ * are identical to those produced by re-parsing the model for every sample.
+ * 
+ * As the template is never changed once built, one instance can be shared by
+ * every sample, and by every thread, in an analysis
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SBMLModelTemplate implements SBMLModelWriter
+{
+    /**
+     * Charset the model transformer writes in, and in which sampled values are
+     * encoded
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The unchanged parts of the serialised model. Slot i sits between
+     * fragment i and fragment i+1
+     */
+    private final byte[][] fragments;
+
+    /**
+     * The id of the parameter or species each slot belongs to
+     */
+    private final String[] slotIds;
+
+    /**
+     * The attribute each slot holds - value or initialConcentration
+     */
+    private final String[] slotAttributes;
+
+    /**
+     * The calibrated value of each slot, exactly as the transformer writes it
+     */
+    private final byte[][] calibratedValues;
+
+    /**
+     * Parses the calibrated SBML model and compiles the template used to write
+     * each sampled model
+     * 
+     * @param calibratedParamFilePath Full path to the simulation parameter file
+     *            at calibrated values
+     * @throws Exception if the model cannot be read, or its serialised form
+     *             cannot be split into slots
+     */
+    public SBMLModelTemplate(String calibratedParamFilePath) throws Exception
+    {
+	// Build the model with nothing swapped in - this is the calibrated
+	// model as it would be written by WriteParameterFile_SBML
+	Document docWriting = WriteParameterFile_SBML.buildModelDocument(calibratedParamFilePath,
+		new HashMap<String, Double>());
+
+	List<Element> slotElements = new ArrayList<Element>();
+	List<String> attributes = new ArrayList<String>();
+	findSlots(docWriting.getDocumentElement(), slotElements, attributes);
+
+	byte[] calibrated = serialise(docWriting);
+
+	// Choose a marker that cannot be confused with anything in the model
+	String marker = "ASPASIA_SLOT_";
+	while (indexOf(calibrated, marker.getBytes(UTF8), 0) >= 0)
+	{
+	    marker = marker + "_";
+	}
+
+	// Swap each slot for a numbered marker, then serialise again to find
+	// where the slots sit in the output
+	this.slotIds = new String[slotElements.size()];
+	this.slotAttributes = new String[slotElements.size()];
+	for (int s = 0; s < slotElements.size(); s++)
+	{
+	    Element slot = slotElements.get(s);
+	    this.slotIds[s] = slot.getAttribute("id");
+	    this.slotAttributes[s] = attributes.get(s);
+	    slot.setAttribute(attributes.get(s), marker + s + "_");
+	}
+	byte[] marked = serialise(docWriting);
+
+	// Split the marked output into the fragments between slots, reading the
+	// calibrated value for each slot from the unmarked output
+	this.fragments = new byte[slotElements.size() + 1][];
+	this.calibratedValues = new byte[slotElements.size()][];
+	byte[] markerBytes = marker.getBytes(UTF8);
+	int markedPos = 0;
+	int calibratedPos = 0;
+	for (int s = 0; s < slotElements.size(); s++)
+	{
+	    byte[] slotMarker = (marker + s + "_").getBytes(UTF8);
+	    int found = indexOf(marked, slotMarker, markedPos);
+	    if (found < 0 || indexOf(marked, markerBytes, markedPos) != found)
+	    {
+		throw new IllegalStateException("Could not locate the value of "
+			+ this.slotIds[s] + " in the compiled model " + calibratedParamFilePath);
+	    }
+	    this.fragments[s] = Arrays.copyOfRange(marked, markedPos, found);
+
+	    // The calibrated output holds the same fragment, followed by the
+	    // calibrated value up to the closing quote of the attribute
+	    calibratedPos = calibratedPos + this.fragments[s].length;
+	    int valueEnd = calibratedPos;
+	    while (valueEnd < calibrated.length && calibrated[valueEnd] != '"')
+	    {
+		valueEnd++;
+	    }
+	    this.calibratedValues[s] = Arrays.copyOfRange(calibrated, calibratedPos, valueEnd);
+	    calibratedPos = valueEnd;
+	    markedPos = found + slotMarker.length;
+	}
+	this.fragments[slotElements.size()] = Arrays.copyOfRange(marked, markedPos, marked.length);
+
+	// Check the template reproduces the calibrated model exactly
+	ByteArrayOutputStream check = new ByteArrayOutputStream(calibrated.length);
+	this.writeModel(Collections.<String, Double> emptyMap(), check);
+	if (!Arrays.equals(check.toByteArray(), calibrated))
+	{
+	    throw new IllegalStateException("Compiled model template does not reproduce "
+		    + calibratedParamFilePath);
+	}
+    }
+
+    /**
+     * Finds every attribute that a sampled value may be written to, in
+     * document order: the value of each parameter in a listOfParameters and
+     * the initialConcentration of each species in a listOfSpecies. These are
+     * the attributes set by WriteParameterFile_SBML.findAndSetTagValues
+     * 
+     * @param node The element being searched
+     * @param slotElements List the elements holding a slot are added to
+     * @param attributes List the name of the attribute in each slot is added
+     *            to
+     */
+    private static void findSlots(Element node, List<Element> slotElements,
+	    List<String> attributes)
+    {
+	String slotAttribute = null;
+	if (node.getNodeName().equals("listOfParameters"))
+	{
+	    slotAttribute = "value";
+	}
+	else if (node.getNodeName().equals("listOfSpecies"))
+	{
+	    slotAttribute = "initialConcentration";
+	}
+
+	NodeList children = node.getChildNodes();
+	for (int c = 0; c < children.getLength(); c++)
+	{
+	    if (children.item(c).getNodeType() == Node.ELEMENT_NODE)
+	    {
+		Element child = (Element) children.item(c);
+		if (slotAttribute != null && child.hasAttribute(slotAttribute))
+		{
+		    slotElements.add(child);
+		    attributes.add(slotAttribute);
+		}
+		findSlots(child, slotElements, attributes);
+	    }
+	}
+    }
+
+    /**
+     * @return False, as the model is written in many small pieces, so file
+     *         streams should be buffered before being passed in
+     */
+    public boolean buffersOutput()
+    {
+	return false;
+    }
+
+    /**
+     * Nothing is held open between models
+     */
+    public void close()
+    {
+    }
+
+    /**
+     * Writes the model to an output stream, with the parameters and species
+     * in the map taking their sampled value and all others their calibrated
+     * value
+     * 
+     * @param parameterValMap Map of parameter/species name to sampled value
+     * @param out Stream the model is written to. This is not closed
+     * @throws IOException if the model cannot be written
+     */
+    public void writeModel(Map<String, Double> parameterValMap, OutputStream out)
+	    throws IOException
+    {
+	for (int s = 0; s < this.slotIds.length; s++)
+	{
+	    out.write(this.fragments[s]);
+	    if (parameterValMap.containsKey(this.slotIds[s]))
+	    {
+		out.write(Double.toString(parameterValMap.get(this.slotIds[s])).getBytes(UTF8));
+	    }
+	    else
+	    {
+		out.write(this.calibratedValues[s]);
+	    }
+	}
+	out.write(this.fragments[this.slotIds.length]);
+    }
+
+    /**
+     * Writes the model into a byte array
+     * 
+     * @param parameterValMap Map of parameter/species name to sampled value
+     * @return The bytes of the SBML model
+     */
+    public byte[] toByteArray(Map<String, Double> parameterValMap)
+    {
+	try
+	{
+	    ByteArrayOutputStream out = new ByteArrayOutputStream(this.getCalibratedLength());
+	    this.writeModel(parameterValMap, out);
+	    return out.toByteArray();
+	}
+	catch (IOException e)
+	{
+	    // Cannot happen when writing to memory
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    /**
+     * @return Number of value slots in the model
+     */
+    public int getSlotCount()
+    {
+	return this.slotIds.length;
+    }
+
+    /**
+     * @param slot Index of the slot, in document order
+     * @return Id of the parameter or species in that slot
+     */
+    public String getSlotId(int slot)
+    {
+	return this.slotIds[slot];
+    }
+
+    /**
+     * @param slot Index of the slot, in document order
+     * @return The attribute held in that slot - value or initialConcentration
+     */
+    public String getSlotAttribute(int slot)
+    {
+	return this.slotAttributes[slot];
+    }
+
+    /**
+     * @return Size in bytes of the calibrated model as written by the template
+     */
+    public int getCalibratedLength()
+    {
+	int length = 0;
+	for (byte[] fragment : this.fragments)
+	{
+	    length = length + fragment.length;
+	}
+	for (byte[] value : this.calibratedValues)
+	{
+	    length = length + value.length;
+	}
+	return length;
+    }
+
+    /**
+     * Serialises a document with the transformer used for all model files
+     * 
+     * @param docWriting Document to serialise
+     * @return The bytes that would be written to file
+     * @throws Exception if the document cannot be transformed
+     */
+    private static byte[] serialise(Document docWriting) throws Exception
+    {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	WriteParameterFile_SBML.createModelTransformer().transform(new DOMSource(docWriting),
+		new StreamResult(out));
+	return out.toByteArray();
+    }
+
+    /**
+     * Finds the first occurrence of a byte pattern in an array
+     * 
+     * @param data Array being searched
+     * @param pattern Pattern being searched for
+     * @param from Position to start searching from
+     * @return Start of the first match, or -1 if the pattern is not found
+     */
+    private static int indexOf(byte[] data, byte[] pattern, int from)
+    {
+	for (int i = from; i <= data.length - pattern.length; i++)
+	{
+	    int j = 0;
+	    while (j < pattern.length && data[i + j] == pattern[j])
+	    {
+		j++;
+	    }
+	    if (j == pattern.length)
+	    {
+		return i;
+	    }
+	}
+	return -1;
+    }
+}
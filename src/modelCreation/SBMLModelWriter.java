@@ -0,0 +1,49 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * \brief Writes one SBML model for a set of sampled parameter values
+ * 
+ * Implemented by each way ASPASIA has of producing a model from the calibrated
+ * SBML file. The writer to use is set by the sbmlWriter tag of the settings
+ * file, and is created by WriteParameterFile_SBML.createModelWriter. A writer
+ * may hold the calibrated file open, so is closed once every model of the
+ * analysis has been written
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public interface SBMLModelWriter extends Closeable
+{
+    /**
+     * Writes the model to an output stream, with the parameters and species
+     * in the map taking their sampled value and all others their calibrated
+     * value
+     * 
+     * @param parameterValMap Map of parameter/species name to sampled value
+     * @param out Stream the model is written to. This is not closed
+     * @throws IOException if the model cannot be written
+     */
+    public void writeModel(Map<String, Double> parameterValMap, OutputStream out)
+	    throws IOException;
+
+    /**
+     * Whether the writer buffers what it writes itself. A file stream is then
+     * passed to it directly, rather than through a buffer, so the writer can
+     * use the file's channel
+     * 
+     * @return True if the writer buffers its own output
+     */
+    public boolean buffersOutput();
+}
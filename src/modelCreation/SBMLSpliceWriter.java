@@ -0,0 +1,548 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * \brief Writes SBML models by splicing sampled values into the bytes of the
+ * calibrated file
+ * 
+ * The calibrated model is scanned once, recording the byte offsets of the
+ * value of each parameter in a listOfParameters and the initialConcentration
+ * of each species in a listOfSpecies. Each model is then produced by copying
+ * the unchanged byte ranges of the calibrated file, with the sampled values
+ * written in between. No XML is parsed or serialised per model, and the
+ * formatting of the calibrated file is kept exactly.
+ * 
+ * Unchanged ranges are copied from a memory-mapped view of the calibrated
+ * file shared by all threads. Where the model is written to a file, either
+ * through a stream of a model sink that gives its channel (ChannelModelStream)
+ * or straight to a FileOutputStream, large ranges are passed to
+ * FileChannel.transferTo so the operating system can copy them without them
+ * passing through the JVM. Each range written to the channel is passed back to
+ * the sink stream, so the manifest of the run still measures the whole model.
+ * The calibrated file must be in an ASCII compatible encoding, such as UTF-8
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SBMLSpliceWriter implements SBMLModelWriter
+{
+    /**
+     * Unchanged ranges at least this long are transferred between channels
+     * rather than copied through the write buffer
+     */
+    private static final int TRANSFER_THRESHOLD = 16384;
+
+    /**
+     * Size of the buffer used to gather small ranges and sampled values
+     */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Charset sampled values are encoded in
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Open channel on the calibrated file, used as the source of transfers
+     */
+    private final FileChannel calibratedChannel;
+
+    /**
+     * Read-only mapping of the calibrated file
+     */
+    private final MappedByteBuffer calibratedBytes;
+
+    /**
+     * Byte offset of the start of each slot's value
+     */
+    private final int[] slotStarts;
+
+    /**
+     * Byte offset of the end (exclusive) of each slot's value
+     */
+    private final int[] slotEnds;
+
+    /**
+     * The id of the parameter or species each slot belongs to
+     */
+    private final String[] slotIds;
+
+    /**
+     * Scans the calibrated model, recording where each value that can be
+     * sampled sits in the file
+     * 
+     * @param calibratedParamFilePath Full path to the simulation parameter file
+     *            at calibrated values
+     * @throws IOException if the file cannot be read, or is not in an ASCII
+     *             compatible encoding
+     */
+    public SBMLSpliceWriter(String calibratedParamFilePath) throws IOException
+    {
+	// The file is kept open until the writer is closed, as the source of
+	// every transfer
+	RandomAccessFile calibratedFile = new RandomAccessFile(calibratedParamFilePath, "r");
+	this.calibratedChannel = calibratedFile.getChannel();
+	List<int[]> ranges = new ArrayList<int[]>();
+	List<String> ids = new ArrayList<String>();
+	boolean scanned = false;
+	try
+	{
+	    this.calibratedBytes = this.calibratedChannel.map(FileChannel.MapMode.READ_ONLY, 0,
+		    this.calibratedChannel.size());
+
+	    byte[] model = new byte[this.calibratedBytes.capacity()];
+	    this.calibratedBytes.duplicate().get(model);
+
+	    if (model.length >= 2 && (model[0] == 0 || model[1] == 0
+		    || (model[0] & 0xFF) == 0xFE || (model[0] & 0xFF) == 0xFF))
+	    {
+		throw new IOException(calibratedParamFilePath
+			+ " is not in an ASCII compatible encoding, so cannot be spliced");
+	    }
+
+	    scanModel(model, ranges, ids);
+	    scanned = true;
+	}
+	finally
+	{
+	    if (!scanned)
+	    {
+		this.calibratedChannel.close();
+	    }
+	}
+
+	this.slotStarts = new int[ranges.size()];
+	this.slotEnds = new int[ranges.size()];
+	this.slotIds = ids.toArray(new String[ids.size()]);
+	for (int s = 0; s < ranges.size(); s++)
+	{
+	    this.slotStarts[s] = ranges.get(s)[0];
+	    this.slotEnds[s] = ranges.get(s)[1];
+	}
+    }
+
+    /**
+     * Scans the tags of the calibrated file, recording the value of each
+     * parameter whose enclosing element is a listOfParameters, and the
+     * initialConcentration of each species whose enclosing element is a
+     * listOfSpecies. Comments, CDATA sections, processing instructions and the
+     * document type declaration are skipped
+     * 
+     * @param model Bytes of the calibrated file
+     * @param ranges List the start and end offsets of each value are added to
+     * @param ids List the id of the element holding each value is added to
+     * @throws IOException if the file is not well formed enough to scan
+     */
+    private static void scanModel(byte[] model, List<int[]> ranges, List<String> ids)
+	    throws IOException
+    {
+	Deque<String> openElements = new ArrayDeque<String>();
+	int i = 0;
+	while (i < model.length)
+	{
+	    if (model[i] != '<')
+	    {
+		i++;
+	    }
+	    else if (startsWith(model, i, "<!--"))
+	    {
+		i = skipPast(model, i + 4, "-->");
+	    }
+	    else if (startsWith(model, i, "<![CDATA["))
+	    {
+		i = skipPast(model, i + 9, "]]>");
+	    }
+	    else if (startsWith(model, i, "<?"))
+	    {
+		i = skipPast(model, i + 2, "?>");
+	    }
+	    else if (startsWith(model, i, "<!"))
+	    {
+		// Document type declaration, which may have an internal subset
+		int depth = 0;
+		i = i + 2;
+		while (i < model.length && (model[i] != '>' || depth > 0))
+		{
+		    if (model[i] == '[')
+			depth++;
+		    else if (model[i] == ']')
+			depth--;
+		    i++;
+		}
+		i++;
+	    }
+	    else if (startsWith(model, i, "</"))
+	    {
+		openElements.pop();
+		i = skipPast(model, i + 2, ">");
+	    }
+	    else
+	    {
+		i = scanStartTag(model, i + 1, openElements, ranges, ids);
+	    }
+	}
+    }
+
+    /**
+     * Reads one start tag, recording the slot it holds if it is a parameter
+     * or species of interest
+     * 
+     * @param model Bytes of the calibrated file
+     * @param start Offset of the first character of the element name
+     * @param openElements Names of the elements enclosing the tag
+     * @param ranges List the start and end offsets of each value are added to
+     * @param ids List the id of the element holding each value is added to
+     * @return Offset just after the end of the tag
+     * @throws IOException if the tag is not terminated
+     */
+    private static int scanStartTag(byte[] model, int start, Deque<String> openElements,
+	    List<int[]> ranges, List<String> ids) throws IOException
+    {
+	int i = start;
+	while (i < model.length && !isSpace(model[i]) && model[i] != '/' && model[i] != '>')
+	{
+	    i++;
+	}
+	String name = localName(new String(model, start, i - start, UTF8));
+
+	String enclosing = openElements.peek();
+	String slotAttribute = null;
+	if ("listOfParameters".equals(enclosing))
+	{
+	    slotAttribute = "value";
+	}
+	else if ("listOfSpecies".equals(enclosing))
+	{
+	    slotAttribute = "initialConcentration";
+	}
+
+	String id = null;
+	int[] slot = null;
+	boolean selfClosing = false;
+	while (true)
+	{
+	    while (i < model.length && isSpace(model[i]))
+	    {
+		i++;
+	    }
+	    if (i >= model.length)
+	    {
+		throw new IOException("Unterminated tag <" + name + " in calibrated model");
+	    }
+	    if (model[i] == '>')
+	    {
+		i++;
+		break;
+	    }
+	    if (model[i] == '/')
+	    {
+		selfClosing = true;
+		i++;
+		continue;
+	    }
+
+	    // An attribute: name, optional space, =, optional space, quoted value
+	    int nameStart = i;
+	    while (i < model.length && model[i] != '=' && !isSpace(model[i]))
+	    {
+		i++;
+	    }
+	    String attributeName = new String(model, nameStart, i - nameStart, UTF8);
+	    while (i < model.length && model[i] != '"' && model[i] != '\'')
+	    {
+		i++;
+	    }
+	    if (i >= model.length)
+	    {
+		throw new IOException("Unterminated tag <" + name + " in calibrated model");
+	    }
+	    byte quote = model[i];
+	    int valueStart = i + 1;
+	    i = valueStart;
+	    while (i < model.length && model[i] != quote)
+	    {
+		i++;
+	    }
+	    int valueEnd = i;
+	    i++;
+
+	    if (attributeName.equals("id"))
+	    {
+		id = unescape(new String(model, valueStart, valueEnd - valueStart, UTF8));
+	    }
+	    else if (attributeName.equals(slotAttribute))
+	    {
+		slot = new int[] { valueStart, valueEnd };
+	    }
+	}
+
+	if (slot != null && id != null)
+	{
+	    ranges.add(slot);
+	    ids.add(id);
+	}
+	if (!selfClosing)
+	{
+	    openElements.push(name);
+	}
+	return i;
+    }
+
+    /**
+     * @return True, as small ranges are gathered in a buffer of the writer's
+     *         own, and a file stream must be passed in directly for large
+     *         ranges to be transferred to it
+     */
+    public boolean buffersOutput()
+    {
+	return true;
+    }
+
+    /**
+     * Closes the calibrated file. The mapping of the file is released once
+     * it is no longer referenced
+     * 
+     * @throws IOException if the file cannot be closed
+     */
+    public void close() throws IOException
+    {
+	this.calibratedChannel.close();
+    }
+
+    /**
+     * Writes the model to an output stream, with the parameters and species
+     * in the map taking their sampled value and all others their calibrated
+     * value
+     * 
+     * @param parameterValMap Map of parameter/species name to sampled value
+     * @param out Stream the model is written to. This is not closed
+     * @throws IOException if the model cannot be written
+     */
+    public void writeModel(Map<String, Double> parameterValMap, OutputStream out)
+	    throws IOException
+    {
+	FileChannel outChannel = null;
+	ChannelModelStream channelOut = null;
+	if (out instanceof ChannelModelStream)
+	{
+	    channelOut = (ChannelModelStream) out;
+	    outChannel = channelOut.getChannel();
+	}
+	else if (out instanceof FileOutputStream)
+	{
+	    outChannel = ((FileOutputStream) out).getChannel();
+	}
+
+	ByteBuffer source = this.calibratedBytes.duplicate();
+	byte[] buffer = new byte[BUFFER_SIZE];
+	int buffered = 0;
+	int copiedTo = 0;
+
+	for (int s = 0; s <= this.slotIds.length; s++)
+	{
+	    int rangeEnd = (s < this.slotIds.length) ? this.slotStarts[s] : source.capacity();
+
+	    // Unchanged bytes up to the next slot
+	    int length = rangeEnd - copiedTo;
+	    if (outChannel != null && length >= TRANSFER_THRESHOLD)
+	    {
+		flush(buffer, buffered, out, outChannel, channelOut);
+		buffered = 0;
+		transfer(copiedTo, length, outChannel, channelOut);
+	    }
+	    else
+	    {
+		source.position(copiedTo);
+		while (length > 0)
+		{
+		    if (buffered == buffer.length)
+		    {
+			flush(buffer, buffered, out, outChannel, channelOut);
+			buffered = 0;
+		    }
+		    int chunk = Math.min(length, buffer.length - buffered);
+		    source.get(buffer, buffered, chunk);
+		    buffered = buffered + chunk;
+		    length = length - chunk;
+		}
+	    }
+	    copiedTo = rangeEnd;
+
+	    // The sampled value, if this slot is of interest
+	    if (s < this.slotIds.length && parameterValMap.containsKey(this.slotIds[s]))
+	    {
+		byte[] value = Double.toString(parameterValMap.get(this.slotIds[s])).getBytes(UTF8);
+		if (buffered + value.length > buffer.length)
+		{
+		    flush(buffer, buffered, out, outChannel, channelOut);
+		    buffered = 0;
+		}
+		System.arraycopy(value, 0, buffer, buffered, value.length);
+		buffered = buffered + value.length;
+		copiedTo = this.slotEnds[s];
+	    }
+	}
+	flush(buffer, buffered, out, outChannel, channelOut);
+    }
+
+    /**
+     * Transfers a range of the calibrated file straight to the output file
+     * 
+     * @param position Start of the range in the calibrated file
+     * @param length Number of bytes to transfer
+     * @param outChannel Channel of the file being written
+     * @param channelOut Sink stream the channel was taken from, told of the
+     *            range once transferred, or null
+     * @throws IOException if the transfer fails
+     */
+    private void transfer(int position, int length, FileChannel outChannel,
+	    ChannelModelStream channelOut) throws IOException
+    {
+	long done = 0;
+	while (done < length)
+	{
+	    done = done + this.calibratedChannel.transferTo(position + done, length - done,
+		    outChannel);
+	}
+	if (channelOut != null)
+	{
+	    ByteBuffer range = this.calibratedBytes.duplicate();
+	    range.position(position);
+	    range.limit(position + length);
+	    channelOut.written(range);
+	}
+    }
+
+    /**
+     * Writes the gathered bytes to the output
+     * 
+     * @param buffer Buffer of bytes to write
+     * @param length Number of bytes in the buffer
+     * @param out Stream the model is written to
+     * @param outChannel Channel of the stream, if writing to a file
+     * @param channelOut Sink stream the channel was taken from, told of the
+     *            bytes once written to the channel, or null
+     * @throws IOException if the write fails
+     */
+    private static void flush(byte[] buffer, int length, OutputStream out,
+	    FileChannel outChannel, ChannelModelStream channelOut) throws IOException
+    {
+	if (length == 0)
+	{
+	    return;
+	}
+	if (outChannel != null)
+	{
+	    // Write through the channel so the data lands in order with any
+	    // transferred ranges
+	    ByteBuffer data = ByteBuffer.wrap(buffer, 0, length);
+	    while (data.hasRemaining())
+	    {
+		outChannel.write(data);
+	    }
+	    if (channelOut != null)
+	    {
+		channelOut.written(ByteBuffer.wrap(buffer, 0, length));
+	    }
+	}
+	else
+	{
+	    out.write(buffer, 0, length);
+	}
+    }
+
+    /**
+     * @param model Bytes being scanned
+     * @param offset Position to check
+     * @param text ASCII text to look for
+     * @return Whether the bytes at that position match the text
+     */
+    private static boolean startsWith(byte[] model, int offset, String text)
+    {
+	if (offset + text.length() > model.length)
+	{
+	    return false;
+	}
+	for (int c = 0; c < text.length(); c++)
+	{
+	    if (model[offset + c] != text.charAt(c))
+	    {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * @param model Bytes being scanned
+     * @param offset Position to start searching from
+     * @param text ASCII text that ends the current construct
+     * @return Position just after the end of the text
+     * @throws IOException if the text is never found
+     */
+    private static int skipPast(byte[] model, int offset, String text) throws IOException
+    {
+	for (int i = offset; i < model.length; i++)
+	{
+	    if (startsWith(model, i, text))
+	    {
+		return i + text.length();
+	    }
+	}
+	throw new IOException("Calibrated model ends before the closing " + text);
+    }
+
+    /**
+     * @param b Byte being checked
+     * @return Whether the byte is XML whitespace
+     */
+    private static boolean isSpace(byte b)
+    {
+	return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * @param name Element name, possibly with a namespace prefix
+     * @return The name without any prefix
+     */
+    private static String localName(String name)
+    {
+	return name.substring(name.indexOf(':') + 1);
+    }
+
+    /**
+     * Replaces the predefined XML entities in an attribute value
+     * 
+     * @param value Attribute value as it appears in the file
+     * @return The value the attribute holds
+     */
+    private static String unescape(String value)
+    {
+	if (value.indexOf('&') < 0)
+	{
+	    return value;
+	}
+	return value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+		.replace("&apos;", "'").replace("&amp;", "&");
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * \brief Appends every generated model to a few large segment files, with an
+ * index of where each model is held
+ * 
+ * Each model is held in memory until its stream is closed, then appended to
+ * the current segment, Models_[n].seg, with a fixed-size record added to
+ * Models.idx giving its segment, offset and length. A new segment is started
+ * once the current one would grow beyond the segment size, so every segment
+ * can be memory-mapped whole. Models_Index.csv lists the sample number and
+ * path of each model, in the same order as the records of Models.idx.
+ * 
+ * Models are appended in the order they are completed, and a record is only
+ * written once its model has been, so the index never refers to data that is
+ * missing. A model repeating one already held is only given a record of its
+ * own. The store is read by SegmentModelStore
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SegmentModelSink implements ModelSink
+{
+    /**
+     * Marks the start of the index file
+     */
+    static final long INDEX_MAGIC = 0x4153504153454731L;
+
+    /**
+     * Length of the header of the index file
+     */
+    static final int INDEX_HEADER_BYTES = 16;
+
+    /**
+     * Length of the record of each model in the index file: segment (int),
+     * length (int) and offset (long)
+     */
+    static final int INDEX_RECORD_BYTES = 16;
+
+    /**
+     * Folder the store is written to
+     */
+    private final String storeFolder;
+
+    /**
+     * Largest size of each segment, in bytes
+     */
+    private final long segmentBytes;
+
+    /**
+     * The segment being appended to
+     */
+    private FileChannel segment;
+
+    /**
+     * Number of the segment being appended to, from 0
+     */
+    private int segmentNum = -1;
+
+    /**
+     * Number of bytes in the segment being appended to
+     */
+    private long segmentPosition;
+
+    /**
+     * Index of the segment, offset and length of each model
+     */
+    private final DataOutputStream index;
+
+    /**
+     * Segment, length and offset of each model, by path, so a model repeating
+     * one can find it
+     */
+    private final Map<String, long[]> locations = new HashMap<String, long[]>();
+
+    /**
+     * Sample number and path of each model, in index order
+     */
+    private final BufferedWriter modelList;
+
+    /**
+     * Creates a sink appending models to segments in a folder
+     * 
+     * @param storeFolder Folder the store is written to
+     * @param segmentBytes Largest size of each segment, in bytes. Models
+     *            larger than this are held in a segment of their own
+     * @throws IOException if the store cannot be created
+     */
+    public SegmentModelSink(String storeFolder, long segmentBytes) throws IOException
+    {
+	this.storeFolder = storeFolder;
+	this.segmentBytes = Math.min(segmentBytes, Integer.MAX_VALUE);
+
+	this.index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+		storeFolder + "/Models.idx")));
+	this.index.writeLong(INDEX_MAGIC);
+	this.index.writeInt(1);
+	this.index.writeInt(INDEX_RECORD_BYTES);
+
+	this.modelList = new BufferedWriter(new FileWriter(storeFolder + "/Models_Index.csv"));
+	this.modelList.write("\"Sample\",\"Entry\",\"Segment\",\"Offset\",\"Length\"");
+	this.modelList.newLine();
+    }
+
+    /**
+     * Opens the stream one model is written to. The model is appended to the
+     * store when the stream is closed, and dropped if it is aborted
+     * 
+     * @param modelPath Path of the model within the analysis output folder
+     * @param sampleNum Number of the sample the model is generated from, from
+     *            1
+     * @param parameterValMap Map of parameter name to sampled value
+     * @return Stream holding the model until it is closed
+     */
+    public OutputStream openModel(final String modelPath, final int sampleNum,
+	    Map<String, Double> parameterValMap)
+    {
+	return new ModelBuffer()
+	{
+	    @Override
+	    protected void complete(byte[] data, int length) throws IOException
+	    {
+		append(modelPath, sampleNum, data, length);
+	    }
+	};
+    }
+
+    /**
+     * Appends one model to the current segment, starting a new one if it
+     * would grow too large, and records where it is held
+     * 
+     * @param modelPath Path of the model
+     * @param sampleNum Number of the sample the model is generated from
+     * @param data Buffer holding the model
+     * @param length Length of the model in the buffer
+     * @throws IOException if the model cannot be appended
+     */
+    private synchronized void append(String modelPath, int sampleNum, byte[] data, int length)
+	    throws IOException
+    {
+	if (this.segment == null
+		|| (this.segmentPosition > 0 && this.segmentPosition + length > this.segmentBytes))
+	{
+	    this.startSegment();
+	}
+
+	long offset = this.segmentPosition;
+	ByteBuffer model = ByteBuffer.wrap(data, 0, length);
+	while (model.hasRemaining())
+	{
+	    this.segmentPosition += this.segment.write(model, this.segmentPosition);
+	}
+
+	this.writeRecord(modelPath, sampleNum, this.segmentNum, length, offset);
+    }
+
+    /**
+     * Adds a model repeating one already written as a further record of the
+     * index, referring to the bytes already held in the store
+     * 
+     * @param modelPath Path of the model within the analysis output folder
+     * @param sampleNum Number of the sample the model is generated from, from
+     *            1
+     * @param parameterValMap Map of parameter name to sampled value
+     * @param existingPath Path of the identical model already written
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void linkModel(String modelPath, int sampleNum,
+	    Map<String, Double> parameterValMap, String existingPath) throws IOException
+    {
+	long[] existing = this.locations.get(existingPath);
+	if (existing == null)
+	{
+	    throw new IOException(existingPath + " is not in the store");
+	}
+	this.writeRecord(modelPath, sampleNum, (int) existing[0], (int) existing[1],
+		existing[2]);
+    }
+
+    /**
+     * Records where one model is held, in the index and Models_Index.csv
+     * 
+     * @param modelPath Path of the model
+     * @param sampleNum Number of the sample the model is generated from
+     * @param segmentNum Number of the segment holding the model
+     * @param length Length of the model
+     * @param offset Offset of the model in the segment
+     * @throws IOException if the record cannot be written
+     */
+    private void writeRecord(String modelPath, int sampleNum, int segmentNum, int length,
+	    long offset) throws IOException
+    {
+	this.index.writeInt(segmentNum);
+	this.index.writeInt(length);
+	this.index.writeLong(offset);
+	this.modelList.write(sampleNum + "," + modelPath + "," + segmentNum + "," + offset + ","
+		+ length);
+	this.modelList.newLine();
+	this.locations.put(modelPath, new long[] { segmentNum, length, offset });
+    }
+
+    /**
+     * Closes the current segment, if any, and starts the next
+     * 
+     * @throws IOException if the segment cannot be created
+     */
+    private void startSegment() throws IOException
+    {
+	if (this.segment != null)
+	{
+	    this.segment.close();
+	}
+	this.segmentNum++;
+	this.segment = new RandomAccessFile(segmentPath(this.storeFolder, this.segmentNum), "rw")
+		.getChannel();
+	this.segment.truncate(0);
+	this.segmentPosition = 0;
+    }
+
+    /**
+     * Closes the current segment and completes the index. Any later segments
+     * left by an earlier analysis in the same folder are removed
+     * 
+     * @throws IOException if the store cannot be completed
+     */
+    public synchronized void close() throws IOException
+    {
+	if (this.segment != null)
+	{
+	    this.segment.close();
+	}
+	this.index.close();
+	this.modelList.close();
+
+	for (int s = this.segmentNum + 1; new File(segmentPath(this.storeFolder, s)).delete(); s++)
+	{
+	    // Keep removing until no further segment is found
+	}
+    }
+
+    /**
+     * @param storeFolder Folder holding the store
+     * @param segmentNum Number of the segment, from 0
+     * @return Full path to the segment
+     */
+    static String segmentPath(String storeFolder, int segmentNum)
+    {
+	return storeFolder + "/Models_" + segmentNum + ".seg";
+    }
+}
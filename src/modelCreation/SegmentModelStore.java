@@ -0,0 +1,193 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * \brief Reads the models of a store written by SegmentModelSink
+ * 
+ * The index and every segment are memory-mapped when the store is opened, so
+ * any model is found in constant time from its record in the index and
+ * returned as a view of the mapped segment, without copying or unpacking.
+ * Models are numbered from 0 in the order they were written, which
+ * Models_Index.csv also follows. May be read from several threads at once
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SegmentModelStore
+{
+    /**
+     * Folder holding the store
+     */
+    private final String storeFolder;
+
+    /**
+     * The mapped index, positioned after its header
+     */
+    private final ByteBuffer index;
+
+    /**
+     * Number of models in the store
+     */
+    private final int numModels;
+
+    /**
+     * Each mapped segment, by number
+     */
+    private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+
+    /**
+     * Number of each model, by path. Read from Models_Index.csv when first
+     * needed
+     */
+    private Map<String, Integer> modelNumbers;
+
+    /**
+     * Opens the store in a folder, mapping its index and segments
+     * 
+     * @param storeFolder Folder holding the store
+     * @throws IOException if the store cannot be read, or is not a store
+     */
+    public SegmentModelStore(String storeFolder) throws IOException
+    {
+	this.storeFolder = storeFolder;
+
+	MappedByteBuffer mappedIndex = map(storeFolder + "/Models.idx");
+	if (mappedIndex.capacity() < SegmentModelSink.INDEX_HEADER_BYTES
+		|| mappedIndex.getLong(0) != SegmentModelSink.INDEX_MAGIC)
+	{
+	    throw new IOException(storeFolder + " does not hold a model store");
+	}
+	this.index = mappedIndex;
+	// A record cut short by a failed write is ignored
+	this.numModels = (mappedIndex.capacity() - SegmentModelSink.INDEX_HEADER_BYTES)
+		/ SegmentModelSink.INDEX_RECORD_BYTES;
+
+	for (int s = 0; new File(SegmentModelSink.segmentPath(storeFolder, s)).exists(); s++)
+	{
+	    this.segments.add(map(SegmentModelSink.segmentPath(storeFolder, s)));
+	}
+    }
+
+    /**
+     * Maps a whole file, read-only
+     * 
+     * @param path Full path to the file
+     * @return The mapped file
+     * @throws IOException if the file cannot be mapped
+     */
+    private static MappedByteBuffer map(String path) throws IOException
+    {
+	RandomAccessFile file = new RandomAccessFile(path, "r");
+	try
+	{
+	    FileChannel channel = file.getChannel();
+	    return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	}
+	finally
+	{
+	    // The mapping remains valid once the file is closed
+	    file.close();
+	}
+    }
+
+    /**
+     * @return Number of models in the store
+     */
+    public int size()
+    {
+	return this.numModels;
+    }
+
+    /**
+     * Returns one model, as a view of the segment holding it
+     * 
+     * @param modelNum Number of the model, from 0, in the order written
+     * @return Read-only buffer holding the model, positioned at its start
+     * @throws IndexOutOfBoundsException if there is no such model
+     */
+    public ByteBuffer getModel(int modelNum)
+    {
+	if (modelNum < 0 || modelNum >= this.numModels)
+	{
+	    throw new IndexOutOfBoundsException("Model " + modelNum + " of " + this.numModels);
+	}
+
+	int record = SegmentModelSink.INDEX_HEADER_BYTES + modelNum
+		* SegmentModelSink.INDEX_RECORD_BYTES;
+	int segmentNum = this.index.getInt(record);
+	int length = this.index.getInt(record + 4);
+	int offset = (int) this.index.getLong(record + 8);
+
+	// Each caller has its own view, so threads do not share a position
+	ByteBuffer model = this.segments.get(segmentNum).asReadOnlyBuffer();
+	model.position(offset);
+	model.limit(offset + length);
+	return model.slice();
+    }
+
+    /**
+     * Returns one model by its path within the analysis output folder
+     * 
+     * @param modelPath Path of the model, as listed in Models_Index.csv
+     * @return Read-only buffer holding the model, or null if the store does
+     *         not hold it
+     * @throws IOException if Models_Index.csv cannot be read
+     */
+    public ByteBuffer getModel(String modelPath) throws IOException
+    {
+	Integer modelNum = this.getModelNumbers().get(modelPath);
+	return (modelNum == null) ? null : this.getModel(modelNum);
+    }
+
+    /**
+     * Reads the number of each model from Models_Index.csv, the first time it
+     * is needed
+     * 
+     * @return Number of each model, by path
+     * @throws IOException if Models_Index.csv cannot be read
+     */
+    private synchronized Map<String, Integer> getModelNumbers() throws IOException
+    {
+	if (this.modelNumbers == null)
+	{
+	    Map<String, Integer> numbers = new HashMap<String, Integer>();
+	    BufferedReader br = new BufferedReader(new FileReader(this.storeFolder
+		    + "/Models_Index.csv"));
+	    try
+	    {
+		// Skip the headings
+		String line = br.readLine();
+		while ((line = br.readLine()) != null && numbers.size() < this.numModels)
+		{
+		    String[] fields = line.split(",");
+		    numbers.put(fields[1], numbers.size());
+		}
+	    }
+	    finally
+	    {
+		br.close();
+	    }
+	    this.modelNumbers = numbers;
+	}
+	return this.modelNumbers;
+    }
+}
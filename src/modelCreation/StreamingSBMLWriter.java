@@ -0,0 +1,245 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * \brief Rewrites the calibrated SBML model as a stream of XML events
+ * 
+ * Rather than holding the parsed model and the copy being written in memory,
+ * the calibrated file is read one event at a time and each event is written
+ * straight to the output. The value of a parameter in a listOfParameters, or
+ * the initialConcentration of a species in a listOfSpecies, is swapped for the
+ * sampled value as the element is passed through. Memory used per model being
+ * written is therefore constant, whatever the size of the model.
+ * 
+ * Unlike the DOM based writers, the whitespace and comments of the calibrated
+ * file are kept as they are, rather than the file being re-indented
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class StreamingSBMLWriter implements SBMLModelWriter
+{
+    /**
+     * StAX factories are not guaranteed to be thread safe, so each thread
+     * writing models keeps its own
+     */
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY =
+	    new ThreadLocal<XMLInputFactory>()
+    {
+	@Override
+	protected XMLInputFactory initialValue()
+	{
+	    return XMLInputFactory.newInstance();
+	}
+    };
+
+    /**
+     * Output factory for each thread writing models
+     */
+    private static final ThreadLocal<XMLOutputFactory> OUTPUT_FACTORY =
+	    new ThreadLocal<XMLOutputFactory>()
+    {
+	@Override
+	protected XMLOutputFactory initialValue()
+	{
+	    return XMLOutputFactory.newInstance();
+	}
+    };
+
+    /**
+     * Event factory for each thread writing models
+     */
+    private static final ThreadLocal<XMLEventFactory> EVENT_FACTORY =
+	    new ThreadLocal<XMLEventFactory>()
+    {
+	@Override
+	protected XMLEventFactory initialValue()
+	{
+	    return XMLEventFactory.newInstance();
+	}
+    };
+
+    /**
+     * Full path to the simulation parameter file at calibrated values
+     */
+    private final String calibratedParamFilePath;
+
+    /**
+     * Creates a writer that streams from the calibrated model file
+     * 
+     * @param calibratedParamFilePath Full path to the simulation parameter file
+     *            at calibrated values
+     */
+    public StreamingSBMLWriter(String calibratedParamFilePath)
+    {
+	this.calibratedParamFilePath = calibratedParamFilePath;
+    }
+
+    /**
+     * @return False, as the model is written in many small pieces, so file
+     *         streams should be buffered before being passed in
+     */
+    public boolean buffersOutput()
+    {
+	return false;
+    }
+
+    /**
+     * Nothing is held open between models
+     */
+    public void close()
+    {
+    }
+
+    /**
+     * Streams the calibrated model to the output, swapping in the sampled
+     * values
+     * 
+     * @param parameterValMap Map of parameter/species name to sampled value
+     * @param out Stream the model is written to. This is not closed
+     * @throws IOException if the model cannot be read or written
+     */
+    public void writeModel(Map<String, Double> parameterValMap, OutputStream out)
+	    throws IOException
+    {
+	InputStream in = new BufferedInputStream(new FileInputStream(this.calibratedParamFilePath));
+	try
+	{
+	    XMLEventReader reader = INPUT_FACTORY.get().createXMLEventReader(in);
+	    XMLEventWriter writer = null;
+
+	    // Names of the elements enclosing the current event, so we know
+	    // when we are inside a listOfParameters or listOfSpecies
+	    Deque<String> openElements = new ArrayDeque<String>();
+
+	    while (reader.hasNext())
+	    {
+		XMLEvent event = reader.nextEvent();
+
+		if (event.isStartDocument())
+		{
+		    // Write in the encoding of the calibrated file
+		    String encoding = ((StartDocument) event).getCharacterEncodingScheme();
+		    if (encoding == null)
+		    {
+			encoding = "UTF-8";
+		    }
+		    writer = OUTPUT_FACTORY.get().createXMLEventWriter(out, encoding);
+		}
+		else if (writer == null)
+		{
+		    writer = OUTPUT_FACTORY.get().createXMLEventWriter(out, "UTF-8");
+		}
+
+		if (event.isStartElement())
+		{
+		    StartElement element = event.asStartElement();
+		    String enclosing = openElements.peek();
+		    openElements.push(element.getName().getLocalPart());
+
+		    if ("listOfParameters".equals(enclosing))
+		    {
+			event = setSampledValue(element, "value", parameterValMap);
+		    }
+		    else if ("listOfSpecies".equals(enclosing))
+		    {
+			event = setSampledValue(element, "initialConcentration", parameterValMap);
+		    }
+		}
+		else if (event.isEndElement())
+		{
+		    openElements.pop();
+		}
+
+		writer.add(event);
+	    }
+
+	    reader.close();
+	    if (writer != null)
+	    {
+		writer.flush();
+		writer.close();
+	    }
+	}
+	catch (XMLStreamException e)
+	{
+	    throw new IOException("Could not stream " + this.calibratedParamFilePath + ": "
+		    + e.getMessage(), e);
+	}
+	finally
+	{
+	    in.close();
+	}
+    }
+
+    /**
+     * Swaps the value of an attribute for the sampled value, if the element
+     * is a parameter or species of interest to the analysis
+     * 
+     * @param element The parameter or species element
+     * @param tagAttributeToSet The name of the attribute to set - either
+     *            "value" or "initialConcentration" (for species)
+     * @param parameterValMap Map of parameter/species name to sampled value
+     * @return The element to write - the original if nothing was changed
+     */
+    private static StartElement setSampledValue(StartElement element, String tagAttributeToSet,
+	    Map<String, Double> parameterValMap)
+    {
+	Attribute id = element.getAttributeByName(new QName("id"));
+	if (id == null || !parameterValMap.containsKey(id.getValue())
+		|| element.getAttributeByName(new QName(tagAttributeToSet)) == null)
+	{
+	    return element;
+	}
+
+	XMLEventFactory eventFactory = EVENT_FACTORY.get();
+	List<Attribute> attributes = new ArrayList<Attribute>();
+	@SuppressWarnings("unchecked")
+	Iterator<Attribute> existing = element.getAttributes();
+	while (existing.hasNext())
+	{
+	    Attribute attribute = existing.next();
+	    if (attribute.getName().getLocalPart().equals(tagAttributeToSet))
+	    {
+		attributes.add(eventFactory.createAttribute(attribute.getName(),
+			Double.toString(parameterValMap.get(id.getValue()))));
+	    }
+	    else
+	    {
+		attributes.add(attribute);
+	    }
+	}
+	return eventFactory.createStartElement(element.getName(), attributes.iterator(),
+		element.getNamespaces());
+    }
+}
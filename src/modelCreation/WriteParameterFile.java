@@ -1,7 +1,9 @@
 package modelCreation;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.util.ArrayList;
+import java.io.OutputStream;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -18,8 +20,6 @@ import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
-import xmlFileUtilities.XMLFileUtilities;
-
 /**
  * \brief Creates Non-SBML Model Files (Part of Development of Version 2)
  * 
@@ -34,24 +34,20 @@ import xmlFileUtilities.XMLFileUtilities;
  */
 public class WriteParameterFile
 {
-    /**
-     * Count of the file produced - used in file numbering
-     */
-    public static int count = 1;
-
     /**
      * Determines if a parameter is of interest to the analysis. If so, returns
      * true and the value is assigned to that in the spartan CSV file. If not,
      * returns false and the parameter is assigned its calibrated value
      * 
-     * @param parameters Arraylist of parameter names of interest to the
-     *            analysis
+     * @param parameters List of parameter names of interest to the analysis
+     * @param types The data type of each parameter
      * @param paramToFind The name of the parameter currently being written to
      *            the XML file - the parameter to check
-     * @return True if the parameter is of interest to the analysis, false if
-     *         not
+     * @return The type of the parameter if it is of interest to the analysis,
+     *         "null" if not
      */
-    public static String checkArrayList(ArrayList<String> parameters, String paramToFind)
+    public static String checkArrayList(List<String> parameters, List<String> types,
+	    String paramToFind)
     {
 	String found = "null";
 
@@ -61,7 +57,7 @@ public class WriteParameterFile
 
 	    if (paramInArray.equals(paramToFind))
 	    {
-		found = XMLFileUtilities.parameterType.get(param);
+		found = types.get(param);
 	    }
 	}
 
@@ -87,148 +83,241 @@ public class WriteParameterFile
      * @param analysis The type of spartan analysis being performed.
      */
     public static void writeSimParameterFiles(String calibratedParamFilePath,
-	    Map<String, Double> parameterValMap, ArrayList<String> params, ArrayList<String> types,
+	    Map<String, Double> parameterValMap, List<String> params, List<String> types,
 	    String outputFolder, int paramFileNum, String analysis)
     {
+	try
+	{
+	    createSimParameterFile(calibratedParamFilePath, parameterValMap, params, types,
+		    outputFolder, paramFileNum, analysis);
+	}
+	catch (Exception e)
+	{
+	    e.printStackTrace();
+	}
+    }
 
-	// String sampledValue = "0";
+    /**
+     * Produces one simulation parameter file, as writeSimParameterFiles does,
+     * but passes any error back to the caller rather than reporting it, so
+     * failures can be collected across an analysis
+     * 
+     * @param calibratedParamFilePath Full path to the simulation parameter file
+     *            at calibrated values
+     * @param parameterValMap Map of parameter name to sampled value
+     * @param params The names of the parameters of interest
+     * @param types The data type of each parameter
+     * @param outputFolder The full path to the output folder where these
+     *            parameter files are stored
+     * @param paramFileNum The number of the parameter file (i.e. the sample
+     *            number)
+     * @param analysis The type of spartan analysis being performed.
+     * @throws Exception if the file cannot be created
+     */
+    public static void createSimParameterFile(String calibratedParamFilePath,
+	    Map<String, Double> parameterValMap, List<String> params, List<String> types,
+	    String outputFolder, int paramFileNum, String analysis) throws Exception
+    {
+	createSimParameterFile(calibratedParamFilePath, parameterValMap, params, types,
+		new FolderModelSink(outputFolder), "", paramFileNum);
+    }
 
-	try
+    /**
+     * Names a parameter file as it is written, so run lists can name the file
+     * each value set is written to. SBML models are named paramFileN.xml, and
+     * other parameter files paramFile_N.xml
+     * 
+     * @param modelFolder Folder of the file within the analysis output
+     *            folder, or an empty string for the output folder itself
+     * @param paramFileNum The number of the parameter file (i.e. the sample
+     *            number), from 0
+     * @param sbmlFormat Whether the file is an SBML model
+     * @return Path of the file within the analysis output folder
+     */
+    public static String getParamFilePath(String modelFolder, int paramFileNum,
+	    boolean sbmlFormat)
+    {
+	String paramFileName = (sbmlFormat ? "paramFile" : "paramFile_") + (paramFileNum + 1)
+		+ ".xml";
+	if (modelFolder.length() > 0)
+	{
+	    paramFileName = modelFolder + "/" + paramFileName;
+	}
+	return paramFileName;
+    }
+
+    /**
+     * Produces one simulation parameter file, writing it to the sink of the
+     * analysis. Any error is passed back to the caller
+     * 
+     * @param calibratedParamFilePath Full path to the simulation parameter file
+     *            at calibrated values
+     * @param parameterValMap Map of parameter name to sampled value
+     * @param params The names of the parameters of interest
+     * @param types The data type of each parameter
+     * @param modelSink The sink models are written to
+     * @param modelFolder Folder of the file within the analysis output
+     *            folder, or an empty string for the output folder itself
+     * @param paramFileNum The number of the parameter file (i.e. the sample
+     *            number), from 0
+     * @throws Exception if the file cannot be created
+     */
+    public static void createSimParameterFile(String calibratedParamFilePath,
+	    Map<String, Double> parameterValMap, List<String> params, List<String> types,
+	    ModelSink modelSink, String modelFolder, int paramFileNum) throws Exception
+    {
+	// Firstly, set up a new XML file, that will become the parameter
+	// file
+	DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
+	DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
+	Document doc;
+	doc = docBuilder.parse(new File(calibratedParamFilePath));
+
+	// normalize text representation of the document
+	doc.getDocumentElement().normalize();
+
+	// For robustness analysis, we append the name of the parameter file
+	// with the value of one parameter. This holds the value
+	// String paramOfIntValue = "";
+
+	// Write the required root elements
+	Document docWriting = docBuilder.newDocument();
+	Element rootElement = docWriting.createElement(doc.getDocumentElement().getNodeName());
+	docWriting.appendChild(rootElement);
+
+	// The parameter values will be split by commas, so a string
+	// tokenizer can be used to break these apart
+	// StringTokenizer st = new StringTokenizer(parameterValLine, ",");
+
+	// Get the Parameter Group Tags
+	NodeList paramGroups = doc.getDocumentElement().getChildNodes();
+
+	// Now go through each group in turn (if XML file is split into
+	// groups, that is. If not, will just go through
+	// all tags)
+	for (int j = 0; j < paramGroups.getLength(); j++)
 	{
-	    // Firstly, set up a new XML file, that will become the parameter
-	    // file
-	    DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-	    DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-	    Document doc;
-	    doc = docBuilder.parse(new File(calibratedParamFilePath));
-
-	    // normalize text representation of the document
-	    doc.getDocumentElement().normalize();
-
-	    // For robustness analysis, we append the name of the parameter file
-	    // with the value of one parameter. This holds the value
-	    // String paramOfIntValue = "";
-
-	    // Write the required root elements
-	    Document docWriting = docBuilder.newDocument();
-	    Element rootElement = docWriting.createElement(doc.getDocumentElement().getNodeName());
-	    docWriting.appendChild(rootElement);
-	    count = count + 1;
-
-	    // The parameter values will be split by commas, so a string
-	    // tokenizer can be used to break these apart
-	    // StringTokenizer st = new StringTokenizer(parameterValLine, ",");
-
-	    // Get the Parameter Group Tags
-	    NodeList paramGroups = doc.getDocumentElement().getChildNodes();
-
-	    // Now go through each group in turn (if XML file is split into
-	    // groups, that is. If not, will just go through
-	    // all tags)
-	    for (int j = 0; j < paramGroups.getLength(); j++)
+	    if (!paramGroups.item(j).getNodeName().equals("#text"))
 	    {
-		if (!paramGroups.item(j).getNodeName().equals("#text"))
+		// Write the tag to the new file
+		Element staff = docWriting.createElement(paramGroups.item(j).getNodeName());
+		// Now determine if the tag has attributes, and if so copy
+		// these to the new parameter file
+		if (paramGroups.item(j).hasAttributes())
 		{
-		    // Write the tag to the new file
-		    Element staff = docWriting.createElement(paramGroups.item(j).getNodeName());
-		    // Now determine if the tag has attributes, and if so copy
-		    // these to the new parameter file
-		    if (paramGroups.item(j).hasAttributes())
+		    NamedNodeMap attrs = paramGroups.item(j).getAttributes();
+		    for (int i = 0; i < attrs.getLength(); i++)
 		    {
-			NamedNodeMap attrs = paramGroups.item(j).getAttributes();
-			for (int i = 0; i < attrs.getLength(); i++)
-			{
-			    staff.setAttribute(attrs.item(i).getNodeName(), attrs.item(i)
-				    .getNodeValue());
-			}
+			staff.setAttribute(attrs.item(i).getNodeName(), attrs.item(i)
+				.getNodeValue());
 		    }
+		}
 
-		    rootElement.appendChild(staff);
+		rootElement.appendChild(staff);
 
-		    // Get the nodes for this child - these will be the
-		    // parameters in each group
-		    Node n = paramGroups.item(j);
-		    NodeList groupVars = n.getChildNodes();
+		// Get the nodes for this child - these will be the
+		// parameters in each group
+		Node n = paramGroups.item(j);
+		NodeList groupVars = n.getChildNodes();
 
-		    // Now go through the tags in this group in turn
-		    for (int k = 0; k < groupVars.getLength(); k++)
+		// Now go through the tags in this group in turn
+		for (int k = 0; k < groupVars.getLength(); k++)
+		{
+
+		    if (!groupVars.item(k).getNodeName().equals("#text"))
 		    {
+			// Write the tag to the new file
 
-			if (!groupVars.item(k).getNodeName().equals("#text"))
-			{
-			    // Write the tag to the new file
+			Element paramName = docWriting.createElement(groupVars.item(k)
+				.getNodeName());
+			staff.appendChild(paramName);
 
-			    Element paramName = docWriting.createElement(groupVars.item(k)
-				    .getNodeName());
-			    staff.appendChild(paramName);
-
-			    // Now determine if this is a parameter being
-			    // altered. If not, the calibrated value is put in
-			    // the
-			    // new file. If it is, the parameter is recovered
-			    // from the spartan CSV file
-			    String arrayCheckResult = checkArrayList(params, groupVars.item(k)
+			// Now determine if this is a parameter being
+			// altered. If not, the calibrated value is put in
+			// the
+			// new file. If it is, the parameter is recovered
+			// from the spartan CSV file
+			String arrayCheckResult = checkArrayList(params, types, groupVars.item(k)
+				.getNodeName());
+
+			if (arrayCheckResult.equals("null"))
+			{
+			    // Write the calibrated/baseline value of the
+			    // parameter
+			    paramName.appendChild(docWriting.createTextNode(groupVars.item(k)
+				    .getTextContent()));
+			}
+			else
+			{
+			    // BODGE JUST FOR SIMONS LEISH WORK WHERE TWO
+			    // PARAMETERS OF THE SAME NAME
+			    // USUALLY THIS SHOULD JUST BE NEXTTOKEN
+			    Double sampledValue = parameterValMap.get(groupVars.item(k)
 				    .getNodeName());
 
-			    if (arrayCheckResult.equals("null"))
+			    // Recover the value from the csv and place in
+			    // the file
+			    // The checker will return the type of the
+			    // parameter (double or int), so we can round if
+			    // need be
+			    if (arrayCheckResult.equals("double"))
 			    {
-				// Write the calibrated/baseline value of the
-				// parameter
-				paramName.appendChild(docWriting.createTextNode(groupVars.item(k)
-				        .getTextContent()));
+				paramName.appendChild(docWriting.createTextNode(Double
+					.toString(sampledValue)));
 			    }
-			    else
+			    else if (arrayCheckResult.equals("int"))
 			    {
-				// BODGE JUST FOR SIMONS LEISH WORK WHERE TWO
-				// PARAMETERS OF THE SAME NAME
-				// USUALLY THIS SHOULD JUST BE NEXTTOKEN
-				Double sampledValue = parameterValMap.get(groupVars.item(k)
-				        .getNodeName());
-
-				// Recover the value from the csv and place in
-				// the file
-				// The checker will return the type of the
-				// parameter (double or int), so we can round if
-				// need be
-				if (arrayCheckResult.equals("double"))
-				{
-				    paramName.appendChild(docWriting.createTextNode(Double
-					    .toString(sampledValue)));
-				}
-				else if (arrayCheckResult.equals("int"))
-				{
-				    paramName.appendChild(docWriting.createTextNode(Integer
-					    .toString((int) Math.round((sampledValue)))));
-				}
-
+				paramName.appendChild(docWriting.createTextNode(Integer
+					.toString((int) Math.round((sampledValue)))));
 			    }
+
 			}
 		    }
-
 		}
+
 	    }
-	    // Now write out the parameter file
-	    TransformerFactory transformerFactory = TransformerFactory.newInstance();
-	    Transformer transformer = transformerFactory.newTransformer();
-	    transformerFactory.setAttribute("indent-number", 2);
-	    transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-
-	    docWriting.normalizeDocument();
-	    DOMSource source = new DOMSource(docWriting);
-	    String paramFileName;
-
-	    // if(analysis.length()==0)
-	    paramFileName = outputFolder + "/paramFile_" + (paramFileNum + 1) + ".xml";
-	    // else
-	    // paramFileName =
-	    // outputFolder+"/"+analysis+"_"+paramOfIntValue+".xml";
-
-	    StreamResult result = new StreamResult(new File(paramFileName));
-	    transformer.transform(source, result);
 	}
-	catch (Exception e)
+	// Now write out the parameter file
+	TransformerFactory transformerFactory = TransformerFactory.newInstance();
+	Transformer transformer = transformerFactory.newTransformer();
+	transformerFactory.setAttribute("indent-number", 2);
+	transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+
+	docWriting.normalizeDocument();
+	DOMSource source = new DOMSource(docWriting);
+	String paramFileName;
+
+	// if(analysis.length()==0)
+	paramFileName = getParamFilePath(modelFolder, paramFileNum, false);
+	// else
+	// paramFileName =
+	// outputFolder+"/"+analysis+"_"+paramOfIntValue+".xml";
+
+	OutputStream out = modelSink.openModel(paramFileName, paramFileNum + 1, parameterValMap);
+	if (out == null)
 	{
-	    e.printStackTrace();
+	    // Kept from an interrupted run being resumed
+	    return;
+	}
+	OutputStream modelOut = out;
+	out = new BufferedOutputStream(out);
+	boolean written = false;
+	try
+	{
+	    transformer.transform(source, new StreamResult(out));
+	    written = true;
+	}
+	finally
+	{
+	    // Only a file written in full is completed
+	    if (written)
+	    {
+		out.close();
+	    }
+	    else
+	    {
+		WriteParameterFile_SBML.abortModel(modelOut);
+	    }
 	}
     }
 
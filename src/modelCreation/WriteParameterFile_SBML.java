@@ -5,8 +5,12 @@
  */
 package modelCreation;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.util.ArrayList;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -23,6 +27,8 @@ import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import xmlFileUtilities.AnalysisSettings;
+
 /**
  * \brief Creates SBML Model file from Parameter Value Sampling or Intervention
  * 
@@ -36,24 +42,18 @@ import org.w3c.dom.NodeList;
  */
 public class WriteParameterFile_SBML
 {
-    /**
-     * Count of the file produced - used in file numbering
-     */
-    public static int count = 1;
-
     /**
      * Determines if a parameter is of interest to the analysis. If so, returns
      * true and the value is assigned to that in the spartan CSV file. If not,
      * returns false and the parameter is assigned its calibrated value
      * 
-     * @param parameters Arraylist of parameter names of interest to the
-     *            analysis
+     * @param parameters List of parameter names of interest to the analysis
      * @param paramToFind The name of the parameter currently being written to
      *            the XML file - the parameter to check
      * @return True if the parameter is of interest to the analysis, false if
      *         not
      */
-    public static String checkArrayList(ArrayList<String> parameters, String paramToFind)
+    public static String checkArrayList(List<String> parameters, String paramToFind)
     {
 	String found = "null";
 
@@ -310,6 +310,71 @@ public class WriteParameterFile_SBML
 	}
     }
 
+    /**
+     * Parses the calibrated SBML model and builds the cleaned copy of it that
+     * is written out, with the parameter and species values in the map swapped
+     * in. The returned document is normalised and ready for serialisation
+     * 
+     * @param calibratedParamFilePath Full path to the simulation parameter file
+     *            at calibrated values
+     * @param parameterValMap Map of parameter/species name to the value to set
+     * @return The XML document to be written to file
+     * @throws Exception if the calibrated file cannot be read or parsed
+     */
+    public static Document buildModelDocument(String calibratedParamFilePath,
+	    Map<String, Double> parameterValMap) throws Exception
+    {
+	// Firstly, set up a new XML file, that will become the parameter
+	// file
+	DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
+	DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
+	Document doc;
+	doc = docBuilder.parse(new File(calibratedParamFilePath));
+
+	// normalize text representation of the document
+	doc.getDocumentElement().normalize();
+
+	// Write the required root elements
+	Document docWriting = docBuilder.newDocument();
+	// Clean removes all comments and #text spaces
+	clean(doc.getDocumentElement());
+
+	Element rootElement = docWriting.createElement(doc.getDocumentElement().getNodeName());
+	NamedNodeMap nn = doc.getDocumentElement().getAttributes();
+	// Add all attributes of this root node - we may move this to make
+	// this generic function
+	addAllTagAttributes(nn, rootElement);
+	docWriting.appendChild(rootElement);
+
+	// Now work on the children of every node, recursively
+
+	NodeList child = doc.getDocumentElement().getChildNodes();
+
+	// Call the correct process child nodes dependent on the analysis -
+	// just changing SBML listOfParameters, or
+	// changing listOfSpecies too
+	processChildNodes(docWriting, child, rootElement, parameterValMap, true);
+
+	docWriting.normalizeDocument();
+	return docWriting;
+    }
+
+    /**
+     * Creates the transformer used to serialise generated SBML models, so all
+     * writers produce the same indentation and XML declaration
+     * 
+     * @return Transformer set up for writing SBML model files
+     * @throws Exception if the transformer cannot be configured
+     */
+    public static Transformer createModelTransformer() throws Exception
+    {
+	TransformerFactory transformerFactory = TransformerFactory.newInstance();
+	Transformer transformer = transformerFactory.newTransformer();
+	transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+	transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+	return transformer;
+    }
+
     /**
      * Parse each parameter value set created by spartan, producing a Repast
      * compatible simulation parameter file for each. Parameters not involved in
@@ -330,61 +395,250 @@ public class WriteParameterFile_SBML
      *            Steph, name of the parameter file
      */
     public static void writeSimParameterFiles(String calibratedParamFilePath,
-	    Map<String, Double> parameterValMap, ArrayList<String> params, ArrayList<String> types,
+	    Map<String, Double> parameterValMap, List<String> params, List<String> types,
 	    String outputFolder, int paramFileNum, String analysis, String parameterFileName)
     {
 	try
 	{
-	    // Firstly, set up a new XML file, that will become the parameter
-	    // file
-	    DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-	    DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-	    Document doc;
-	    doc = docBuilder.parse(new File(calibratedParamFilePath));
-
-	    // normalize text representation of the document
-	    doc.getDocumentElement().normalize();
+	    Document docWriting = buildModelDocument(calibratedParamFilePath, parameterValMap);
 
-	    // Write the required root elements
-	    Document docWriting = docBuilder.newDocument();
-	    // Clean removes all comments and #text spaces
-	    clean(doc.getDocumentElement());
+	    // Set the output file name
+	    String paramFileName = outputFolder + "/" + parameterFileName;
 
-	    Element rootElement = docWriting.createElement(doc.getDocumentElement().getNodeName());
-	    NamedNodeMap nn = doc.getDocumentElement().getAttributes();
-	    // Add all attributes of this root node - we may move this to make
-	    // this generic function
-	    addAllTagAttributes(nn, rootElement);
-	    docWriting.appendChild(rootElement);
+	    // Now write the file
+	    Transformer transformer = createModelTransformer();
+	    DOMSource source = new DOMSource(docWriting);
 
-	    // Now work on the children of every node, recursively
+	    StreamResult result = new StreamResult(new File(paramFileName));
+	    transformer.transform(source, result);
+	}
+	catch (Exception e)
+	{
+	    e.printStackTrace();
+	}
+    }
 
-	    NodeList child = doc.getDocumentElement().getChildNodes();
+    /**
+     * Creates the writer used to produce each sampled model in an analysis.
+     * "template" (the default) compiles the calibrated model once and writes
+     * files identical to the method above. "streaming" rewrites the calibrated
+     * file as a stream of XML events, keeping memory use per model constant.
+     * "splice" copies the bytes of the calibrated file with the sampled values
+     * written in place, keeping its formatting exactly
+     * 
+     * @param calibratedParamFilePath Full path to the simulation parameter file
+     *            at calibrated values
+     * @param writerType Value of the sbmlWriter tag in the settings file
+     * @return The writer to use for the analysis
+     * @throws Exception if the calibrated model cannot be compiled
+     */
+    public static SBMLModelWriter createModelWriter(String calibratedParamFilePath,
+	    String writerType) throws Exception
+    {
+	if (writerType.equals("streaming"))
+	{
+	    return new StreamingSBMLWriter(calibratedParamFilePath);
+	}
+	else if (writerType.equals("splice"))
+	{
+	    return new SBMLSpliceWriter(calibratedParamFilePath);
+	}
+	else if (writerType.equals("template"))
+	{
+	    return new SBMLModelTemplate(calibratedParamFilePath);
+	}
+	throw new IllegalArgumentException("Unknown sbmlWriter in settings file: " + writerType);
+    }
 
-	    // Call the correct process child nodes dependent on the analysis -
-	    // just changing SBML listOfParameters, or
-	    // changing listOfSpecies too
-	    // Also set the output file name while here
-	    String paramFileName;
+    /**
+     * Creates the sink the models of an analysis are written to. "folder"
+     * (the default) writes each model to its own file beneath the analysis
+     * output folder. "zip" writes them all as entries of Models.zip in that
+     * folder, compressed at the optional zipCompressionLevel (6 by default),
+     * with Models_Index.csv listing the entry of each sample. "segments"
+     * appends them to segment files of at most segmentSizeMB (1024 by
+     * default), read by SegmentModelStore. "changes" copies the calibrated
+     * SBML model to that folder once, with Models_Changes.sedml listing the
+     * values each model changes, expanded by ChangeSetMaterialiser. Whichever
+     * is used, every model is also listed in the manifest of the run, named
+     * after the analysis folder. Separate files are also added to
+     * Models_Journal.csv as each is completed, so an interrupted run can be
+     * resumed
+     * 
+     * @param settings The settings of the analysis
+     * @param outputFolder The analysis output folder
+     * @return The sink to write models to
+     * @throws IOException if the archive cannot be created
+     */
+    public static ModelSink createModelSink(AnalysisSettings settings, String outputFolder)
+	    throws IOException
+    {
+	String outputType = settings.getOptionalParam("modelOutput", "folder");
+	boolean resume = ModelGenerationRunner.isResuming(settings);
+	if (resume && !outputType.equals("folder"))
+	{
+	    throw new IllegalArgumentException(
+		    "Only analyses with modelOutput folder can be resumed");
+	}
 
-	    processChildNodes(docWriting, child, rootElement, parameterValMap, true);
-	    paramFileName = outputFolder + "/" + parameterFileName;
+	String analysis = new File(outputFolder).getName();
+	ModelSink modelSink;
+	ModelJournal journal = null;
+	if (outputType.equals("zip"))
+	{
+	    modelSink = new ZipModelSink(outputFolder + "/Models.zip", outputFolder
+		    + "/Models_Index.csv", Integer.parseInt(settings.getOptionalParam(
+		    "zipCompressionLevel", "6")));
+	}
+	else if (outputType.equals("segments"))
+	{
+	    modelSink = new SegmentModelSink(outputFolder, Long.parseLong(settings
+		    .getOptionalParam("segmentSizeMB", "1024")) << 20);
+	}
+	else if (outputType.equals("changes"))
+	{
+	    if (!settings.getParamBoolean("sbmlFormat"))
+	    {
+		throw new IllegalArgumentException(
+			"modelOutput changes can only be used with SBML models");
+	    }
+	    modelSink = new ChangeSetModelSink(outputFolder,
+		    settings.getParam("pathToSimulationParameterFile"), settings.getOptionalParam(
+			    "sbmlWriter", "template"));
+	}
+	else if (outputType.equals("folder"))
+	{
+	    modelSink = new FolderModelSink(outputFolder);
+	    // Only separate files can be checked and kept when a run is resumed
+	    journal = new ModelJournal(outputFolder, analysis, settings.getParametersAnalysed(),
+		    resume);
+	}
+	else
+	{
+	    throw new IllegalArgumentException("Unknown modelOutput in settings file: "
+		    + outputType);
+	}
+	return new ManifestModelSink(modelSink, outputFolder, analysis,
+		settings.getParametersAnalysed(), journal);
+    }
 
-	    // Now write the file
-	    TransformerFactory transformerFactory = TransformerFactory.newInstance();
-	    Transformer transformer = transformerFactory.newTransformer();
-	    transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-	    transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+    /**
+     * Writes one sampled SBML model using a writer created once for the
+     * analysis, rather than re-parsing the calibrated model for every sample.
+     * Any error is passed back to the caller, so failures can be collected
+     * across an analysis
+     * 
+     * @param modelWriter The writer producing each model
+     * @param parameterValMap Map of parameter/species name to sampled value
+     * @param outputFolder The full path to the output folder where these
+     *            parameter files are stored
+     * @param parameterFileName Name of the model file to create
+     * @throws IOException if the model cannot be written
+     */
+    public static void writeSimParameterFiles(SBMLModelWriter modelWriter,
+	    Map<String, Double> parameterValMap, String outputFolder, String parameterFileName)
+	    throws IOException
+    {
+	writeSimParameterFiles(modelWriter, parameterValMap, new FolderModelSink(outputFolder),
+		parameterFileName, 1);
+    }
 
-	    docWriting.normalizeDocument();
-	    DOMSource source = new DOMSource(docWriting);
+    /**
+     * Writes one sampled SBML model to the sink of the analysis, using a
+     * writer created once for the analysis. Any error is passed back to the
+     * caller, so failures can be collected across an analysis
+     * 
+     * @param modelWriter The writer producing each model
+     * @param parameterValMap Map of parameter/species name to sampled value
+     * @param modelSink The sink models are written to
+     * @param modelPath Path of the model within the analysis output folder
+     * @param sampleNum Number of the sample the model is generated from, from
+     *            1
+     * @throws IOException if the model cannot be written
+     */
+    public static void writeSimParameterFiles(SBMLModelWriter modelWriter,
+	    Map<String, Double> parameterValMap, ModelSink modelSink, String modelPath,
+	    int sampleNum) throws IOException
+    {
+	OutputStream out = modelSink.openModel(modelPath, sampleNum, parameterValMap);
+	if (out == null)
+	{
+	    // Kept from an interrupted run being resumed
+	    return;
+	}
+	// A file stream straight from a FolderModelSink is buffered here, unless
+	// the writer buffers itself and so writes to its channel. Streams of a
+	// ManifestModelSink buffer the file themselves and give writers that
+	// buffer themselves its channel. Models held in memory need no buffer
+	OutputStream modelOut = out;
+	if (out instanceof FileOutputStream && !modelWriter.buffersOutput())
+	{
+	    out = new BufferedOutputStream(out);
+	}
+	boolean written = false;
+	try
+	{
+	    modelWriter.writeModel(parameterValMap, out);
+	    written = true;
+	}
+	finally
+	{
+	    // Only a model written in full is completed
+	    if (written)
+	    {
+		out.close();
+	    }
+	    else
+	    {
+		abortModel(modelOut);
+	    }
+	}
+    }
 
-	    StreamResult result = new StreamResult(new File(paramFileName));
-	    transformer.transform(source, result);
+    /**
+     * Closes the writer of an analysis once every model has been written,
+     * releasing any file it holds open
+     * 
+     * @param modelWriter The writer, or null if none was created
+     */
+    public static void closeModelWriter(SBMLModelWriter modelWriter)
+    {
+	if (modelWriter == null)
+	{
+	    return;
 	}
-	catch (Exception e)
+	try
+	{
+	    modelWriter.close();
+	}
+	catch (IOException e)
 	{
 	    e.printStackTrace();
 	}
     }
+
+    /**
+     * Discards a model that could not be written, so the sink neither adds
+     * nor records it. Streams that cannot be aborted are closed
+     * 
+     * @param modelOut The stream opened by the sink for the model
+     */
+    static void abortModel(OutputStream modelOut)
+    {
+	try
+	{
+	    if (modelOut instanceof AbortableModelStream)
+	    {
+		((AbortableModelStream) modelOut).abort();
+	    }
+	    else
+	    {
+		modelOut.close();
+	    }
+	}
+	catch (IOException e)
+	{
+	    // The failure writing the model is the one reported
+	}
+    }
 }
@@ -0,0 +1,493 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * \brief Writes every generated model as an entry of one ZIP archive
+ * 
+ * Each model is held in memory until its stream is closed, then compressed on
+ * the thread that generated it, so models are compressed in parallel on the
+ * model generation threads. Only appending the compressed entry to the
+ * archive is done one model at a time. The archive is written directly in the
+ * ZIP format, as java.util.zip can only compress entries as it writes them.
+ * ZIP64 records are added where the archive has more than 65535 entries or
+ * grows beyond 4GB.
+ * 
+ * Entries are written in the order models are completed. Once all are
+ * written, the index file lists the sample number, entry name, and offset of
+ * the entry within the archive, in that order
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class ZipModelSink implements ModelSink
+{
+    /**
+     * Largest value of a 16-bit field of the ZIP format
+     */
+    private static final int MAX_16 = 0xFFFF;
+
+    /**
+     * Largest value of a 32-bit field of the ZIP format
+     */
+    private static final long MAX_32 = 0xFFFFFFFFL;
+
+    /**
+     * ZIP version needed to extract entries without ZIP64 records
+     */
+    private static final int VERSION_DEFLATE = 20;
+
+    /**
+     * ZIP version needed to extract entries with ZIP64 records
+     */
+    private static final int VERSION_ZIP64 = 45;
+
+    /**
+     * General purpose flag marking entry names as UTF-8
+     */
+    private static final int FLAG_UTF8 = 0x0800;
+
+    /**
+     * \brief Location and sizes of one entry, kept for the central directory
+     */
+    private static class Entry
+    {
+	/**
+	 * Name of the entry, in UTF-8
+	 */
+	byte[] name;
+
+	/**
+	 * Number of the sample the model is generated from
+	 */
+	int sampleNum;
+
+	/**
+	 * Compression method: 8 if deflated, 0 if stored
+	 */
+	int method;
+
+	/**
+	 * CRC-32 of the model
+	 */
+	long crc;
+
+	/**
+	 * Size of the entry's data in the archive
+	 */
+	long compressedSize;
+
+	/**
+	 * Size of the model
+	 */
+	long size;
+
+	/**
+	 * Offset of the entry's local header in the archive
+	 */
+	long offset;
+    }
+
+    /**
+     * Full path to the archive
+     */
+    private final String archivePath;
+
+    /**
+     * The archive being written
+     */
+    private final OutputStream archive;
+
+    /**
+     * Full path to the index file
+     */
+    private final String indexPath;
+
+    /**
+     * Compression level of each entry, from 0 to 9
+     */
+    private final int level;
+
+    /**
+     * Modification time given to every entry, in MS-DOS format
+     */
+    private final int dosTime;
+
+    /**
+     * Modification date given to every entry, in MS-DOS format
+     */
+    private final int dosDate;
+
+    /**
+     * Entries written so far, in archive order
+     */
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    /**
+     * Entries written so far, by name, so a model repeating one can find it
+     */
+    private final Map<String, Entry> entriesByName = new HashMap<String, Entry>();
+
+    /**
+     * Number of bytes written to the archive so far
+     */
+    private long position = 0;
+
+    /**
+     * Creates a sink writing models into an archive
+     * 
+     * @param archivePath Full path to the archive to create
+     * @param indexPath Full path to the index of the archive's entries
+     * @param level Compression level of each entry, from 0 (none) to 9
+     * @throws IOException if the archive cannot be created
+     */
+    public ZipModelSink(String archivePath, String indexPath, int level) throws IOException
+    {
+	this.archivePath = archivePath;
+	this.archive = new BufferedOutputStream(new FileOutputStream(archivePath), 1 << 16);
+	this.indexPath = indexPath;
+	this.level = level;
+
+	Calendar now = Calendar.getInstance();
+	this.dosTime = (now.get(Calendar.HOUR_OF_DAY) << 11) | (now.get(Calendar.MINUTE) << 5)
+		| (now.get(Calendar.SECOND) >> 1);
+	this.dosDate = ((now.get(Calendar.YEAR) - 1980) << 9)
+		| ((now.get(Calendar.MONTH) + 1) << 5) | now.get(Calendar.DAY_OF_MONTH);
+    }
+
+    /**
+     * Opens the stream one model is written to. The model is compressed and
+     * added to the archive when the stream is closed, and dropped if it is
+     * aborted
+     * 
+     * @param modelPath Name of the model's entry in the archive
+     * @param sampleNum Number of the sample the model is generated from, from
+     *            1
+     * @param parameterValMap Map of parameter name to sampled value
+     * @return Stream holding the model until it is closed
+     */
+    public OutputStream openModel(final String modelPath, final int sampleNum,
+	    Map<String, Double> parameterValMap)
+    {
+	return new ModelBuffer()
+	{
+	    @Override
+	    protected void complete(byte[] data, int length) throws IOException
+	    {
+		addEntry(modelPath, sampleNum, data, length);
+	    }
+	};
+    }
+
+    /**
+     * Compresses one model on the calling thread, then appends it to the
+     * archive
+     * 
+     * @param modelPath Name of the entry
+     * @param sampleNum Number of the sample the model is generated from
+     * @param data Buffer holding the model
+     * @param length Length of the model in the buffer
+     * @throws IOException if the entry cannot be written
+     */
+    private void addEntry(String modelPath, int sampleNum, byte[] data, int length)
+	    throws IOException
+    {
+	Entry entry = new Entry();
+	entry.name = modelPath.getBytes(Charset.forName("UTF-8"));
+	entry.sampleNum = sampleNum;
+	entry.size = length;
+
+	CRC32 crc = new CRC32();
+	crc.update(data, 0, length);
+	entry.crc = crc.getValue();
+
+	byte[] compressed = deflate(data, length);
+	if (compressed == null)
+	{
+	    // Compression would not make the model smaller, so store it
+	    entry.method = 0;
+	    compressed = data;
+	    entry.compressedSize = length;
+	}
+	else
+	{
+	    entry.method = 8;
+	    entry.compressedSize = compressed.length;
+	}
+
+	this.appendEntry(entry, compressed);
+    }
+
+    /**
+     * Adds a model repeating one already written as a new entry holding a copy
+     * of the existing entry's data, read back from the archive, so the model
+     * is neither generated nor compressed again
+     * 
+     * @param modelPath Name of the model's entry in the archive
+     * @param sampleNum Number of the sample the model is generated from, from
+     *            1
+     * @param parameterValMap Map of parameter name to sampled value
+     * @param existingPath Name of the entry of the identical model
+     * @throws IOException if the entry cannot be copied
+     */
+    public synchronized void linkModel(String modelPath, int sampleNum,
+	    Map<String, Double> parameterValMap, String existingPath) throws IOException
+    {
+	Entry existing = this.entriesByName.get(existingPath);
+	if (existing == null)
+	{
+	    throw new IOException(existingPath + " is not in the archive");
+	}
+
+	Entry entry = new Entry();
+	entry.name = modelPath.getBytes(Charset.forName("UTF-8"));
+	entry.sampleNum = sampleNum;
+	entry.method = existing.method;
+	entry.crc = existing.crc;
+	entry.compressedSize = existing.compressedSize;
+	entry.size = existing.size;
+
+	byte[] data = new byte[(int) existing.compressedSize];
+	this.archive.flush();
+	RandomAccessFile archiveFile = new RandomAccessFile(this.archivePath, "r");
+	try
+	{
+	    archiveFile.seek(existing.offset + 30 + existing.name.length);
+	    archiveFile.readFully(data);
+	}
+	finally
+	{
+	    archiveFile.close();
+	}
+	this.appendEntry(entry, data);
+    }
+
+    /**
+     * Appends the local header and data of one entry to the archive
+     * 
+     * @param entry The entry, which is given its offset
+     * @param data Buffer holding the entry's data, compressed or stored
+     * @throws IOException if the entry cannot be written
+     */
+    private void appendEntry(Entry entry, byte[] data) throws IOException
+    {
+	ByteArrayOutputStream header = new ByteArrayOutputStream(30 + entry.name.length);
+	writeInt(header, 0x04034b50);
+	writeShort(header, VERSION_DEFLATE);
+	writeShort(header, FLAG_UTF8);
+	writeShort(header, entry.method);
+	writeShort(header, this.dosTime);
+	writeShort(header, this.dosDate);
+	writeInt(header, entry.crc);
+	writeInt(header, entry.compressedSize);
+	writeInt(header, entry.size);
+	writeShort(header, entry.name.length);
+	writeShort(header, 0);
+	header.write(entry.name);
+
+	synchronized (this)
+	{
+	    entry.offset = this.position;
+	    header.writeTo(this.archive);
+	    this.archive.write(data, 0, (int) entry.compressedSize);
+	    this.position += header.size() + entry.compressedSize;
+	    this.entries.add(entry);
+	    this.entriesByName.put(new String(entry.name, "UTF-8"), entry);
+	}
+    }
+
+    /**
+     * Compresses a model as raw deflate data, as ZIP entries hold it
+     * 
+     * @param data Buffer holding the model
+     * @param length Length of the model in the buffer
+     * @return The compressed model, or null if it is no smaller than the
+     *         model itself
+     */
+    private byte[] deflate(byte[] data, int length)
+    {
+	if (this.level == 0)
+	{
+	    return null;
+	}
+
+	Deflater deflater = new Deflater(this.level, true);
+	try
+	{
+	    deflater.setInput(data, 0, length);
+	    deflater.finish();
+	    byte[] compressed = new byte[length];
+	    int compressedLength = 0;
+	    while (!deflater.finished() && compressedLength < length)
+	    {
+		compressedLength += deflater.deflate(compressed, compressedLength, length
+			- compressedLength);
+	    }
+	    if (!deflater.finished())
+	    {
+		return null;
+	    }
+
+	    byte[] result = new byte[compressedLength];
+	    System.arraycopy(compressed, 0, result, 0, compressedLength);
+	    return result;
+	}
+	finally
+	{
+	    deflater.end();
+	}
+    }
+
+    /**
+     * Writes the central directory that completes the archive, then the index
+     * of its entries
+     * 
+     * @throws IOException if the archive or index cannot be written
+     */
+    public synchronized void close() throws IOException
+    {
+	long directoryOffset = this.position;
+	ByteArrayOutputStream record = new ByteArrayOutputStream(128);
+
+	for (Entry entry : this.entries)
+	{
+	    boolean zip64 = entry.offset >= MAX_32;
+	    record.reset();
+	    writeInt(record, 0x02014b50);
+	    writeShort(record, VERSION_ZIP64);
+	    writeShort(record, zip64 ? VERSION_ZIP64 : VERSION_DEFLATE);
+	    writeShort(record, FLAG_UTF8);
+	    writeShort(record, entry.method);
+	    writeShort(record, this.dosTime);
+	    writeShort(record, this.dosDate);
+	    writeInt(record, entry.crc);
+	    writeInt(record, entry.compressedSize);
+	    writeInt(record, entry.size);
+	    writeShort(record, entry.name.length);
+	    writeShort(record, zip64 ? 12 : 0);
+	    writeShort(record, 0);
+	    writeShort(record, 0);
+	    writeShort(record, 0);
+	    writeInt(record, 0);
+	    writeInt(record, zip64 ? MAX_32 : entry.offset);
+	    record.write(entry.name);
+	    if (zip64)
+	    {
+		// Only the offset overflows, as models are held in memory
+		writeShort(record, 0x0001);
+		writeShort(record, 8);
+		writeLong(record, entry.offset);
+	    }
+	    record.writeTo(this.archive);
+	    this.position += record.size();
+	}
+
+	long directorySize = this.position - directoryOffset;
+	int numEntries = this.entries.size();
+	record.reset();
+	if (numEntries >= MAX_16 || directoryOffset >= MAX_32 || directorySize >= MAX_32)
+	{
+	    // ZIP64 end of central directory record, and its locator
+	    writeInt(record, 0x06064b50);
+	    writeLong(record, 44);
+	    writeShort(record, VERSION_ZIP64);
+	    writeShort(record, VERSION_ZIP64);
+	    writeInt(record, 0);
+	    writeInt(record, 0);
+	    writeLong(record, numEntries);
+	    writeLong(record, numEntries);
+	    writeLong(record, directorySize);
+	    writeLong(record, directoryOffset);
+
+	    writeInt(record, 0x07064b50);
+	    writeInt(record, 0);
+	    writeLong(record, this.position);
+	    writeInt(record, 1);
+	}
+	writeInt(record, 0x06054b50);
+	writeShort(record, 0);
+	writeShort(record, 0);
+	writeShort(record, Math.min(numEntries, MAX_16));
+	writeShort(record, Math.min(numEntries, MAX_16));
+	writeInt(record, Math.min(directorySize, MAX_32));
+	writeInt(record, Math.min(directoryOffset, MAX_32));
+	writeShort(record, 0);
+	record.writeTo(this.archive);
+	this.archive.close();
+
+	BufferedWriter index = new BufferedWriter(new FileWriter(this.indexPath));
+	try
+	{
+	    index.write("\"Sample\",\"Entry\",\"Offset\"");
+	    index.newLine();
+	    for (Entry entry : this.entries)
+	    {
+		index.write(entry.sampleNum + "," + new String(entry.name, "UTF-8") + ","
+			+ entry.offset);
+		index.newLine();
+	    }
+	}
+	finally
+	{
+	    index.close();
+	}
+    }
+
+    /**
+     * Writes a 16-bit little-endian field
+     * 
+     * @param out Stream to write to
+     * @param value Value of the field
+     */
+    private static void writeShort(ByteArrayOutputStream out, int value)
+    {
+	out.write(value & 0xFF);
+	out.write((value >>> 8) & 0xFF);
+    }
+
+    /**
+     * Writes a 32-bit little-endian field
+     * 
+     * @param out Stream to write to
+     * @param value Value of the field
+     */
+    private static void writeInt(ByteArrayOutputStream out, long value)
+    {
+	writeShort(out, (int) (value & 0xFFFF));
+	writeShort(out, (int) ((value >>> 16) & 0xFFFF));
+    }
+
+    /**
+     * Writes a 64-bit little-endian field
+     * 
+     * @param out Stream to write to
+     * @param value Value of the field
+     */
+    private static void writeLong(ByteArrayOutputStream out, long value)
+    {
+	writeInt(out, value & MAX_32);
+	writeInt(out, value >>> 32);
+    }
+}
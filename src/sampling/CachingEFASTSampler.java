@@ -0,0 +1,123 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * \brief Generates an eFAST sample with another sampler, unless the same
+ * sample is already in the sample cache
+ * 
+ * Where the sample is not cached, the value sets of each curve and parameter
+ * are kept as they are retrieved, and the sample is cached once all have been.
+ * Samples read from R as they are produced are still used as they arrive
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class CachingEFASTSampler implements EFASTSampler
+{
+    /**
+     * Sampler used when the sample is not cached
+     */
+    private final EFASTSampler sampler;
+
+    /**
+     * The cache
+     */
+    private final SampleCache cache;
+
+    /**
+     * The settings that determine the sample, other than the parameter
+     * space, number of curves and number of samples
+     */
+    private final List<String> inputs;
+
+    /**
+     * Creates a sampler using the sample cache
+     * 
+     * @param sampler Sampler used when the sample is not cached
+     * @param cache The cache
+     * @param inputs The settings that determine the sample, such as the
+     *            sampler and the seed
+     */
+    public CachingEFASTSampler(EFASTSampler sampler, SampleCache cache, List<String> inputs)
+    {
+	this.sampler = sampler;
+	this.cache = cache;
+	this.inputs = inputs;
+    }
+
+    /**
+     * Retrieves the eFAST sample from the cache, or generates it, caching it
+     * once all its value sets have been retrieved
+     * 
+     * @param space The parameters to sample, and their ranges, including the
+     *            dummy parameter
+     * @param numCurves Number of resample curves
+     * @param numSamples Number of samples to take from each curve
+     * @return The sample
+     * @throws Exception if the sample is not cached and cannot be generated
+     */
+    public EFASTSample generateSample(ParameterSpace space, int numCurves, int numSamples)
+	    throws Exception
+    {
+	List<String> keyInputs = new ArrayList<String>(this.inputs);
+	keyInputs.addAll(space.describe());
+	keyInputs.add("curves=" + numCurves);
+	keyInputs.add("samples=" + numSamples);
+	final String key = SampleCache.key(keyInputs);
+	final int numParams = space.size();
+
+	final double[][][] cached = this.cache.get(key);
+	if (cached != null)
+	{
+	    System.out.println("eFAST: using cached sample " + key);
+	    return new EFASTSample()
+	    {
+		public double[][] getCurveSample(int curve, int param)
+		{
+		    return cached[(curve - 1) * numParams + param];
+		}
+	    };
+	}
+
+	final EFASTSample sample = this.sampler.generateSample(space, numCurves, numSamples);
+	final double[][][] retrieved = new double[numCurves * numParams][][];
+	return new EFASTSample()
+	{
+	    /**
+	     * Number of curve and parameter value sets not yet retrieved
+	     */
+	    private int remaining = retrieved.length;
+
+	    public double[][] getCurveSample(int curve, int param) throws IOException
+	    {
+		double[][] valueSets = sample.getCurveSample(curve, param);
+		boolean complete = false;
+		synchronized (retrieved)
+		{
+		    int index = (curve - 1) * numParams + param;
+		    if (retrieved[index] == null)
+		    {
+			retrieved[index] = valueSets;
+			remaining--;
+			complete = (remaining == 0);
+		    }
+		}
+		if (complete)
+		{
+		    cache.put(key, retrieved);
+		}
+		return valueSets;
+	    }
+	};
+    }
+}
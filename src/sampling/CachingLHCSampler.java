@@ -0,0 +1,130 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import spartanLink.SampleRowListener;
+
+/**
+ * \brief Generates a latin-hypercube sample with another sampler, unless the
+ * same sample is already in the sample cache
+ * 
+ * Where value sets are wanted as they are produced, a sample not cached is
+ * streamed from the wrapped sampler if it can stream, so caching does not
+ * stop models being generated while spartan is still sampling. A cached
+ * sample is passed on row by row once retrieved
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class CachingLHCSampler implements StreamingLHCSampler
+{
+    /**
+     * Name of the file spartan would have written the sample to
+     */
+    private static final String SAMPLE_FILE = "LHC_Parameters_for_Runs.csv";
+
+    /**
+     * Sampler used when the sample is not cached
+     */
+    private final LHCSampler sampler;
+
+    /**
+     * The cache
+     */
+    private final SampleCache cache;
+
+    /**
+     * The settings that determine the sample, other than the parameter space
+     * and number of samples
+     */
+    private final List<String> inputs;
+
+    /**
+     * Creates a sampler using the sample cache
+     * 
+     * @param sampler Sampler used when the sample is not cached
+     * @param cache The cache
+     * @param inputs The settings that determine the sample, such as the
+     *            sampler, its algorithm and the seed
+     */
+    public CachingLHCSampler(LHCSampler sampler, SampleCache cache, List<String> inputs)
+    {
+	this.sampler = sampler;
+	this.cache = cache;
+	this.inputs = inputs;
+    }
+
+    /**
+     * Retrieves the latin-hypercube sample from the cache, or generates and
+     * caches it if it is not there
+     * 
+     * @param space The parameters to sample, and their ranges
+     * @param numSamples Number of parameter value sets to generate
+     * @return Sampled values, one row per value set and one column per
+     *         parameter
+     * @throws Exception if the sample is not cached and cannot be generated
+     */
+    public double[][] generateSample(ParameterSpace space, int numSamples) throws Exception
+    {
+	return this.generateSample(space, numSamples, null);
+    }
+
+    /**
+     * Retrieves the latin-hypercube sample from the cache, or generates and
+     * caches it if it is not there, passing each value set to a listener
+     * 
+     * @param space The parameters to sample, and their ranges
+     * @param numSamples Number of parameter value sets to generate
+     * @param listener Passed each value set in turn, or null
+     * @return Sampled values, one row per value set and one column per
+     *         parameter
+     * @throws Exception if the sample is not cached and cannot be generated,
+     *             or the listener fails
+     */
+    public double[][] generateSample(ParameterSpace space, int numSamples,
+	    SampleRowListener listener) throws Exception
+    {
+	List<String> keyInputs = new ArrayList<String>(this.inputs);
+	keyInputs.addAll(space.describe());
+	keyInputs.add("samples=" + numSamples);
+	String key = SampleCache.key(keyInputs);
+
+	double[][] sample;
+	double[][][] cached = this.cache.get(key);
+	if (cached != null)
+	{
+	    System.out.println("LHC: using cached sample " + key);
+	    sample = cached[0];
+	}
+	else if (listener != null && this.sampler instanceof StreamingLHCSampler)
+	{
+	    // The listener has been passed each value set as it was produced
+	    sample = ((StreamingLHCSampler) this.sampler).generateSample(space, numSamples,
+		    listener);
+	    this.cache.put(key, new double[][][] { sample });
+	    return sample;
+	}
+	else
+	{
+	    sample = this.sampler.generateSample(space, numSamples);
+	    this.cache.put(key, new double[][][] { sample });
+	}
+
+	if (listener != null)
+	{
+	    for (int i = 0; i < sample.length; i++)
+	    {
+		listener.sampleRow(SAMPLE_FILE, i, sample[i]);
+	    }
+	}
+	return sample;
+    }
+}
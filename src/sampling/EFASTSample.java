@@ -0,0 +1,35 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.io.IOException;
+
+/**
+ * \brief The parameter value sets of an eFAST analysis
+ * 
+ * Value sets are retrieved one curve and parameter at a time, as each group of
+ * models is generated, so the whole sample need never be held at once. May be
+ * called from several threads at once
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public interface EFASTSample
+{
+    /**
+     * Retrieves the value sets of one parameter of one curve
+     * 
+     * @param curve The curve, from 1
+     * @param param Position of the parameter of interest in the parameter
+     *            space
+     * @return Sampled values, one row per value set and one column per
+     *         parameter, in the order of the parameter space
+     * @throws IOException if the values cannot be read
+     */
+    double[][] getCurveSample(int curve, int param) throws IOException;
+}
@@ -0,0 +1,35 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+/**
+ * \brief Generates the parameter value sets of an eFAST analysis
+ * 
+ * Implemented within ASPASIA, or by running spartan in R. Each curve holds a
+ * sample for each parameter, in which that parameter is varied at a higher
+ * frequency than the others
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public interface EFASTSampler
+{
+    /**
+     * Generates an eFAST sample of a parameter space
+     * 
+     * @param space The parameters to sample, and their ranges, including the
+     *            dummy parameter
+     * @param numCurves Number of resample curves
+     * @param numSamples Number of samples to take from each curve
+     * @return The sample, from which the value sets of each curve and
+     *         parameter can be retrieved
+     * @throws Exception if the sample cannot be generated
+     */
+    EFASTSample generateSample(ParameterSpace space, int numCurves, int numSamples)
+	    throws Exception;
+}
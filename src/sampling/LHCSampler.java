@@ -0,0 +1,31 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+/**
+ * \brief Generates the parameter value sets of a latin-hypercube analysis
+ * 
+ * Implemented within ASPASIA, or by running spartan in R. The samples are
+ * returned to the caller, so models can be generated from them directly
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public interface LHCSampler
+{
+    /**
+     * Generates a latin-hypercube sample of a parameter space
+     * 
+     * @param space The parameters to sample, and their ranges
+     * @param numSamples Number of parameter value sets to generate
+     * @return Sampled values, one row per value set and one column per
+     *         parameter, in the order of the parameter space
+     * @throws Exception if the sample cannot be generated
+     */
+    double[][] generateSample(ParameterSpace space, int numSamples) throws Exception;
+}
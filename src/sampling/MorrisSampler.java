@@ -0,0 +1,331 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * \brief Generates the trajectories of a Morris elementary effects analysis
+ * 
+ * Each parameter range is divided into a number of levels, p. A trajectory
+ * starts at a random point of this grid, then moves each parameter in turn, in
+ * a random order, up or down by delta = p / (2 * (p - 1)) of its range. Each
+ * trajectory therefore holds parameters + 1 value sets, and each step gives
+ * one elementary effect of the parameter moved.
+ * 
+ * Optionally, more candidate trajectories are generated than are needed, and
+ * those spread furthest apart are kept, as proposed by Campolongo et al. The
+ * distance between two trajectories is the sum of the distances between all
+ * their points. Trajectories are removed one at a time, always the one whose
+ * distances to those remaining contribute least to their spread, until the
+ * number needed remain. The distances between candidates are calculated on
+ * all threads. The trajectories depend only on the seed, not on the number of
+ * threads
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class MorrisSampler
+{
+    /**
+     * Seed of the random number generator
+     */
+    private final long seed;
+
+    /**
+     * Number of levels each parameter range is divided into
+     */
+    private final int levels;
+
+    /**
+     * Number of candidate trajectories to select from. No more than the
+     * number of trajectories needed for no optimisation
+     */
+    private final int numCandidates;
+
+    /**
+     * Number of threads distances are calculated on
+     */
+    private final int numThreads;
+
+    /**
+     * Creates a Morris sampler
+     * 
+     * @param seed Seed of the random number generator
+     * @param levels Number of levels each parameter range is divided into.
+     *            Must be even
+     * @param numCandidates Number of candidate trajectories to select the
+     *            most spread from. No more than the number of trajectories
+     *            for no optimisation
+     * @param numThreads Number of threads to calculate distances on
+     */
+    public MorrisSampler(long seed, int levels, int numCandidates, int numThreads)
+    {
+	if (levels < 2 || levels % 2 != 0)
+	{
+	    throw new IllegalArgumentException("Morris levels must be an even number, not "
+		    + levels);
+	}
+	this.seed = seed;
+	this.levels = levels;
+	this.numCandidates = numCandidates;
+	this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Generates the trajectories through a parameter space
+     * 
+     * @param space The parameters to sample, and their ranges
+     * @param numTrajectories Number of trajectories to generate
+     * @return Sampled values, by trajectory, then value set, then parameter.
+     *         Consecutive value sets of a trajectory differ in one parameter
+     * @throws Exception if the optimisation is interrupted
+     */
+    public double[][][] generateTrajectories(ParameterSpace space, int numTrajectories)
+	    throws Exception
+    {
+	Random random = new Random(this.seed);
+	int numGenerated = Math.max(numTrajectories, this.numCandidates);
+	double[][][] candidates = new double[numGenerated][][];
+	for (int t = 0; t < numGenerated; t++)
+	{
+	    candidates[t] = generateUnitTrajectory(space.size(), this.levels, random);
+	}
+
+	double[][][] trajectories = candidates;
+	if (numGenerated > numTrajectories)
+	{
+	    trajectories = this.selectMostSpread(candidates, numTrajectories);
+	}
+
+	// Scale into the range of each parameter
+	double[][][] sample = new double[numTrajectories][][];
+	for (int t = 0; t < numTrajectories; t++)
+	{
+	    sample[t] = new double[trajectories[t].length][space.size()];
+	    for (int k = 0; k < trajectories[t].length; k++)
+	    {
+		for (int p = 0; p < space.size(); p++)
+		{
+		    sample[t][k][p] = space.scale(p, trajectories[t][k][p]);
+		}
+	    }
+	}
+	return sample;
+    }
+
+    /**
+     * Generates one trajectory on the unit scale
+     * 
+     * @param numParams Number of parameters
+     * @param levels Number of levels each parameter range is divided into
+     * @param random Source of the random start, order and directions
+     * @return The value sets of the trajectory, each parameter in [0,1]
+     */
+    static double[][] generateUnitTrajectory(int numParams, int levels, Random random)
+    {
+	double delta = levels / (2.0 * (levels - 1));
+
+	// Each parameter moves between a low level and the level delta above,
+	// starting at either
+	double[] low = new double[numParams];
+	boolean[] up = new boolean[numParams];
+	double[] point = new double[numParams];
+	for (int p = 0; p < numParams; p++)
+	{
+	    low[p] = random.nextInt(levels / 2) / (double) (levels - 1);
+	    up[p] = random.nextBoolean();
+	    point[p] = up[p] ? low[p] : low[p] + delta;
+	}
+	int[] order = NormalLHCSampler.permutation(numParams, random);
+
+	double[][] trajectory = new double[numParams + 1][];
+	trajectory[0] = point.clone();
+	for (int k = 0; k < numParams; k++)
+	{
+	    int p = order[k];
+	    point[p] = up[p] ? low[p] + delta : low[p];
+	    trajectory[k + 1] = point.clone();
+	}
+	return trajectory;
+    }
+
+    /**
+     * Selects the trajectories spread furthest apart, removing the candidate
+     * that contributes least to the spread of those remaining until the
+     * number needed remain
+     * 
+     * @param candidates The candidate trajectories
+     * @param numTrajectories Number of trajectories to keep
+     * @return The trajectories kept, in the order they were generated
+     * @throws Exception if the calculation of distances is interrupted
+     */
+    private double[][][] selectMostSpread(double[][][] candidates, int numTrajectories)
+	    throws Exception
+    {
+	double[][] squaredDistances = this.squaredDistances(candidates);
+	int numCandidates = candidates.length;
+
+	// Contribution of each candidate to the spread of all candidates
+	boolean[] kept = new boolean[numCandidates];
+	double[] contribution = new double[numCandidates];
+	for (int i = 0; i < numCandidates; i++)
+	{
+	    kept[i] = true;
+	    for (int j = 0; j < numCandidates; j++)
+	    {
+		contribution[i] += squaredDistances[i][j];
+	    }
+	}
+	double initialSpread = spread(squaredDistances, kept, numTrajectories);
+
+	for (int remaining = numCandidates; remaining > numTrajectories; remaining--)
+	{
+	    int weakest = -1;
+	    for (int i = 0; i < numCandidates; i++)
+	    {
+		if (kept[i] && (weakest < 0 || contribution[i] < contribution[weakest]))
+		{
+		    weakest = i;
+		}
+	    }
+	    kept[weakest] = false;
+	    for (int i = 0; i < numCandidates; i++)
+	    {
+		contribution[i] -= squaredDistances[i][weakest];
+	    }
+	}
+
+	double[][][] selected = new double[numTrajectories][][];
+	int t = 0;
+	for (int i = 0; i < numCandidates; i++)
+	{
+	    if (kept[i])
+	    {
+		selected[t++] = candidates[i];
+	    }
+	}
+
+	System.out.println("Morris: trajectory spread " + (float) initialSpread
+		+ " for the first " + numTrajectories + " candidates, "
+		+ (float) spread(squaredDistances, kept, -1) + " for the " + numTrajectories
+		+ " selected from " + numCandidates);
+	return selected;
+    }
+
+    /**
+     * Calculates the spread of a set of trajectories: the square root of the
+     * sum of their squared distances from each other
+     * 
+     * @param squaredDistances Squared distance between each pair of candidates
+     * @param kept Which candidates are in the set
+     * @param firstN If not negative, the set is instead the first firstN
+     *            candidates
+     * @return The spread of the set
+     */
+    private static double spread(double[][] squaredDistances, boolean[] kept, int firstN)
+    {
+	double sum = 0;
+	for (int i = 0; i < squaredDistances.length; i++)
+	{
+	    for (int j = i + 1; j < squaredDistances.length; j++)
+	    {
+		boolean inSet = (firstN >= 0) ? j < firstN : kept[i] && kept[j];
+		if (inSet)
+		{
+		    sum += squaredDistances[i][j];
+		}
+	    }
+	}
+	return Math.sqrt(sum);
+    }
+
+    /**
+     * Calculates the squared distance between every pair of candidates,
+     * sharing the candidates between threads
+     * 
+     * @param candidates The candidate trajectories
+     * @return Squared distance between each pair of candidates
+     * @throws Exception if the calculation is interrupted
+     */
+    private double[][] squaredDistances(final double[][][] candidates) throws Exception
+    {
+	final double[][] squaredDistances = new double[candidates.length][candidates.length];
+
+	// Candidates are dealt out in turn, so each thread has a similar
+	// number of pairs to calculate
+	List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+	for (int t = 0; t < this.numThreads; t++)
+	{
+	    final int first = t;
+	    tasks.add(new Callable<Void>()
+	    {
+		public Void call()
+		{
+		    for (int i = first; i < candidates.length; i += numThreads)
+		    {
+			for (int j = i + 1; j < candidates.length; j++)
+			{
+			    double distance = distance(candidates[i], candidates[j]);
+			    squaredDistances[i][j] = distance * distance;
+			    squaredDistances[j][i] = distance * distance;
+			}
+		    }
+		    return null;
+		}
+	    });
+	}
+
+	ExecutorService executor = Executors.newFixedThreadPool(this.numThreads);
+	try
+	{
+	    for (Future<Void> task : executor.invokeAll(tasks))
+	    {
+		task.get();
+	    }
+	}
+	finally
+	{
+	    executor.shutdown();
+	}
+	return squaredDistances;
+    }
+
+    /**
+     * Calculates the distance between two trajectories: the sum of the
+     * distances between each point of one and each point of the other
+     * 
+     * @param x First trajectory
+     * @param y Second trajectory
+     * @return Distance between the trajectories
+     */
+    static double distance(double[][] x, double[][] y)
+    {
+	double distance = 0;
+	for (double[] pointX : x)
+	{
+	    for (double[] pointY : y)
+	    {
+		double squared = 0;
+		for (int p = 0; p < pointX.length; p++)
+		{
+		    double diff = pointX[p] - pointY[p];
+		    squared += diff * diff;
+		}
+		distance += Math.sqrt(squared);
+	    }
+	}
+	return distance;
+    }
+}
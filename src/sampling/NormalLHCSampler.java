@@ -0,0 +1,112 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.util.Random;
+
+/**
+ * \brief Generates a latin-hypercube sample within ASPASIA, as spartan's
+ * "normal" algorithm does
+ * 
+ * The range of each parameter is divided into as many equal strata as there
+ * are samples. Each sample takes a uniformly random point in one stratum of
+ * every parameter, the strata of each parameter being assigned to samples by a
+ * random permutation, as in randomLHS of the R lhs package. The same seed
+ * always generates the same sample
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class NormalLHCSampler implements LHCSampler
+{
+    /**
+     * Seed of the random number generator
+     */
+    private final long seed;
+
+    /**
+     * Creates a sampler generating the sample given by a seed
+     * 
+     * @param seed Seed of the random number generator
+     */
+    public NormalLHCSampler(long seed)
+    {
+	this.seed = seed;
+    }
+
+    /**
+     * Generates a latin-hypercube sample of a parameter space
+     * 
+     * @param space The parameters to sample, and their ranges
+     * @param numSamples Number of parameter value sets to generate
+     * @return Sampled values, one row per value set and one column per
+     *         parameter
+     */
+    public double[][] generateSample(ParameterSpace space, int numSamples)
+    {
+	double[][] sample = generateUnitSample(numSamples, space.size(), new Random(this.seed));
+	for (double[] valueSet : sample)
+	{
+	    for (int param = 0; param < space.size(); param++)
+	    {
+		valueSet[param] = space.scale(param, valueSet[param]);
+	    }
+	}
+	return sample;
+    }
+
+    /**
+     * Generates a latin-hypercube sample of the unit hypercube
+     * 
+     * @param numSamples Number of points to generate
+     * @param numParams Number of dimensions
+     * @param random Random number generator
+     * @return Points of the sample, one row per point, each coordinate in
+     *         [0,1]
+     */
+    static double[][] generateUnitSample(int numSamples, int numParams, Random random)
+    {
+	double[][] sample = new double[numSamples][numParams];
+
+	for (int param = 0; param < numParams; param++)
+	{
+	    int[] strata = permutation(numSamples, random);
+	    for (int s = 0; s < numSamples; s++)
+	    {
+		sample[s][param] = (strata[s] + random.nextDouble()) / numSamples;
+	    }
+	}
+
+	return sample;
+    }
+
+    /**
+     * Generates a random permutation of the numbers 0 to n-1, by a
+     * Fisher-Yates shuffle
+     * 
+     * @param n Number of elements
+     * @param random Random number generator
+     * @return The permutation
+     */
+    static int[] permutation(int n, Random random)
+    {
+	int[] perm = new int[n];
+	for (int i = 0; i < n; i++)
+	{
+	    perm[i] = i;
+	}
+	for (int i = n - 1; i > 0; i--)
+	{
+	    int j = random.nextInt(i + 1);
+	    int swap = perm[i];
+	    perm[i] = perm[j];
+	    perm[j] = swap;
+	}
+	return perm;
+    }
+}
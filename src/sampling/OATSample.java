@@ -0,0 +1,32 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.io.IOException;
+
+/**
+ * \brief The parameter value sets of a robustness analysis
+ * 
+ * Sweeps are retrieved one parameter at a time, as the models of each sweep
+ * are generated. May be called from several threads at once
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public interface OATSample
+{
+    /**
+     * Retrieves the sweep of one parameter
+     * 
+     * @param param Position of the parameter in the parameters analysed
+     * @return Value sets of the sweep, one row per value of the parameter
+     *         and one column per parameter analysed
+     * @throws IOException if the sweep cannot be read
+     */
+    double[][] getSweep(int param) throws IOException;
+}
@@ -0,0 +1,34 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import xmlFileUtilities.AnalysisSettings;
+
+/**
+ * \brief Generates the parameter value sets of a robustness analysis
+ * 
+ * Implemented within ASPASIA, or by running spartan in R. Each parameter is
+ * swept through its values in turn, with all others held at their baseline
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public interface OATSampler
+{
+    /**
+     * Generates the one-at-a-time sweeps of the parameters being analysed
+     * 
+     * @param settings The settings of the analysis, declaring the baseline of
+     *            each parameter and either its min, max and increment or its
+     *            list of values
+     * @return The sample, from which the sweep of each parameter can be
+     *         retrieved
+     * @throws Exception if the sample cannot be generated
+     */
+    OATSample generateSample(AnalysisSettings settings) throws Exception;
+}
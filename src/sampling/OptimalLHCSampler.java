@@ -0,0 +1,335 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * \brief Generates an optimal latin-hypercube sample within ASPASIA, spreading
+ * the samples as far apart as possible
+ * 
+ * Starts from a sample generated as NormalLHCSampler does, then improves it by
+ * element exchange: swapping the values of one parameter between two samples,
+ * which keeps the sample a latin-hypercube. Exchanges are judged by the phi_p
+ * criterion of Morris and Mitchell, the sum over all pairs of samples of their
+ * distance raised to the power -p. With a large p this is dominated by the
+ * closest pairs, so lowering it increases the minimum distance between samples
+ * (the maximin criterion) while still rewarding improvements elsewhere.
+ * Distances are measured relative to the minimum distance of the starting
+ * sample, which only scales the criterion by a constant, so that the small
+ * distances of large samples do not underflow when raised to the power.
+ * 
+ * Each iteration draws a fixed number of candidate exchanges from the seeded
+ * random number generator, scores them on all threads, and applies the best
+ * if it improves the sample. Only the rows of the two samples involved change,
+ * so each candidate is scored in time proportional to the number of samples.
+ * The result depends only on the seed and number of iterations, not on the
+ * number of threads. Optimisation stops when the iteration budget is spent,
+ * or when the time budget runs out, if one is set
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class OptimalLHCSampler implements LHCSampler
+{
+    /**
+     * Number of candidate exchanges scored in each iteration
+     */
+    private static final int CANDIDATES_PER_ITERATION = 64;
+
+    /**
+     * Seed of the random number generator
+     */
+    private final long seed;
+
+    /**
+     * Maximum number of iterations of the optimisation
+     */
+    private final int maxIterations;
+
+    /**
+     * Maximum time to optimise for, in seconds. 0 for no limit
+     */
+    private final double maxSeconds;
+
+    /**
+     * Number of threads candidate exchanges are scored on
+     */
+    private final int numThreads;
+
+    /**
+     * Smallest distance between two samples of the last sample generated,
+     * with each parameter range scaled to [0,1]
+     */
+    private double minDistance;
+
+    /**
+     * Creates an optimal latin-hypercube sampler
+     * 
+     * @param seed Seed of the random number generator
+     * @param maxIterations Maximum number of iterations of the optimisation
+     * @param maxSeconds Maximum time to optimise for, in seconds. 0 for no
+     *            limit
+     * @param numThreads Number of threads to score exchanges on
+     */
+    public OptimalLHCSampler(long seed, int maxIterations, double maxSeconds, int numThreads)
+    {
+	this.seed = seed;
+	this.maxIterations = maxIterations;
+	this.maxSeconds = maxSeconds;
+	this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Generates an optimised latin-hypercube sample of a parameter space,
+     * reporting the minimum distance between samples before and after
+     * optimisation
+     * 
+     * @param space The parameters to sample, and their ranges
+     * @param numSamples Number of parameter value sets to generate
+     * @return Sampled values, one row per value set and one column per
+     *         parameter
+     * @throws Exception if the optimisation is interrupted
+     */
+    public double[][] generateSample(ParameterSpace space, int numSamples) throws Exception
+    {
+	final Random random = new Random(this.seed);
+	final double[][] unit = NormalLHCSampler.generateUnitSample(numSamples, space.size(),
+		random);
+
+	ExecutorService executor = Executors.newFixedThreadPool(this.numThreads);
+	try
+	{
+	    double initialDistance = minDistance(unit, executor);
+	    // Squared distances are divided by this before being raised to the
+	    // power, keeping those of the closest pairs near 1
+	    final double scale = (initialDistance > 0) ? initialDistance * initialDistance : 1;
+	    long deadline = System.nanoTime() + (long) (this.maxSeconds * 1e9);
+
+	    int iteration = 0;
+	    int exchanges = 0;
+	    if (numSamples > 2 && space.size() > 0)
+	    {
+		final int[][] candidates = new int[CANDIDATES_PER_ITERATION][3];
+		final double[] deltas = new double[CANDIDATES_PER_ITERATION];
+
+		// Each thread scores an equal share of the candidates
+		List<Callable<Void>> scoringTasks = new ArrayList<Callable<Void>>();
+		int share = (CANDIDATES_PER_ITERATION + this.numThreads - 1) / this.numThreads;
+		for (int start = 0; start < CANDIDATES_PER_ITERATION; start += share)
+		{
+		    final int from = start;
+		    final int to = Math.min(start + share, CANDIDATES_PER_ITERATION);
+		    scoringTasks.add(new Callable<Void>()
+		    {
+			public Void call()
+			{
+			    for (int c = from; c < to; c++)
+			    {
+				deltas[c] = exchangeDelta(unit, candidates[c][0], candidates[c][1],
+					candidates[c][2], scale);
+			    }
+			    return null;
+			}
+		    });
+		}
+
+		while (iteration < this.maxIterations
+			&& (this.maxSeconds <= 0 || System.nanoTime() < deadline))
+		{
+		    // Draw the candidates: two different samples, and the
+		    // parameter to exchange between them
+		    for (int[] candidate : candidates)
+		    {
+			candidate[0] = random.nextInt(numSamples);
+			candidate[1] = random.nextInt(numSamples - 1);
+			if (candidate[1] >= candidate[0])
+			{
+			    candidate[1]++;
+			}
+			candidate[2] = random.nextInt(space.size());
+		    }
+
+		    for (Future<Void> scored : executor.invokeAll(scoringTasks))
+		    {
+			scored.get();
+		    }
+
+		    // Apply the best exchange, if any improves the sample
+		    int best = 0;
+		    for (int c = 1; c < CANDIDATES_PER_ITERATION; c++)
+		    {
+			if (deltas[c] < deltas[best])
+			{
+			    best = c;
+			}
+		    }
+		    if (deltas[best] < 0)
+		    {
+			int[] exchange = candidates[best];
+			double swap = unit[exchange[0]][exchange[2]];
+			unit[exchange[0]][exchange[2]] = unit[exchange[1]][exchange[2]];
+			unit[exchange[1]][exchange[2]] = swap;
+			exchanges++;
+		    }
+		    iteration++;
+		}
+	    }
+
+	    this.minDistance = minDistance(unit, executor);
+	    System.out.println("Optimal LHC: minimum distance between samples "
+		    + (float) initialDistance + " before, " + (float) this.minDistance
+		    + " after " + iteration + " iterations (" + exchanges + " exchanges)");
+	}
+	finally
+	{
+	    executor.shutdown();
+	}
+
+	for (double[] valueSet : unit)
+	{
+	    for (int param = 0; param < space.size(); param++)
+	    {
+		valueSet[param] = space.scale(param, valueSet[param]);
+	    }
+	}
+	return unit;
+    }
+
+    /**
+     * @return Smallest distance between two samples of the last sample
+     *         generated, with each parameter range scaled to [0,1]
+     */
+    public double getMinDistance()
+    {
+	return this.minDistance;
+    }
+
+    /**
+     * Calculates the change in the phi_p criterion if the value of one
+     * parameter were exchanged between two samples. Only the distances from
+     * those two samples to the others change
+     * 
+     * @param unit The sample, on the unit scale
+     * @param a First sample of the exchange
+     * @param b Second sample of the exchange
+     * @param param The parameter exchanged
+     * @param scale Squared distance every squared distance is divided by
+     * @return Change in the sum of scaled distances raised to -p. Negative if
+     *         the exchange improves the sample
+     */
+    static double exchangeDelta(double[][] unit, int a, int b, int param, double scale)
+    {
+	double[] rowA = unit[a];
+	double[] rowB = unit[b];
+	double delta = 0;
+	for (int k = 0; k < unit.length; k++)
+	{
+	    if (k == a || k == b)
+	    {
+		continue;
+	    }
+	    double[] rowK = unit[k];
+	    double distA = squaredDistance(rowA, rowK) / scale;
+	    double distB = squaredDistance(rowB, rowK) / scale;
+	    double diffA = rowA[param] - rowK[param];
+	    double diffB = rowB[param] - rowK[param];
+	    double change = (diffB * diffB - diffA * diffA) / scale;
+
+	    delta += inversePower(distA + change) + inversePower(distB - change)
+		    - inversePower(distA) - inversePower(distB);
+	}
+	return delta;
+    }
+
+    /**
+     * @param x First point
+     * @param y Second point
+     * @return Squared distance between the points
+     */
+    private static double squaredDistance(double[] x, double[] y)
+    {
+	double dist = 0;
+	for (int i = 0; i < x.length; i++)
+	{
+	    double diff = x[i] - y[i];
+	    dist += diff * diff;
+	}
+	return dist;
+    }
+
+    /**
+     * Raises a squared distance to the power -25, giving the distance to the
+     * power -p of the phi_p criterion, with p = 50, by repeated multiplication
+     * 
+     * @param squaredDist The squared distance
+     * @return squaredDist to the power -25
+     */
+    private static double inversePower(double squaredDist)
+    {
+	double x2 = squaredDist * squaredDist;
+	double x4 = x2 * x2;
+	double x8 = x4 * x4;
+	double x16 = x8 * x8;
+	return 1 / (x16 * x8 * squaredDist);
+    }
+
+    /**
+     * Finds the smallest distance between two samples, sharing the pairs
+     * between threads
+     * 
+     * @param unit The sample, on the unit scale
+     * @param executor Threads to share the work between
+     * @return The smallest distance, or 0 if there are fewer than two samples
+     * @throws Exception if the calculation is interrupted
+     */
+    private double minDistance(final double[][] unit, ExecutorService executor)
+	    throws Exception
+    {
+	if (unit.length < 2)
+	{
+	    return 0;
+	}
+
+	// Rows are dealt out in turn, so each thread has a similar number of
+	// pairs to check
+	List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+	for (int t = 0; t < this.numThreads; t++)
+	{
+	    final int first = t;
+	    tasks.add(new Callable<Double>()
+	    {
+		public Double call()
+		{
+		    double min = Double.MAX_VALUE;
+		    for (int i = first; i < unit.length; i += numThreads)
+		    {
+			for (int j = i + 1; j < unit.length; j++)
+			{
+			    min = Math.min(min, squaredDistance(unit[i], unit[j]));
+			}
+		    }
+		    return min;
+		}
+	    });
+	}
+
+	double min = Double.MAX_VALUE;
+	for (Future<Double> result : executor.invokeAll(tasks))
+	{
+	    min = Math.min(min, result.get());
+	}
+	return Math.sqrt(min);
+    }
+}
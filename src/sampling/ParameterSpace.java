@@ -0,0 +1,160 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import xmlFileUtilities.AnalysisSettings;
+
+/**
+ * \brief The parameters being sampled, and the range each is sampled from
+ * 
+ * The minimum and maximum of each parameter are kept as they were entered in
+ * the settings file, so they can be passed to spartan unchanged, and as
+ * numbers for samplers within ASPASIA. Never changed once created
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public final class ParameterSpace
+{
+    /**
+     * Names of the parameters being sampled
+     */
+    private final List<String> parameters;
+
+    /**
+     * Min value of each parameter, as entered in the settings file
+     */
+    private final List<String> minVals;
+
+    /**
+     * Max value of each parameter, as entered in the settings file
+     */
+    private final List<String> maxVals;
+
+    /**
+     * Min value of each parameter
+     */
+    private final double[] min;
+
+    /**
+     * Max value of each parameter
+     */
+    private final double[] max;
+
+    /**
+     * Creates the space sampled for a set of parameters
+     * 
+     * @param parameters Names of the parameters being sampled
+     * @param minVals Min value of each parameter
+     * @param maxVals Max value of each parameter
+     */
+    public ParameterSpace(List<String> parameters, List<String> minVals, List<String> maxVals)
+    {
+	this.parameters = Collections.unmodifiableList(new ArrayList<String>(parameters));
+	this.minVals = Collections.unmodifiableList(new ArrayList<String>(minVals));
+	this.maxVals = Collections.unmodifiableList(new ArrayList<String>(maxVals));
+	this.min = new double[parameters.size()];
+	this.max = new double[parameters.size()];
+	for (int p = 0; p < parameters.size(); p++)
+	{
+	    this.min[p] = Double.parseDouble(minVals.get(p));
+	    this.max[p] = Double.parseDouble(maxVals.get(p));
+	}
+    }
+
+    /**
+     * Creates the space sampled for the parameters of an analysis
+     * 
+     * @param settings The settings of the analysis
+     */
+    public ParameterSpace(AnalysisSettings settings)
+    {
+	this(settings.getParametersAnalysed(), settings.getMinVals(), settings.getMaxVals());
+    }
+
+    /**
+     * @return Number of parameters being sampled
+     */
+    public int size()
+    {
+	return this.parameters.size();
+    }
+
+    /**
+     * @return Names of the parameters being sampled
+     */
+    public List<String> getParameters()
+    {
+	return this.parameters;
+    }
+
+    /**
+     * @return Min value of each parameter, as entered in the settings file
+     */
+    public List<String> getMinVals()
+    {
+	return this.minVals;
+    }
+
+    /**
+     * @return Max value of each parameter, as entered in the settings file
+     */
+    public List<String> getMaxVals()
+    {
+	return this.maxVals;
+    }
+
+    /**
+     * @param param Index of the parameter
+     * @return Min value of that parameter
+     */
+    public double getMin(int param)
+    {
+	return this.min[param];
+    }
+
+    /**
+     * @param param Index of the parameter
+     * @return Max value of that parameter
+     */
+    public double getMax(int param)
+    {
+	return this.max[param];
+    }
+
+    /**
+     * Describes the parameter space, as part of the key of a cached sample
+     * 
+     * @return The name, min and max of each parameter, in order
+     */
+    public List<String> describe()
+    {
+	List<String> description = new ArrayList<String>();
+	for (int p = 0; p < this.size(); p++)
+	{
+	    description.add(this.parameters.get(p) + "=[" + this.min[p] + "," + this.max[p] + "]");
+	}
+	return description;
+    }
+
+    /**
+     * Scales a point in [0,1] to the range of a parameter
+     * 
+     * @param param Index of the parameter
+     * @param unitValue Point in [0,1]
+     * @return The value of the parameter at that point of its range
+     */
+    public double scale(int param, double unitValue)
+    {
+	return this.min[param] + (this.max[param] - this.min[param]) * unitValue;
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * \brief Keeps the eFAST sample of a run with its output, so an interrupted
+ * run can be resumed without sampling again
+ * 
+ * The value sets of each curve and parameter are stored, in a sample cache
+ * holding only the sample of the run, as soon as they are retrieved. A new
+ * run clears the store first, and generates the sample before any model is
+ * written, so a sample that cannot be generated stops the analysis at once.
+ * A run being resumed takes each curve and parameter from the store, and only
+ * generates the sample, running spartan if it is used, if some were not
+ * stored before the run stopped
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class ResumableEFASTSampler implements EFASTSampler
+{
+    /**
+     * Sampler used for value sets not stored
+     */
+    private final EFASTSampler sampler;
+
+    /**
+     * Store of the sample of the run
+     */
+    private final SampleCache store;
+
+    /**
+     * The settings that determine the sample, other than the parameter
+     * space, number of curves and number of samples
+     */
+    private final List<String> inputs;
+
+    /**
+     * Whether an interrupted run is being resumed
+     */
+    private final boolean resume;
+
+    /**
+     * Creates a sampler keeping the sample of the run in its output folder
+     * 
+     * @param sampler Sampler used for value sets not stored
+     * @param storeFolder Folder the sample of the run is stored in
+     * @param inputs The settings that determine the sample, such as the
+     *            sampler and the seed
+     * @param resume Whether an interrupted run is being resumed
+     */
+    public ResumableEFASTSampler(EFASTSampler sampler, String storeFolder,
+	    List<String> inputs, boolean resume)
+    {
+	this.sampler = sampler;
+	this.store = new SampleCache(new File(storeFolder), Long.MAX_VALUE);
+	this.inputs = inputs;
+	this.resume = resume;
+    }
+
+    /**
+     * Returns the eFAST sample of the run. The sample is generated at once,
+     * unless the run is being resumed and every curve and parameter was
+     * stored before it stopped
+     * 
+     * @param space The parameters to sample, and their ranges, including the
+     *            dummy parameter
+     * @param numCurves Number of resample curves
+     * @param numSamples Number of samples to take from each curve
+     * @return The sample
+     * @throws Exception if the sample is needed and cannot be generated
+     */
+    public EFASTSample generateSample(final ParameterSpace space, final int numCurves,
+	    final int numSamples) throws Exception
+    {
+	if (!this.resume)
+	{
+	    this.store.clear();
+	}
+
+	final List<String> keyInputs = new ArrayList<String>(this.inputs);
+	keyInputs.addAll(space.describe());
+	keyInputs.add("curves=" + numCurves);
+	keyInputs.add("samples=" + numSamples);
+
+	boolean stored = this.resume;
+	for (int curve = 1; stored && curve <= numCurves; curve++)
+	{
+	    for (int param = 0; stored && param < space.size(); param++)
+	    {
+		stored = this.store.contains(curveKey(keyInputs, curve, param));
+	    }
+	}
+	final EFASTSample generated = stored ? null : this.sampler.generateSample(space,
+		numCurves, numSamples);
+
+	return new EFASTSample()
+	{
+	    /**
+	     * The generated sample. Where every value set was stored, it is only
+	     * generated if one cannot be read
+	     */
+	    private EFASTSample sample = generated;
+
+	    /**
+	     * Why the sample could not be generated, so it is only attempted once
+	     */
+	    private IOException failure;
+
+	    public double[][] getCurveSample(int curve, int param) throws IOException
+	    {
+		String key = curveKey(keyInputs, curve, param);
+
+		double[][][] stored = store.get(key);
+		if (stored != null)
+		{
+		    return stored[0];
+		}
+
+		double[][] valueSets = this.getSample().getCurveSample(curve, param);
+		store.put(key, new double[][][] { valueSets });
+		return valueSets;
+	    }
+
+	    /**
+	     * @return The generated sample, generated on first use
+	     * @throws IOException if the sample cannot be generated
+	     */
+	    private synchronized EFASTSample getSample() throws IOException
+	    {
+		if (this.sample == null && this.failure == null)
+		{
+		    try
+		    {
+			this.sample = sampler.generateSample(space, numCurves, numSamples);
+		    }
+		    catch (Exception e)
+		    {
+			this.failure = new IOException("The eFAST sample could not be generated",
+				e);
+		    }
+		}
+		if (this.failure != null)
+		{
+		    throw this.failure;
+		}
+		return this.sample;
+	    }
+	};
+    }
+
+    /**
+     * @param keyInputs The inputs that determine the whole sample
+     * @param curve The curve, from 1
+     * @param param Position of the parameter of interest
+     * @return Key the value sets of the curve and parameter are stored under
+     */
+    private static String curveKey(List<String> keyInputs, int curve, int param)
+    {
+	List<String> curveInputs = new ArrayList<String>(keyInputs);
+	curveInputs.add("curve=" + curve);
+	curveInputs.add("param=" + param);
+	return SampleCache.key(curveInputs);
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+/**
+ * \brief The parameter value sets of a Sobol analysis, following the sampling
+ * scheme of Saltelli
+ * 
+ * Two independent matrices, A and B, each hold the chosen number of value
+ * sets. They are taken from a Sobol sequence of twice as many dimensions as
+ * there are parameters, A from the first half of each point and B from the
+ * second. The origin of the sequence is skipped. For each parameter a further
+ * matrix, AB, holds the value sets of A with that parameter's values taken from
+ * B. The first and total-order indices of every parameter can then be
+ * estimated from (parameters + 2) * samples model runs.
+ * 
+ * Value sets are calculated when retrieved, so models can be generated from
+ * them in any order, on any number of threads
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public final class SaltelliSample
+{
+    /**
+     * The parameters sampled, and their ranges
+     */
+    private final ParameterSpace space;
+
+    /**
+     * Number of value sets in each matrix
+     */
+    private final int numSamples;
+
+    /**
+     * Sequence the value sets are taken from
+     */
+    private final SobolSequence sequence;
+
+    /**
+     * Creates the sample of a parameter space
+     * 
+     * @param space The parameters to sample, and their ranges
+     * @param numSamples Number of value sets in each matrix
+     */
+    public SaltelliSample(ParameterSpace space, int numSamples)
+    {
+	this.space = space;
+	this.numSamples = numSamples;
+	this.sequence = new SobolSequence(2 * space.size());
+    }
+
+    /**
+     * @return Number of value sets in each matrix
+     */
+    public int getNumSamples()
+    {
+	return this.numSamples;
+    }
+
+    /**
+     * @return Number of matrices: A, B, and one for each parameter
+     */
+    public int getNumMatrices()
+    {
+	return this.space.size() + 2;
+    }
+
+    /**
+     * Names a matrix, as used for the folder its models are written to
+     * 
+     * @param matrix The matrix: 0 for A, 1 for B, or 2 onwards for the AB
+     *            matrix of each parameter in turn
+     * @return A, B, or AB_ followed by the parameter name
+     */
+    public String getMatrixName(int matrix)
+    {
+	if (matrix == 0)
+	{
+	    return "A";
+	}
+	else if (matrix == 1)
+	{
+	    return "B";
+	}
+	return "AB_" + this.space.getParameters().get(matrix - 2);
+    }
+
+    /**
+     * Calculates one value set of a matrix
+     * 
+     * @param matrix The matrix: 0 for A, 1 for B, or 2 onwards for the AB
+     *            matrix of each parameter in turn
+     * @param sample The value set, from 0
+     * @return Sampled value of each parameter, in the order of the parameter
+     *         space
+     */
+    public double[] getValueSet(int matrix, int sample)
+    {
+	int numParams = this.space.size();
+	double[] valueSet = new double[numParams];
+	for (int p = 0; p < numParams; p++)
+	{
+	    // A takes the first half of each point, B the second, and each AB
+	    // matrix the value of its parameter from B
+	    int dimension = (matrix == 1 || matrix - 2 == p) ? numParams + p : p;
+	    valueSet[p] = this.space.scale(p, this.sequence.getCoordinate(sample + 1L, dimension));
+	}
+	return valueSet;
+    }
+}
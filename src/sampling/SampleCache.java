@@ -0,0 +1,378 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import xmlFileUtilities.AnalysisSettings;
+
+/**
+ * \brief A folder of previously generated samples, so the same sample need not
+ * be generated again
+ * 
+ * Each sample is stored in a file named by a SHA-256 hash of everything that
+ * determines it: the analysis, the sampler and its settings, the parameters
+ * and their ranges, the number of samples and the seed. When the same inputs
+ * are seen again, the stored sample is used and no sampling is done. Only
+ * seeded samples are cached, as an unseeded analysis is expected to generate
+ * a new sample each time.
+ * 
+ * Using a sample marks its file as recently used. Once the folder holds more
+ * than its size limit, the least recently used samples are deleted. Samples
+ * are written to a temporary file and renamed into place, so a sample is
+ * never read half-written, and the cache may be shared by analyses running at
+ * the same time
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SampleCache
+{
+    /**
+     * First four bytes of every cached sample
+     */
+    private static final int MAGIC = 0x41535043;
+
+    /**
+     * Version of the format of cached samples, part of every key
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Extension of cached sample files
+     */
+    private static final String EXTENSION = ".sample";
+
+    /**
+     * Folder the samples are stored in
+     */
+    private final File folder;
+
+    /**
+     * Size the folder may grow to before samples are deleted, in bytes
+     */
+    private final long maxBytes;
+
+    /**
+     * Creates a cache in a folder, creating the folder if needed
+     * 
+     * @param folder Folder the samples are stored in
+     * @param maxBytes Size the folder may grow to before the least recently
+     *            used samples are deleted, in bytes
+     */
+    public SampleCache(File folder, long maxBytes)
+    {
+	this.folder = folder;
+	this.maxBytes = maxBytes;
+	folder.mkdirs();
+    }
+
+    /**
+     * Creates the cache set by the optional sampleCacheFolder tag of the
+     * settings file, limited to the size in megabytes set by the optional
+     * sampleCacheSizeMB tag (1024 by default)
+     * 
+     * @param settings The settings of the analysis
+     * @return The cache, or null if none is set, or the analysis is not seeded
+     */
+    public static SampleCache fromSettings(AnalysisSettings settings)
+    {
+	String cacheFolder = settings.getOptionalParam("sampleCacheFolder", null);
+	if (cacheFolder == null || SamplingUtilities.getSeed(settings) == null)
+	{
+	    return null;
+	}
+	long maxMB = Long.parseLong(settings.getOptionalParam("sampleCacheSizeMB", "1024"));
+	return new SampleCache(new File(cacheFolder), maxMB * 1024 * 1024);
+    }
+
+    /**
+     * Calculates the key of a sample from everything that determines it
+     * 
+     * @param inputs The sampling inputs, in a fixed order
+     * @return Hexadecimal SHA-256 hash of the inputs
+     */
+    public static String key(List<String> inputs)
+    {
+	try
+	{
+	    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+	    digest.update(("ASPASIA sample cache " + FORMAT_VERSION).getBytes("UTF-8"));
+	    for (String input : inputs)
+	    {
+		// Each input is preceded by its length, so no two lists of
+		// inputs give the same bytes
+		digest.update((input.length() + ":" + input + ";").getBytes("UTF-8"));
+	    }
+
+	    StringBuilder hex = new StringBuilder();
+	    for (byte b : digest.digest())
+	    {
+		hex.append(String.format("%02x", b));
+	    }
+	    return hex.toString();
+	}
+	catch (Exception e)
+	{
+	    // SHA-256 and UTF-8 are available on every platform
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    /**
+     * @param key Key of a sample
+     * @return Whether the sample has been stored, without reading it
+     */
+    public boolean contains(String key)
+    {
+	return new File(this.folder, key + EXTENSION).exists();
+    }
+
+    /**
+     * Retrieves a cached sample, marking it as recently used. A sample file
+     * that is truncated or corrupt is treated as not cached, so the sample is
+     * generated again: every length in the file is checked against the bytes
+     * left in it before anything is allocated
+     * 
+     * @param key Key of the sample
+     * @return The arrays the sample was stored as, or null if it is not cached
+     *         or cannot be read
+     */
+    public double[][][] get(String key)
+    {
+	File sampleFile = new File(this.folder, key + EXTENSION);
+	if (!sampleFile.exists())
+	{
+	    return null;
+	}
+
+	try
+	{
+	    DataInputStream in = new DataInputStream(new BufferedInputStream(
+		    new FileInputStream(sampleFile)));
+	    try
+	    {
+		if (in.readInt() != MAGIC || !in.readUTF().equals(key))
+		{
+		    return null;
+		}
+		// Bytes left after the magic number, the key and its length, and
+		// the number of arrays
+		long remaining = sampleFile.length() - 4 - 2 - key.length() - 4;
+
+		// Each array takes at least the two ints giving its size
+		double[][][] arrays = new double[readLength(in, remaining / 8)][][];
+		for (int a = 0; a < arrays.length; a++)
+		{
+		    remaining -= 8;
+		    int rows = readLength(in, remaining / 8);
+		    int columns = readLength(in, (rows == 0) ? Integer.MAX_VALUE : remaining / 8
+			    / rows);
+		    remaining -= 8L * rows * columns;
+		    arrays[a] = new double[rows][columns];
+		    for (double[] row : arrays[a])
+		    {
+			for (int i = 0; i < row.length; i++)
+			{
+			    row[i] = in.readDouble();
+			}
+		    }
+		}
+		if (in.read() != -1)
+		{
+		    throw new IOException("unexpected data after the sample");
+		}
+		sampleFile.setLastModified(System.currentTimeMillis());
+		return arrays;
+	    }
+	    finally
+	    {
+		in.close();
+	    }
+	}
+	catch (IOException e)
+	{
+	    return unreadable(sampleFile, e);
+	}
+	catch (RuntimeException e)
+	{
+	    return unreadable(sampleFile, e);
+	}
+    }
+
+    /**
+     * Reads the length of an array from a cached sample
+     * 
+     * @param in Stream of the sample file
+     * @param max Largest length the rest of the file could hold
+     * @return The length
+     * @throws IOException if the length is negative or too large for the file
+     */
+    private static int readLength(DataInputStream in, long max) throws IOException
+    {
+	int length = in.readInt();
+	if (length < 0 || length > max)
+	{
+	    throw new IOException("array length " + length + " does not fit the file");
+	}
+	return length;
+    }
+
+    /**
+     * Reports a cached sample that could not be read
+     * 
+     * @param sampleFile The sample file
+     * @param e The failure reading it
+     * @return Null, as the sample is to be generated again
+     */
+    private static double[][][] unreadable(File sampleFile, Exception e)
+    {
+	System.out.println("Cached sample " + sampleFile + " could not be read (" + e
+		+ "), so will be generated again");
+	return null;
+    }
+
+    /**
+     * Stores a sample, then deletes the least recently used samples if the
+     * cache has grown beyond its limit. A sample that cannot be stored is
+     * reported, but does not stop the analysis
+     * 
+     * @param key Key of the sample
+     * @param arrays The arrays making up the sample. Every row of an array
+     *            must be the same length
+     */
+    public void put(String key, double[][][] arrays)
+    {
+	File sampleFile = new File(this.folder, key + EXTENSION);
+	File tempFile = null;
+	try
+	{
+	    tempFile = File.createTempFile("tmp" + key, ".tmp", this.folder);
+	    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+		    new FileOutputStream(tempFile)));
+	    try
+	    {
+		out.writeInt(MAGIC);
+		out.writeUTF(key);
+		out.writeInt(arrays.length);
+		for (double[][] array : arrays)
+		{
+		    out.writeInt(array.length);
+		    out.writeInt(array.length == 0 ? 0 : array[0].length);
+		    for (double[] row : array)
+		    {
+			for (double value : row)
+			{
+			    out.writeDouble(value);
+			}
+		    }
+		}
+	    }
+	    finally
+	    {
+		out.close();
+	    }
+
+	    // Another analysis may have stored the same sample meanwhile
+	    sampleFile.delete();
+	    if (!tempFile.renameTo(sampleFile))
+	    {
+		throw new IOException("could not rename " + tempFile);
+	    }
+	    tempFile = null;
+	}
+	catch (IOException e)
+	{
+	    System.out.println("The sample could not be cached in " + this.folder + ": " + e);
+	}
+	finally
+	{
+	    if (tempFile != null)
+	    {
+		tempFile.delete();
+	    }
+	}
+
+	this.evict();
+    }
+
+    /**
+     * Deletes every sample in the cache
+     */
+    public synchronized void clear()
+    {
+	File[] samples = this.folder.listFiles();
+	if (samples == null)
+	{
+	    return;
+	}
+	for (File sample : samples)
+	{
+	    if (sample.getName().endsWith(EXTENSION))
+	    {
+		sample.delete();
+	    }
+	}
+    }
+
+    /**
+     * Deletes the least recently used samples until the cache is within its
+     * size limit
+     */
+    private synchronized void evict()
+    {
+	File[] samples = this.folder.listFiles();
+	if (samples == null)
+	{
+	    return;
+	}
+
+	long totalBytes = 0;
+	for (File sample : samples)
+	{
+	    if (sample.getName().endsWith(EXTENSION))
+	    {
+		totalBytes += sample.length();
+	    }
+	}
+
+	Arrays.sort(samples, new Comparator<File>()
+	{
+	    public int compare(File a, File b)
+	    {
+		return Long.compare(a.lastModified(), b.lastModified());
+	    }
+	});
+	for (File sample : samples)
+	{
+	    if (totalBytes <= this.maxBytes)
+	    {
+		break;
+	    }
+	    if (sample.getName().endsWith(EXTENSION))
+	    {
+		long sampleBytes = sample.length();
+		if (sample.delete())
+		{
+		    totalBytes -= sampleBytes;
+		}
+	    }
+	}
+    }
+}
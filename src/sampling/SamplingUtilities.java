@@ -0,0 +1,371 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import xmlFileUtilities.AnalysisSettings;
+
+/**
+ * \brief Utilities to choose the sampler for an analysis, and to read and write
+ * the sample files used by spartan
+ * 
+ * Samples are generated within ASPASIA unless the samplingBackend tag of the
+ * settings file is set to R, in which case spartan is run
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SamplingUtilities
+{
+    /**
+     * Determines whether samples are to be generated by spartan in R, from the
+     * optional samplingBackend tag of the settings file: java (the default) or
+     * R
+     * 
+     * @param settings The settings of the analysis
+     * @return True if samples should be generated by spartan
+     */
+    public static boolean useSpartan(AnalysisSettings settings)
+    {
+	String backend = settings.getOptionalParam("samplingBackend", "java");
+	if (backend.equalsIgnoreCase("R"))
+	{
+	    return true;
+	}
+	else if (backend.equalsIgnoreCase("java"))
+	{
+	    return false;
+	}
+	throw new IllegalArgumentException("Unknown samplingBackend in settings file: " + backend);
+    }
+
+    /**
+     * Determines whether samples generated by spartan are streamed from R's
+     * output as they are produced, from the optional spartanStreaming tag of
+     * the settings file. By default spartan's sample files are read once R
+     * has finished
+     * 
+     * @param settings The settings of the analysis
+     * @return True if samples should be streamed from R
+     */
+    public static boolean streamFromSpartan(AnalysisSettings settings)
+    {
+	return Boolean.parseBoolean(settings.getOptionalParam("spartanStreaming", "false"));
+    }
+
+    /**
+     * Reads the time R may take to generate a sample from the optional
+     * samplingTimeout tag of the settings file. R is stopped if it takes
+     * longer
+     * 
+     * @param settings The settings of the analysis
+     * @return The time limit in seconds, or 0 (the default) for no limit
+     */
+    public static int getSpartanTimeout(AnalysisSettings settings)
+    {
+	return Integer.parseInt(settings.getOptionalParam("samplingTimeout", "0"));
+    }
+
+    /**
+     * Reads the seed for sampling from the optional samplingSeed tag of the
+     * settings file
+     * 
+     * @param settings The settings of the analysis
+     * @return The seed, or null if none was set
+     */
+    public static Integer getSeed(AnalysisSettings settings)
+    {
+	String seed = settings.getOptionalParam("samplingSeed", null);
+	if (seed == null)
+	{
+	    return null;
+	}
+	return Integer.parseInt(seed);
+    }
+
+    /**
+     * Returns the seed to generate a sample within ASPASIA from. Where the
+     * settings file does not set one, a seed is chosen and reported, so the
+     * sample can be generated again
+     * 
+     * @param settings The settings of the analysis
+     * @return The seed to use
+     */
+    public static int getOrChooseSeed(AnalysisSettings settings)
+    {
+	Integer seed = getSeed(settings);
+	if (seed == null)
+	{
+	    seed = new Random().nextInt(Integer.MAX_VALUE);
+	    System.out.println("Sampling with seed " + seed
+		    + ". Set samplingSeed in the settings file to generate this sample again");
+	}
+	return seed;
+    }
+
+    /**
+     * Reads the number of threads samplers may use from the optional
+     * samplingThreads tag of the settings file. 0, the default, uses one thread
+     * per available processor
+     * 
+     * @param settings The settings of the analysis
+     * @return Number of sampling threads
+     */
+    public static int getThreadCount(AnalysisSettings settings)
+    {
+	int numThreads = Integer.parseInt(settings.getOptionalParam("samplingThreads", "0"));
+	if (numThreads <= 0)
+	{
+	    numThreads = Runtime.getRuntime().availableProcessors();
+	}
+	return numThreads;
+    }
+
+    /**
+     * Creates the sampler for a latin-hypercube analysis. Both the normal and
+     * optimal algorithms are run within ASPASIA unless spartan is requested in
+     * the settings file. The optimal algorithm is given the budget set by the
+     * optional lhcOptimisationIterations and lhcOptimisationSeconds tags.
+     * Where a sample cache is set, seeded samples are taken from it when
+     * possible, unless the optimisation is limited by time, which gives a
+     * different sample each run
+     * 
+     * @param settings The settings of the analysis
+     * @param outputFolder Folder any spartan script and sample file are
+     *            written to
+     * @param algorithm LHC algorithm to use - normal or optimal
+     * @return The sampler to use
+     */
+    public static LHCSampler createLHCSampler(AnalysisSettings settings, String outputFolder,
+	    String algorithm)
+    {
+	List<String> cacheInputs = new ArrayList<String>();
+	cacheInputs.add("LHC");
+	cacheInputs.add("algorithm=" + algorithm);
+
+	LHCSampler sampler;
+	if (useSpartan(settings))
+	{
+	    sampler = new SpartanLHCSampler(outputFolder, algorithm, getSeed(settings),
+		    streamFromSpartan(settings), getSpartanTimeout(settings));
+	    cacheInputs.add("backend=R");
+	}
+	else if (algorithm.equals("normal"))
+	{
+	    sampler = new NormalLHCSampler(getOrChooseSeed(settings));
+	    cacheInputs.add("backend=java");
+	}
+	else if (algorithm.equals("optimal"))
+	{
+	    String iterations = settings.getOptionalParam("lhcOptimisationIterations", "1000");
+	    double seconds = Double.parseDouble(settings.getOptionalParam(
+		    "lhcOptimisationSeconds", "0"));
+	    sampler = new OptimalLHCSampler(getOrChooseSeed(settings),
+		    Integer.parseInt(iterations), seconds, getThreadCount(settings));
+	    if (seconds > 0)
+	    {
+		return sampler;
+	    }
+	    cacheInputs.add("backend=java");
+	    cacheInputs.add("iterations=" + Integer.parseInt(iterations));
+	}
+	else
+	{
+	    throw new IllegalArgumentException("Unknown LHC algorithm in settings file: "
+		    + algorithm);
+	}
+
+	SampleCache cache = SampleCache.fromSettings(settings);
+	if (cache == null)
+	{
+	    return sampler;
+	}
+	cacheInputs.add("seed=" + getSeed(settings));
+	return new CachingLHCSampler(sampler, cache, cacheInputs);
+    }
+
+    /**
+     * Creates the sampler for an eFAST analysis, run within ASPASIA unless
+     * spartan is requested in the settings file. Spartan samples each curve in
+     * a separate R job, running as many at once as the optional spartanJobs
+     * tag allows, by default the number of sampling threads. Where a sample
+     * cache is set, seeded samples are taken from it when possible
+     * 
+     * @param settings The settings of the analysis
+     * @param outputFolder Folder any spartan script and sample files are
+     *            written to
+     * @return The sampler to use
+     */
+    public static EFASTSampler createEFASTSampler(AnalysisSettings settings, String outputFolder)
+    {
+	List<String> cacheInputs = new ArrayList<String>();
+	cacheInputs.add("eFAST");
+
+	EFASTSampler sampler;
+	if (useSpartan(settings))
+	{
+	    int maxJobs = Integer.parseInt(settings.getOptionalParam("spartanJobs",
+		    Integer.toString(getThreadCount(settings))));
+	    sampler = new SpartanEFASTSampler(outputFolder, getSeed(settings),
+		    streamFromSpartan(settings), getSpartanTimeout(settings), maxJobs);
+	    cacheInputs.add("backend=R");
+	    // Curves sampled by separate jobs have their own seeds
+	    cacheInputs.add("curveJobs=" + (maxJobs > 1));
+	}
+	else
+	{
+	    sampler = new SearchCurveEFASTSampler(getOrChooseSeed(settings));
+	    cacheInputs.add("backend=java");
+	}
+
+	SampleCache cache = SampleCache.fromSettings(settings);
+	if (cache == null)
+	{
+	    return sampler;
+	}
+	cacheInputs.add("seed=" + getSeed(settings));
+	return new CachingEFASTSampler(sampler, cache, cacheInputs);
+    }
+
+    /**
+     * Creates the sampler for a robustness analysis, run within ASPASIA unless
+     * spartan is requested in the settings file. Spartan can only step each
+     * parameter from min to max, so where any parameter is given as a list of
+     * values the sweep is generated within ASPASIA
+     * 
+     * @param settings The settings of the analysis
+     * @param outputFolder Folder any spartan script and sample files are
+     *            written to
+     * @return The sampler to use
+     */
+    public static OATSampler createOATSampler(AnalysisSettings settings, String outputFolder)
+    {
+	if (useSpartan(settings))
+	{
+	    for (int p = 0; p < settings.getParametersAnalysed().size(); p++)
+	    {
+		if (settings.getValues().get(p) != null)
+		{
+		    System.out.println("Parameter " + settings.getParametersAnalysed().get(p)
+			    + " is given as a list of values, which spartan cannot sweep."
+			    + " Generating the robustness sample within ASPASIA");
+		    return new SweepOATSampler();
+		}
+	    }
+	    return new SpartanOATSampler(outputFolder, streamFromSpartan(settings),
+		    getSpartanTimeout(settings));
+	}
+	return new SweepOATSampler();
+    }
+
+    /**
+     * Creates the sampler for a Morris analysis, with the number of levels set
+     * by the optional morrisLevels tag (4 by default). Where the optional
+     * morrisCandidateTrajectories tag gives more candidates than trajectories
+     * are needed, the most spread are selected from them
+     * 
+     * @param settings The settings of the analysis
+     * @return The sampler to use
+     */
+    public static MorrisSampler createMorrisSampler(AnalysisSettings settings)
+    {
+	return new MorrisSampler(getOrChooseSeed(settings), Integer.parseInt(settings
+		.getOptionalParam("morrisLevels", "4")), Integer.parseInt(settings
+		.getOptionalParam("morrisCandidateTrajectories", "0")), getThreadCount(settings));
+    }
+
+    /**
+     * Writes a sample to a CSV file in the format spartan produces, so the
+     * analysis of simulation results can pair each result with its parameter
+     * values
+     * 
+     * @param sampleFilePath Full path to the file to write
+     * @param parameters Names of the parameters in each column
+     * @param sample Sampled values, one row per value set
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeSampleFile(String sampleFilePath, List<String> parameters,
+	    double[][] sample) throws IOException
+    {
+	BufferedWriter writer = new BufferedWriter(new FileWriter(sampleFilePath));
+	try
+	{
+	    for (int p = 0; p < parameters.size(); p++)
+	    {
+		writer.write((p > 0 ? "," : "") + "\"" + parameters.get(p) + "\"");
+	    }
+	    writer.newLine();
+
+	    for (double[] valueSet : sample)
+	    {
+		for (int p = 0; p < valueSet.length; p++)
+		{
+		    writer.write((p > 0 ? "," : "") + Double.toString(valueSet[p]));
+		}
+		writer.newLine();
+	    }
+	}
+	finally
+	{
+	    writer.close();
+	}
+    }
+
+    /**
+     * Reads a sample from a CSV file produced by spartan. The first line, the
+     * parameter headings, is skipped
+     * 
+     * @param sampleFilePath Full path to the file to read
+     * @param numParams Number of parameter columns in the file
+     * @return Sampled values, one row per value set
+     * @throws IOException if the file cannot be read, or a line does not hold
+     *             a value for each parameter
+     */
+    public static double[][] readSampleFile(String sampleFilePath, int numParams)
+	    throws IOException
+    {
+	List<double[]> sample = new ArrayList<double[]>();
+	BufferedReader br = new BufferedReader(new FileReader(sampleFilePath));
+	try
+	{
+	    // Skip over the first line - the parameter headings
+	    String strLine = br.readLine();
+	    strLine = br.readLine();
+	    while (strLine != null)
+	    {
+		StringTokenizer st = new StringTokenizer(strLine, ",");
+		double[] valueSet = new double[numParams];
+		for (int p = 0; p < numParams; p++)
+		{
+		    if (!st.hasMoreTokens())
+		    {
+			throw new IOException("Line " + (sample.size() + 2) + " of "
+				+ sampleFilePath + " does not hold a value for every parameter");
+		    }
+		    valueSet[p] = Double.parseDouble(st.nextToken());
+		}
+		sample.add(valueSet);
+		strLine = br.readLine();
+	    }
+	}
+	finally
+	{
+	    br.close();
+	}
+	return sample.toArray(new double[sample.size()][]);
+    }
+}
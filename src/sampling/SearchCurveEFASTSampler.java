@@ -0,0 +1,162 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * \brief Generates an eFAST sample within ASPASIA, following the search curve
+ * sampling of spartan's efast_generate_sample
+ * 
+ * The parameter of interest in each sample is varied at frequency omi, and the
+ * complementary parameters at the lower frequencies chosen as spartan's
+ * efast_setfreq does. Each curve is given a random phase shift for every
+ * parameter, and samples are taken from the search curve
+ * x = 0.5 + asin(sin(omega * s + phi)) / pi, at evenly spaced points s in
+ * (-pi, pi), before being scaled into the range of each parameter. As in
+ * spartan, the number of samples taken from each curve is adjusted to
+ * 2 * MI * omi + 1.
+ * 
+ * All the phase shifts are drawn from the seeded random number generator when
+ * the sample is generated. The value sets of each curve and parameter are then
+ * calculated only when retrieved, by whichever thread generates those models
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SearchCurveEFASTSampler implements EFASTSampler
+{
+    /**
+     * Maximum number of Fourier coefficients retained, MI in spartan
+     */
+    private static final int MAX_FOURIER_COEFFICIENTS = 4;
+
+    /**
+     * Seed of the random number generator
+     */
+    private final long seed;
+
+    /**
+     * Creates an eFAST sampler
+     * 
+     * @param seed Seed of the random number generator
+     */
+    public SearchCurveEFASTSampler(long seed)
+    {
+	this.seed = seed;
+    }
+
+    /**
+     * Generates an eFAST sample of a parameter space
+     * 
+     * @param space The parameters to sample, and their ranges, including the
+     *            dummy parameter
+     * @param numCurves Number of resample curves
+     * @param numSamples Number of samples requested from each curve, adjusted
+     *            as spartan does
+     * @return The sample, calculating the value sets of each curve and
+     *         parameter when retrieved
+     * @throws IllegalArgumentException if fewer than 65 samples are taken
+     *             from each curve
+     */
+    public EFASTSample generateSample(final ParameterSpace space, int numCurves,
+	    int numSamples)
+    {
+	final int numParams = space.size();
+
+	// Frequency of the parameter of interest, and the number of samples
+	// this allows from each curve
+	final int omi = (int) Math.floor(((double) numSamples * numParams - 1)
+		/ (2 * MAX_FOURIER_COEFFICIENTS) / numParams);
+	final int curveSamples = 2 * MAX_FOURIER_COEFFICIENTS * omi + 1;
+	if (numParams > 1 && omi < 2 * MAX_FOURIER_COEFFICIENTS)
+	{
+	    throw new IllegalArgumentException("eFAST requires at least 65 samples from each "
+		    + "curve. Increase efastCurveSamples in the settings file");
+	}
+	if (curveSamples != numSamples)
+	{
+	    System.out.println("eFAST: taking " + curveSamples + " samples from each curve");
+	}
+
+	final double[] complementaryFrequencies = setFrequencies(numParams, (double) omi / 2
+		/ MAX_FOURIER_COEFFICIENTS);
+
+	// Phase shifts for each parameter of interest, curve and parameter,
+	// drawn in the order spartan draws them
+	Random random = new Random(this.seed);
+	final double[][][] phaseShifts = new double[numParams][numCurves][numParams];
+	for (int param = 0; param < numParams; param++)
+	{
+	    for (int curve = 0; curve < numCurves; curve++)
+	    {
+		for (int j = 0; j < numParams; j++)
+		{
+		    phaseShifts[param][curve][j] = random.nextDouble() * 2 * Math.PI;
+		}
+	    }
+	}
+
+	return new EFASTSample()
+	{
+	    public double[][] getCurveSample(int curve, int param)
+	    {
+		// The parameter of interest takes the highest frequency, the
+		// others the complementary frequencies in turn
+		double[] frequencies = new double[numParams];
+		int cj = 0;
+		for (int j = 0; j < numParams; j++)
+		{
+		    frequencies[j] = (j == param) ? omi : complementaryFrequencies[cj++];
+		}
+		double[] phaseShift = phaseShifts[param][curve - 1];
+
+		double[][] sample = new double[curveSamples][numParams];
+		for (int s = 0; s < curveSamples; s++)
+		{
+		    double point = Math.PI * (2 * (s + 1) - curveSamples - 1) / curveSamples;
+		    for (int j = 0; j < numParams; j++)
+		    {
+			double angle = frequencies[j] * point + phaseShift[j];
+			sample[s][j] = space.scale(j, 0.5 + Math.asin(Math.sin(angle)) / Math.PI);
+		    }
+		}
+		return sample;
+	    }
+	};
+    }
+
+    /**
+     * Chooses the frequencies of the complementary parameters, as spartan's
+     * efast_setfreq does
+     * 
+     * @param numParams Number of parameters in the analysis
+     * @param maxFrequency Maximum frequency of the complementary parameters
+     * @return The frequency of each complementary parameter, in turn
+     */
+    static double[] setFrequencies(int numParams, double maxFrequency)
+    {
+	double[] frequencies = new double[numParams];
+	if (numParams == 1 || maxFrequency == 1)
+	{
+	    Arrays.fill(frequencies, 1);
+	    return frequencies;
+	}
+
+	double infd = (maxFrequency < numParams) ? maxFrequency : numParams;
+	// Math.rint rounds halves to even, as R's round does
+	double step = Math.rint((maxFrequency - 1) / (infd - 1));
+	int flInfd = (int) Math.floor(infd);
+	for (int i = 0; i < numParams; i++)
+	{
+	    frequencies[i] = 1 + (i % flInfd) * step;
+	}
+	return frequencies;
+    }
+}
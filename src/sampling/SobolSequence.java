@@ -0,0 +1,277 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.util.Random;
+
+/**
+ * \brief A Sobol low-discrepancy sequence, giving points spread evenly through
+ * the unit hypercube
+ * 
+ * Points are generated as in the Gray code implementation of Bratley and Fox,
+ * but any point can be calculated directly from its index, so points can be
+ * generated in any order, on any number of threads. The first dimension uses
+ * the van der Corput sequence, and the next 39 the primitive polynomials and
+ * initial direction numbers of Joe and Kuo. Further dimensions use the
+ * following primitive polynomials in turn, with odd initial direction numbers
+ * drawn from a random number generator seeded by the dimension, so the
+ * sequence is always the same.
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public final class SobolSequence
+{
+    /**
+     * Number of bits of each coordinate. Up to 2^BITS points can be generated
+     */
+    private static final int BITS = 32;
+
+    /**
+     * Initial direction numbers of Joe and Kuo, for the second dimension
+     * onwards. Dimension d uses the d-th primitive polynomial, whose degree is
+     * the number of initial direction numbers
+     */
+    private static final int[][] JOE_KUO_DIRECTION_NUMBERS = {
+	    { 1 }, { 1, 3 }, { 1, 3, 1 }, { 1, 1, 1 }, { 1, 1, 3, 3 }, { 1, 3, 5, 13 },
+	    { 1, 1, 5, 5, 17 }, { 1, 1, 5, 5, 5 }, { 1, 1, 7, 11, 19 }, { 1, 1, 5, 1, 1 },
+	    { 1, 1, 1, 3, 11 }, { 1, 3, 5, 5, 31 }, { 1, 3, 3, 9, 7, 49 }, { 1, 1, 1, 15, 21, 21 },
+	    { 1, 3, 1, 13, 27, 49 }, { 1, 1, 1, 15, 7, 5 }, { 1, 3, 1, 15, 13, 25 },
+	    { 1, 1, 5, 5, 19, 61 }, { 1, 3, 7, 11, 23, 15, 103 }, { 1, 3, 7, 13, 13, 15, 69 },
+	    { 1, 1, 3, 13, 7, 35, 63 }, { 1, 3, 5, 9, 1, 25, 53 }, { 1, 3, 1, 13, 9, 35, 107 },
+	    { 1, 3, 1, 5, 27, 61, 31 }, { 1, 1, 5, 11, 19, 41, 61 }, { 1, 3, 5, 3, 3, 13, 69 },
+	    { 1, 1, 7, 13, 1, 19, 1 }, { 1, 3, 7, 5, 13, 19, 59 }, { 1, 1, 3, 9, 25, 29, 41 },
+	    { 1, 3, 5, 13, 23, 1, 55 }, { 1, 3, 7, 3, 13, 59, 17 }, { 1, 3, 1, 3, 5, 53, 69 },
+	    { 1, 1, 5, 5, 23, 33, 13 }, { 1, 1, 7, 7, 1, 61, 123 }, { 1, 1, 7, 9, 13, 61, 49 },
+	    { 1, 3, 3, 5, 3, 55, 33 }, { 1, 3, 1, 15, 31, 13, 49, 245 },
+	    { 1, 3, 5, 15, 31, 59, 63, 97 }, { 1, 3, 1, 11, 11, 11, 77, 249 } };
+
+    /**
+     * Direction numbers of each dimension, scaled to BITS bits
+     */
+    private final long[][] directions;
+
+    /**
+     * Creates a Sobol sequence
+     * 
+     * @param dimensions Number of dimensions of each point
+     */
+    public SobolSequence(int dimensions)
+    {
+	this.directions = new long[dimensions][BITS];
+
+	int polynomial = 1;
+	int degree = 0;
+	for (int d = 0; d < dimensions; d++)
+	{
+	    long[] v = this.directions[d];
+	    if (d == 0)
+	    {
+		for (int k = 0; k < BITS; k++)
+		{
+		    v[k] = 1L << (BITS - 1 - k);
+		}
+		continue;
+	    }
+
+	    // Find the next primitive polynomial, of degree s, with the
+	    // coefficients of its inner terms held in the bits of a
+	    do
+	    {
+		polynomial++;
+		if (polynomial >= (2 << degree))
+		{
+		    degree++;
+		    polynomial = (1 << degree) + 1;
+		}
+	    }
+	    while (polynomial % 2 == 0 || !isPrimitive(polynomial, degree));
+	    int s = degree;
+	    int a = (polynomial >> 1) & ((1 << (s - 1)) - 1);
+
+	    // Initial direction numbers
+	    int[] m;
+	    if (d - 1 < JOE_KUO_DIRECTION_NUMBERS.length)
+	    {
+		m = JOE_KUO_DIRECTION_NUMBERS[d - 1];
+	    }
+	    else
+	    {
+		Random random = new Random(d);
+		m = new int[s];
+		for (int k = 0; k < s; k++)
+		{
+		    m[k] = 2 * random.nextInt(1 << k) + 1;
+		}
+	    }
+
+	    for (int k = 0; k < Math.min(s, BITS); k++)
+	    {
+		v[k] = (long) m[k] << (BITS - 1 - k);
+	    }
+	    for (int k = s; k < BITS; k++)
+	    {
+		v[k] = v[k - s] ^ (v[k - s] >> s);
+		for (int j = 1; j < s; j++)
+		{
+		    if (((a >> (s - 1 - j)) & 1) == 1)
+		    {
+			v[k] ^= v[k - j];
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * @return Number of dimensions of each point
+     */
+    public int getDimensions()
+    {
+	return this.directions.length;
+    }
+
+    /**
+     * Calculates one coordinate of a point of the sequence
+     * 
+     * @param index Position of the point in the sequence, from 0. The first
+     *            point is the origin
+     * @param dimension The coordinate to calculate, from 0
+     * @return The coordinate, in [0,1)
+     */
+    public double getCoordinate(long index, int dimension)
+    {
+	if (index < 0 || index >= (1L << BITS))
+	{
+	    throw new IllegalArgumentException("Sobol sequence has no point " + index);
+	}
+
+	// The point at this index is found from the direction numbers of the
+	// bits set in its Gray code
+	long gray = index ^ (index >>> 1);
+	long[] v = this.directions[dimension];
+	long x = 0;
+	for (int k = 0; gray != 0; k++, gray >>>= 1)
+	{
+	    if ((gray & 1) == 1)
+	    {
+		x ^= v[k];
+	    }
+	}
+	return x / (double) (1L << BITS);
+    }
+
+    /**
+     * Calculates a point of the sequence
+     * 
+     * @param index Position of the point in the sequence, from 0. The first
+     *            point is the origin
+     * @return The coordinates of the point, each in [0,1)
+     */
+    public double[] getPoint(long index)
+    {
+	double[] point = new double[this.directions.length];
+	for (int d = 0; d < point.length; d++)
+	{
+	    point[d] = getCoordinate(index, d);
+	}
+	return point;
+    }
+
+    /**
+     * Determines whether a polynomial over GF(2) is primitive, meaning x
+     * generates every non-zero element of the field the polynomial defines
+     * 
+     * @param polynomial Coefficients of the polynomial, one bit per term
+     * @param degree Degree of the polynomial
+     * @return True if the polynomial is primitive
+     */
+    static boolean isPrimitive(int polynomial, int degree)
+    {
+	if (degree == 1)
+	{
+	    return polynomial == 3;
+	}
+
+	// x must have order 2^degree - 1: x to that power is 1, and x to
+	// that power divided by any of its prime factors is not
+	long order = (1L << degree) - 1;
+	if (powerOfX(order, polynomial, degree) != 1)
+	{
+	    return false;
+	}
+	long remaining = order;
+	for (long factor = 2; factor * factor <= remaining; factor++)
+	{
+	    if (remaining % factor == 0)
+	    {
+		if (powerOfX(order / factor, polynomial, degree) == 1)
+		{
+		    return false;
+		}
+		while (remaining % factor == 0)
+		{
+		    remaining /= factor;
+		}
+	    }
+	}
+	return remaining == 1 || powerOfX(order / remaining, polynomial, degree) != 1;
+    }
+
+    /**
+     * Raises x to a power, modulo a polynomial over GF(2)
+     * 
+     * @param exponent The power
+     * @param polynomial The polynomial
+     * @param degree Degree of the polynomial
+     * @return x to the power, as a polynomial of lower degree
+     */
+    private static long powerOfX(long exponent, int polynomial, int degree)
+    {
+	long result = 1;
+	long base = 2;
+	while (exponent > 0)
+	{
+	    if ((exponent & 1) == 1)
+	    {
+		result = multiply(result, base, polynomial, degree);
+	    }
+	    base = multiply(base, base, polynomial, degree);
+	    exponent >>= 1;
+	}
+	return result;
+    }
+
+    /**
+     * Multiplies two polynomials over GF(2), modulo a third
+     * 
+     * @param x First polynomial
+     * @param y Second polynomial
+     * @param polynomial The modulus
+     * @param degree Degree of the modulus
+     * @return The product
+     */
+    private static long multiply(long x, long y, int polynomial, int degree)
+    {
+	long product = 0;
+	while (y != 0)
+	{
+	    if ((y & 1) == 1)
+	    {
+		product ^= x;
+	    }
+	    y >>= 1;
+	    x <<= 1;
+	    if (((x >> degree) & 1) == 1)
+	    {
+		x ^= polynomial;
+	    }
+	}
+	return product;
+    }
+}
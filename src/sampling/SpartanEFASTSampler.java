@@ -0,0 +1,227 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.FileUtils;
+
+import spartanLink.GenerateSpartanEFASTFile;
+import spartanLink.SpartanSampleStream;
+import spartanLink.SpartanUtilities;
+
+/**
+ * \brief Generates an eFAST sample by running spartan in R
+ * 
+ * Writes the spartan script for the sample and runs it. Spartan writes the
+ * value sets of each curve and parameter to Curve[c]_[parameter].csv, which
+ * are read as the models for that curve and parameter are generated. When
+ * streaming, the value sets are instead read from R's output as it produces
+ * them, and the models of each curve and parameter are generated as soon as
+ * its value sets are complete.
+ * 
+ * Curves are independent, so where there is more than one curve and more than
+ * one R job may run at once, each curve is sampled by its own R job, with its
+ * own seed, and up to that many run at the same time. The files of each curve
+ * are then moved into place, so the sample is laid out as if spartan had
+ * sampled every curve at once. Seeded samples split this way differ from
+ * those spartan generates in one job
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SpartanEFASTSampler implements EFASTSampler
+{
+    /**
+     * Folder the spartan script and sample files are written to
+     */
+    private final String outputFolder;
+
+    /**
+     * Seed for R's random number generator, or null to leave it unset
+     */
+    private final Integer seed;
+
+    /**
+     * Whether the sample is read from R's output as it is produced
+     */
+    private final boolean stream;
+
+    /**
+     * Time R may take to generate the sample, in seconds, or 0 for no limit
+     */
+    private final int timeoutSeconds;
+
+    /**
+     * Maximum number of R jobs sampling curves at once
+     */
+    private final int maxJobs;
+
+    /**
+     * Creates a sampler running spartan in R
+     * 
+     * @param outputFolder Folder the spartan script and sample files are
+     *            written to
+     * @param seed Seed for R's random number generator, or null to leave it
+     *            unset
+     * @param stream Whether the sample is read from R's output as it is
+     *            produced, rather than from the files spartan writes
+     * @param timeoutSeconds Time R may take to generate the sample, in
+     *            seconds, or 0 for no limit
+     * @param maxJobs Maximum number of R jobs sampling curves at once. 1
+     *            samples every curve in one job
+     */
+    public SpartanEFASTSampler(String outputFolder, Integer seed, boolean stream,
+	    int timeoutSeconds, int maxJobs)
+    {
+	this.outputFolder = outputFolder;
+	this.seed = seed;
+	this.stream = stream;
+	this.timeoutSeconds = timeoutSeconds;
+	this.maxJobs = maxJobs;
+    }
+
+    /**
+     * Generates an eFAST sample of a parameter space in spartan
+     * 
+     * @param space The parameters to sample, and their ranges, including the
+     *            dummy parameter
+     * @param numCurves Number of resample curves
+     * @param numSamples Number of samples to take from each curve
+     * @return The sample, read from the files spartan writes, or from R's
+     *         output when streaming
+     * @throws IOException if R fails, or cannot be started when streaming
+     */
+    public EFASTSample generateSample(final ParameterSpace space, int numCurves, int numSamples)
+	    throws IOException
+    {
+	if (numCurves > 1 && this.maxJobs > 1)
+	{
+	    return this.generateCurvesInParallel(space, numCurves, numSamples);
+	}
+
+	// Generate the spartan R script
+	GenerateSpartanEFASTFile.CreateSpartanLHCScript(this.outputFolder, space.getParameters(),
+		numCurves, numSamples, space.getMinVals(), space.getMaxVals(), this.seed);
+
+	if (this.stream)
+	{
+	    // R runs on while the models are generated, each curve and
+	    // parameter waiting for its value sets to arrive
+	    final SpartanSampleStream sampleStream = new SpartanSampleStream(this.outputFolder
+		    + "/EFAST_Sampling.R", space.size(), null, this.timeoutSeconds);
+	    sampleStream.start();
+	    return new EFASTSample()
+	    {
+		public double[][] getCurveSample(int curve, int param) throws IOException
+		{
+		    return sampleStream.getSample("Curve" + curve + "_"
+			    + space.getParameters().get(param) + ".csv");
+		}
+	    };
+	}
+
+	// Generate the sample in R
+	if (SpartanUtilities.generateParameterSamples(this.outputFolder + "/EFAST_Sampling.R",
+		this.timeoutSeconds) != 0)
+	{
+	    throw new IOException("There was a problem creating parameter samples with Spartan. "
+		    + "Check your settings file for errors declaring the parameter information");
+	}
+
+	return new EFASTSample()
+	{
+	    public double[][] getCurveSample(int curve, int param) throws IOException
+	    {
+		return SamplingUtilities.readSampleFile(outputFolder + "/Curve" + curve + "_"
+			+ space.getParameters().get(param) + ".csv", space.size());
+	    }
+	};
+    }
+
+    /**
+     * Generates an eFAST sample in spartan, sampling each curve in a separate
+     * R job, with up to maxJobs running at once
+     * 
+     * @param space The parameters to sample, and their ranges, including the
+     *            dummy parameter
+     * @param numCurves Number of resample curves
+     * @param numSamples Number of samples to take from each curve
+     * @return The sample, read from the files spartan writes, or from R's
+     *         output when streaming
+     * @throws IOException if R fails, or the sample files cannot be moved into
+     *             place
+     */
+    private EFASTSample generateCurvesInParallel(final ParameterSpace space, int numCurves,
+	    int numSamples) throws IOException
+    {
+	List<String> scripts = GenerateSpartanEFASTFile.CreateSpartanCurveScripts(
+		this.outputFolder, space.getParameters(), numCurves, numSamples,
+		space.getMinVals(), space.getMaxVals(), this.seed);
+
+	if (this.stream)
+	{
+	    // Each curve is read from its own job as it is produced. Jobs wait
+	    // their turn on the pool, and the pool ends once all have run
+	    final SpartanSampleStream[] sampleStreams = new SpartanSampleStream[numCurves];
+	    ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.maxJobs,
+		    numCurves));
+	    for (int c = 0; c < numCurves; c++)
+	    {
+		sampleStreams[c] = new SpartanSampleStream(scripts.get(c), space.size(), null,
+			this.timeoutSeconds);
+		executor.execute(sampleStreams[c]);
+	    }
+	    executor.shutdown();
+
+	    return new EFASTSample()
+	    {
+		public double[][] getCurveSample(int curve, int param) throws IOException
+		{
+		    return sampleStreams[curve - 1].getSample("Curve1_"
+			    + space.getParameters().get(param) + ".csv");
+		}
+	    };
+	}
+
+	if (SpartanUtilities.generateParameterSamples(scripts, this.maxJobs,
+		this.timeoutSeconds) != 0)
+	{
+	    throw new IOException("There was a problem creating parameter samples with Spartan. "
+		    + "Check your settings file for errors declaring the parameter information");
+	}
+
+	// Move each curve's files into place, as spartan would have named them
+	for (int curve = 1; curve <= numCurves; curve++)
+	{
+	    String curveFolder = GenerateSpartanEFASTFile.getCurveJobFolder(this.outputFolder,
+		    curve);
+	    for (String parameter : space.getParameters())
+	    {
+		File target = new File(this.outputFolder + "/Curve" + curve + "_" + parameter
+			+ ".csv");
+		target.delete();
+		FileUtils.moveFile(new File(curveFolder + "/Curve1_" + parameter + ".csv"), target);
+	    }
+	}
+	FileUtils.deleteDirectory(new File(this.outputFolder + "/CurveJobs"));
+
+	return new EFASTSample()
+	{
+	    public double[][] getCurveSample(int curve, int param) throws IOException
+	    {
+		return SamplingUtilities.readSampleFile(outputFolder + "/Curve" + curve + "_"
+			+ space.getParameters().get(param) + ".csv", space.size());
+	    }
+	};
+    }
+}
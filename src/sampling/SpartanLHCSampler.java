@@ -0,0 +1,152 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.io.IOException;
+
+import spartanLink.GenerateSpartanLHCFile;
+import spartanLink.SampleRowListener;
+import spartanLink.SpartanSampleStream;
+import spartanLink.SpartanUtilities;
+
+/**
+ * \brief Generates a latin-hypercube sample by running spartan in R
+ * 
+ * Writes the spartan script for the sample, runs it, and reads the sample
+ * spartan writes to LHC_Parameters_for_Runs.csv. Supports both the normal and
+ * optimal algorithms of spartan. When streaming, the sample is instead read
+ * from R's output as it is produced, and written to
+ * LHC_Parameters_for_Runs.csv once complete, as the list of runs
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SpartanLHCSampler implements StreamingLHCSampler
+{
+    /**
+     * Name of the sample file spartan produces
+     */
+    private static final String SAMPLE_FILE = "LHC_Parameters_for_Runs.csv";
+
+    /**
+     * Folder the spartan script and sample file are written to
+     */
+    private final String outputFolder;
+
+    /**
+     * LHC algorithm for spartan to use - normal or optimal
+     */
+    private final String algorithm;
+
+    /**
+     * Seed for R's random number generator, or null to leave it unset
+     */
+    private final Integer seed;
+
+    /**
+     * Whether the sample is read from R's output as it is produced
+     */
+    private final boolean stream;
+
+    /**
+     * Time R may take to generate the sample, in seconds, or 0 for no limit
+     */
+    private final int timeoutSeconds;
+
+    /**
+     * Creates a sampler running spartan in R
+     * 
+     * @param outputFolder Folder the spartan script and sample file are
+     *            written to
+     * @param algorithm LHC algorithm for spartan to use - normal or optimal
+     * @param seed Seed for R's random number generator, or null to leave it
+     *            unset
+     * @param stream Whether the sample is read from R's output as it is
+     *            produced, rather than from the file spartan writes
+     * @param timeoutSeconds Time R may take to generate the sample, in
+     *            seconds, or 0 for no limit
+     */
+    public SpartanLHCSampler(String outputFolder, String algorithm, Integer seed, boolean stream,
+	    int timeoutSeconds)
+    {
+	this.outputFolder = outputFolder;
+	this.algorithm = algorithm;
+	this.seed = seed;
+	this.stream = stream;
+	this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * Generates a latin-hypercube sample of a parameter space in spartan
+     * 
+     * @param space The parameters to sample, and their ranges
+     * @param numSamples Number of parameter value sets to generate
+     * @return Sampled values, one row per value set and one column per
+     *         parameter
+     * @throws Exception if R fails, or its sample cannot be read
+     */
+    public double[][] generateSample(ParameterSpace space, int numSamples) throws Exception
+    {
+	return this.generateSample(space, numSamples, null);
+    }
+
+    /**
+     * Generates a latin-hypercube sample of a parameter space in spartan,
+     * passing each value set to a listener. When streaming, each is passed as
+     * soon as R produces it, so models can be generated while R is still
+     * sampling. Otherwise all are passed once spartan's file has been read
+     * 
+     * @param space The parameters to sample, and their ranges
+     * @param numSamples Number of parameter value sets to generate
+     * @param listener Passed each value set in turn, or null
+     * @return Sampled values, one row per value set and one column per
+     *         parameter
+     * @throws Exception if R fails, its sample cannot be read, or the listener
+     *             fails
+     */
+    public double[][] generateSample(ParameterSpace space, int numSamples,
+	    SampleRowListener listener) throws Exception
+    {
+	// Generate the spartan R script
+	GenerateSpartanLHCFile.CreateSpartanLHCScript(this.outputFolder, space.getParameters(),
+		numSamples, space.getMinVals(), space.getMaxVals(), this.algorithm, this.seed);
+
+	if (this.stream)
+	{
+	    SpartanSampleStream sampleStream = new SpartanSampleStream(this.outputFolder
+		    + "/LHC_Sampling.R", space.size(), listener, this.timeoutSeconds);
+	    sampleStream.start();
+	    sampleStream.waitFor();
+	    double[][] sample = sampleStream.getSample(SAMPLE_FILE);
+
+	    // Spartan's file was not written, but is kept as the list of runs
+	    SamplingUtilities.writeSampleFile(this.outputFolder + "/" + SAMPLE_FILE,
+		    space.getParameters(), sample);
+	    return sample;
+	}
+
+	// Generate the sample in R
+	if (SpartanUtilities.generateParameterSamples(this.outputFolder + "/LHC_Sampling.R",
+		this.timeoutSeconds) != 0)
+	{
+	    throw new IOException("There was a problem creating parameter samples with Spartan. "
+		    + "Check your settings file for errors declaring the parameter information");
+	}
+
+	double[][] sample = SamplingUtilities.readSampleFile(this.outputFolder + "/"
+		+ SAMPLE_FILE, space.size());
+	if (listener != null)
+	{
+	    for (int i = 0; i < sample.length; i++)
+	    {
+		listener.sampleRow(SAMPLE_FILE, i, sample[i]);
+	    }
+	}
+	return sample;
+    }
+}
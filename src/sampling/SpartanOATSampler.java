@@ -0,0 +1,116 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.io.IOException;
+
+import spartanLink.GenerateSpartanOATFile;
+import spartanLink.SpartanSampleStream;
+import spartanLink.SpartanUtilities;
+import xmlFileUtilities.AnalysisSettings;
+
+/**
+ * \brief Generates the sweeps of a robustness analysis by running spartan in
+ * R
+ * 
+ * Writes the spartan script for the sample and runs it. Spartan writes the
+ * sweep of each parameter to [parameter]_OAT_Values.csv, which is read as the
+ * models of that sweep are generated. When streaming, the sweeps are instead
+ * read from R's output as it produces them, and the models of each sweep are
+ * generated as soon as it is complete. Sweeps must be declared by min, max
+ * and increment
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SpartanOATSampler implements OATSampler
+{
+    /**
+     * Folder the spartan script and sample files are written to
+     */
+    private final String outputFolder;
+
+    /**
+     * Whether the sweeps are read from R's output as they are produced
+     */
+    private final boolean stream;
+
+    /**
+     * Time R may take to generate the sample, in seconds, or 0 for no limit
+     */
+    private final int timeoutSeconds;
+
+    /**
+     * Creates a sampler running spartan in R
+     * 
+     * @param outputFolder Folder the spartan script and sample files are
+     *            written to
+     * @param stream Whether the sweeps are read from R's output as they are
+     *            produced, rather than from the files spartan writes
+     * @param timeoutSeconds Time R may take to generate the sample, in
+     *            seconds, or 0 for no limit
+     */
+    public SpartanOATSampler(String outputFolder, boolean stream, int timeoutSeconds)
+    {
+	this.outputFolder = outputFolder;
+	this.stream = stream;
+	this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * Generates the sweeps of the parameters being analysed in spartan
+     * 
+     * @param settings The settings of the analysis
+     * @return The sample, read from the files spartan writes, or from R's
+     *         output when streaming
+     * @throws IOException if R fails, or cannot be started when streaming
+     */
+    public OATSample generateSample(final AnalysisSettings settings) throws IOException
+    {
+	// Generate the spartan R script
+	GenerateSpartanOATFile.CreateSpartanLHCScript(this.outputFolder,
+		settings.getParametersAnalysed(), settings.getMinVals(), settings.getMaxVals(),
+		settings.getBaselineVals(), settings.getIncVals());
+
+	if (this.stream)
+	{
+	    // R runs on while the models are generated, each sweep waiting for
+	    // its value sets to arrive
+	    final SpartanSampleStream sampleStream = new SpartanSampleStream(this.outputFolder
+		    + "/OAT_Sampling.R", settings.getParametersAnalysed().size(), null,
+		    this.timeoutSeconds);
+	    sampleStream.start();
+	    return new OATSample()
+	    {
+		public double[][] getSweep(int param) throws IOException
+		{
+		    return sampleStream.getSample(settings.getParametersAnalysed().get(param)
+			    + "_OAT_Values.csv");
+		}
+	    };
+	}
+
+	// Generate the sample in R
+	if (SpartanUtilities.generateParameterSamples(this.outputFolder + "/OAT_Sampling.R",
+		this.timeoutSeconds) != 0)
+	{
+	    throw new IOException("There was a problem creating parameter samples with Spartan. "
+		    + "Check your settings file for errors declaring the parameter information");
+	}
+
+	return new OATSample()
+	{
+	    public double[][] getSweep(int param) throws IOException
+	    {
+		return SamplingUtilities.readSampleFile(outputFolder + "/"
+			+ settings.getParametersAnalysed().get(param) + "_OAT_Values.csv", settings
+			.getParametersAnalysed().size());
+	    }
+	};
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import spartanLink.SampleRowListener;
+
+/**
+ * \brief A latin-hypercube sampler that can pass each value set on as soon as
+ * it is produced
+ * 
+ * Implemented by the spartan sampler, which can read the sample from R as it
+ * is generated, and by the caching sampler, which forwards to the sampler it
+ * wraps. Models can then be generated while the rest of the sample is still
+ * being produced
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public interface StreamingLHCSampler extends LHCSampler
+{
+    /**
+     * Generates a latin-hypercube sample of a parameter space, passing each
+     * value set to a listener, in order, as it is produced
+     * 
+     * @param space The parameters to sample, and their ranges
+     * @param numSamples Number of parameter value sets to generate
+     * @param listener Passed each value set in turn, or null
+     * @return Sampled values, one row per value set and one column per
+     *         parameter, in the order of the parameter space
+     * @throws Exception if the sample cannot be generated, or the listener
+     *             fails
+     */
+    double[][] generateSample(ParameterSpace space, int numSamples, SampleRowListener listener)
+	    throws Exception;
+}
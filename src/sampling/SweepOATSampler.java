@@ -0,0 +1,151 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import xmlFileUtilities.AnalysisSettings;
+
+/**
+ * \brief Generates the sweeps of a robustness analysis within ASPASIA, as
+ * spartan's oat_parameter_sampling does
+ * 
+ * A parameter declared with a list of values is swept through those values.
+ * Otherwise it is swept from its min to its max in steps of its increment,
+ * calculated as R's seq does, so the max is included despite rounding error.
+ * Every other parameter is held at its baseline. Stepped values are rounded to
+ * the 15 significant digits that spartan writes to its sample files, so the
+ * models are the same as those generated from spartan's sample.
+ * 
+ * Each sweep is calculated when retrieved, by whichever thread generates its
+ * models
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SweepOATSampler implements OATSampler
+{
+    /**
+     * Precision of the values in spartan's sample files
+     */
+    private static final MathContext SPARTAN_PRECISION = new MathContext(15);
+
+    /**
+     * Tolerance R's seq allows when counting the steps from min to max
+     */
+    private static final double SEQ_FUZZ = 1e-10;
+
+    /**
+     * Generates the sweeps of the parameters being analysed
+     * 
+     * @param settings The settings of the analysis
+     * @return The sample, calculating the sweep of each parameter when
+     *         retrieved
+     * @throws NumberFormatException if a baseline is not a number
+     */
+    public OATSample generateSample(final AnalysisSettings settings)
+    {
+	final int numParams = settings.getParametersAnalysed().size();
+	final double[] baseline = new double[numParams];
+	for (int p = 0; p < numParams; p++)
+	{
+	    baseline[p] = Double.parseDouble(settings.getBaselineVals().get(p));
+	}
+
+	return new OATSample()
+	{
+	    public double[][] getSweep(int param)
+	    {
+		double[] sweepValues;
+		if (settings.getValues().get(param) != null)
+		{
+		    sweepValues = parseValues(settings.getValues().get(param));
+		}
+		else
+		{
+		    sweepValues = sequence(Double.parseDouble(settings.getMinVals().get(param)),
+			    Double.parseDouble(settings.getMaxVals().get(param)),
+			    Double.parseDouble(settings.getIncVals().get(param)));
+		}
+
+		double[][] sweep = new double[sweepValues.length][];
+		for (int i = 0; i < sweepValues.length; i++)
+		{
+		    sweep[i] = baseline.clone();
+		    sweep[i][param] = sweepValues[i];
+		}
+		return sweep;
+	    }
+	};
+    }
+
+    /**
+     * Calculates the values from min to max in steps of the increment, as R's
+     * seq(min, max, by = inc) does
+     * 
+     * @param min First value of the sweep
+     * @param max Last value of the sweep
+     * @param inc Step between values
+     * @return The values of the sweep
+     */
+    static double[] sequence(double min, double max, double inc)
+    {
+	if (inc <= 0 || max < min)
+	{
+	    throw new IllegalArgumentException("Cannot sweep from " + min + " to " + max
+		    + " in steps of " + inc);
+	}
+
+	int steps = (int) (((max - min) / inc) + SEQ_FUZZ);
+	double[] sweepValues = new double[steps + 1];
+	for (int i = 0; i <= steps; i++)
+	{
+	    // R's seq never passes the end of the sequence
+	    sweepValues[i] = round(Math.min(min + i * inc, max));
+	}
+	return sweepValues;
+    }
+
+    /**
+     * Reads a comma separated list of values from the settings file
+     * 
+     * @param valueList The list of values
+     * @return The values of the sweep
+     */
+    static double[] parseValues(String valueList)
+    {
+	List<Double> parsed = new ArrayList<Double>();
+	StringTokenizer st = new StringTokenizer(valueList, ",");
+	while (st.hasMoreTokens())
+	{
+	    parsed.add(Double.parseDouble(st.nextToken().trim()));
+	}
+
+	double[] sweepValues = new double[parsed.size()];
+	for (int i = 0; i < sweepValues.length; i++)
+	{
+	    sweepValues[i] = parsed.get(i);
+	}
+	return sweepValues;
+    }
+
+    /**
+     * Rounds a value to the precision of spartan's sample files
+     * 
+     * @param value The value
+     * @return The value to 15 significant digits
+     */
+    private static double round(double value)
+    {
+	return new BigDecimal(value).round(SPARTAN_PRECISION).doubleValue();
+    }
+}
@@ -4,8 +4,10 @@
  */
 package spartanLink;
 
+import java.io.File;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * \brief Generates the script to perform eFAST Parameter Sampling in Spartan
@@ -25,21 +27,50 @@ public class GenerateSpartanEFASTFile
      * 
      * @param outputPath Where the parameter sample CSV file spartan produces
      *            should be stored
-     * @param parameters ArrayList of parameters from the XML file, for which
+     * @param parameters List of parameters from the XML file, for which
      *            values will be created
      * @param numCurves The number of EFAST Curves to perform
      * @param numSamples The number of samples to take from each curve
-     * @param minVals ArrayList of the minimum values of each parameter
-     * @param maxVals ArrayList of the maximum values of each parameter
+     * @param minVals List of the minimum values of each parameter
+     * @param maxVals List of the maximum values of each parameter
      */
-    public static void CreateSpartanLHCScript(String outputPath, ArrayList<String> parameters,
-	    int numCurves, int numSamples, ArrayList<String> minVals, ArrayList<String> maxVals)
+    public static void CreateSpartanLHCScript(String outputPath, List<String> parameters,
+	    int numCurves, int numSamples, List<String> minVals, List<String> maxVals)
+    {
+	CreateSpartanLHCScript(outputPath, parameters, numCurves, numSamples, minVals, maxVals,
+		null);
+    }
+
+    /**
+     * Creates the R script that runs spartan to generate the EFAST samples,
+     * seeding R's random number generator so the same sample is generated
+     * each time the script is run
+     * 
+     * @param outputPath Where the parameter sample CSV file spartan produces
+     *            should be stored
+     * @param parameters List of parameters from the XML file, for which
+     *            values will be created
+     * @param numCurves The number of EFAST Curves to perform
+     * @param numSamples The number of samples to take from each curve
+     * @param minVals List of the minimum values of each parameter
+     * @param maxVals List of the maximum values of each parameter
+     * @param seed Seed for R's random number generator, or null to leave it
+     *            unset
+     */
+    public static void CreateSpartanLHCScript(String outputPath, List<String> parameters,
+	    int numCurves, int numSamples, List<String> minVals, List<String> maxVals,
+	    Integer seed)
     {
 	try
 	{
 	    PrintWriter writer = new PrintWriter(outputPath + "/EFAST_Sampling.R", "UTF-8");
 	    writer.println("library(spartan)");
 
+	    if (seed != null)
+	    {
+		writer.println("set.seed(" + seed + ")");
+	    }
+
 	    // Write the filepath
 	    String OS = System.getProperty("os.name").toLowerCase();
 	    if (OS.indexOf("win") >= 0)
@@ -88,4 +119,49 @@ public class GenerateSpartanEFASTFile
 	}
 
     }
+
+    /**
+     * Creates an R script for each curve of an EFAST sample, so the curves can
+     * be sampled by separate R jobs at the same time. Each script samples one
+     * curve into its own folder, CurveJobs/Curve[c], so spartan names every
+     * sample file Curve1_[parameter].csv. As the curves are independent, each
+     * is given its own seed: the seed of the sample plus the number of the
+     * curve, less one
+     * 
+     * @param outputPath Folder holding the folder of each curve's script
+     * @param parameters List of parameters from the XML file, for which
+     *            values will be created
+     * @param numCurves The number of EFAST Curves to perform
+     * @param numSamples The number of samples to take from each curve
+     * @param minVals List of the minimum values of each parameter
+     * @param maxVals List of the maximum values of each parameter
+     * @param seed Seed for R's random number generator, or null to leave it
+     *            unset
+     * @return Full path to the script of each curve, in order
+     */
+    public static List<String> CreateSpartanCurveScripts(String outputPath,
+	    List<String> parameters, int numCurves, int numSamples, List<String> minVals,
+	    List<String> maxVals, Integer seed)
+    {
+	List<String> scripts = new ArrayList<String>();
+	for (int curve = 1; curve <= numCurves; curve++)
+	{
+	    String curvePath = getCurveJobFolder(outputPath, curve);
+	    new File(curvePath).mkdirs();
+	    CreateSpartanLHCScript(curvePath, parameters, 1, numSamples, minVals, maxVals,
+		    seed == null ? null : seed + curve - 1);
+	    scripts.add(curvePath + "/EFAST_Sampling.R");
+	}
+	return scripts;
+    }
+
+    /**
+     * @param outputPath Folder holding the folder of each curve's script
+     * @param curve The curve, from 1
+     * @return Folder the script of one curve, and its samples, are written to
+     */
+    public static String getCurveJobFolder(String outputPath, int curve)
+    {
+	return outputPath + "/CurveJobs/Curve" + curve;
+    }
 }
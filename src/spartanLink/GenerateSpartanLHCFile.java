@@ -5,6 +5,7 @@ package spartanLink;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * \brief Generates the script to perform Latin-Hypercube Parameter Sampling in
@@ -25,15 +26,39 @@ public class GenerateSpartanLHCFile
      * 
      * @param outputPath Where the parameter sample CSV file spartan produces
      *            should be stored
-     * @param parameters ArrayList of parameters from the XML file, for which
+     * @param parameters List of parameters from the XML file, for which
      *            values will be created
      * @param numSamples The number of LHC samples to perform
-     * @param minVals ArrayList of the minimum values of each parameter
-     * @param maxVals ArrayList of the maximum values of each parameter
+     * @param minVals List of the minimum values of each parameter
+     * @param maxVals List of the maximum values of each parameter
      * @param algorithm LHC algorithm to use - can be normal or optimal
      */
-    public static void CreateSpartanLHCScript(String outputPath, ArrayList<String> parameters,
-	    int numSamples, ArrayList<String> minVals, ArrayList<String> maxVals, String algorithm)
+    public static void CreateSpartanLHCScript(String outputPath, List<String> parameters,
+	    int numSamples, List<String> minVals, List<String> maxVals, String algorithm)
+    {
+	CreateSpartanLHCScript(outputPath, parameters, numSamples, minVals, maxVals, algorithm,
+		null);
+    }
+
+    /**
+     * Creates the R script that runs spartan to generate the LHC samples,
+     * seeding R's random number generator so the same sample is generated
+     * each time the script is run
+     * 
+     * @param outputPath Where the parameter sample CSV file spartan produces
+     *            should be stored
+     * @param parameters List of parameters from the XML file, for which
+     *            values will be created
+     * @param numSamples The number of LHC samples to perform
+     * @param minVals List of the minimum values of each parameter
+     * @param maxVals List of the maximum values of each parameter
+     * @param algorithm LHC algorithm to use - can be normal or optimal
+     * @param seed Seed for R's random number generator, or null to leave it
+     *            unset
+     */
+    public static void CreateSpartanLHCScript(String outputPath, List<String> parameters,
+	    int numSamples, List<String> minVals, List<String> maxVals, String algorithm,
+	    Integer seed)
     {
 	try
 	{
@@ -41,6 +66,11 @@ public class GenerateSpartanLHCFile
 	    writer.println("library(spartan)");
 	    writer.println("library(lhs)");
 
+	    if (seed != null)
+	    {
+		writer.println("set.seed(" + seed + ")");
+	    }
+
 	    // Write the filepath
 	    String OS = System.getProperty("os.name").toLowerCase();
 	    if (OS.indexOf("win") >= 0)
@@ -4,7 +4,7 @@
 package spartanLink;
 
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.util.List;
 
 /**
  * \brief Generates the script to perform Robustness Analysis Parameter Sampling
@@ -24,17 +24,17 @@ public class GenerateSpartanOATFile
      * 
      * @param outputPath Where the parameter sample CSV file spartan produces
      *            should be stored
-     * @param parameters ArrayList of parameters from the XML file, for which
+     * @param parameters List of parameters from the XML file, for which
      *            values will be created
-     * @param minVals ArrayList of the minimum values of each parameter
-     * @param maxVals ArrayList of the maximum values of each parameter
-     * @param maxVals ArrayList of the baseline values of each parameter
-     * @param increment ArrayList of the values for which sampling should be
+     * @param minVals List of the minimum values of each parameter
+     * @param maxVals List of the maximum values of each parameter
+     * @param maxVals List of the baseline values of each parameter
+     * @param increment List of the values for which sampling should be
      *            incremented, for each parameter
      */
-    public static void CreateSpartanLHCScript(String outputPath, ArrayList<String> parameters,
-	    ArrayList<String> minVals, ArrayList<String> maxVals, ArrayList<String> baseline,
-	    ArrayList<String> increment)
+    public static void CreateSpartanLHCScript(String outputPath, List<String> parameters,
+	    List<String> minVals, List<String> maxVals, List<String> baseline,
+	    List<String> increment)
     {
 	try
 	{
@@ -0,0 +1,358 @@
+/**
+ * \package spartanLink 
+ * \brief Runs the spartan sampling in R, without the need to do this externally
+ */
+package spartanLink;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.LinkedList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * \brief Runs a subprocess, reading both its output streams as they are
+ * written so it can never block on a full pipe
+ * 
+ * Standard output is read on a background thread into a queue, from which the
+ * caller takes lines, waiting no longer than a deadline. A process that misses
+ * its deadline is killed, so a hung R never hangs ASPASIA. Standard error is
+ * read on a second thread into a log of the most recent lines, which callers
+ * can also add to, and which is reported when the process fails. The queue is
+ * bounded, so a process producing output faster than it is used is held back
+ * rather than filling memory
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class ProcessRunner
+{
+    /**
+     * Number of lines of standard output held waiting for the caller
+     */
+    private static final int OUTPUT_QUEUE_LINES = 10000;
+
+    /**
+     * Number of log lines kept
+     */
+    private static final int LOG_LINES = 200;
+
+    /**
+     * Length at which a log line is cut short
+     */
+    private static final int LOG_LINE_LENGTH = 1000;
+
+    /**
+     * Placed in the output queue once standard output is closed
+     */
+    private static final String END_OF_OUTPUT = new String("END_OF_OUTPUT");
+
+    /**
+     * The process
+     */
+    private final Process process;
+
+    /**
+     * Name of the process, used in messages
+     */
+    private final String name;
+
+    /**
+     * Writes to the standard input of the process
+     */
+    private final PrintWriter input;
+
+    /**
+     * Lines of standard output not yet taken by the caller
+     */
+    private final BlockingQueue<String> output = new ArrayBlockingQueue<String>(
+	    OUTPUT_QUEUE_LINES);
+
+    /**
+     * The most recent log lines
+     */
+    private final LinkedList<String> log = new LinkedList<String>();
+
+    /**
+     * Number of lines ever added to the log
+     */
+    private long logCount = 0;
+
+    /**
+     * Whether standard output has been closed and all of it taken
+     */
+    private boolean outputEnded = false;
+
+    /**
+     * Whether the process was killed for missing a deadline
+     */
+    private volatile boolean timedOut = false;
+
+    /**
+     * Starts a process, and the threads reading its output
+     * 
+     * @param command The program and its arguments
+     * @param name Name of the process, used in messages
+     * @throws IOException if the process cannot be started
+     */
+    public ProcessRunner(String[] command, String name) throws IOException
+    {
+	this.name = name;
+	this.process = Runtime.getRuntime().exec(command);
+	this.input = new PrintWriter(new BufferedWriter(new OutputStreamWriter(this.process
+		.getOutputStream(), "UTF-8")));
+
+	this.startReader(this.process.getInputStream(), false);
+	this.startReader(this.process.getErrorStream(), true);
+    }
+
+    /**
+     * Starts a daemon thread reading one output stream of the process
+     * 
+     * @param stream The stream
+     * @param toLog Whether lines go to the log, rather than the output queue
+     */
+    private void startReader(final InputStream stream, final boolean toLog)
+    {
+	Thread reader = new Thread(new Runnable()
+	{
+	    public void run()
+	    {
+		try
+		{
+		    BufferedReader br = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+		    String strLine = br.readLine();
+		    while (strLine != null)
+		    {
+			if (toLog)
+			{
+			    log(strLine);
+			}
+			else
+			{
+			    output.put(strLine);
+			}
+			strLine = br.readLine();
+		    }
+		    br.close();
+		}
+		catch (Exception e)
+		{
+		    // The stream is closed, so nothing more can be read
+		}
+		if (!toLog)
+		{
+		    try
+		    {
+			output.put(END_OF_OUTPUT);
+		    }
+		    catch (InterruptedException e)
+		    {
+			Thread.currentThread().interrupt();
+		    }
+		}
+	    }
+	}, this.name + (toLog ? " errors" : " output"));
+	reader.setDaemon(true);
+	reader.start();
+    }
+
+    /**
+     * Sends a line to the standard input of the process
+     * 
+     * @param line The line
+     * @throws IOException if the process is no longer reading its input
+     */
+    public void writeLine(String line) throws IOException
+    {
+	this.input.println(line);
+	this.input.flush();
+	if (this.input.checkError())
+	{
+	    throw new IOException(this.name + " is no longer accepting input");
+	}
+    }
+
+    /**
+     * Takes the next line of standard output, waiting for it to be written.
+     * If the deadline passes first, the process is killed
+     * 
+     * @param deadline Value of System.nanoTime by which the line must arrive,
+     *            or 0 to wait as long as it takes
+     * @return The line, or null once standard output has been closed
+     * @throws IOException if the deadline passes, or the wait is interrupted
+     */
+    public String readLine(long deadline) throws IOException
+    {
+	if (this.outputEnded)
+	{
+	    return null;
+	}
+
+	String strLine;
+	try
+	{
+	    if (deadline == 0)
+	    {
+		strLine = this.output.take();
+	    }
+	    else
+	    {
+		strLine = this.output.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+	    }
+	}
+	catch (InterruptedException e)
+	{
+	    this.cancel();
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException("Interrupted waiting for " + this.name);
+	}
+
+	if (strLine == null)
+	{
+	    this.timedOut = true;
+	    this.cancel();
+	    throw new IOException(this.name + " did not finish in time, so was stopped");
+	}
+	if (strLine == END_OF_OUTPUT)
+	{
+	    this.outputEnded = true;
+	    return null;
+	}
+	return strLine;
+    }
+
+    /**
+     * Adds a line to the log, dropping the oldest if the log is full
+     * 
+     * @param line The line
+     */
+    public synchronized void log(String line)
+    {
+	if (line.length() > LOG_LINE_LENGTH)
+	{
+	    line = line.substring(0, LOG_LINE_LENGTH) + "...";
+	}
+	this.log.addLast(line);
+	if (this.log.size() > LOG_LINES)
+	{
+	    this.log.removeFirst();
+	}
+	this.logCount++;
+	this.notifyAll();
+    }
+
+    /**
+     * @return Position of the next line to be logged, to retrieve the lines
+     *         logged from now on
+     */
+    public synchronized long getLogPosition()
+    {
+	return this.logCount;
+    }
+
+    /**
+     * Waits for a line to be logged, such as a marker the process writes to
+     * standard error. Gives up if the process ends or the deadline passes
+     * 
+     * @param line The line to wait for
+     * @param position Position in the log to look from
+     * @param deadline Value of System.nanoTime to wait until, or 0 to wait
+     *            while the process runs
+     * @return True if the line was logged
+     */
+    public synchronized boolean waitForLogLine(String line, long position, long deadline)
+    {
+	try
+	{
+	    while (true)
+	    {
+		long first = this.logCount - this.log.size();
+		long p = first;
+		for (String logged : this.log)
+		{
+		    if (p >= position && logged.equals(line))
+		    {
+			return true;
+		    }
+		    p++;
+		}
+		if (!this.process.isAlive() || (deadline != 0 && System.nanoTime() > deadline))
+		{
+		    return false;
+		}
+		this.wait(100);
+	    }
+	}
+	catch (InterruptedException e)
+	{
+	    Thread.currentThread().interrupt();
+	    return false;
+	}
+    }
+
+    /**
+     * Retrieves the lines logged since a position, leaving out any equal to a
+     * marker. Lines dropped from a full log are noted
+     * 
+     * @param position Position in the log to start from
+     * @param marker Line to leave out, or null
+     * @return The lines, one per line, or an empty string if there are none
+     */
+    public synchronized String getLogSince(long position, String marker)
+    {
+	StringBuilder lines = new StringBuilder();
+	long first = this.logCount - this.log.size();
+	if (position < first)
+	{
+	    lines.append("[" + (first - position) + " earlier lines not kept]");
+	}
+	long p = first;
+	for (String logged : this.log)
+	{
+	    if (p >= position && !logged.equals(marker))
+	    {
+		if (lines.length() > 0)
+		{
+		    lines.append(System.getProperty("line.separator"));
+		}
+		lines.append(logged);
+	    }
+	    p++;
+	}
+	return lines.toString();
+    }
+
+    /**
+     * @return Whether the process is still running
+     */
+    public boolean isAlive()
+    {
+	return this.process.isAlive();
+    }
+
+    /**
+     * @return Whether the process was killed for missing a deadline
+     */
+    public boolean hasTimedOut()
+    {
+	return this.timedOut;
+    }
+
+    /**
+     * Kills the process
+     */
+    public void cancel()
+    {
+	this.process.destroyForcibly();
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * \package spartanLink 
+ * \brief Runs the spartan sampling in R, without the need to do this externally
+ */
+package spartanLink;
+
+/**
+ * \brief Receives each parameter value set of a sample as it is read
+ * 
+ * Lets models be generated from a sample while spartan is still producing the
+ * rest of it
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public interface SampleRowListener
+{
+    /**
+     * Called with each value set of a sample, in order
+     * 
+     * @param fileName Name of the file spartan would have written the sample
+     *            to
+     * @param rowNum Position of the value set in the sample, from 0
+     * @param valueSet Sampled value of each parameter
+     * @throws Exception if the value set cannot be processed. Reading of the
+     *             sample then stops
+     */
+    void sampleRow(String fileName, int rowNum, double[] valueSet) throws Exception;
+}
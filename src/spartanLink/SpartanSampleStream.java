@@ -0,0 +1,336 @@
+/**
+ * \package spartanLink 
+ * \brief Runs the spartan sampling in R, without the need to do this externally
+ */
+package spartanLink;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+/**
+ * \brief Runs a spartan sampling script in R, reading the samples from R's
+ * standard output as they are produced
+ * 
+ * Spartan writes each sample to a CSV file with write.csv. The script is run
+ * by a SpartanWorker, which replaces write.csv so each sample is instead
+ * written to standard output, preceded by a line naming the file it would have
+ * been written to and followed by an end marker. Anything else R prints is
+ * ignored.
+ * 
+ * Samples are read on a background thread as R writes them, or on a thread of
+ * the caller's choosing, so no sample files are written or read back. A
+ * listener may be passed each value set as it arrives, and callers may wait
+ * for any one sample, which is returned as soon as R has finished writing it
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SpartanSampleStream implements Runnable
+{
+    /**
+     * Start of the line preceding each sample, followed by its file name
+     */
+    static final String FILE_MARKER = "#ASPASIA_FILE,";
+
+    /**
+     * Line following the last value set of each sample
+     */
+    static final String END_MARKER = "#ASPASIA_END";
+
+    /**
+     * Full path to the spartan script to run
+     */
+    private final String spartanScript;
+
+    /**
+     * Number of parameter columns in each sample
+     */
+    private final int numParams;
+
+    /**
+     * Passed each value set as it is read, or null
+     */
+    private final SampleRowListener listener;
+
+    /**
+     * Time the script may take, in seconds, or 0 for no limit
+     */
+    private final int timeoutSeconds;
+
+    /**
+     * Samples read so far, keyed by the name of the file spartan would have
+     * written each to
+     */
+    private final Map<String, double[][]> samples = new HashMap<String, double[][]>();
+
+    /**
+     * Everything R wrote to its standard error while running the script
+     */
+    private final StringBuilder errorOutput = new StringBuilder();
+
+    /**
+     * Name of the sample being read, or null between samples
+     */
+    private String fileName;
+
+    /**
+     * Value sets of the sample being read
+     */
+    private List<double[]> sample;
+
+    /**
+     * Whether the parameter headings of the sample being read are still to
+     * come
+     */
+    private boolean headings;
+
+    /**
+     * Whether the script has run and all its output has been read
+     */
+    private boolean finished = false;
+
+    /**
+     * Exit code of the script, once finished
+     */
+    private int exitCode;
+
+    /**
+     * Error that stopped the output being read, or null
+     */
+    private Exception failure;
+
+    /**
+     * Creates a stream for one spartan script. R is not run until start is
+     * called
+     * 
+     * @param spartanScript Full path to the spartan script to run
+     * @param numParams Number of parameter columns in each sample
+     * @param listener Passed each value set as it is read, or null
+     * @param timeoutSeconds Time the script may take before R is stopped, in
+     *            seconds, or 0 for no limit
+     */
+    public SpartanSampleStream(String spartanScript, int numParams, SampleRowListener listener,
+	    int timeoutSeconds)
+    {
+	this.spartanScript = spartanScript;
+	this.numParams = numParams;
+	this.listener = listener;
+	this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * Sends the script to a worker, reading its output in the background
+     */
+    public void start()
+    {
+	Thread reader = new Thread(this, "Spartan sample reader");
+	reader.setDaemon(true);
+	reader.start();
+    }
+
+    /**
+     * Sends the script to a worker and reads its output on the calling thread,
+     * returning once the script has run. Lets callers run several streams on
+     * a pool of their own, rather than calling start
+     */
+    public void run()
+    {
+	int code = -1;
+	Exception runFailure = null;
+	try
+	{
+	    code = SpartanWorker.runScript(this.spartanScript, this, this.errorOutput,
+		    this.timeoutSeconds);
+	}
+	catch (Exception e)
+	{
+	    runFailure = e;
+	}
+	synchronized (this)
+	{
+	    this.exitCode = code;
+	    if (this.failure == null)
+	    {
+		this.failure = runFailure;
+	    }
+	    this.finished = true;
+	    this.notifyAll();
+	}
+    }
+
+    /**
+     * Waits for a sample to be produced
+     * 
+     * @param fileName Name of the file spartan would have written the sample
+     *            to, without its folder
+     * @return Sampled values, one row per value set
+     * @throws IOException if R finishes without producing the sample, or the
+     *             wait is interrupted
+     */
+    public synchronized double[][] getSample(String fileName) throws IOException
+    {
+	try
+	{
+	    while (!this.samples.containsKey(fileName) && !this.finished)
+	    {
+		this.wait();
+	    }
+	}
+	catch (InterruptedException e)
+	{
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException("Interrupted waiting for " + fileName + " from R");
+	}
+
+	double[][] sample = this.samples.get(fileName);
+	if (sample == null)
+	{
+	    throw new IOException(this.describeFailure("R did not produce the sample "
+		    + fileName));
+	}
+	return sample;
+    }
+
+    /**
+     * Waits for R to finish and all of its output to be read
+     * 
+     * @throws IOException if R fails, its output cannot be read, or the wait
+     *             is interrupted
+     */
+    public synchronized void waitFor() throws IOException
+    {
+	try
+	{
+	    while (!this.finished)
+	    {
+		this.wait();
+	    }
+	}
+	catch (InterruptedException e)
+	{
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException("Interrupted waiting for R to finish sampling");
+	}
+
+	if (this.failure != null || this.exitCode != 0)
+	{
+	    throw new IOException(this.describeFailure("There was a problem creating parameter "
+		    + "samples with Spartan"));
+	}
+    }
+
+    /**
+     * Reads one line of R's standard output. Once a value set cannot be read,
+     * or the listener fails, the rest of the output is ignored
+     * 
+     * @param strLine The line R wrote
+     */
+    void readLine(String strLine)
+    {
+	synchronized (this)
+	{
+	    if (this.failure != null)
+	    {
+		return;
+	    }
+	}
+
+	try
+	{
+	    if (strLine.startsWith(FILE_MARKER))
+	    {
+		this.fileName = strLine.substring(FILE_MARKER.length()).trim();
+		this.sample = new ArrayList<double[]>();
+		this.headings = true;
+	    }
+	    else if (this.fileName != null && strLine.trim().equals(END_MARKER))
+	    {
+		synchronized (this)
+		{
+		    this.samples.put(this.fileName, this.sample.toArray(new double[this.sample
+			    .size()][]));
+		    this.notifyAll();
+		}
+		this.fileName = null;
+	    }
+	    else if (this.fileName != null && this.headings)
+	    {
+		// Skip over the parameter headings
+		this.headings = false;
+	    }
+	    else if (this.fileName != null)
+	    {
+		double[] valueSet = this.parseValueSet(strLine, this.fileName, this.sample.size());
+		this.sample.add(valueSet);
+		if (this.listener != null)
+		{
+		    this.listener.sampleRow(this.fileName, this.sample.size() - 1, valueSet);
+		}
+	    }
+	}
+	catch (Exception e)
+	{
+	    synchronized (this)
+	    {
+		this.failure = e;
+	    }
+	}
+    }
+
+    /**
+     * Reads one value set of a sample
+     * 
+     * @param strLine The line R wrote
+     * @param fileName Name of the sample being read
+     * @param rowNum Position of the value set in the sample, from 0
+     * @return Sampled value of each parameter
+     * @throws IOException if the line does not hold a value for each parameter
+     */
+    private double[] parseValueSet(String strLine, String fileName, int rowNum)
+	    throws IOException
+    {
+	StringTokenizer st = new StringTokenizer(strLine, ",");
+	double[] valueSet = new double[this.numParams];
+	for (int p = 0; p < this.numParams; p++)
+	{
+	    if (!st.hasMoreTokens())
+	    {
+		throw new IOException("Value set " + (rowNum + 1) + " of " + fileName
+			+ " does not hold a value for every parameter");
+	    }
+	    valueSet[p] = Double.parseDouble(st.nextToken());
+	}
+	return valueSet;
+    }
+
+    /**
+     * @param problem What went wrong
+     * @return The problem, followed by any error that stopped the output being
+     *         read and anything R wrote to its standard error
+     */
+    private String describeFailure(String problem)
+    {
+	StringBuilder description = new StringBuilder(problem);
+	if (this.failure != null)
+	{
+	    description.append(": ").append(this.failure);
+	}
+	else if (this.finished && this.exitCode != 0)
+	{
+	    description.append(": the script failed in R");
+	}
+	if (this.errorOutput.length() > 0)
+	{
+	    description.append(System.getProperty("line.separator")).append(
+		    this.errorOutput.toString().trim());
+	}
+	return description.toString();
+    }
+}
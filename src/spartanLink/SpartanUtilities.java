@@ -3,12 +3,21 @@
  */
 package spartanLink;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 /**
  * \brief Utility methods for connecting ASPASIA to the Spartan package
  * 
  * Generates parameter samples by running the specified spartan analysis. This
  * creates CSV files containing parameter samples that are later processed into
- * parameter XML files
+ * parameter XML files. Scripts are run by a SpartanWorker, so R is started and
+ * spartan loaded once, rather than for every sample. Independent scripts, such
+ * as those sampling each eFAST curve, can be run at the same time
  * 
  * @author Kieran Alden, York Computational Immunology Lab
  * @version 1.0
@@ -18,41 +27,95 @@ package spartanLink;
 public class SpartanUtilities
 {
     /**
-     * Full path to the spartan file created to perform parameter sampling
+     * Run the Spartan R script that generates the parameter samples
+     * 
+     * @param spartanScript Full path to the spartan file created to perform
+     *            parameter sampling
+     * @return 0 if the samples were generated, 1 if not
      */
-    public static String spartanScript;
+    public static int generateParameterSamples(String spartanScript)
+    {
+	return generateParameterSamples(spartanScript, 0);
+    }
 
     /**
-     * Run the Spartan R script that generates the parameter samples
+     * Run the Spartan R script that generates the parameter samples, stopping
+     * R if it takes too long. Anything R reports while failing is printed
+     * 
+     * @param spartanScript Full path to the spartan file created to perform
+     *            parameter sampling
+     * @param timeoutSeconds Time R may take, in seconds, or 0 for no limit
+     * @return 0 if the samples were generated, 1 if not
      */
-    public static int generateParameterSamples()
+    public static int generateParameterSamples(String spartanScript, int timeoutSeconds)
     {
+	StringBuilder errors = new StringBuilder();
 	try
 	{
-	    // Use an array to get around the possibility that the file path
-	    // will have spaces
-	    String[] args =
-	    { "Rscript", spartanScript };
-	    Process pr = Runtime.getRuntime().exec(args);
-
-	    int code = pr.waitFor();
-
-	    switch (code)
+	    if (SpartanWorker.runScript(spartanScript, null, errors, timeoutSeconds) == 0)
 	    {
-	    case 0:
 		return 0;
-	    case 1:
-		System.out.println(pr.getErrorStream());
 	    }
+	}
+	catch (Exception e)
+	{
+	    e.printStackTrace();
+	}
 
-	    return 1;
-
+	if (errors.length() > 0)
+	{
+	    System.out.println(errors);
 	}
+	return 1;
+    }
+
+    /**
+     * Runs several Spartan R scripts at the same time, each on its own R
+     * worker, with no more than a given number running at once
+     * 
+     * @param spartanScripts Full path to each script
+     * @param maxJobs Maximum number of scripts to run at once
+     * @param timeoutSeconds Time each script may take, in seconds, or 0 for
+     *            no limit
+     * @return 0 if every script generated its samples, 1 if not
+     */
+    public static int generateParameterSamples(List<String> spartanScripts, int maxJobs,
+	    final int timeoutSeconds)
+    {
+	ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+		Math.min(maxJobs, spartanScripts.size())));
+	try
+	{
+	    List<Future<Integer>> jobs = new ArrayList<Future<Integer>>();
+	    for (final String spartanScript : spartanScripts)
+	    {
+		jobs.add(executor.submit(new Callable<Integer>()
+		{
+		    public Integer call()
+		    {
+			return generateParameterSamples(spartanScript, timeoutSeconds);
+		    }
+		}));
+	    }
 
+	    int code = 0;
+	    for (Future<Integer> job : jobs)
+	    {
+		if (job.get() != 0)
+		{
+		    code = 1;
+		}
+	    }
+	    return code;
+	}
 	catch (Exception e)
 	{
 	    e.printStackTrace();
 	    return 1;
 	}
+	finally
+	{
+	    executor.shutdownNow();
+	}
     }
 }
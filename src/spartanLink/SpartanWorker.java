@@ -0,0 +1,374 @@
+/**
+ * \package spartanLink 
+ * \brief Runs the spartan sampling in R, without the need to do this externally
+ */
+package spartanLink;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * \brief A long-lived R process that runs spartan sampling scripts
+ * 
+ * Starting Rscript and loading spartan and lhs takes longer than generating
+ * most samples, so rather than start R for every script, workers are kept
+ * running and sent scripts to run. A worker loads the libraries once, then
+ * reads commands from its standard input, one per line: RUN,[script] sources
+ * the script, and STREAM,[script] sources it with the samples spartan writes
+ * with write.csv sent to standard output instead, as SpartanSampleStream
+ * reads them. Each script is run in its own environment, so nothing is left
+ * behind for the next. Once a script has run, the worker writes a line
+ * holding its exit code and the CPU time R spent on it to standard output, and
+ * a marker to its standard error, ending whatever R wrote there while running
+ * it. Both streams are read as they are written, by a ProcessRunner, and each
+ * script's wall and CPU time are reported once it has run. A script may be
+ * given a time limit, after which its worker is killed.
+ * 
+ * Each worker runs one script at a time. Idle workers are kept in a pool, of
+ * at most one per available processor, and a new one is started whenever all
+ * are busy, so analyses running at the same time do not wait for each other.
+ * A worker that dies, or fails in any other way, is stopped and discarded,
+ * and a script it was running when it died is run once more on a new worker,
+ * unless its samples were being streamed or it ran out of time. Workers still
+ * running when ASPASIA exits are stopped by a shutdown hook, or earlier by
+ * stopWorkers where ASPASIA is embedded
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SpartanWorker
+{
+    /**
+     * Start of the line following each script, followed by its exit code
+     */
+    static final String DONE_MARKER = "#ASPASIA_DONE,";
+
+    /**
+     * Line written to standard error following each script
+     */
+    static final String ERROR_MARKER = "#ASPASIA_ERRORS_END";
+
+    /**
+     * Most idle workers kept in the pool. Further workers are stopped once
+     * their script has run
+     */
+    private static final int MAX_IDLE_WORKERS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Workers not running a script
+     */
+    private static final List<SpartanWorker> idleWorkers = new ArrayList<SpartanWorker>();
+
+    /**
+     * Every worker started and not yet stopped, whether idle or busy. Guarded
+     * by idleWorkers
+     */
+    private static final Set<SpartanWorker> liveWorkers = new HashSet<SpartanWorker>();
+
+    static
+    {
+	Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+	{
+	    public void run()
+	    {
+		stopWorkers();
+	    }
+	}, "R worker shutdown"));
+    }
+
+    /**
+     * The worker script, written once and shared by all workers
+     */
+    private static File workerScript;
+
+    /**
+     * The R process
+     */
+    private final ProcessRunner process;
+
+    /**
+     * Starts a worker, which loads the libraries spartan needs
+     * 
+     * @throws IOException if R cannot be started
+     */
+    private SpartanWorker() throws IOException
+    {
+	String[] args =
+	{ "Rscript", getWorkerScript() };
+	this.process = new ProcessRunner(args, "R");
+    }
+
+    /**
+     * Runs a spartan script on an idle worker, starting one if none is idle
+     * 
+     * @param spartanScript Full path to the spartan script
+     * @param stream Receives the samples the script writes, or null if they
+     *            are to be written to the files spartan names
+     * @param errors Filled with anything R wrote to standard error while
+     *            running the script
+     * @param timeoutSeconds Time the script may take before R is stopped, in
+     *            seconds, or 0 for no limit
+     * @return The exit code of the script: 0 if it ran, 1 if not
+     * @throws IOException if R cannot be started, runs out of time, or stops
+     *             while streaming
+     */
+    public static int runScript(String spartanScript, SpartanSampleStream stream,
+	    StringBuilder errors, int timeoutSeconds) throws IOException
+    {
+	// Only scripts writing files are safe to run again
+	int attempts = (stream == null) ? 2 : 1;
+	while (true)
+	{
+	    SpartanWorker worker = takeWorker();
+	    try
+	    {
+		int code = worker.run(spartanScript, stream, errors, timeoutSeconds);
+		releaseWorker(worker);
+		return code;
+	    }
+	    catch (RuntimeException e)
+	    {
+		// The state of the worker is unknown, so it is not reused
+		stopWorker(worker);
+		throw e;
+	    }
+	    catch (IOException e)
+	    {
+		// The worker has stopped, so is not returned to the pool
+		stopWorker(worker);
+		attempts--;
+		if (attempts == 0 || worker.process.hasTimedOut())
+		{
+		    throw e;
+		}
+		System.out.println("The R worker stopped (" + e.getMessage()
+			+ "). Restarting it to run " + spartanScript);
+	    }
+	}
+    }
+
+    /**
+     * @return An idle worker, or a newly started one if none is idle
+     * @throws IOException if R cannot be started
+     */
+    private static SpartanWorker takeWorker() throws IOException
+    {
+	synchronized (idleWorkers)
+	{
+	    while (!idleWorkers.isEmpty())
+	    {
+		SpartanWorker worker = idleWorkers.remove(idleWorkers.size() - 1);
+		if (worker.process.isAlive())
+		{
+		    return worker;
+		}
+		liveWorkers.remove(worker);
+	    }
+	}
+	SpartanWorker worker = new SpartanWorker();
+	synchronized (idleWorkers)
+	{
+	    liveWorkers.add(worker);
+	}
+	return worker;
+    }
+
+    /**
+     * Returns a worker to the pool once its script has run, or stops it if
+     * the pool is full
+     * 
+     * @param worker The worker
+     */
+    private static void releaseWorker(SpartanWorker worker)
+    {
+	synchronized (idleWorkers)
+	{
+	    if (idleWorkers.size() < MAX_IDLE_WORKERS)
+	    {
+		idleWorkers.add(worker);
+		return;
+	    }
+	}
+	stopWorker(worker);
+    }
+
+    /**
+     * Stops a worker that is not returned to the pool
+     * 
+     * @param worker The worker
+     */
+    private static void stopWorker(SpartanWorker worker)
+    {
+	synchronized (idleWorkers)
+	{
+	    liveWorkers.remove(worker);
+	}
+	worker.process.cancel();
+    }
+
+    /**
+     * Stops every worker still running, idle or not. Run when ASPASIA exits,
+     * and may be called earlier by a program embedding ASPASIA once it no
+     * longer needs spartan. Workers are started again as scripts are run
+     */
+    public static void stopWorkers()
+    {
+	List<SpartanWorker> workers;
+	synchronized (idleWorkers)
+	{
+	    workers = new ArrayList<SpartanWorker>(liveWorkers);
+	    liveWorkers.clear();
+	    idleWorkers.clear();
+	}
+	for (SpartanWorker worker : workers)
+	{
+	    worker.process.cancel();
+	}
+    }
+
+    /**
+     * Sends a script to this worker and waits for it to run
+     * 
+     * @param spartanScript Full path to the spartan script
+     * @param stream Receives the samples the script writes, or null
+     * @param errors Filled with what R wrote to standard error meanwhile
+     * @param timeoutSeconds Time the script may take, or 0 for no limit
+     * @return The exit code of the script
+     * @throws IOException if the worker stops, or runs out of time, before the
+     *             script has run
+     */
+    private int run(String spartanScript, SpartanSampleStream stream, StringBuilder errors,
+	    int timeoutSeconds) throws IOException
+    {
+	long start = System.nanoTime();
+	long deadline = (timeoutSeconds > 0) ? start + timeoutSeconds * 1000000000L : 0;
+	long logPosition = this.process.getLogPosition();
+
+	try
+	{
+	    this.process.writeLine((stream == null ? "RUN," : "STREAM,") + spartanScript);
+
+	    String strLine = this.process.readLine(deadline);
+	    while (strLine != null && !strLine.startsWith(DONE_MARKER))
+	    {
+		if (stream != null)
+		{
+		    stream.readLine(strLine);
+		}
+		else
+		{
+		    // Anything spartan prints is kept with its errors
+		    this.process.log(strLine);
+		}
+		strLine = this.process.readLine(deadline);
+	    }
+	    if (strLine == null)
+	    {
+		throw new IOException("R exited");
+	    }
+
+	    // Wait for the error output to catch up
+	    this.process.waitForLogLine(ERROR_MARKER, logPosition, deadline);
+
+	    String[] result = strLine.substring(DONE_MARKER.length()).trim().split(",");
+	    int code;
+	    try
+	    {
+		code = Integer.parseInt(result[0]);
+	    }
+	    catch (NumberFormatException e)
+	    {
+		throw new IOException("R wrote an unreadable result: " + strLine);
+	    }
+	    System.out.println("R: " + new File(spartanScript).getName() + " ran in "
+		    + String.format("%.2f", (System.nanoTime() - start) / 1e9) + "s, using "
+		    + (result.length > 1 ? result[1] : "?") + "s of CPU time");
+	    return code;
+	}
+	finally
+	{
+	    errors.append(this.process.getLogSince(logPosition, ERROR_MARKER));
+	}
+    }
+
+    /**
+     * Writes the R script workers run, replacing write.csv before spartan is
+     * loaded so that samples can be streamed, then loading spartan and
+     * running each script it is sent
+     * 
+     * @return Full path to the worker script
+     * @throws IOException if the script cannot be written
+     */
+    private static synchronized String getWorkerScript() throws IOException
+    {
+	if (workerScript == null)
+	{
+	    File script = File.createTempFile("ASPASIA_Worker", ".R");
+	    script.deleteOnExit();
+
+	    PrintWriter writer = new PrintWriter(script, "UTF-8");
+	    try
+	    {
+		writer.println("ASPASIA_STREAMING<-FALSE");
+		writer.println("ASPASIA_WRITE_CSV<-function(x,file=\"\",row.names=TRUE,...)");
+		writer.println("{");
+		writer.println("  if (ASPASIA_STREAMING)");
+		writer.println("  {");
+		writer.println("    cat(\"" + SpartanSampleStream.FILE_MARKER
+			+ "\",basename(file),\"\\n\",sep=\"\")");
+		writer.println("    utils::write.table(x,stdout(),sep=\",\",row.names=FALSE,"
+			+ "quote=FALSE)");
+		writer.println("    cat(\"" + SpartanSampleStream.END_MARKER + "\\n\")");
+		writer.println("    flush(stdout())");
+		writer.println("  }");
+		writer.println("  else");
+		writer.println("  {");
+		writer.println("    utils::write.table(x,file,sep=\",\",dec=\".\","
+			+ "qmethod=\"double\",row.names=row.names,");
+		writer.println("      col.names=if (identical(row.names,FALSE)) TRUE else NA,...)");
+		writer.println("  }");
+		writer.println("}");
+		writer.println("assignInNamespace(\"write.csv\",ASPASIA_WRITE_CSV,\"utils\")");
+		writer.println("write.csv<-ASPASIA_WRITE_CSV");
+		writer.println("suppressMessages(library(spartan))");
+		writer.println("suppressMessages(library(lhs))");
+		writer.println("input<-file(\"stdin\")");
+		writer.println("open(input)");
+		writer.println("repeat");
+		writer.println("{");
+		writer.println("  command<-readLines(input,n=1)");
+		writer.println("  if (length(command)==0) break");
+		writer.println("  ASPASIA_STREAMING<-grepl(\"^STREAM,\",command)");
+		writer.println("  started<-proc.time()");
+		writer.println("  code<-tryCatch({");
+		writer.println("    source(sub(\"^[A-Z]+,\",\"\",command),local=new.env())");
+		writer.println("    0");
+		writer.println("  },error=function(e) {");
+		writer.println("    message(conditionMessage(e))");
+		writer.println("    1");
+		writer.println("  })");
+		writer.println("  ASPASIA_STREAMING<-FALSE");
+		writer.println("  cat(\"" + ERROR_MARKER + "\\n\",file=stderr())");
+		writer.println("  used<-proc.time()-started");
+		writer.println("  cpu<-sum(used[c(1,2,4,5)],na.rm=TRUE)");
+		writer.println("  cat(\"" + DONE_MARKER + "\",code,\",\",round(cpu,2),\"\\n\","
+			+ "sep=\"\")");
+		writer.println("  flush(stdout())");
+		writer.println("}");
+	    }
+	    finally
+	    {
+		writer.close();
+	    }
+	    workerScript = script;
+	}
+	return workerScript.getAbsolutePath();
+    }
+}
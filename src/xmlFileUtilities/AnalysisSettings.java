@@ -0,0 +1,456 @@
+/**
+ * \package xmlFileUtilities
+ * 
+ * \brief Package containing utilities to process simulation and sensitivity analysis XML files.
+ */
+package xmlFileUtilities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+/**
+ * \brief The settings of one analysis, as read from its settings file
+ * 
+ * Holds the value of each tag in the settings file, and the information
+ * declared for each parameter being analysed. The lists of parameter
+ * information are aligned: entry i of each describes the parameter named in
+ * entry i of getParametersAnalysed, and is null where that parameter does not
+ * declare it.
+ * 
+ * Settings are never changed once read. Where an analysis needs a different
+ * set of parameters, such as the dummy added for eFAST, a new copy is created.
+ * An instance can therefore be shared by every thread generating the models of
+ * an analysis, and several analyses can run in the same process
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public final class AnalysisSettings
+{
+    /**
+     * Full path to the settings file these settings were read from
+     */
+    private final String settingsFilePath;
+
+    /**
+     * Text of each tag in the settings file, keyed by tag name. Where a tag
+     * appears more than once, the first is held
+     */
+    private final Map<String, String> tags;
+
+    /**
+     * Names of parameters being analysed
+     */
+    private final List<String> parametersAnalysed;
+
+    /**
+     * Data type of each parameter being analysed
+     */
+    private final List<String> parameterType;
+
+    /**
+     * Min values for each parameter
+     */
+    private final List<String> minVals;
+
+    /**
+     * Max values for each parameter
+     */
+    private final List<String> maxVals;
+
+    /**
+     * Increment values for each parameter
+     */
+    private final List<String> incVals;
+
+    /**
+     * Baseline values of each parameter
+     */
+    private final List<String> baselineVals;
+
+    /**
+     * For cases where an increment is not used, but specific values, the list
+     * of the values to use
+     */
+    private final List<String> values;
+
+    /**
+     * Used for Steph's method to set certain SBML values when making a
+     * parameter file from a results file
+     */
+    private final List<Double> sbmlSetValues;
+
+    /**
+     * Creates the settings of an analysis. The lists are copied, so later
+     * changes to those passed in have no effect
+     * 
+     * @param settingsFilePath Full path to the settings file
+     * @param tags Text of each tag in the settings file
+     * @param parametersAnalysed Names of parameters being analysed
+     * @param parameterType Data type of each parameter
+     * @param minVals Min value of each parameter
+     * @param maxVals Max value of each parameter
+     * @param incVals Increment of each parameter
+     * @param baselineVals Baseline value of each parameter
+     * @param values List of values of each parameter
+     * @param sbmlSetValues Value each parameter is set to in an intervention
+     */
+    AnalysisSettings(String settingsFilePath, Map<String, String> tags,
+	    List<String> parametersAnalysed, List<String> parameterType, List<String> minVals,
+	    List<String> maxVals, List<String> incVals, List<String> baselineVals,
+	    List<String> values, List<Double> sbmlSetValues)
+    {
+	this.settingsFilePath = settingsFilePath;
+	this.tags = tags;
+	this.parametersAnalysed = copy(parametersAnalysed);
+	this.parameterType = copy(parameterType);
+	this.minVals = copy(minVals);
+	this.maxVals = copy(maxVals);
+	this.incVals = copy(incVals);
+	this.baselineVals = copy(baselineVals);
+	this.values = copy(values);
+	this.sbmlSetValues = copy(sbmlSetValues);
+    }
+
+    /**
+     * Makes an unmodifiable copy of a list
+     * 
+     * @param list List to copy
+     * @return The copy
+     */
+    private static <T> List<T> copy(List<T> list)
+    {
+	return Collections.unmodifiableList(new ArrayList<T>(list));
+    }
+
+    /**
+     * Returns a copy of these settings with a dummy parameter added to those
+     * being analysed, as required by eFAST
+     * 
+     * @return Settings including the dummy parameter
+     */
+    public AnalysisSettings withDummy()
+    {
+	List<String> dummyParams = new ArrayList<String>(this.parametersAnalysed);
+	List<String> dummyTypes = new ArrayList<String>(this.parameterType);
+	List<String> dummyMins = new ArrayList<String>(this.minVals);
+	List<String> dummyMaxs = new ArrayList<String>(this.maxVals);
+	List<String> dummyIncs = new ArrayList<String>(this.incVals);
+	List<String> dummyBaselines = new ArrayList<String>(this.baselineVals);
+	List<String> dummyValues = new ArrayList<String>(this.values);
+	List<Double> dummySetValues = new ArrayList<Double>(this.sbmlSetValues);
+
+	dummyParams.add("dummy");
+	dummyTypes.add("double");
+	dummyMins.add("1");
+	dummyMaxs.add("10");
+	dummyIncs.add(null);
+	dummyBaselines.add(null);
+	dummyValues.add(null);
+	dummySetValues.add(null);
+
+	return new AnalysisSettings(this.settingsFilePath, this.tags, dummyParams, dummyTypes,
+		dummyMins, dummyMaxs, dummyIncs, dummyBaselines, dummyValues, dummySetValues);
+    }
+
+    /**
+     * Returns a copy of these settings analysing the given parameters, such as
+     * those named in the header of a pre-generated sample file. Information
+     * declared for a parameter in the settings file is kept. Parameters not
+     * declared are taken to be doubles
+     * 
+     * @param parameterNames Names of the parameters to analyse
+     * @return Settings analysing those parameters
+     */
+    public AnalysisSettings withParameters(List<String> parameterNames)
+    {
+	List<String> types = new ArrayList<String>();
+	List<String> mins = new ArrayList<String>();
+	List<String> maxs = new ArrayList<String>();
+	List<String> incs = new ArrayList<String>();
+	List<String> baselines = new ArrayList<String>();
+	List<String> vals = new ArrayList<String>();
+	List<Double> setValues = new ArrayList<Double>();
+
+	for (String parameterName : parameterNames)
+	{
+	    int declared = this.parametersAnalysed.indexOf(parameterName);
+	    if (declared >= 0)
+	    {
+		types.add(this.parameterType.get(declared));
+		mins.add(this.minVals.get(declared));
+		maxs.add(this.maxVals.get(declared));
+		incs.add(this.incVals.get(declared));
+		baselines.add(this.baselineVals.get(declared));
+		vals.add(this.values.get(declared));
+		setValues.add(this.sbmlSetValues.get(declared));
+	    }
+	    else
+	    {
+		types.add("double");
+		mins.add(null);
+		maxs.add(null);
+		incs.add(null);
+		baselines.add(null);
+		vals.add(null);
+		setValues.add(null);
+	    }
+	}
+
+	return new AnalysisSettings(this.settingsFilePath, this.tags, parameterNames, types,
+		mins, maxs, incs, baselines, vals, setValues);
+    }
+
+    /**
+     * Returns a copy of these settings with one tag set, such as an option
+     * given on the command line rather than in the settings file
+     * 
+     * @param paramName The name of the tag
+     * @param value Text of the tag
+     * @return Settings with the tag set
+     */
+    public AnalysisSettings withParam(String paramName, String value)
+    {
+	Map<String, String> newTags = new HashMap<String, String>(this.tags);
+	newTags.put(paramName, value);
+	return new AnalysisSettings(this.settingsFilePath,
+		Collections.unmodifiableMap(newTags), this.parametersAnalysed, this.parameterType,
+		this.minVals, this.maxVals, this.incVals, this.baselineVals, this.values,
+		this.sbmlSetValues);
+    }
+
+    /**
+     * @return Full path to the settings file these settings were read from
+     */
+    public String getSettingsFilePath()
+    {
+	return this.settingsFilePath;
+    }
+
+    /**
+     * Return a string parameter from the sensitivity analysis settings file
+     * 
+     * @param paramName The name of the parameter for which the value is
+     *            requested
+     * @return String value of that parameter in the XML file. Null is returned
+     *         if no tag is found
+     */
+    public String getParam(String paramName)
+    {
+	String value = this.tags.get(paramName);
+	if (value == null)
+	{
+	    if (!paramName.equals("lhcPreGeneratedSampleFile"))
+	    {
+		System.out.println("No Value Entered for " + paramName + " In Settings File");
+	    }
+	}
+	return value;
+    }
+
+    /**
+     * Return a string parameter from the settings file that the user does not
+     * have to specify, without reporting its absence
+     * 
+     * @param paramName The name of the parameter for which the value is
+     *            requested
+     * @param defaultValue Value to use where the tag is not in the file
+     * @return String value of that parameter in the XML file, or the default
+     */
+    public String getOptionalParam(String paramName, String defaultValue)
+    {
+	String value = this.tags.get(paramName);
+	if (value == null || value.trim().length() == 0)
+	{
+	    return defaultValue;
+	}
+	return value.trim();
+    }
+
+    /**
+     * Return a boolean parameter from the sensitivity analysis settings file
+     * 
+     * @param paramName The name of the parameter for which the value is
+     *            requested
+     * @return Boolean value of that parameter in the XML file. False is
+     *         returned if no tag is found
+     */
+    public boolean getParamBoolean(String paramName)
+    {
+	return Boolean.parseBoolean(this.tags.get(paramName));
+    }
+
+    /**
+     * Return an integer parameter from the sensitivity analysis settings file
+     * 
+     * @param paramName The name of the parameter for which the value is
+     *            requested
+     * @return Integer value of that parameter in the XML file
+     */
+    public int getParamInteger(String paramName)
+    {
+	return Integer.parseInt(this.tags.get(paramName));
+    }
+
+    /**
+     * Return a double parameter from the sensitivity analysis settings file
+     * 
+     * @param paramName The name of the parameter for which the value is
+     *            requested
+     * @return Double value of that parameter in the XML file
+     */
+    public double getParamDouble(String paramName)
+    {
+	return Double.parseDouble(this.tags.get(paramName));
+    }
+
+    /**
+     * Return an ArrayList comprised of string elements in the settings file
+     * that were specified as a comma separated list.
+     * 
+     * @param paramName The name of the parameter for which the value is
+     *            requested
+     * @return ArrayList of string values associated with this parameter
+     */
+    public ArrayList<String> getParamStringList(String paramName)
+    {
+	// Get the list from the XML file and split on the comma
+	StringTokenizer st = new StringTokenizer(getParam(paramName), ",");
+
+	ArrayList<String> ar = new ArrayList<String>();
+	while (st.hasMoreTokens())
+	{
+	    ar.add(st.nextToken());
+	}
+
+	return ar;
+    }
+
+    /**
+     * Return an ArrayList comprised of integer elements in the settings file
+     * that were specified as a comma separated list.
+     * 
+     * @param paramName The name of the parameter for which the value is
+     *            requested
+     * @return ArrayList of integer values associated with this parameter
+     */
+    public ArrayList<Integer> getParamIntegerList(String paramName)
+    {
+	ArrayList<Integer> ar = new ArrayList<Integer>();
+	for (String value : getParamStringList(paramName))
+	{
+	    ar.add(Integer.parseInt(value));
+	}
+
+	return ar;
+    }
+
+    /**
+     * Return an ArrayList comprised of double elements in the settings file
+     * that were specified as a comma separated list.
+     * 
+     * @param paramName The name of the parameter for which the value is
+     *            requested
+     * @return ArrayList of double values associated with this parameter
+     */
+    public ArrayList<Double> getParamDoubleList(String paramName)
+    {
+	ArrayList<Double> ar = new ArrayList<Double>();
+	for (String value : getParamStringList(paramName))
+	{
+	    ar.add(Double.parseDouble(value));
+	}
+
+	return ar;
+    }
+
+    /**
+     * @return Names of the parameters being analysed
+     */
+    public List<String> getParametersAnalysed()
+    {
+	return this.parametersAnalysed;
+    }
+
+    /**
+     * @return Data type of each parameter being analysed
+     */
+    public List<String> getParameterType()
+    {
+	return this.parameterType;
+    }
+
+    /**
+     * @return Min value of each parameter
+     */
+    public List<String> getMinVals()
+    {
+	return this.minVals;
+    }
+
+    /**
+     * @return Max value of each parameter
+     */
+    public List<String> getMaxVals()
+    {
+	return this.maxVals;
+    }
+
+    /**
+     * @return Increment of each parameter
+     */
+    public List<String> getIncVals()
+    {
+	return this.incVals;
+    }
+
+    /**
+     * @return Baseline value of each parameter
+     */
+    public List<String> getBaselineVals()
+    {
+	return this.baselineVals;
+    }
+
+    /**
+     * @return List of values to use for each parameter, where specified rather
+     *         than an increment
+     */
+    public List<String> getValues()
+    {
+	return this.values;
+    }
+
+    /**
+     * @return Value each parameter is set to when making a parameter file from
+     *         a results file
+     */
+    public List<Double> getSbmlSetValues()
+    {
+	return this.sbmlSetValues;
+    }
+
+    /**
+     * Whether the user has specified OAT values as a list, rather than in the
+     * traditional increment manner, for any parameter
+     * 
+     * @return True if any parameter specifies a list of values
+     */
+    public boolean isOatValuesList()
+    {
+	for (String parameterValues : this.values)
+	{
+	    if (parameterValues != null)
+	    {
+		return true;
+	    }
+	}
+	return false;
+    }
+}
@@ -6,6 +6,7 @@
 package xmlFileUtilities;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 
@@ -24,9 +25,11 @@ public class FileCreationUtilities
      * in the same order as in the file
      * 
      * @param spartanLine One line from the spartan CSV file
+     * @param parameters Names of the parameters in each column of the file
      * @return Map of parameter value to sampled value
      */
-    public static Map<String, Double> makeParameterValMap(String spartanLine)
+    public static Map<String, Double> makeParameterValMap(String spartanLine,
+	    List<String> parameters)
     {
 	// The parameter values in the spartan value line will be split by
 	// commas,
@@ -34,10 +37,9 @@ public class FileCreationUtilities
 	StringTokenizer st = new StringTokenizer(spartanLine, ",");
 
 	Map<String, Double> parameterValMap = new HashMap<String, Double>();
-	for (int q = 0; q < XMLFileUtilities.parametersAnalysed.size(); q++)
+	for (int q = 0; q < parameters.size(); q++)
 	{
-	    parameterValMap.put(XMLFileUtilities.parametersAnalysed.get(q),
-		    Double.parseDouble(st.nextToken()));
+	    parameterValMap.put(parameters.get(q), Double.parseDouble(st.nextToken()));
 	}
 
 	return parameterValMap;
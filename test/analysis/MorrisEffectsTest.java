@@ -0,0 +1,138 @@
+/**
+ * \package analysis
+ * 
+ * \brief Package containing the calculation of sensitivity indices from the results of simulating the models ASPASIA generated
+ */
+package analysis;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+
+import sampling.MorrisSampler;
+import sampling.ParameterSpace;
+import testUtilities.Check;
+import xmlFileUtilities.AnalysisSettings;
+import xmlFileUtilities.XMLFileUtilities;
+
+/**
+ * \brief Checks the elementary effects of a Morris analysis of linear
+ * functions, whose effects are known exactly
+ * 
+ * Trajectories are sampled as for model generation, and written to the run
+ * list with a results file holding each function at every run. The analysis
+ * then reads both, as it does after a real analysis. For a linear function,
+ * the effect of a parameter is its coefficient times its range, the same at
+ * every step, so mu and mu* are that and sigma is 0
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class MorrisEffectsTest
+{
+    /**
+     * Coefficient of each parameter in the linear measure
+     */
+    private static final double[] COEFFICIENTS = { 2, -3, 0 };
+
+    /**
+     * Range of each parameter
+     */
+    private static final double[][] RANGES = { { 0, 1 }, { 10, 20 }, { 0, 5 } };
+
+    /**
+     * Runs the checks
+     * 
+     * @param args Not used
+     * @throws Exception if the files of the analysis cannot be written or read
+     */
+    public static void main(String[] args) throws Exception
+    {
+	File folder = Check.tempFolder("MorrisEffectsTest");
+	try
+	{
+	    File settingsFile = new File(folder, "settings.xml");
+	    BufferedWriter settingsOut = new BufferedWriter(new FileWriter(settingsFile));
+	    settingsOut.write("<xml>\n<parameterFileOutputFolder>" + folder.getPath()
+		    + "</parameterFileOutputFolder>\n<morrisResultsFile>" + folder.getPath()
+		    + "/results.csv</morrisResultsFile>\n");
+	    for (int p = 0; p < RANGES.length; p++)
+	    {
+		settingsOut.write("<parameter type=\"double\" min=\"" + RANGES[p][0] + "\" max=\""
+			+ RANGES[p][1] + "\">x" + (p + 1) + "</parameter>\n");
+	    }
+	    settingsOut.write("</xml>\n");
+	    settingsOut.close();
+	    AnalysisSettings settings = XMLFileUtilities.readSettingsFile(settingsFile.getPath());
+
+	    double[][][] trajectories = new MorrisSampler(7, 4, 20, 1).generateTrajectories(
+		    new ParameterSpace(settings), 10);
+	    File morrisFolder = new File(folder, "Morris");
+	    morrisFolder.mkdirs();
+	    BufferedWriter runList = new BufferedWriter(new FileWriter(new File(morrisFolder,
+		    "Morris_Parameters_for_Runs.csv")));
+	    BufferedWriter results = new BufferedWriter(new FileWriter(new File(folder,
+		    "results.csv")));
+	    runList.write("\"Model\",\"x1\",\"x2\",\"x3\"\n");
+	    results.write("\"Model\",\"Linear\",\"Product\"\n");
+	    for (int t = 0; t < trajectories.length; t++)
+	    {
+		for (int k = 0; k < trajectories[t].length; k++)
+		{
+		    double[] x = trajectories[t][k];
+		    String model = (t + 1) + "/paramFile" + (k + 1) + ".xml";
+		    runList.write(model + "," + x[0] + "," + x[1] + "," + x[2] + "\n");
+		    double linear = 0;
+		    for (int p = 0; p < x.length; p++)
+		    {
+			linear += COEFFICIENTS[p] * x[p];
+		    }
+		    results.write(model + "," + linear + "," + (x[0] * x[1]) + "\n");
+		}
+	    }
+	    runList.close();
+	    results.close();
+
+	    new Analyse_Morris_Results(settings);
+
+	    BufferedReader effects = new BufferedReader(new FileReader(new File(morrisFolder,
+		    "Morris_Elementary_Effects.csv")));
+	    try
+	    {
+		Check.equal("Headings", "\"Parameter\",\"Linear_MuStar\",\"Linear_Mu\","
+			+ "\"Linear_Sigma\",\"Product_MuStar\",\"Product_Mu\",\"Product_Sigma\"",
+			effects.readLine());
+		for (int p = 0; p < COEFFICIENTS.length; p++)
+		{
+		    String[] row = effects.readLine().split(",");
+		    double effect = COEFFICIENTS[p] * (RANGES[p][1] - RANGES[p][0]);
+		    Check.equal("Parameter of row " + (p + 1), "\"x" + (p + 1) + "\"", row[0]);
+		    Check.near("mu* of x" + (p + 1), Math.abs(effect), Double.parseDouble(row[1]),
+			    1e-9);
+		    Check.near("mu of x" + (p + 1), effect, Double.parseDouble(row[2]), 1e-9);
+		    Check.near("sigma of x" + (p + 1), 0, Double.parseDouble(row[3]), 1e-9);
+
+		    // The effect of x1 on x1 * x2 depends on x2, and the other
+		    // way round, so only those effects vary
+		    double productSigma = Double.parseDouble(row[6]);
+		    Check.isTrue("sigma of x" + (p + 1) + " on the product",
+			    (p < 2) ? productSigma > 0 : productSigma == 0);
+		}
+		Check.equal("Rows", null, effects.readLine());
+	    }
+	    finally
+	    {
+		effects.close();
+	    }
+	}
+	finally
+	{
+	    Check.removeFolder(folder);
+	}
+	Check.passed("MorrisEffectsTest");
+    }
+}
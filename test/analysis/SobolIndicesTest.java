@@ -0,0 +1,80 @@
+/**
+ * \package analysis
+ * 
+ * \brief Package containing the calculation of sensitivity indices from the results of simulating the models ASPASIA generated
+ */
+package analysis;
+
+import java.util.Arrays;
+
+import sampling.ParameterSpace;
+import sampling.SaltelliSample;
+import testUtilities.Check;
+
+/**
+ * \brief Checks the Saltelli first-order and Jansen total-order estimators on
+ * the Ishigami function, whose indices are known exactly
+ * 
+ * The function is sin(x1) + a sin(x2)^2 + b x3^4 sin(x1), with a = 7, b = 0.1
+ * and each x uniform on [-pi, pi]
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SobolIndicesTest
+{
+    /**
+     * Runs the checks
+     * 
+     * @param args Not used
+     */
+    public static void main(String[] args)
+    {
+	double a = 7;
+	double b = 0.1;
+	double pi = Math.PI;
+
+	// Exact partial variances of the Ishigami function
+	double v1 = 0.5 * Math.pow(1 + b * Math.pow(pi, 4) / 5, 2);
+	double v2 = a * a / 8;
+	double v13 = b * b * Math.pow(pi, 8) * (1.0 / 18 - 1.0 / 50);
+	double variance = v1 + v2 + v13;
+	double[] firstOrder = { v1 / variance, v2 / variance, 0 };
+	double[] totalOrder = { (v1 + v13) / variance, v2 / variance, v13 / variance };
+
+	String range = Double.toString(pi);
+	ParameterSpace space = new ParameterSpace(Arrays.asList("x1", "x2", "x3"), Arrays
+		.asList("-" + range, "-" + range, "-" + range), Arrays.asList(range, range,
+		range));
+	int numSamples = 8192;
+	SaltelliSample sample = new SaltelliSample(space, numSamples);
+
+	// Results are listed as the models are: A, B, then each AB matrix
+	double[] values = new double[sample.getNumMatrices() * numSamples];
+	for (int matrix = 0; matrix < sample.getNumMatrices(); matrix++)
+	{
+	    for (int i = 0; i < numSamples; i++)
+	    {
+		double[] x = sample.getValueSet(matrix, i);
+		values[matrix * numSamples + i] = Math.sin(x[0]) + a
+			* Math.pow(Math.sin(x[1]), 2) + b * Math.pow(x[2], 4) * Math.sin(x[0]);
+	    }
+	}
+
+	for (int p = 0; p < 3; p++)
+	{
+	    double[] indices = Analyse_Sobol_Results.sobolIndices(values, numSamples, p);
+	    Check.near("First-order index of x" + (p + 1), firstOrder[p], indices[0], 0.01);
+	    Check.near("Total-order index of x" + (p + 1), totalOrder[p], indices[1], 0.01);
+	}
+
+	// A measure that does not vary has no indices
+	double[] constant = new double[5 * 4];
+	Check.isTrue("Indices of a constant measure are not a number",
+		Double.isNaN(Analyse_Sobol_Results.sobolIndices(constant, 4, 0)[0]));
+
+	Check.passed("SobolIndicesTest");
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import testUtilities.Check;
+
+/**
+ * \brief Checks the manifest records the size and checksum of every model as
+ * written, by each writer, and leaves out models that were aborted
+ * 
+ * The calibrated model holds ranges longer than the splice writer's transfer
+ * threshold, so models it writes to a folder reach their files through the
+ * channel, bypassing the stream the manifest measures
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class ManifestModelSinkTest
+{
+    /**
+     * Parameters sampled, as named in the calibrated model
+     */
+    static final List<String> PARAMETERS = Arrays.asList("k1", "A");
+
+    /**
+     * Writes a calibrated SBML model with a parameter and a species to sample,
+     * padded with a long comment either side of them
+     * 
+     * @param folder Folder to write the model to
+     * @return Full path to the model
+     * @throws Exception if the model cannot be written
+     */
+    static String writeCalibratedModel(File folder) throws Exception
+    {
+	char[] padding = new char[40000];
+	Arrays.fill(padding, 'x');
+	String comment = "<!-- " + new String(padding) + " -->\n";
+	String model = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+		+ "<sbml xmlns=\"http://www.sbml.org/sbml/level2/version4\" level=\"2\""
+		+ " version=\"4\">\n  <model id=\"toy\">\n" + comment
+		+ "    <listOfCompartments>\n      <compartment id=\"cell\" size=\"1\"/>\n"
+		+ "    </listOfCompartments>\n    <listOfSpecies>\n"
+		+ "      <species id=\"A\" compartment=\"cell\" initialConcentration=\"10\"/>\n"
+		+ "    </listOfSpecies>\n    <listOfParameters>\n"
+		+ "      <parameter id=\"k1\" value=\"0.1\" constant=\"true\"/>\n"
+		+ "    </listOfParameters>\n" + comment + "  </model>\n</sbml>\n";
+	File modelFile = new File(folder, "calibrated.xml");
+	Files.write(modelFile.toPath(), model.getBytes("UTF-8"));
+	return modelFile.getPath();
+    }
+
+    /**
+     * @param k1 Sampled value of k1
+     * @param a Sampled value of A
+     * @return Map of parameter name to sampled value
+     */
+    static Map<String, Double> valueMap(double k1, double a)
+    {
+	Map<String, Double> parameterValMap = new HashMap<String, Double>();
+	parameterValMap.put("k1", k1);
+	parameterValMap.put("A", a);
+	return parameterValMap;
+    }
+
+    /**
+     * @param file A file
+     * @return CRC-32 of the file
+     * @throws Exception if the file cannot be read
+     */
+    static long checksum(File file) throws Exception
+    {
+	CRC32 crc = new CRC32();
+	crc.update(Files.readAllBytes(file.toPath()));
+	return crc.getValue();
+    }
+
+    /**
+     * Checks every model the manifest of a folder lists is whole
+     * 
+     * @param folder The analysis output folder
+     * @param expectedPaths Path of each model the manifest should list, in
+     *            manifest order
+     * @throws Exception if the manifest or a model cannot be read
+     */
+    static void checkManifest(File folder, String... expectedPaths) throws Exception
+    {
+	RunManifest manifest = new RunManifest(folder + "/Models_Manifest.bin");
+	Check.equal("Models listed", expectedPaths.length, manifest.size());
+	for (int m = 0; m < manifest.size(); m++)
+	{
+	    Check.equal("Path of model " + m, expectedPaths[m], manifest.getModelPath(m));
+	    File modelFile = new File(folder, manifest.getModelPath(m));
+	    Check.equal("Listed size of " + modelFile, modelFile.length(), manifest.getSize(m));
+	    Check.equal("Listed checksum of " + modelFile, checksum(modelFile),
+		    manifest.getChecksum(m));
+	}
+    }
+
+    /**
+     * Runs the checks
+     * 
+     * @param args Not used
+     * @throws Exception if the models or manifest cannot be written or read
+     */
+    public static void main(String[] args) throws Exception
+    {
+	File folder = Check.tempFolder("ManifestModelSinkTest");
+	try
+	{
+	    String calibrated = writeCalibratedModel(folder);
+	    ManifestModelSink sink = new ManifestModelSink(new FolderModelSink(folder.getPath()),
+		    folder.getPath(), "LHC", PARAMETERS);
+
+	    String[] writerTypes = { "splice", "template", "streaming" };
+	    for (int w = 0; w < writerTypes.length; w++)
+	    {
+		SBMLModelWriter modelWriter = WriteParameterFile_SBML.createModelWriter(
+			calibrated, writerTypes[w]);
+		try
+		{
+		    for (int i = 0; i < 2; i++)
+		    {
+			WriteParameterFile_SBML.writeSimParameterFiles(modelWriter, valueMap(
+				0.5 + i, 20 + w), sink, writerTypes[w] + "/paramFile" + (i + 1)
+				+ ".xml", i + 1);
+		    }
+		}
+		finally
+		{
+		    WriteParameterFile_SBML.closeModelWriter(modelWriter);
+		}
+	    }
+
+	    // The splice writer takes the channel of each file
+	    OutputStream spliceOut = sink.openModel("channel.xml", 1, valueMap(1, 1));
+	    Check.isTrue("Streams of a folder give their channel",
+		    spliceOut instanceof ChannelModelStream
+			    && ((ChannelModelStream) spliceOut).getChannel() != null);
+	    spliceOut.close();
+
+	    // An aborted model is neither kept nor listed
+	    OutputStream abortedOut = sink.openModel("aborted.xml", 1, valueMap(2, 2));
+	    abortedOut.write("<sbml>".getBytes("UTF-8"));
+	    WriteParameterFile_SBML.abortModel(abortedOut);
+	    Check.isTrue("Aborted model deleted", !new File(folder, "aborted.xml").exists());
+	    sink.close();
+
+	    checkManifest(folder, "channel.xml", "splice/paramFile1.xml",
+		    "splice/paramFile2.xml", "streaming/paramFile1.xml",
+		    "streaming/paramFile2.xml", "template/paramFile1.xml",
+		    "template/paramFile2.xml");
+	    Check.isTrue("Spliced model holds its sampled value",
+		    new String(Files.readAllBytes(new File(folder, "splice/paramFile2.xml")
+			    .toPath()), "UTF-8").contains("value=\"1.5\""));
+	    Check.equal("Spliced model is as long as the calibrated model, less the"
+		    + " calibrated values and plus the sampled ones", new File(calibrated).length()
+		    - "0.1".length() - "10".length() + "1.5".length() + "20.0".length(), new File(
+		    folder, "splice/paramFile2.xml").length());
+	}
+	finally
+	{
+	    Check.removeFolder(folder);
+	}
+	Check.passed("ManifestModelSinkTest");
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * \package modelCreation
+ * 
+ * \brief Package containing utilities to process parameter value sets generated by spartan, creating simulation parameter scripts for each parameter value set, or to introduce interventions into an SBML Model
+ */
+package modelCreation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import testUtilities.Check;
+
+/**
+ * \brief Checks a resumed run keeps only the models the interrupted run
+ * completed whole, and generates the rest again
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class ModelJournalTest
+{
+    /**
+     * Opens a sink recording its models in the journal of a run
+     * 
+     * @param folder The analysis output folder
+     * @param parameters Parameters analysed
+     * @param resume Whether an interrupted run is being resumed
+     * @return The sink
+     * @throws Exception if the journal cannot be read or created
+     */
+    static ManifestModelSink openSink(File folder, List<String> parameters, boolean resume)
+	    throws Exception
+    {
+	ModelJournal journal = new ModelJournal(folder.getPath(), "LHC", parameters, resume);
+	return new ManifestModelSink(new FolderModelSink(folder.getPath()), folder.getPath(),
+		"LHC", parameters, journal);
+    }
+
+    /**
+     * Writes a model, unless it is kept from an interrupted run
+     * 
+     * @param sink The sink
+     * @param sampleNum Number of the sample
+     * @param k1 Sampled value of k1
+     * @return True if the model was written, false if it was kept
+     * @throws Exception if the model cannot be written
+     */
+    static boolean writeModel(ModelSink sink, int sampleNum, double k1) throws Exception
+    {
+	OutputStream modelOut = sink.openModel("paramFile" + sampleNum + ".xml", sampleNum,
+		ManifestModelSinkTest.valueMap(k1, 10));
+	if (modelOut == null)
+	{
+	    return false;
+	}
+	modelOut.write(("<sbml><!-- sample " + sampleNum + ", k1 = " + k1 + " --></sbml>\n")
+		.getBytes("UTF-8"));
+	modelOut.close();
+	return true;
+    }
+
+    /**
+     * Runs the checks
+     * 
+     * @param args Not used
+     * @throws Exception if the models, journal or manifest cannot be written or
+     *             read
+     */
+    public static void main(String[] args) throws Exception
+    {
+	File folder = Check.tempFolder("ModelJournalTest");
+	try
+	{
+	    // Run stopped once four models were written: only the journal is
+	    // closed, so no manifest is written
+	    ModelJournal journal = new ModelJournal(folder.getPath(), "LHC",
+		    ManifestModelSinkTest.PARAMETERS, false);
+	    ManifestModelSink sink = new ManifestModelSink(new FolderModelSink(folder.getPath()),
+		    folder.getPath(), "LHC", ManifestModelSinkTest.PARAMETERS, journal);
+	    for (int sampleNum = 1; sampleNum <= 4; sampleNum++)
+	    {
+		Check.isTrue("New run writes model " + sampleNum,
+			writeModel(sink, sampleNum, sampleNum));
+	    }
+	    journal.close();
+	    Check.isTrue("Interrupted run leaves no manifest",
+		    !new File(folder, "Models_Manifest.bin").exists());
+
+	    // The stop cut short the second model and a fifth journal line, and
+	    // the third model has since been removed
+	    RandomAccessFile cutShort = new RandomAccessFile(new File(folder, "paramFile2.xml"),
+		    "rw");
+	    cutShort.setLength(cutShort.length() - 8);
+	    cutShort.close();
+	    Check.isTrue("Model removed", new File(folder, "paramFile3.xml").delete());
+	    FileOutputStream journalOut = new FileOutputStream(new File(folder,
+		    ModelJournal.JOURNAL_FILE), true);
+	    journalOut.write("5,paramFile5.xml,4".getBytes("UTF-8"));
+	    journalOut.close();
+
+	    // Resumed run, in which the fourth sample has different values
+	    sink = openSink(folder, ManifestModelSinkTest.PARAMETERS, true);
+	    Check.isTrue("Whole model kept", !writeModel(sink, 1, 1));
+	    Check.isTrue("Model cut short generated again", writeModel(sink, 2, 2));
+	    Check.isTrue("Removed model generated again", writeModel(sink, 3, 3));
+	    Check.isTrue("Model with different values generated again", writeModel(sink, 4, 40));
+	    Check.isTrue("Model of a cut short journal line generated", writeModel(sink, 5, 5));
+	    sink.close();
+	    ManifestModelSinkTest.checkManifest(folder, "paramFile1.xml", "paramFile2.xml",
+		    "paramFile3.xml", "paramFile4.xml", "paramFile5.xml");
+	    Check.equal("Manifest holds the values the model was generated again with", 40.0,
+		    new RunManifest(folder + "/Models_Manifest.bin").getValues(3)[0]);
+
+	    // Resuming the completed run keeps every model, including those
+	    // journalled after the line cut short
+	    sink = openSink(folder, ManifestModelSinkTest.PARAMETERS, true);
+	    for (int sampleNum = 1; sampleNum <= 5; sampleNum++)
+	    {
+		Check.isTrue("Completed run keeps model " + sampleNum, !writeModel(sink,
+			sampleNum, (sampleNum == 4) ? 40 : sampleNum));
+	    }
+	    sink.close();
+	    ManifestModelSinkTest.checkManifest(folder, "paramFile1.xml", "paramFile2.xml",
+		    "paramFile3.xml", "paramFile4.xml", "paramFile5.xml");
+
+	    // A journal listing the parameters in another order is not resumed
+	    sink = openSink(folder, Arrays.asList("A", "k1"), true);
+	    Check.isTrue("Journal of other parameters not resumed", writeModel(sink, 1, 1));
+	    sink.close();
+	}
+	finally
+	{
+	    Check.removeFolder(folder);
+	}
+	Check.passed("ModelJournalTest");
+    }
+}
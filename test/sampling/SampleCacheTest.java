@@ -0,0 +1,103 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import testUtilities.Check;
+
+/**
+ * \brief Checks samples come back from the cache as they were stored, and that
+ * a damaged sample file is treated as not cached
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SampleCacheTest
+{
+    /**
+     * Runs the checks
+     * 
+     * @param args Not used
+     * @throws Exception if the cache folder cannot be used
+     */
+    public static void main(String[] args) throws Exception
+    {
+	File folder = Check.tempFolder("SampleCacheTest");
+	try
+	{
+	    SampleCache cache = new SampleCache(folder, 1 << 20);
+	    String key = SampleCache.key(Arrays.asList("LHC", "seed=1"));
+	    Check.isTrue("Keys differ with their inputs",
+		    !key.equals(SampleCache.key(Arrays.asList("LHC", "seed=2"))));
+	    Check.isTrue("Inputs are not run together",
+		    !SampleCache.key(Arrays.asList("ab", "c")).equals(
+			    SampleCache.key(Arrays.asList("a", "bc"))));
+	    Check.equal("Sample not yet stored", null, cache.get(key));
+
+	    double[][][] sample = { { { 0.25, -1 }, { 3.5, Double.MIN_VALUE } }, {},
+		    { { 7 } } };
+	    cache.put(key, sample);
+	    Check.isTrue("Stored sample is held", cache.contains(key));
+	    Check.isTrue("Stored sample is read back unchanged",
+		    Arrays.deepEquals(sample, cache.get(key)));
+
+	    // Damage the stored file in every way a crash or a bad disk might
+	    File sampleFile = new File(folder, key + ".sample");
+	    byte[] stored = Files.readAllBytes(sampleFile.toPath());
+	    int arraysAt = 4 + 2 + key.length();
+	    int[] badLengths = { -1, Integer.MAX_VALUE, 4 };
+	    for (int badLength : badLengths)
+	    {
+		byte[] damaged = stored.clone();
+		for (int b = 0; b < 4; b++)
+		{
+		    damaged[arraysAt + b] = (byte) (badLength >>> (24 - 8 * b));
+		}
+		Files.write(sampleFile.toPath(), damaged);
+		Check.equal("Sample with " + badLength + " arrays", null, cache.get(key));
+
+		damaged = stored.clone();
+		for (int b = 0; b < 4; b++)
+		{
+		    // Rows of the first array
+		    damaged[arraysAt + 4 + b] = (byte) (badLength >>> (24 - 8 * b));
+		}
+		Files.write(sampleFile.toPath(), damaged);
+		Check.equal("Sample with an array of " + badLength + " rows", null,
+			cache.get(key));
+	    }
+	    Files.write(sampleFile.toPath(), Arrays.copyOf(stored, stored.length - 1));
+	    Check.equal("Truncated sample", null, cache.get(key));
+	    Files.write(sampleFile.toPath(), Arrays.copyOf(stored, stored.length + 8));
+	    Check.equal("Sample followed by other data", null, cache.get(key));
+	    Files.write(sampleFile.toPath(), new byte[0]);
+	    Check.equal("Empty sample file", null, cache.get(key));
+
+	    // A miss is generated again and stored over the damaged file
+	    cache.put(key, sample);
+	    Check.isTrue("Sample stored again is read back",
+		    Arrays.deepEquals(sample, cache.get(key)));
+
+	    // The least recently used samples are deleted beyond the size limit
+	    SampleCache small = new SampleCache(folder, stored.length + 8);
+	    String otherKey = SampleCache.key(Arrays.asList("eFAST"));
+	    sampleFile.setLastModified(System.currentTimeMillis() - 60000);
+	    small.put(otherKey, sample);
+	    Check.isTrue("Newest sample kept", small.contains(otherKey));
+	    Check.isTrue("Oldest sample deleted", !small.contains(key));
+	}
+	finally
+	{
+	    Check.removeFolder(folder);
+	}
+	Check.passed("SampleCacheTest");
+    }
+}
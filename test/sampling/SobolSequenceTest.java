@@ -0,0 +1,76 @@
+/**
+ * \package sampling
+ * 
+ * \brief Package containing the samplers that generate parameter value sets for each analysis, either within ASPASIA or by running spartan in R
+ */
+package sampling;
+
+import testUtilities.Check;
+
+/**
+ * \brief Checks the Sobol sequence against the reference points of Joe and
+ * Kuo's generator, and for the stratification every Sobol sequence has
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public class SobolSequenceTest
+{
+    /**
+     * First eight points of the first three dimensions, as generated with the
+     * direction numbers of Joe and Kuo (new-joe-kuo-6.21201) in Gray code
+     * order
+     */
+    private static final double[][] JOE_KUO_POINTS = { { 0, 0, 0 }, { 0.5, 0.5, 0.5 },
+	    { 0.75, 0.25, 0.25 }, { 0.25, 0.75, 0.75 }, { 0.375, 0.375, 0.625 },
+	    { 0.875, 0.875, 0.125 }, { 0.625, 0.125, 0.875 }, { 0.125, 0.625, 0.375 } };
+
+    /**
+     * Runs the checks
+     * 
+     * @param args Not used
+     */
+    public static void main(String[] args)
+    {
+	SobolSequence sequence = new SobolSequence(3);
+	for (int i = 0; i < JOE_KUO_POINTS.length; i++)
+	{
+	    double[] point = sequence.getPoint(i);
+	    for (int d = 0; d < 3; d++)
+	    {
+		Check.near("Point " + i + ", dimension " + (d + 1), JOE_KUO_POINTS[i][d],
+			point[d], 0);
+	    }
+	}
+
+	// The first 2^m points put exactly one point in each of the 2^m equal
+	// intervals of every dimension, including those beyond the Joe and Kuo
+	// direction numbers
+	int m = 10;
+	SobolSequence wide = new SobolSequence(60);
+	for (int d = 0; d < wide.getDimensions(); d++)
+	{
+	    boolean[] filled = new boolean[1 << m];
+	    int intervalsFilled = 0;
+	    for (int i = 0; i < (1 << m); i++)
+	    {
+		int interval = (int) (wide.getCoordinate(i, d) * (1 << m));
+		if (!filled[interval])
+		{
+		    filled[interval] = true;
+		    intervalsFilled++;
+		}
+	    }
+	    Check.equal("Intervals filled by the first 1024 points of dimension " + (d + 1),
+		    1 << m, intervalsFilled);
+	}
+
+	// Points can be calculated in any order
+	Check.near("Point calculated alone", sequence.getCoordinate(5, 2),
+		new SobolSequence(3).getPoint(5)[2], 0);
+
+	Check.passed("SobolSequenceTest");
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * \package testUtilities
+ * 
+ * \brief Package containing the checks shared by the tests of ASPASIA, which are run by RunTests.bash
+ */
+package testUtilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * \brief Checks made by the tests of ASPASIA
+ * 
+ * Each test is a class ending in Test, whose main method makes its checks in
+ * turn. The first check to fail throws an AssertionError describing it, so
+ * the test stops and exits with an error
+ * 
+ * @author Kieran Alden, York Computational Immunology Lab
+ * @version 1.0
+ * @since February 2015
+ *
+ */
+public final class Check
+{
+    /**
+     * Number of checks made so far
+     */
+    private static int checksMade = 0;
+
+    /**
+     * Not created: the checks are static
+     */
+    private Check()
+    {
+    }
+
+    /**
+     * Checks that a condition holds
+     * 
+     * @param description What is being checked
+     * @param condition The condition
+     */
+    public static void isTrue(String description, boolean condition)
+    {
+	checksMade++;
+	if (!condition)
+	{
+	    throw new AssertionError(description);
+	}
+    }
+
+    /**
+     * Checks that a number is within a tolerance of the value expected
+     * 
+     * @param description What is being checked
+     * @param expected The value expected
+     * @param actual The value found
+     * @param tolerance Largest difference allowed
+     */
+    public static void near(String description, double expected, double actual,
+	    double tolerance)
+    {
+	isTrue(description + ": expected " + expected + " but was " + actual,
+		Math.abs(expected - actual) <= tolerance);
+    }
+
+    /**
+     * Checks that an object equals the one expected
+     * 
+     * @param description What is being checked
+     * @param expected The object expected
+     * @param actual The object found
+     */
+    public static void equal(String description, Object expected, Object actual)
+    {
+	isTrue(description + ": expected " + expected + " but was " + actual,
+		(expected == null) ? actual == null : expected.equals(actual));
+    }
+
+    /**
+     * Creates an empty folder for the files a test writes, which the test
+     * removes with removeFolder once done
+     * 
+     * @param test Name of the test
+     * @return The folder
+     * @throws IOException if the folder cannot be created
+     */
+    public static File tempFolder(String test) throws IOException
+    {
+	return Files.createTempDirectory("ASPASIA_" + test).toFile();
+    }
+
+    /**
+     * Removes a folder created by tempFolder, and everything in it
+     * 
+     * @param folder The folder
+     */
+    public static void removeFolder(File folder)
+    {
+	FileUtils.deleteQuietly(folder);
+    }
+
+    /**
+     * Reports that every check of a test has passed
+     * 
+     * @param test Name of the test
+     */
+    public static void passed(String test)
+    {
+	System.out.println(test + ": " + checksMade + " checks passed");
+    }
+}